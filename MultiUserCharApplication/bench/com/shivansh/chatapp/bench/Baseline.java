@@ -0,0 +1,97 @@
+package com.shivansh.chatapp.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Results of a {@link Microbench} run saved to a file, to compare later runs against.
+ * <p>
+ * The file is plain text with one benchmark per line,
+ * <code>name &lt;TAB&gt; ns/op &lt;TAB&gt; stdev &lt;TAB&gt; B/op</code>, after comment lines
+ * starting with <code>#</code> that record the JVM, the machine and the run settings.
+ * Timings only compare well between runs on the same machine and JVM; bytes per
+ * operation hardly depend on the machine.
+ * </p>
+ */
+final class Baseline {
+
+    /**
+     * Result of one benchmark, over all measured iterations of all forks.
+     *
+     * @param nanosPerOp mean time per operation
+     * @param stdev      standard deviation of the iteration means
+     * @param bytesPerOp mean heap allocated per operation
+     */
+    record Result(double nanosPerOp, double stdev, double bytesPerOp) {
+    }
+
+    private Baseline() {
+    }
+
+    /**
+     * Writes the results to <code>file</code>, replacing it.
+     *
+     * @param settings the run settings, recorded in a comment
+     */
+    static void save(Path file, Map<String, Result> results, String settings) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# Microbench baseline, " + LocalDate.now() + ": Java " + System.getProperty("java.version")
+                + " (" + System.getProperty("java.vm.name") + "), " + System.getProperty("os.name") + " "
+                + System.getProperty("os.arch") + ", " + Runtime.getRuntime().availableProcessors() + " CPUs");
+        lines.add("# " + settings);
+        lines.add("# name\tns/op\tstdev\tB/op");
+        results.forEach((name, result) -> lines.add(String.format(Locale.ROOT, "%s\t%.2f\t%.2f\t%.1f",
+                name, result.nanosPerOp(), result.stdev(), result.bytesPerOp())));
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the results in <code>file</code>, by benchmark name
+     */
+    static Map<String, Result> load(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 4) {
+                throw new IOException("Malformed baseline line in " + file + ": " + line);
+            }
+            results.put(fields[0], new Result(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                    Double.parseDouble(fields[3])));
+        }
+        return results;
+    }
+
+    /**
+     * Tells whether a result differs from its baseline by more than noise.
+     * <p>
+     * A change counts if the mean moved by more than <code>thresholdPercent</code> and by
+     * more than the two standard deviations together, so a noisy benchmark needs a larger
+     * difference before it is reported.
+     * </p>
+     *
+     * @return 1 if slower, -1 if faster, 0 if within noise
+     */
+    static int verdict(Result now, Result base, double thresholdPercent) {
+        double difference = now.nanosPerOp() - base.nanosPerOp();
+        if (Math.abs(difference) <= now.stdev() + base.stdev()
+                || Math.abs(difference) <= base.nanosPerOp() * thresholdPercent / 100) {
+            return 0;
+        }
+        return difference > 0 ? 1 : -1;
+    }
+}
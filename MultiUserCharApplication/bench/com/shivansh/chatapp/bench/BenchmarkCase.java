@@ -0,0 +1,43 @@
+package com.shivansh.chatapp.bench;
+
+/**
+ * One named benchmark of the {@link Microbench} suite.
+ * <p>
+ * The fixture is built once per forked JVM, outside the measurement; the operation it
+ * returns is then called in a loop. If one call does several operations (e.g. parses a
+ * hundred lines), <code>operationsPerCall</code> says how many, so the results are per
+ * operation. Whatever a call returns is kept, so the JIT cannot drop the work as unused.
+ * </p>
+ *
+ * @param name              unique name, <code>area.what[parameter]</code>
+ * @param operationsPerCall operations done by one call of the operation
+ * @param fixture           builds the state and returns the operation to measure
+ */
+public record BenchmarkCase(String name, int operationsPerCall, Fixture fixture) {
+
+    /**
+     * Prepares the state a benchmark needs.
+     */
+    @FunctionalInterface
+    public interface Fixture {
+
+        /**
+         * @return the operation to measure
+         * @throws Exception if the state cannot be set up
+         */
+        Operation setUp() throws Exception;
+    }
+
+    /**
+     * The code being measured.
+     */
+    @FunctionalInterface
+    public interface Operation {
+
+        /**
+         * @return any result of the work, so it is not optimized away
+         * @throws Exception if the operation fails, which ends the benchmark
+         */
+        Object call() throws Exception;
+    }
+}
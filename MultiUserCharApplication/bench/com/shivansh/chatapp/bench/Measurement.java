@@ -0,0 +1,63 @@
+package com.shivansh.chatapp.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times one {@link BenchmarkCase} in the current JVM, an iteration at a time.
+ * <p>
+ * The operation is called in chunks, and the clock is only read between chunks, so a
+ * call of a few nanoseconds is not dominated by the cost of reading the clock. Chunks
+ * double until one takes at least {@link #CHUNK_NANOS}. Heap allocation is read from
+ * the benchmark thread's allocation counter, so work other threads do on its behalf is
+ * not counted.
+ * </p>
+ */
+final class Measurement {
+
+    /** Shortest time one chunk of calls should take. */
+    private static final long CHUNK_NANOS = 100_000;
+
+    /** Receives every result, so the JIT has to compute it. */
+    static volatile Object sink;
+
+    private final BenchmarkCase.Operation operation;
+    private final int operationsPerCall;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private int chunk = 1;
+
+    Measurement(BenchmarkCase benchmark) throws Exception {
+        this.operation = benchmark.fixture().setUp();
+        this.operationsPerCall = Math.max(1, benchmark.operationsPerCall());
+    }
+
+    /**
+     * Runs the operation for about <code>millis</code> milliseconds.
+     *
+     * @return nanoseconds and bytes allocated per operation
+     */
+    double[] iteration(long millis) throws Exception {
+        Object last = null;
+        long calls = 0;
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long end = start + millis * 1_000_000;
+        long now = start;
+        while (now < end) {
+            for (int i = 0; i < chunk; i++) {
+                last = operation.call();
+            }
+            calls += chunk;
+            long chunkStart = now;
+            now = System.nanoTime();
+            if (now - chunkStart < CHUNK_NANOS && chunk < (1 << 24)) {
+                chunk <<= 1;
+            }
+        }
+        long nanos = now - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        sink = last;
+        double operations = (double) calls * operationsPerCall;
+        return new double[] {nanos / operations, bytes / operations};
+    }
+}
@@ -0,0 +1,256 @@
+package com.shivansh.chatapp.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.shivansh.chatapp.dao.PersistenceBenchmarks;
+import com.shivansh.chatapp.network.NetworkBenchmarks;
+
+/**
+ * Runs the micro-benchmarks of the network and persistence hot paths, and compares
+ * them with a saved baseline.
+ * <p>
+ * It works the way JMH does, without needing it on the classpath:
+ * <ul>
+ *     <li>every benchmark runs in fresh JVMs (<b>forks</b>), so the JIT profile of one
+ *         benchmark cannot slow down another, and a lucky or unlucky compilation in one
+ *         JVM shows up as spread between forks;</li>
+ *     <li>each fork runs <b>warmup</b> iterations that are thrown away, then the
+ *         <b>measured</b> iterations;</li>
+ *     <li>the result is the mean time per operation over all measured iterations, with
+ *         their standard deviation, and the heap allocated per operation.</li>
+ * </ul>
+ * Forks get the same JVM options as this process, so <code>-Xmx</code>, <code>-XX:</code> flags
+ * and <code>-D</code> configuration overrides apply to them as well. Unless overridden, forks
+ * run without a message log, database or authentication (<code>STORE_DIR=</code>,
+ * <code>MESSAGE_DB_ENABLED=false</code>, <code>AUTH_REQUIRED=false</code>) and with a fixed
+ * <code>TOKEN_SECRET</code>.
+ * </p>
+ * <p>
+ * With <code>--save file</code> the results are written as a {@link Baseline}; with
+ * <code>--compare file</code> each result is shown next to the baseline's, and the exit
+ * status is 1 if any benchmark got slower by more than the threshold and the noise.
+ * The baseline in <code>bench/baseline.txt</code> was recorded with the default settings.
+ * </p>
+ * Usage (from <code>MultiUserCharApplication</code>, with <code>src</code> and <code>bench</code> compiled
+ * into <code>out</code> and <code>config.properties</code> copied there):
+ * <pre>
+ * java -cp out com.shivansh.chatapp.bench.Microbench [regex] [-f forks] [-wi warmups] [-i iterations]
+ *      [-t millis] [--list] [--save file] [--compare file] [--threshold percent]
+ * </pre>
+ * The regex selects benchmarks by name, e.g. <code>broadcast</code> or <code>^dao\.</code>.
+ */
+public class Microbench {
+
+    private int forks = 2;
+    private int warmups = 3;
+    private int iterations = 5;
+    private long millis = 1000;
+    private double thresholdPercent = 10;
+
+    /**
+     * @return every benchmark, in the order they run
+     */
+    static List<BenchmarkCase> suite() {
+        List<BenchmarkCase> cases = new ArrayList<>();
+        cases.addAll(NetworkBenchmarks.cases());
+        cases.addAll(PersistenceBenchmarks.cases());
+        return cases;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--fork")) {
+            runFork(args);
+            return;
+        }
+
+        Microbench bench = new Microbench();
+        Pattern filter = null;
+        Path save = null;
+        Path compare = null;
+        boolean list = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-f" -> bench.forks = Math.max(1, Integer.parseInt(args[++i]));
+                case "-wi" -> bench.warmups = Math.max(0, Integer.parseInt(args[++i]));
+                case "-i" -> bench.iterations = Math.max(1, Integer.parseInt(args[++i]));
+                case "-t" -> bench.millis = Math.max(10, Long.parseLong(args[++i]));
+                case "--threshold" -> bench.thresholdPercent = Double.parseDouble(args[++i]);
+                case "--save" -> save = Path.of(args[++i]);
+                case "--compare" -> compare = Path.of(args[++i]);
+                case "--list" -> list = true;
+                default -> filter = Pattern.compile(args[i]);
+            }
+        }
+
+        List<BenchmarkCase> selected = new ArrayList<>();
+        for (BenchmarkCase benchmark : suite()) {
+            if (filter == null || filter.matcher(benchmark.name()).find()) {
+                selected.add(benchmark);
+            }
+        }
+        if (list || selected.isEmpty()) {
+            for (BenchmarkCase benchmark : selected) {
+                System.out.println(benchmark.name());
+            }
+            if (selected.isEmpty()) {
+                System.err.println("No benchmark matches " + filter);
+                System.exit(2);
+            }
+            return;
+        }
+
+        Map<String, Baseline.Result> baseline = compare != null ? Baseline.load(compare) : Map.of();
+        Map<String, Baseline.Result> results = new LinkedHashMap<>();
+        boolean regressed = false;
+        System.out.println("# " + bench.settings());
+        System.out.printf("%-36s %12s %10s %14s %10s%s%n", "benchmark", "ns/op", "stdev", "ops/s", "B/op",
+                compare != null ? String.format(" %14s %9s", "baseline ns/op", "change") : "");
+        for (BenchmarkCase benchmark : selected) {
+            Baseline.Result result = bench.run(benchmark.name());
+            results.put(benchmark.name(), result);
+            String comparison = "";
+            Baseline.Result base = baseline.get(benchmark.name());
+            if (compare != null) {
+                if (base == null) {
+                    comparison = String.format(" %14s %9s", "-", "new");
+                } else {
+                    int verdict = Baseline.verdict(result, base, bench.thresholdPercent);
+                    regressed |= verdict > 0;
+                    comparison = String.format(Locale.ROOT, " %14.1f %+8.1f%%%s", base.nanosPerOp(),
+                            100 * (result.nanosPerOp() / base.nanosPerOp() - 1),
+                            verdict > 0 ? "  SLOWER" : verdict < 0 ? "  faster" : "");
+                }
+            }
+            System.out.printf(Locale.ROOT, "%-36s %12.1f %10.1f %14.0f %10.1f%s%n", benchmark.name(),
+                    result.nanosPerOp(), result.stdev(), 1e9 / result.nanosPerOp(), result.bytesPerOp(), comparison);
+        }
+
+        if (save != null) {
+            Baseline.save(save, results, bench.settings());
+            System.out.println("Saved baseline to " + save);
+        }
+        if (regressed) {
+            System.out.println("Some benchmarks are slower than the baseline by more than "
+                    + bench.thresholdPercent + "% and the noise.");
+            System.exit(1);
+        }
+    }
+
+    private String settings() {
+        return "forks=" + forks + " warmups=" + warmups + " iterations=" + iterations + " millis=" + millis;
+    }
+
+    /**
+     * Runs one benchmark in every fork and combines the measured iterations.
+     */
+    private Baseline.Result run(String name) throws IOException, InterruptedException {
+        List<double[]> measured = new ArrayList<>();
+        for (int fork = 0; fork < forks; fork++) {
+            measured.addAll(fork(name));
+        }
+        double nanos = 0;
+        double bytes = 0;
+        for (double[] iteration : measured) {
+            nanos += iteration[0];
+            bytes += iteration[1];
+        }
+        nanos /= measured.size();
+        bytes /= measured.size();
+        double variance = 0;
+        for (double[] iteration : measured) {
+            variance += (iteration[0] - nanos) * (iteration[0] - nanos);
+        }
+        double stdev = measured.size() > 1 ? Math.sqrt(variance / (measured.size() - 1)) : 0;
+        return new Baseline.Result(nanos, stdev, bytes);
+    }
+
+    /**
+     * Starts a JVM that runs one benchmark, and collects its measured iterations.
+     */
+    private List<double[]> fork(String name) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Microbench.class.getName());
+        command.add("--fork");
+        command.add(name);
+        command.add(Integer.toString(warmups));
+        command.add(Integer.toString(iterations));
+        command.add(Long.toString(millis));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<double[]> measured = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("@iteration ")) {
+                    String[] fields = line.split(" ");
+                    measured.add(new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+                } else {
+                    System.out.println("  [" + name + "] " + line); // output of the code under test
+                }
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0 || measured.size() != iterations) {
+            throw new IllegalStateException("Benchmark " + name + " failed in its fork (exit status " + exit + ")");
+        }
+        return measured;
+    }
+
+    /**
+     * Fork side: sets up one benchmark, runs warmup and measured iterations, and
+     * prints each measured one as <code>@iteration nanosPerOp bytesPerOp</code>.
+     */
+    private static void runFork(String[] args) throws Exception {
+        defaultProperty("STORE_DIR", "");
+        defaultProperty("MESSAGE_DB_ENABLED", "false");
+        defaultProperty("AUTH_REQUIRED", "false");
+        defaultProperty("TOKEN_SECRET", "microbench-token-secret");
+
+        String name = args[1];
+        int warmups = Integer.parseInt(args[2]);
+        int iterations = Integer.parseInt(args[3]);
+        long millis = Long.parseLong(args[4]);
+        BenchmarkCase benchmark = null;
+        for (BenchmarkCase candidate : suite()) {
+            if (candidate.name().equals(name)) {
+                benchmark = candidate;
+            }
+        }
+        if (benchmark == null) {
+            throw new IllegalArgumentException("Unknown benchmark " + name);
+        }
+
+        Measurement measurement = new Measurement(benchmark);
+        for (int i = 0; i < warmups; i++) {
+            measurement.iteration(millis);
+        }
+        for (int i = 0; i < iterations; i++) {
+            double[] result = measurement.iteration(millis);
+            System.out.println(String.format(Locale.ROOT, "@iteration %.4f %.2f", result[0], result[1]));
+        }
+        System.exit(0); // the fixture may have started non-daemon threads
+    }
+
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.shivansh.chatapp.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import com.shivansh.chatapp.dto.MessageDTO;
+
+/**
+ * Compares storing chat messages one by one with the group commit of {@link MessageDAO}.
+ * <p>
+ * Two strategies write the same messages into the configured database:
+ * <ul>
+ *     <li><b>per-message</b> &ndash; what a synchronous save from the session thread would
+ *         do: {@link CommonDAO#createConnection()}, one INSERT and a commit per message;</li>
+ *     <li><b>group commit</b> &ndash; {@link MessageDAO#save(MessageDTO)} from the calling
+ *         thread, measured until the writer has committed everything.</li>
+ * </ul>
+ * The per-message run is limited to a few thousand messages, since it is slow by design.
+ * To run against an in-process database instead of MySQL, put its driver on the classpath and
+ * override the connection settings, e.g.
+ * <code>-DDRIVER=org.h2.Driver -DCONNECTION_URL=jdbc:h2:mem:chatdb;DB_CLOSE_DELAY=-1 -DUSER_ID=sa -DPASSWORD=</code>.
+ * </p>
+ * Usage: <code>java com.shivansh.chatapp.dao.MessageDAOBenchmark [messages] [batchSize]</code>
+ */
+public class MessageDAOBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int synchronous = Math.min(messages, 2_000);
+        String body = "x".repeat(100);
+
+        try (Connection connection = CommonDAO.createConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(MessageDAO.CREATE_TABLE);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < synchronous; i++) {
+            try (Connection connection = CommonDAO.createConnection();
+                 PreparedStatement insert = connection.prepareStatement(MessageDAO.INSERT)) {
+                bind(insert, new MessageDTO("bench", i, "#general", "user" + (i % 100), System.currentTimeMillis(), body));
+                insert.executeUpdate();
+            }
+        }
+        double perMessage = synchronous * 1e9 / (System.nanoTime() - start);
+
+        MessageDAO dao = new MessageDAO(CommonDAO::createConnection, messages, batchSize, 50);
+        start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            dao.save(new MessageDTO("bench", i, "#general", "user" + (i % 100), System.currentTimeMillis(), body));
+        }
+        long enqueued = System.nanoTime() - start;
+        while (dao.getSaved() + dao.getFailed() + dao.getDropped() < messages) {
+            Thread.sleep(10);
+        }
+        double groupCommit = messages * 1e9 / (System.nanoTime() - start);
+        dao.close();
+
+        System.out.printf("%-14s %10s %14s%n", "strategy", "messages", "messages/s");
+        System.out.printf("%-14s %10d %14.0f%n", "per-message", synchronous, perMessage);
+        System.out.printf("%-14s %10d %14.0f%n", "group commit", messages, groupCommit);
+        System.out.printf("save() on the caller: %.2f us/message; %s%n", enqueued / 1e3 / messages, dao.stats());
+    }
+
+    private static void bind(PreparedStatement insert, MessageDTO message) throws Exception {
+        insert.setString(1, message.getNode());
+        insert.setLong(2, message.getSeq());
+        insert.setString(3, message.getRoom());
+        insert.setString(4, message.getSender());
+        insert.setLong(5, message.getSentAt());
+        insert.setString(6, message.getBody());
+    }
+}
@@ -0,0 +1,81 @@
+package com.shivansh.chatapp.dao;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.shivansh.chatapp.bench.BenchmarkCase;
+import com.shivansh.chatapp.bench.Microbench;
+import com.shivansh.chatapp.store.MessageLog;
+import com.shivansh.chatapp.utils.Encryption;
+import com.shivansh.chatapp.utils.Srp;
+
+/**
+ * {@link Microbench} cases for the persistence paths that do not need a database.
+ * <p>
+ * <ul>
+ *     <li><b>password</b> &ndash; {@link Encryption#passwordEncrypt(String)}, run for every
+ *         login and registration;</li>
+ *     <li><b>login.cached</b> &ndash; what {@link UserDAO#doLogin(com.shivansh.chatapp.dto.UserDTO)}
+ *         does for a login confirmed recently: hash the password, find the user's verifier in
+ *         the {@link CredentialCache} and check the password against it, without a query;</li>
+ *     <li><b>log.append</b> &ndash; appending a 200-byte record to a {@link MessageLog} in a
+ *         temporary directory, with writeback left to the OS. Old segments are deleted
+ *         as the log grows, and the directory when the fork exits.</li>
+ * </ul>
+ * The database round trips themselves are measured by {@link MessageDAOBenchmark} and
+ * {@link UserImportBenchmark}, which need a database to run against.
+ * </p>
+ */
+public final class PersistenceBenchmarks {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private PersistenceBenchmarks() {
+    }
+
+    /**
+     * @return the persistence benchmarks
+     */
+    public static List<BenchmarkCase> cases() {
+        List<BenchmarkCase> cases = new ArrayList<>();
+        cases.add(new BenchmarkCase("dao.password.md5", 1, () -> () -> Encryption.passwordEncrypt(PASSWORD)));
+        cases.add(new BenchmarkCase("dao.login.cached", 1, () -> {
+            CredentialCache cache = new CredentialCache(10_000, 600_000);
+            String credential = Srp.newCredential("alice", Encryption.passwordEncrypt(PASSWORD));
+            for (int i = 0; i < 10_000; i++) {
+                cache.put("user" + i, credential); // only the cache's size matters here
+            }
+            cache.put("alice", credential);
+            return () -> {
+                String hash = Encryption.passwordEncrypt(PASSWORD);
+                return cache.matches("alice", stored -> Srp.matches(stored, "alice", hash));
+            };
+        }));
+        cases.add(new BenchmarkCase("store.log.append", 1, () -> {
+            Path dir = Files.createTempDirectory("microbench-log");
+            MessageLog log = new MessageLog(dir, 16 << 20, 0, 0, 0, 64L << 20);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir, log)));
+            ByteBuffer record = ByteBuffer.allocate(200);
+            return () -> log.append(seq -> record.clear().putLong(0, seq));
+        }));
+        return cases;
+    }
+
+    private static void delete(Path dir, MessageLog log) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            log.close();
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
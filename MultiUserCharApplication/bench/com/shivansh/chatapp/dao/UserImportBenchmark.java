@@ -0,0 +1,69 @@
+package com.shivansh.chatapp.dao;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.shivansh.chatapp.dto.UserDTO;
+import com.shivansh.chatapp.dto.UserImportResult;
+import com.shivansh.chatapp.dto.UserImportResult.Status;
+
+/**
+ * Compares registering users one by one with the bulk provisioning of {@link UserDAO#addAll}.
+ * <p>
+ * Both strategies insert new, uniquely named users into the configured database:
+ * <ul>
+ *     <li><b>add()</b> &ndash; one {@link UserDAO#add(UserDTO)} call per user, i.e. one
+ *         hash, one INSERT and one commit each;</li>
+ *     <li><b>addAll()</b> &ndash; parallel hashing, one existence query, one batch insert and
+ *         one commit per chunk.</li>
+ * </ul>
+ * The one-by-one run is limited to a few thousand users, since it is slow by design. The
+ * bulk run is repeated with the same users to show the cost of an import that only finds duplicates.
+ * Like {@link MessageDAOBenchmark}, it can run against another database by overriding
+ * <code>DRIVER</code> and <code>CONNECTION_URL</code>.
+ * </p>
+ * Usage: <code>java com.shivansh.chatapp.dao.UserImportBenchmark [users] [chunkSize]</code>
+ */
+public class UserImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int oneByOne = Math.min(users, 2_000);
+        String prefix = "bench" + Long.toString(System.currentTimeMillis(), 36) + "-";
+        UserDAO dao = new UserDAO();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < oneByOne; i++) {
+            dao.add(new UserDTO(prefix + "single" + i, ("secret" + i).toCharArray()));
+        }
+        double single = oneByOne * 1e9 / (System.nanoTime() - start);
+
+        List<UserDTO> batch = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            batch.add(new UserDTO(prefix + i, ("secret" + i).toCharArray()));
+        }
+        start = System.nanoTime();
+        Map<Status, Integer> first = count(dao.addAll(batch, chunkSize));
+        double bulk = users * 1e9 / (System.nanoTime() - start);
+
+        start = System.nanoTime();
+        Map<Status, Integer> again = count(dao.addAll(batch, chunkSize));
+        double duplicates = users * 1e9 / (System.nanoTime() - start);
+
+        System.out.printf("%-20s %10s %12s  %s%n", "strategy", "users", "users/s", "results");
+        System.out.printf("%-20s %10d %12.0f%n", "add()", oneByOne, single);
+        System.out.printf("%-20s %10d %12.0f  %s%n", "addAll()", users, bulk, first);
+        System.out.printf("%-20s %10d %12.0f  %s%n", "addAll() again", users, duplicates, again);
+    }
+
+    private static Map<Status, Integer> count(List<UserImportResult> results) {
+        Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        for (UserImportResult result : results) {
+            counts.merge(result.getStatus(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
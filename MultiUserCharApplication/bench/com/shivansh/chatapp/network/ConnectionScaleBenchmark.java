@@ -0,0 +1,117 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how the server execution models scale with the number of idle connections.
+ * <p>
+ * For each requested connection count the benchmark starts an in-process
+ * {@link Server} on a free port, opens that many client sockets against it and
+ * reports, once every connection has a {@link ServerWorker} or {@link NioSession}:
+ * <ul>
+ *     <li>live JVM threads,</li>
+ *     <li>heap in use after a full GC,</li>
+ *     <li>resident set size of the process (Linux only),</li>
+ *     <li>time taken to establish all connections.</li>
+ * </ul>
+ * Clients never send <code>/join</code>, so the numbers are the pure cost of an
+ * idle connection rather than of the O(N&sup2;) join broadcasts.
+ * </p>
+ * Usage:
+ * <pre>
+ *   java -Xss1m com.shivansh.chatapp.network.ConnectionScaleBenchmark thread,virtual,nio 1000,5000,10000
+ * </pre>
+ * Large counts need <code>ulimit -n</code> above twice the connection count.
+ */
+public class ConnectionScaleBenchmark {
+
+    /** Results go here; the server's own per-connection logging is discarded. */
+    private static final PrintStream report = System.out;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+
+        String[] modes = (args.length > 0 ? args[0] : "thread,virtual,nio").split(",");
+        String[] counts = (args.length > 1 ? args[1] : "1000,5000").split(",");
+
+        report.printf("%-8s %8s %8s %12s %12s %10s%n",
+                "mode", "conns", "threads", "heap(MB)", "rss(MB)", "setup(ms)");
+        for (String mode : modes) {
+            for (String count : counts) {
+                run(mode.trim(), Integer.parseInt(count.trim()));
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(String mode, int connections) throws Exception {
+        Server server = new Server(0, mode);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "bench-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        long baselineRss = rssKb();
+        long start = System.nanoTime();
+        List<Socket> clients = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            clients.add(new Socket("localhost", server.getPort()));
+        }
+        while (sessionCount(server) < connections) {
+            Thread.sleep(10);
+        }
+        long setupMs = (System.nanoTime() - start) / 1_000_000;
+        Thread.sleep(500); // let worker threads reach their blocking read
+
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long rss = rssKb() - baselineRss;
+
+        report.printf("%-8s %8d %8d %12.1f %12s %10d%n", mode, connections, threads,
+                heap / (1024.0 * 1024.0), rss >= 0 ? String.format("%.1f", rss / 1024.0) : "n/a", setupMs);
+
+        for (Socket client : clients) {
+            client.close();
+        }
+        server.shutdown();
+        while (sessionCount(server) > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static int sessionCount(Server server) {
+        return server.connectionCount();
+    }
+
+    /**
+     * Reads VmRSS from /proc; returns -1 where that is unavailable.
+     */
+    private static long rssKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // not on Linux
+        }
+        return -1;
+    }
+}
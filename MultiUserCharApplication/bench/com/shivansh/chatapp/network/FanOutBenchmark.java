@@ -0,0 +1,89 @@
+package com.shivansh.chatapp.network;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the allocation cost of broadcasting one message to N recipients.
+ * <p>
+ * Two fan-out strategies are measured on the broadcasting thread:
+ * <ul>
+ *     <li><b>per-recipient</b> &ndash; what the server used to do: every
+ *         {@link ChatSession#sendMessage(String)} concatenates the newline and
+ *         encodes its own byte array;</li>
+ *     <li><b>encode-once</b> &ndash; {@link Server#broadcastMessage(ChatMessage)}, which encodes a single
+ *         {@link ChatMessage} and queues a read-only view of it per recipient.</li>
+ * </ul>
+ * Recipients are in-memory sessions whose queues are drained immediately, so only
+ * the fan-out itself is measured.
+ * </p>
+ * Usage: <code>java com.shivansh.chatapp.network.FanOutBenchmark 1000,5000,10000 [messageLength]</code>
+ */
+public class FanOutBenchmark {
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        String[] counts = (args.length > 0 ? args[0] : "1000,5000,10000").split(",");
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        String text = "12:00 - benchmark: " + "x".repeat(length);
+
+        System.out.printf("%8s %22s %22s %10s%n", "users", "per-recipient B/msg", "encode-once B/msg", "ratio");
+        for (String count : counts) {
+            int users = Integer.parseInt(count.trim());
+            Server server = new Server(0, "thread");
+            for (int i = 0; i < users; i++) {
+                DiscardingSession session = new DiscardingSession(server, "user" + i);
+                server.sessions.register(session, session.getClientName());
+                server.rooms.join(RoomManager.DEFAULT_ROOM, session);
+            }
+
+            measure(server, text, false, ROUNDS); // warm up both paths
+            measure(server, text, true, ROUNDS);
+            long perRecipient = measure(server, text, false, ROUNDS);
+            long encodeOnce = measure(server, text, true, ROUNDS);
+
+            System.out.printf("%8d %22d %22d %9.1fx%n", users, perRecipient, encodeOnce,
+                    (double) perRecipient / encodeOnce);
+            server.shutdown();
+        }
+    }
+
+    /**
+     * @return bytes allocated by the calling thread per broadcast
+     */
+    private static long measure(Server server, String text, boolean encodeOnce, int rounds) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int r = 0; r < rounds; r++) {
+            if (encodeOnce) {
+                server.broadcastMessage(new ChatMessage(FrameType.CHAT, "benchmark", null, System.currentTimeMillis(), text));
+            } else {
+                for (ChatSession worker : server.sessions.snapshot()) {
+                    worker.sendMessage(text);
+                }
+            }
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / rounds;
+    }
+
+    /**
+     * Session without a connection that discards whatever is queued for it.
+     */
+    private static final class DiscardingSession extends ChatSession {
+
+        DiscardingSession(Server server, String name) {
+            super(server);
+            this.clientName = name;
+        }
+
+        @Override
+        protected void onEnqueued() {
+            outbound.poll();
+        }
+
+        @Override
+        protected void disconnect() {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the heap allocated per chat message on the whole server hot path.
+ * <p>
+ * One sender and N recipients share the default room. Every round:
+ * <ul>
+ *     <li>the sender's {@link InboundDecoder} reads one text line from a channel, and
+ *         {@link ChatSession#processInput()} parses it and publishes it to the room;</li>
+ *     <li>each recipient's {@link BatchWriter} drains its queue and writes the
+ *         message to a channel that discards it, as a connection's writer thread would.</li>
+ * </ul>
+ * Everything runs on the measuring thread, so the reported bytes per message include
+ * decoding, formatting, encoding, fan-out and the socket writes. A constant figure that
+ * does not grow with the number of recipients means the per-recipient path allocates nothing.
+ * Run with <code>-Xlog:gc</code> to see how rarely the collector has to run.
+ * </p>
+ * Usage: <code>java -DSTORE_DIR= -DMESSAGE_DB_ENABLED=false -DAUTH_REQUIRED=false
+ * com.shivansh.chatapp.network.HotPathAllocationBenchmark 10,100,1000 [messageLength] [messages]</code>
+ */
+public class HotPathAllocationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String[] counts = (args.length > 0 ? args[0] : "10,100,1000").split(",");
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        byte[] line = ("x".repeat(length) + "\n").getBytes(StandardCharsets.UTF_8);
+        if (System.getProperty("RATE_LIMIT_ENABLED") == null) {
+            System.setProperty("RATE_LIMIT_ENABLED", "false"); // the sender floods on purpose
+        }
+
+        System.out.printf("%8s %12s %14s %14s%n", "users", "B/msg", "B/delivery", "msgs/s");
+        for (String count : counts) {
+            int users = Integer.parseInt(count.trim());
+            Server server = new Server(0, "thread");
+            for (int i = 0; i < users; i++) {
+                WritingSession session = new WritingSession(server, "user" + i);
+                server.sessions.register(session, session.getClientName());
+                server.rooms.join(RoomManager.DEFAULT_ROOM, session);
+            }
+            LineChannel input = new LineChannel();
+            WritingSession sender = new WritingSession(server, null);
+            input.next = "/join sender\n".getBytes(StandardCharsets.UTF_8);
+            sender.receive(input);
+
+            run(sender, input, line, messages); // warm up
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            run(sender, input, line, messages);
+            long nanos = System.nanoTime() - start;
+            long perMessage = (threads.getCurrentThreadAllocatedBytes() - before) / messages;
+
+            System.out.printf("%8d %12d %14.2f %14.0f%n", users, perMessage,
+                    (double) perMessage / (users + 1), messages * 1e9 / nanos);
+            server.shutdown();
+        }
+    }
+
+    private static void run(WritingSession sender, LineChannel input, byte[] line, int messages) throws IOException {
+        for (int i = 0; i < messages; i++) {
+            input.next = line;
+            sender.receive(input);
+        }
+    }
+
+    /**
+     * Hands out one prepared line per read, without allocating.
+     */
+    private static final class LineChannel implements ReadableByteChannel {
+
+        byte[] next;
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (next == null) {
+                return 0;
+            }
+            int n = next.length;
+            dst.put(next);
+            next = null;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Session without a connection that writes whatever is queued for it into {@link #DISCARD}.
+     */
+    private static final class WritingSession extends ChatSession {
+
+        private final BatchWriter writer = new BatchWriter();
+
+        WritingSession(Server server, String name) {
+            super(server);
+            this.clientName = name;
+        }
+
+        void receive(ReadableByteChannel channel) throws IOException {
+            decoder.readFrom(channel);
+            processInput();
+        }
+
+        @Override
+        protected void onEnqueued() {
+            try {
+                while (writer.fill(outbound) && writer.hasPending()) {
+                    writer.write(DISCARD);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        protected void disconnect() {
+        }
+    }
+
+    /** Accepts and drops every byte. */
+    private static final GatheringByteChannel DISCARD = new GatheringByteChannel() {
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long n = 0;
+            for (int i = offset; i < offset + length; i++) {
+                n += write(srcs[i]);
+            }
+            return n;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+}
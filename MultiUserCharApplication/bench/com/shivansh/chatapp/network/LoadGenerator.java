@@ -0,0 +1,388 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+import com.shivansh.chatapp.utils.LatencyHistogram;
+import com.shivansh.chatapp.utils.SessionTokens;
+
+/**
+ * Simulates thousands of chat users against a server and reports end-to-end latency
+ * and throughput.
+ * <p>
+ * Every simulated user is a real {@link Client}, with the same framing, queues and
+ * reconnects as the chat window, running on virtual threads and listening through a
+ * {@link ChatListener} instead of Swing. All users join <code>#general</code>. Then, for
+ * the measured duration:
+ * <ul>
+ *     <li>messages are sent at a fixed total <b>rate</b>, each by a random online user;
+ *         a share of them (<b>whispers</b>) are private messages to another random user,
+ *         the rest go to the whole room;</li>
+ *     <li>users <b>churn</b>: every so often a random user quits and a new one joins in
+ *         its place, so join broadcasts and history replays happen under load;</li>
+ *     <li>each message carries the time it was sent, and every delivery to any user
+ *         counts its latency: from the generator handing the message to its client,
+ *         through the server's fan-out, to the receiving client having parsed it.</li>
+ * </ul>
+ * Latencies before the end of the warmup are not counted. Every interval prints
+ * the rates and percentiles of that interval; the end prints those of the whole run,
+ * and how many deliveries arrived compared with the room size at each send. Fewer
+ * deliveries than expected mean messages were dropped, e.g. for a slow consumer.
+ * </p>
+ * <p>
+ * With <code>--embedded</code> the server runs in this process, on a free port and with
+ * the given execution model; otherwise the generator connects to <code>ServerAddress</code>
+ * and <code>PORT_NUMBER</code> from the configuration. Users join with session tokens when
+ * <code>TOKEN_SECRET</code> is configured (an embedded server gets a random one), else with
+ * plain names, which the server only accepts with <code>AUTH_REQUIRED=false</code>.
+ * <code>-DCLIENT_FRAMING=text</code> runs the users on the text protocol.
+ * </p>
+ * Usage (from <code>MultiUserCharApplication</code>, with <code>src</code> and <code>bench</code> compiled
+ * into <code>out</code> and <code>config.properties</code> copied there):
+ * <pre>
+ * java -DSTORE_DIR= -DMESSAGE_DB_ENABLED=false -cp out com.shivansh.chatapp.network.LoadGenerator
+ *      [--embedded thread|virtual|nio] [--users 1000] [--rate 1000] [--whispers 0.1] [--churn 5]
+ *      [--size 100] [--duration 60] [--warmup 10] [--interval 5] [--ramp 500]
+ * </pre>
+ * Rates are per second for the whole generator. Thousands of users need
+ * <code>ulimit -n</code> above the user count (twice that with an embedded server).
+ */
+public class LoadGenerator {
+
+    /** Results go here; the clients' and embedded server's own logging is discarded. */
+    private static final PrintStream report = System.out;
+
+    /** Marks a generated message body; followed by the send time from {@link System#nanoTime()}. */
+    private static final String MARK = "lg@";
+
+    private int users = 1000;
+    private double rate = 1000;
+    private double whispers = 0.1;
+    private double churn = 5;
+    private int size = 100;
+    private int durationSeconds = 60;
+    private int warmupSeconds = 10;
+    private int intervalSeconds = 5;
+    private double ramp = 500;
+    private String embedded;
+
+    private final ThreadFactory threads = Thread.ofVirtual().name("load-", 0).factory();
+    private SessionTokens tokens;
+    private String padding;
+
+    private AtomicReferenceArray<SimulatedUser> slots;
+    private final AtomicInteger online = new AtomicInteger();
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /** Latencies of the current interval; replaced by the reporter. */
+    private volatile LatencyHistogram interval = new LatencyHistogram();
+    /** Latencies since the warmup ended, or null during the warmup. */
+    private volatile LatencyHistogram measured;
+    private volatile boolean sending;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder expected = new LongAdder();
+    private final LongAdder sendErrors = new LongAdder();
+    private final LongAdder connectErrors = new LongAdder();
+    private final LongAdder churned = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--users" -> generator.users = Math.max(2, Integer.parseInt(args[++i]));
+                case "--rate" -> generator.rate = Math.max(0, Double.parseDouble(args[++i]));
+                case "--whispers" -> generator.whispers = Math.min(1, Math.max(0, Double.parseDouble(args[++i])));
+                case "--churn" -> generator.churn = Math.max(0, Double.parseDouble(args[++i]));
+                case "--size" -> generator.size = Math.max(0, Integer.parseInt(args[++i]));
+                case "--duration" -> generator.durationSeconds = Math.max(1, Integer.parseInt(args[++i]));
+                case "--warmup" -> generator.warmupSeconds = Math.max(0, Integer.parseInt(args[++i]));
+                case "--interval" -> generator.intervalSeconds = Math.max(1, Integer.parseInt(args[++i]));
+                case "--ramp" -> generator.ramp = Math.max(1, Double.parseDouble(args[++i]));
+                case "--embedded" -> generator.embedded = i + 1 < args.length && !args[i + 1].startsWith("--")
+                        ? args[++i] : "nio";
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+        generator.run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        if (embedded != null) {
+            startServer();
+        }
+        if (!ConfigReader.getValue("TOKEN_SECRET", "").isEmpty()) {
+            tokens = SessionTokens.fromConfig();
+        }
+        // Leave room for the marker and send time, so bodies are about --size characters
+        padding = " " + "x".repeat(Math.max(0, size - MARK.length() - 16));
+
+        report.printf(Locale.ROOT, "# users=%d rate=%.0f/s whispers=%.2f churn=%.1f/s size=%d duration=%ds warmup=%ds"
+                        + " server=%s framing=%s joins=%s%n", users, rate, whispers, churn, size, durationSeconds,
+                warmupSeconds, embedded != null ? "embedded " + embedded
+                        : ConfigReader.getValue("ServerAddress") + ":" + ConfigReader.getValue("PORT_NUMBER"),
+                ConfigReader.getValue("CLIENT_FRAMING", "binary"), tokens != null ? "tokens" : "names");
+
+        slots = new AtomicReferenceArray<>(users);
+        long start = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            pace(start, i, ramp);
+            slots.set(i, connect());
+        }
+        report.printf(Locale.ROOT, "# %d of %d users connected in %d ms%n", online.get(), users,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        sending = true;
+        Thread sender = threads.newThread(this::sendLoop);
+        Thread churner = threads.newThread(this::churnLoop);
+        sender.start();
+        churner.start();
+
+        report.printf("%8s %8s %10s %12s %10s %10s %10s %10s%n",
+                "time(s)", "online", "sent/s", "delivered/s", "p50(ms)", "p99(ms)", "p99.9(ms)", "max(ms)");
+        long begin = System.nanoTime();
+        long warmupEnd = begin + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long last = begin;
+        long sentBefore = 0;
+        long deliveredBefore = 0;
+        long[] atWarmupEnd = null;
+        while (true) {
+            long due = Math.min(end, last + TimeUnit.SECONDS.toNanos(intervalSeconds));
+            if (atWarmupEnd == null && warmupEnd <= due) {
+                LockSupport.parkNanos(warmupEnd - System.nanoTime());
+                atWarmupEnd = new long[] {sent.sum(), delivered.sum(), expected.sum()};
+                measured = new LatencyHistogram();
+            }
+            LockSupport.parkNanos(due - System.nanoTime());
+            boolean finished = due >= end;
+            if (finished) {
+                sending = false;
+                sender.join();
+                churner.join();
+                Thread.sleep(1000); // deliveries still on their way
+            }
+            long now = System.nanoTime();
+            double seconds = (now - last) / 1e9;
+            last = now;
+            LatencyHistogram latencies = interval;
+            interval = new LatencyHistogram();
+            long sentNow = sent.sum();
+            long deliveredNow = delivered.sum();
+            report.printf(Locale.ROOT, "%8.0f %8d %10.0f %12.0f %10.2f %10.2f %10.2f %10.2f%n",
+                    (now - begin) / 1e9, online.get(), (sentNow - sentBefore) / seconds,
+                    (deliveredNow - deliveredBefore) / seconds, millis(latencies.percentile(50)),
+                    millis(latencies.percentile(99)), millis(latencies.percentile(99.9)), millis(latencies.max()));
+            sentBefore = sentNow;
+            deliveredBefore = deliveredNow;
+            if (finished) {
+                break;
+            }
+        }
+        summary(sent.sum() - atWarmupEnd[0], delivered.sum() - atWarmupEnd[1], expected.sum() - atWarmupEnd[2]);
+    }
+
+    private void summary(long sentCount, long deliveredCount, long expectedCount) {
+        LatencyHistogram latencies = measured;
+        double seconds = durationSeconds;
+        report.println();
+        report.printf(Locale.ROOT, "sent          %d (%.0f/s)%n", sentCount, sentCount / seconds);
+        report.printf(Locale.ROOT, "delivered     %d (%.0f/s), %.1f%% of the %d expected%n", deliveredCount,
+                deliveredCount / seconds, expectedCount == 0 ? 100 : 100.0 * deliveredCount / expectedCount,
+                expectedCount);
+        report.printf(Locale.ROOT, "latency (ms)  mean %.2f  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  p99.99 %.2f  max %.2f%n",
+                latencies.mean() / 1e6, millis(latencies.percentile(50)), millis(latencies.percentile(90)),
+                millis(latencies.percentile(99)), millis(latencies.percentile(99.9)),
+                millis(latencies.percentile(99.99)), millis(latencies.max()));
+        report.printf("churned       %d users, %d reconnects%n", churned.sum(), reconnects.sum());
+        report.printf("errors        %d sends failed, %d connections failed%n", sendErrors.sum(), connectErrors.sum());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Starts the embedded server and points the clients at it.
+     */
+    private void startServer() throws Exception {
+        if (System.getProperty("TOKEN_SECRET") == null && ConfigReader.getValue("TOKEN_SECRET", "").isEmpty()) {
+            byte[] secret = new byte[24];
+            new SecureRandom().nextBytes(secret);
+            System.setProperty("TOKEN_SECRET", HexFormat.of().formatHex(secret));
+        }
+        Server server = new Server(0, embedded);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "load-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        while (server.getPort() == 0) {
+            Thread.sleep(10);
+        }
+        System.setProperty("ServerAddress", "localhost");
+        System.setProperty("PORT_NUMBER", Integer.toString(server.getPort()));
+    }
+
+    /**
+     * Connects and joins a new user.
+     *
+     * @return the user, or null if it could not connect
+     */
+    private SimulatedUser connect() {
+        SimulatedUser user = new SimulatedUser("load" + generation.getAndIncrement());
+        try {
+            user.client = Client.open(user, threads);
+            user.client.sendMessage("/join " + (tokens != null ? tokens.issue(user.name) : user.name));
+            // Anything sent from now on is queued behind the join, so the user can take part at once
+            online.incrementAndGet();
+            return user;
+        } catch (IOException e) {
+            connectErrors.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Sends messages from random users at the configured rate until sending stops.
+     * When the sender falls behind it sends without pausing, rather than skipping messages.
+     */
+    private void sendLoop() {
+        if (rate <= 0) {
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        for (long i = 0; sending; i++) {
+            pace(start, i, rate);
+            SimulatedUser from = slots.get(random.nextInt(users));
+            if (from == null) {
+                continue;
+            }
+            boolean whisper = random.nextDouble() < whispers;
+            SimulatedUser to = whisper ? slots.get(random.nextInt(users)) : null;
+            if (whisper && to == null) {
+                continue;
+            }
+            String body = MARK + System.nanoTime() + padding;
+            try {
+                from.client.sendMessage(whisper ? "/w " + to.name + " " + body : body);
+                sent.increment();
+                expected.add(whisper ? 1 : online.get());
+            } catch (IOException e) {
+                sendErrors.increment();
+            }
+        }
+    }
+
+    /**
+     * Replaces random users with new ones at the configured rate until sending stops.
+     */
+    private void churnLoop() {
+        if (churn <= 0) {
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        for (long i = 0; sending; i++) {
+            pace(start, i, churn);
+            int slot = random.nextInt(users);
+            SimulatedUser leaving = slots.getAndSet(slot, null);
+            if (leaving == null) {
+                continue;
+            }
+            online.decrementAndGet();
+            threads.newThread(() -> {
+                try {
+                    leaving.client.sendMessage("quit");
+                } catch (IOException e) {
+                    // already disconnected
+                }
+                leaving.client.close();
+                slots.set(slot, connect());
+                churned.increment();
+            }).start();
+        }
+    }
+
+    /**
+     * Waits until the time of event <code>i</code> of a schedule of <code>perSecond</code> events.
+     */
+    private static void pace(long start, long i, double perSecond) {
+        long due = start + (long) (i * 1e9 / perSecond);
+        for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * Records the latency of every generated message a user receives.
+     */
+    private final class SimulatedUser implements ChatListener {
+
+        final String name;
+        final long joinedAt = System.nanoTime();
+        volatile Client client;
+
+        SimulatedUser(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void messageReceived(ChatMessage message) {
+            String body = message.getBody();
+            if (message.getType() == FrameType.WHISPER_SENT || body == null || body.startsWith("To ")) {
+                return; // the sender's copy of a whisper, in binary or text
+            }
+            int mark = body.indexOf(MARK);
+            if (mark < 0) {
+                return;
+            }
+            long sentAt = 0;
+            for (int i = mark + MARK.length(); i < body.length() && Character.isDigit(body.charAt(i)); i++) {
+                sentAt = sentAt * 10 + (body.charAt(i) - '0');
+            }
+            if (sentAt - joinedAt < 0) {
+                return; // sent before this user joined, so replayed from history
+            }
+            long latency = System.nanoTime() - sentAt;
+            delivered.increment();
+            interval.record(latency);
+            LatencyHistogram total = measured;
+            if (total != null) {
+                total.record(latency);
+            }
+        }
+
+        @Override
+        public void reconnected() {
+            reconnects.increment();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.shivansh.chatapp.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.shivansh.chatapp.bench.BenchmarkCase;
+import com.shivansh.chatapp.bench.Microbench;
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * {@link Microbench} cases for the server's message path and the client's reader.
+ * <p>
+ * <ul>
+ *     <li><b>broadcast</b> &ndash; {@link Server#broadcastMessage(ChatMessage)} to 10, 100 and
+ *         1000 members of the default room: history append, encoding and fan-out. Members
+ *         are sessions without a connection that drop what is queued for them;</li>
+ *     <li><b>format</b> &ndash; {@link ChatFormatter#time(long)} alone, and a whole display
+ *         line with {@link ChatFormatter#appendTo};</li>
+ *     <li><b>encode</b> &ndash; a new {@link ChatMessage} encoded for text or binary clients,
+ *         which happens once per message, whatever the number of recipients; and a long
+ *         pasted message compressed for clients that negotiated compression;</li>
+ *     <li><b>history</b> &ndash; taking a snapshot of a full room history, and replaying it
+ *         to a joining session with {@link ChatSession#sendHistory(MessageHistory.Snapshot)},
+ *         compressed from the second join on, as the batch is then shared;</li>
+ *     <li><b>ratelimit</b> &ndash; what flood protection adds to each chat line received:
+ *         {@link RateLimiter} charged for the line's bytes and for the message, and asked
+ *         whether to pause. The benchmark sends far faster than any limit, so this includes
+ *         keeping track of the pause;</li>
+ *     <li><b>client</b> &ndash; {@link ClientWorker} reading 100 chat lines, 100 binary frames
+ *         or 100 <code>/users</code> lists of 50 names, per operation one line or frame;
+ *         also 100 long messages in compressed frames, which are inflated while reading.
+ *         The {@link ChatListener} drops everything, so turning messages into display
+ *         lines is not included. Frames carry no sequence number, so none is dropped as
+ *         a duplicate.</li>
+ * </ul>
+ * </p>
+ */
+public final class NetworkBenchmarks {
+
+    private static final String BODY = "The quick brown fox jumps over the lazy dog, twice: " + "x".repeat(100);
+    private static final int LINES = 100;
+
+    /** A pasted log excerpt, long enough to be compressed. */
+    private static final String LONG_BODY = ("2024-05-02 10:15:42 WARN  [pool-3-thread-7] c.s.c.n.Server - Outbound queue full,"
+            + " disconnecting user42 after 1024 messages\n").repeat(8);
+
+    private NetworkBenchmarks() {
+    }
+
+    /**
+     * @return the network benchmarks
+     */
+    public static List<BenchmarkCase> cases() {
+        List<BenchmarkCase> cases = new ArrayList<>();
+        for (int users : new int[] {10, 100, 1000}) {
+            cases.add(new BenchmarkCase("network.broadcast[users=" + users + "]", 1, () -> broadcast(users)));
+        }
+        cases.add(new BenchmarkCase("network.format.timestamp", 1, () -> () -> ChatFormatter.time(System.currentTimeMillis())));
+        cases.add(new BenchmarkCase("network.format.line", 1, () -> {
+            StringBuilder line = new StringBuilder(256);
+            return () -> {
+                line.setLength(0);
+                return ChatFormatter.appendTo(line, FrameType.CHAT, System.currentTimeMillis(), "alice", "#dev", BODY);
+            };
+        }));
+        for (boolean binary : new boolean[] {false, true}) {
+            cases.add(new BenchmarkCase("network.encode[" + framing(binary) + "]", 1, () -> () ->
+                    new ChatMessage(FrameType.CHAT, "alice", null, System.currentTimeMillis(), BODY).shared(binary)));
+        }
+        cases.add(new BenchmarkCase("network.encode[compressed]", 1, () -> () ->
+                new ChatMessage(FrameType.CHAT, "alice", null, System.currentTimeMillis(), LONG_BODY).compressed()));
+        cases.add(new BenchmarkCase("network.history.snapshot", 1, () -> {
+            Server server = serverWithHistory();
+            return () -> server.rooms.defaultRoom().history();
+        }));
+        for (String framing : new String[] {"text", "binary", "compressed"}) {
+            cases.add(new BenchmarkCase("network.history.replay[" + framing + "]", 1, () -> {
+                Server server = serverWithHistory();
+                DiscardingSession session = new DiscardingSession(server, "joining");
+                if (!framing.equals("text")) {
+                    session.hello(framing.equals("compressed"));
+                }
+                return () -> {
+                    session.sendHistory(server.rooms.defaultRoom().history());
+                    return session;
+                };
+            }));
+        }
+        cases.add(new BenchmarkCase("network.ratelimit", 1, () -> {
+            RateLimiter limiter = new RateLimiter(new RateLimiter.Limits(10, 30, 5, 20, 64 * 1024, 256 * 1024, 10), null);
+            int bytes = BODY.length() + 1;
+            return () -> {
+                limiter.bytesRead(bytes);
+                limiter.message();
+                return limiter.isThrottled() && limiter.pauseNanos() > 0;
+            };
+        }));
+        cases.add(new BenchmarkCase("network.client.parse[text]", LINES, () -> clientReading(chatLines(), false)));
+        cases.add(new BenchmarkCase("network.client.parse[binary]", LINES, () -> clientReading(chatFrames(), true)));
+        cases.add(new BenchmarkCase("network.client.parse[compressed]", LINES, () -> clientReading(compressedFrames(), true)));
+        cases.add(new BenchmarkCase("network.client.users[50]", LINES, () -> clientReading(userLists(50), false)));
+        return cases;
+    }
+
+    private static String framing(boolean binary) {
+        return binary ? "binary" : "text";
+    }
+
+    private static BenchmarkCase.Operation broadcast(int users) throws Exception {
+        Server server = new Server(0, "thread");
+        for (int i = 0; i < users; i++) {
+            DiscardingSession session = new DiscardingSession(server, "user" + i);
+            server.sessions.register(session, session.getClientName());
+            server.rooms.join(RoomManager.DEFAULT_ROOM, session);
+        }
+        return () -> {
+            ChatMessage message = new ChatMessage(FrameType.CHAT, "alice", null, System.currentTimeMillis(), BODY);
+            server.broadcastMessage(message);
+            return message;
+        };
+    }
+
+    /**
+     * @return a server whose default room history is full
+     */
+    private static Server serverWithHistory() throws Exception {
+        Server server = new Server(0, "thread");
+        int size = Integer.parseInt(ConfigReader.getValue("HISTORY_SIZE", "100"));
+        for (int i = 0; i < size; i++) {
+            server.broadcastMessage(new ChatMessage(FrameType.CHAT, "alice", null, System.currentTimeMillis(), BODY + i));
+        }
+        return server;
+    }
+
+    private static BenchmarkCase.Operation clientReading(byte[] input, boolean binary) {
+        ClientWorker worker = new ClientWorker(null, message -> { }); // never started: only read() is used
+        return () -> {
+            worker.read(new ByteArrayInputStream(input), binary);
+            return worker;
+        };
+    }
+
+    private static byte[] chatLines() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            text.append("12:00 - alice: ").append(BODY).append(i).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] chatFrames() {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (int i = 0; i < LINES; i++) {
+            ByteBuffer frame = Frame.encode(FrameType.CHAT, 0, System.currentTimeMillis(), "alice", null, BODY + i);
+            frames.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        }
+        return frames.toByteArray();
+    }
+
+    private static byte[] compressedFrames() {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (int i = 0; i < LINES; i++) {
+            ByteBuffer frame = FrameCompression.compress(
+                    Frame.encode(FrameType.CHAT, 0, System.currentTimeMillis(), "alice", null, LONG_BODY + i));
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            frames.write(bytes, 0, bytes.length);
+        }
+        return frames.toByteArray();
+    }
+
+    private static byte[] userLists(int users) {
+        StringBuilder names = new StringBuilder("/users ");
+        for (int i = 0; i < users; i++) {
+            names.append(i > 0 ? "," : "").append("user").append(i);
+        }
+        return (names + "\n").repeat(LINES).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Session without a connection that drops whatever is queued for it.
+     */
+    private static final class DiscardingSession extends ChatSession {
+
+        DiscardingSession(Server server, String name) {
+            super(server);
+            this.clientName = name;
+        }
+
+        /**
+         * Switches the session to binary framing through the handshake, with compression if asked.
+         */
+        void hello(boolean compress) throws Exception {
+            String hello = "/hello v=" + PROTOCOL_VERSION + " framing=binary"
+                    + (compress ? " " + FrameCompression.OPTION : "") + "\n";
+            String name = clientName;
+            clientName = null; // the handshake is only understood before joining
+            decoder.readFrom(new ByteArrayInputStream(hello.getBytes(StandardCharsets.UTF_8)));
+            processInput();
+            clientName = name;
+        }
+
+        @Override
+        protected void onEnqueued() {
+            while (outbound.poll() != null) {
+                // dropped
+            }
+        }
+
+        @Override
+        protected void disconnect() {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.shivansh.chatapp.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Measures append throughput and range reads of the {@link MessageLog}.
+ * <p>
+ * Each run appends records of a chat-message size from one or more threads,
+ * as broadcasting sessions do, into a fresh log in a temporary directory:
+ * <ul>
+ *     <li><b>os</b> &ndash; no explicit fsync, writeback left to the OS;</li>
+ *     <li><b>batched</b> &ndash; the server default, a force every second or every 10,000 records;</li>
+ *     <li><b>eager</b> &ndash; a force after every 100 records, close to per-message durability.</li>
+ * </ul>
+ * Afterwards every record is read back by sequence range and checked, which also
+ * exercises the index across segment boundaries (segments are kept small on purpose).
+ * </p>
+ * Usage: <code>java com.shivansh.chatapp.store.MessageLogBenchmark [records] [recordBytes] [threads]</code>
+ */
+public class MessageLogBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        System.out.printf("%8s %8s %12s %14s %14s%n", "fsync", "threads", "records", "appends/s", "reads/s");
+        run("os", 0, 0, records, size, 1);
+        run("os", 0, 0, records, size, threads);
+        run("batched", 1000, 10_000, records, size, threads);
+        run("eager", 1000, 100, records, size, threads);
+    }
+
+    private static void run(String label, long intervalMillis, int every, int records, int size, int threads)
+            throws Exception {
+        Path dir = Files.createTempDirectory("messagelog");
+        try {
+            MessageLog log = new MessageLog(dir, 16 << 20, intervalMillis, every, 0, 0);
+            byte[] body = new byte[size];
+            int perThread = records / threads;
+
+            Thread[] writers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                writers[t] = Thread.ofPlatform().start(() -> {
+                    ByteBuffer record = ByteBuffer.allocate(8 + size);
+                    for (int i = 0; i < perThread; i++) {
+                        log.append(seq -> {
+                            record.clear();
+                            record.putLong(seq).put(body).flip(); // payload carries its own number, checked below
+                            return record;
+                        });
+                    }
+                });
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            long appendNanos = System.nanoTime() - start;
+
+            long total = (long) perThread * threads;
+            long[] mismatches = new long[1];
+            start = System.nanoTime();
+            int read = log.read(log.firstSeq(), log.lastSeq() + 1, (seq, payload) -> {
+                if (payload.getLong(payload.position()) != seq || payload.remaining() != 8 + size) {
+                    mismatches[0]++;
+                }
+            });
+            long readNanos = System.nanoTime() - start;
+            log.close();
+
+            if (read != total || mismatches[0] != 0) {
+                throw new IllegalStateException("Read " + read + " of " + total + " records, " + mismatches[0] + " corrupt");
+            }
+            System.out.printf("%8s %8d %12d %14.0f %14.0f%n", label, threads, total,
+                    total * 1e9 / appendNanos, read * 1e9 / readNanos);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
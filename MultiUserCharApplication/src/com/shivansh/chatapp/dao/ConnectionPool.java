@@ -0,0 +1,515 @@
+package com.shivansh.chatapp.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Bounded pool of JDBC connections behind {@link CommonDAO#createConnection()}.
+ * <p>
+ * Opening a MySQL connection costs a TCP handshake, the MySQL handshake and
+ * authentication. The pool opens at most <code>maxSize</code> connections and
+ * hands them out again and again:
+ * <ul>
+ *     <li>{@link #getConnection()} returns a proxy; calling <code>close()</code> on it returns the
+ *         connection to the pool, so DAO code keeps its usual try/finally;</li>
+ *     <li>when all connections are busy, callers wait up to <code>acquireTimeout</code>
+ *         and then get an {@link SQLTimeoutException} instead of piling onto the database;</li>
+ *     <li>a connection is checked with {@link Connection#isValid(int)} before it is handed out
+ *         (if enabled), and broken ones are replaced;</li>
+ *     <li>connections idle for longer than <code>idleTimeout</code> are closed, down to <code>minSize</code>;</li>
+ *     <li>every connection caches its prepared statements (up to <code>statementCacheSize</code>,
+ *         least recently used first out), so the same <code>SELECT ... FROM users</code> or
+ *         <code>INSERT INTO users</code> is parsed once per connection instead of once per call.
+ *         Closing a cached statement only clears its parameters. Every use gets its own handle,
+ *         which stops working once it is closed or its connection is returned, so a statement
+ *         kept too long fails instead of running on the next borrower's connection.</li>
+ * </ul>
+ * </p>
+ * Connections are returned with auto-commit switched back on; uncommitted work is rolled back.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final boolean validateOnBorrow;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    /** Idle connections, most recently returned first; guarded by {@link #lock}. */
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+
+    /** Open physical connections, idle or borrowed, including those being opened; guarded by {@link #lock}. */
+    private int total;
+
+    /**
+     * Creates the pool and starts its background thread, which keeps <code>minSize</code>
+     * connections open and closes idle ones.
+     *
+     * @param driver             JDBC driver class name, loaded once
+     * @param minSize            connections kept open even when idle
+     * @param maxSize            maximum open connections
+     * @param acquireTimeoutMillis longest wait for a free connection
+     * @param idleTimeoutMillis  idle time after which connections above <code>minSize</code> are closed
+     * @param validateOnBorrow   check each connection before handing it out
+     * @param statementCacheSize prepared statements cached per connection, 0 to disable
+     * @throws ClassNotFoundException if the driver is not on the classpath
+     */
+    public ConnectionPool(String driver, String url, String user, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, boolean validateOnBorrow,
+                          int statementCacheSize) throws ClassNotFoundException {
+        Class.forName(driver);
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.min(Math.max(0, minSize), this.maxSize);
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.validateOnBorrow = validateOnBorrow;
+        this.statementCacheSize = statementCacheSize;
+        Thread.ofPlatform().name("ConnectionPool-maintenance").daemon().start(this::maintain);
+    }
+
+    /** Shared pool created from config.properties on first use. */
+    private static final ReentrantLock DEFAULT_LOCK = new ReentrantLock();
+    private static volatile ConnectionPool defaultPool;
+
+    /**
+     * @return the pool configured by the <code>DB_POOL_*</code> keys in config.properties
+     * @throws ClassNotFoundException if the configured JDBC driver is missing
+     */
+    public static ConnectionPool getDefault() throws ClassNotFoundException {
+        ConnectionPool pool = defaultPool;
+        if (pool != null) {
+            return pool;
+        }
+        DEFAULT_LOCK.lock();
+        try {
+            if (defaultPool == null) {
+                defaultPool = new ConnectionPool(ConfigReader.getValue("DRIVER"),
+                        ConfigReader.getValue("CONNECTION_URL"),
+                        ConfigReader.getValue("USER_ID"),
+                        ConfigReader.getValue("PASSWORD"),
+                        Integer.parseInt(ConfigReader.getValue("DB_POOL_MIN_SIZE", "2")),
+                        Integer.parseInt(ConfigReader.getValue("DB_POOL_MAX_SIZE", "10")),
+                        Long.parseLong(ConfigReader.getValue("DB_POOL_ACQUIRE_TIMEOUT_MILLIS", "5000")),
+                        Long.parseLong(ConfigReader.getValue("DB_POOL_IDLE_TIMEOUT_MILLIS", "300000")),
+                        Boolean.parseBoolean(ConfigReader.getValue("DB_POOL_VALIDATE_ON_BORROW", "true")),
+                        Integer.parseInt(ConfigReader.getValue("DB_POOL_STATEMENT_CACHE_SIZE", "32")));
+            }
+            return defaultPool;
+        } finally {
+            DEFAULT_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Borrows a connection, opening a new one if none is idle and the pool is not full.
+     * Close it to give it back.
+     *
+     * @throws SQLTimeoutException if no connection became free within the acquire timeout
+     * @throws SQLException        if a new connection could not be opened
+     */
+    public Connection getConnection() throws SQLException {
+        long deadline = System.nanoTime() + acquireTimeoutNanos;
+        while (true) {
+            PooledConnection pooled = null;
+            boolean open = false;
+            lock.lock();
+            try {
+                while (idle.isEmpty() && total >= maxSize) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        throw new SQLTimeoutException("Timed out waiting for a database connection ("
+                                + maxSize + " in use)");
+                    }
+                    available.awaitNanos(wait);
+                }
+                if (!idle.isEmpty()) {
+                    pooled = idle.pollFirst();
+                } else {
+                    total++; // reserve the slot, open outside the lock
+                    open = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (open) {
+                try {
+                    pooled = new PooledConnection(openPhysical());
+                } catch (SQLException e) {
+                    discarded();
+                    throw e;
+                }
+            } else if (validateOnBorrow && !isValid(pooled)) {
+                pooled.closePhysical();
+                discarded();
+                continue; // try the next idle one, or open a fresh one
+            }
+            return pooled.borrow();
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        System.out.println("Connection created...");
+        return connection;
+    }
+
+    private static boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gives back a slot whose connection was closed or could not be opened.
+     */
+    private void discarded() {
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        try {
+            pooled.resetStatements();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            pooled.closePhysical(); // broken: do not hand it out again
+            discarded();
+            return;
+        }
+        lock.lock();
+        try {
+            pooled.idleSince = System.nanoTime();
+            idle.addFirst(pooled);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs on the maintenance thread: closes connections idle for too long and
+     * opens connections up to <code>minSize</code>.
+     */
+    private void maintain() {
+        long period = Math.max(TimeUnit.SECONDS.toNanos(1), Math.min(idleTimeoutNanos / 2, TimeUnit.SECONDS.toNanos(30)));
+        while (true) {
+            evictIdle();
+            fillToMinimum();
+            try {
+                TimeUnit.NANOSECONDS.sleep(period);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeoutNanos;
+        ArrayDeque<PooledConnection> expired = new ArrayDeque<>();
+        lock.lock();
+        try {
+            // Oldest idle connections are at the end
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total - expired.size() > minSize) {
+                PooledConnection pooled = it.next();
+                if (pooled.idleSince - cutoff > 0) {
+                    break;
+                }
+                it.remove();
+                expired.add(pooled);
+            }
+            total -= expired.size();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pooled : expired) {
+            pooled.closePhysical();
+        }
+    }
+
+    private void fillToMinimum() {
+        while (true) {
+            lock.lock();
+            try {
+                if (total >= minSize) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                PooledConnection pooled = new PooledConnection(openPhysical());
+                release(pooled);
+            } catch (SQLException e) {
+                discarded();
+                return; // database down; try again next round
+            }
+        }
+    }
+
+    /**
+     * @return open connections, idle or in use
+     */
+    public int getTotal() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return connections waiting in the pool
+     */
+    public int getIdle() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A physical connection with its statement cache. Each borrow gets a new
+     * proxy, so a stale reference kept after <code>close()</code> cannot touch the next borrower's work.
+     */
+    private final class PooledConnection {
+
+        final Connection physical;
+        long idleSince;
+
+        /** Cached statements by SQL, least recently used first; only used by the borrower. */
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new Borrowed());
+        }
+
+        /**
+         * Hands out the cached statement for this SQL, preparing it on first use.
+         * A statement that is still open elsewhere is not shared; a plain one is prepared instead.
+         */
+        PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached == null) {
+                if (statementCacheSize <= 0) {
+                    return physical.prepareStatement(sql);
+                }
+                cached = new CachedStatement(physical.prepareStatement(sql));
+                statements.put(sql, cached);
+                if (statements.size() > statementCacheSize) {
+                    Iterator<Map.Entry<String, CachedStatement>> eldest = statements.entrySet().iterator();
+                    CachedStatement evicted = eldest.next().getValue();
+                    eldest.remove();
+                    evicted.closePhysical();
+                }
+            } else if (cached.inUse()) {
+                return physical.prepareStatement(sql);
+            }
+            return cached.checkOut(owner);
+        }
+
+        /**
+         * Makes statements the last borrower left open available again, and revokes its handles to them.
+         */
+        void resetStatements() throws SQLException {
+            for (CachedStatement cached : statements.values()) {
+                cached.checkIn();
+            }
+        }
+
+        void closePhysical() {
+            for (CachedStatement cached : statements.values()) {
+                cached.closePhysical();
+            }
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                // already broken
+            }
+        }
+
+        /**
+         * The connection as seen by one borrower.
+         */
+        private final class Borrowed implements InvocationHandler {
+
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            release(PooledConnection.this);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled" + physical;
+                    default:
+                        break;
+                }
+                if (closed) {
+                    throw new SQLException("Connection already returned to the pool");
+                }
+                if (method.getName().equals("prepareStatement") && args.length == 1) {
+                    return prepare((String) args[0], (Connection) proxy);
+                }
+                return forward(physical, method, args);
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open across borrows, handed out to one user at a time.
+     */
+    private static final class CachedStatement {
+
+        final PreparedStatement physical;
+
+        /** The current user's handle, or null while the statement is free. */
+        private Lease lease;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        boolean inUse() {
+            return lease != null;
+        }
+
+        /**
+         * @param owner the borrowed connection the statement is reported to belong to
+         * @return a new handle to the statement, valid until it is closed or the connection is returned
+         */
+        PreparedStatement checkOut(Connection owner) {
+            lease = new Lease(owner);
+            return lease.proxy;
+        }
+
+        /**
+         * Ends the current use: the handle stops working and the statement is reset for the next user.
+         */
+        void checkIn() throws SQLException {
+            if (lease != null) {
+                lease.closed = true;
+                lease = null;
+                physical.clearParameters();
+                physical.clearBatch();
+            }
+        }
+
+        void closePhysical() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                // already broken
+            }
+        }
+
+        /**
+         * One user's handle to the statement. Closing it checks the statement back in.
+         */
+        private final class Lease implements InvocationHandler {
+
+            final PreparedStatement proxy;
+            final Connection owner;
+            volatile boolean closed;
+
+            Lease(Connection owner) {
+                this.owner = owner;
+                this.proxy = (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                        new Class<?>[] {PreparedStatement.class}, this);
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            checkIn();
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "getConnection":
+                        return owner;
+                    default:
+                        break;
+                }
+                if (closed) {
+                    throw new SQLException("Statement already closed");
+                }
+                return forward(physical, method, args);
+            }
+        }
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.shivansh.chatapp.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Bounded cache of recently verified logins used by {@link UserDAO#doLogin(com.shivansh.chatapp.dto.UserDTO)}
+ * and {@link UserDAO#findCredential(String)}.
+ * <p>
+ * Only successful logins are cached, as the user ID plus the same credential the
+ * database stores:
+ * <ul>
+ *     <li>a login checked against that credential within <code>ttl</code> needs no query;</li>
+ *     <li>at most <code>maxSize</code> users are kept, least recently used first out;</li>
+ *     <li>a password that does not match is a miss, not a rejection, so a changed password is
+ *         always checked against the database; {@link #invalidate(String)} drops a user at once.</li>
+ * </ul>
+ * Failed logins are not cached, so a user who just registered can log in straight away.
+ * </p>
+ */
+final class CredentialCache {
+
+    private record Entry(String credential, long expiresAt) {
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Access-ordered, so the eldest entry is the least recently used; guarded by {@link #lock}. */
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize    maximum number of cached users (0 disables the cache)
+     * @param ttlMillis  how long a verified login is trusted
+     */
+    CredentialCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CredentialCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache configured with <code>CREDENTIAL_CACHE_SIZE</code> and <code>CREDENTIAL_CACHE_TTL_SECONDS</code>.
+     */
+    static CredentialCache fromConfig() {
+        return new CredentialCache(Integer.parseInt(ConfigReader.getValue("CREDENTIAL_CACHE_SIZE", "10000")),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(ConfigReader.getValue("CREDENTIAL_CACHE_TTL_SECONDS", "600"))));
+    }
+
+    /**
+     * @param check tests the cached credential, e.g. against the password being logged in with
+     * @return true if this user logged in within the TTL and <code>check</code> accepts the credential
+     */
+    boolean matches(String userid, Predicate<String> check) {
+        String credential = lookup(userid);
+        // Checked outside the lock: checking a verifier takes a modular exponentiation
+        if (credential != null && check.test(credential)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return the credential this user logged in with within the TTL, or null
+     */
+    String get(String userid) {
+        String credential = lookup(userid);
+        (credential != null ? hits : misses).incrementAndGet();
+        return credential;
+    }
+
+    private String lookup(String userid) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(userid);
+            if (entry != null && System.nanoTime() - entry.expiresAt() > 0) {
+                entries.remove(userid); // expired
+                entry = null;
+            }
+            return entry != null ? entry.credential() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remembers a login the database has just confirmed.
+     */
+    void put(String userid, String credential) {
+        if (maxSize <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            entries.put(userid, new Entry(credential, System.nanoTime() + ttlNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets a user, e.g. after the password or the account changed.
+     */
+    void invalidate(String userid) {
+        lock.lock();
+        try {
+            entries.remove(userid);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets every cached login.
+     */
+    void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a one-line summary of the hit rate
+     */
+    String stats() {
+        lock.lock();
+        int size;
+        try {
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        return hits.get() + " hits, " + misses.get() + " misses, " + size + " cached";
+    }
+}
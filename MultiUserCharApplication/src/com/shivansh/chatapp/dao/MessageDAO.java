@@ -0,0 +1,321 @@
+package com.shivansh.chatapp.dao;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.shivansh.chatapp.dto.MessageDTO;
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Data Access Object (DAO) that stores chat messages in the <code>messages</code> table.
+ * <p>
+ * Saving never touches the database on the caller's thread: {@link #save(MessageDTO)}
+ * only puts the message into a bounded queue. A single writer thread keeps one
+ * connection open and commits the queue in groups:
+ * <ul>
+ *     <li>a group starts with the first waiting message and is written once it holds
+ *         <code>batchSize</code> messages or <code>maxDelayMillis</code> have passed;</li>
+ *     <li>each group is one JDBC batch insert and one commit. With MySQL, add
+ *         <code>rewriteBatchedStatements=true</code> to the connection URL so
+ *         the driver sends it as a multi-row INSERT;</li>
+ *     <li>if the database is unavailable, the writer reconnects and retries the group
+ *         a few times with a growing pause before giving up on it.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * When the database falls behind, the queue fills up. Above 80% of its capacity the
+ * DAO reports backpressure: a log line when it starts and ends, and
+ * {@link #isBackpressured()}. When the queue is full, new messages are dropped and
+ * counted rather than slowing down the chat.
+ * </p>
+ * The connection comes from a {@link ConnectionSource}, by default
+ * {@link CommonDAO#createConnection()}. An in-process database such as H2 can
+ * stand in for MySQL, either by configuring its driver and URL or by passing a
+ * source to the constructor. The table is created if it does not exist:
+ * <pre>
+ * CREATE TABLE messages (
+ *     id      BIGINT AUTO_INCREMENT PRIMARY KEY,
+ *     node    VARCHAR(64)  NOT NULL,
+ *     seq     BIGINT       NOT NULL,
+ *     room    VARCHAR(32)  NOT NULL,
+ *     sender  VARCHAR(255) NOT NULL,
+ *     sent_at BIGINT       NOT NULL,
+ *     body    TEXT         NOT NULL
+ * )
+ * </pre>
+ */
+public class MessageDAO implements Closeable {
+
+    /**
+     * Supplies the writer's database connection.
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws ClassNotFoundException, SQLException;
+    }
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS messages ("
+            + "id BIGINT AUTO_INCREMENT PRIMARY KEY, node VARCHAR(64) NOT NULL, seq BIGINT NOT NULL, "
+            + "room VARCHAR(32) NOT NULL, sender VARCHAR(255) NOT NULL, sent_at BIGINT NOT NULL, body TEXT NOT NULL)";
+
+    static final String INSERT = "INSERT INTO messages(node, seq, room, sender, sent_at, body) VALUES(?, ?, ?, ?, ?, ?)";
+
+    /** Attempts per group before it is given up, and the base pause between them. */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_MILLIS = 1000;
+
+    private final ConnectionSource source;
+    private final ArrayBlockingQueue<MessageDTO> queue;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final int highWater;
+    private final int lowWater;
+
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong backpressureEvents = new AtomicLong();
+    private volatile boolean backpressured;
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Only touched by the writer thread
+    private Connection connection;
+    private PreparedStatement insert;
+    private boolean failing;
+
+    /**
+     * Creates the DAO and starts its writer thread.
+     *
+     * @param source         supplies the database connection
+     * @param capacity       maximum number of messages waiting to be written
+     * @param batchSize      maximum messages per batch insert
+     * @param maxDelayMillis longest time a group waits for more messages before it is written
+     */
+    public MessageDAO(ConnectionSource source, int capacity, int batchSize, long maxDelayMillis) {
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.highWater = Math.max(1, capacity * 4 / 5);
+        this.lowWater = capacity / 2;
+        this.writer = Thread.ofPlatform().name("MessageDAO-writer").daemon().start(this::writeLoop);
+    }
+
+    /**
+     * Creates the DAO configured with <code>MESSAGE_DB_ENABLED</code>, <code>MESSAGE_DB_QUEUE_CAPACITY</code>,
+     * <code>MESSAGE_DB_BATCH_SIZE</code> and <code>MESSAGE_DB_BATCH_MILLIS</code>, connecting
+     * through {@link CommonDAO#createConnection()}.
+     *
+     * @return the DAO, or null if storing messages in the database is disabled
+     */
+    public static MessageDAO fromConfig() {
+        if (!Boolean.parseBoolean(ConfigReader.getValue("MESSAGE_DB_ENABLED", "false"))) {
+            return null;
+        }
+        return new MessageDAO(CommonDAO::createConnection,
+                Integer.parseInt(ConfigReader.getValue("MESSAGE_DB_QUEUE_CAPACITY", "100000")),
+                Integer.parseInt(ConfigReader.getValue("MESSAGE_DB_BATCH_SIZE", "500")),
+                Long.parseLong(ConfigReader.getValue("MESSAGE_DB_BATCH_MILLIS", "50")));
+    }
+
+    /**
+     * Queues a message for the database. Never blocks.
+     *
+     * @param message the message to store
+     * @return false if the queue was full and the message was dropped
+     */
+    public boolean save(MessageDTO message) {
+        if (closed || !queue.offer(message)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        List<MessageDTO> batch = new ArrayList<>(batchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                MessageDTO first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || wait <= 0 || closed) {
+                        break;
+                    }
+                    MessageDTO next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break; // window over
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+                batch.clear();
+                checkBackpressure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnect();
+        }
+    }
+
+    /**
+     * Inserts one group in a single batch and transaction, reconnecting and retrying on failure.
+     */
+    private void write(List<MessageDTO> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (insert == null) {
+                    connect();
+                }
+                for (MessageDTO message : batch) {
+                    insert.setString(1, message.getNode());
+                    insert.setLong(2, message.getSeq());
+                    insert.setString(3, message.getRoom());
+                    insert.setString(4, message.getSender());
+                    insert.setLong(5, message.getSentAt());
+                    insert.setString(6, message.getBody());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+                saved.addAndGet(batch.size());
+                batches.incrementAndGet();
+                if (failing) {
+                    failing = false;
+                    System.out.println("Message database available again.");
+                }
+                return;
+            } catch (ClassNotFoundException | SQLException e) {
+                disconnect();
+                if (!failing) {
+                    failing = true; // report once per outage, not once per retry
+                    System.err.println("Could not store messages in the database: " + e.getMessage());
+                }
+                if (attempt >= MAX_ATTEMPTS || closed) {
+                    failed.addAndGet(batch.size());
+                    return;
+                }
+                Thread.sleep(RETRY_MILLIS * attempt);
+            }
+        }
+    }
+
+    private void connect() throws ClassNotFoundException, SQLException {
+        connection = source.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+        }
+        connection.setAutoCommit(false);
+        insert = connection.prepareStatement(INSERT);
+    }
+
+    private void disconnect() {
+        try {
+            if (insert != null) insert.close();
+            if (connection != null) connection.close();
+        } catch (SQLException e) {
+            // the connection is being replaced anyway
+        }
+        insert = null;
+        connection = null;
+    }
+
+    /**
+     * Reports when the queue crosses the high-water mark, and when it has drained to half again.
+     */
+    private void checkBackpressure() {
+        int queued = queue.size();
+        if (!backpressured && queued >= highWater) {
+            backpressured = true;
+            backpressureEvents.incrementAndGet();
+            System.err.println("Message database is falling behind: " + queued + " messages queued.");
+        } else if (backpressured && queued <= lowWater) {
+            backpressured = false;
+            System.out.println("Message database caught up: " + queued + " messages queued.");
+        }
+    }
+
+    /**
+     * @return true while the queue is above its high-water mark
+     */
+    public boolean isBackpressured() {
+        return backpressured;
+    }
+
+    /**
+     * @return number of times the queue went above its high-water mark
+     */
+    public long getBackpressureEvents() {
+        return backpressureEvents.get();
+    }
+
+    /**
+     * @return messages waiting to be written
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return messages dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return messages lost because the database kept failing
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return messages written and committed
+     */
+    public long getSaved() {
+        return saved.get();
+    }
+
+    /**
+     * @return a one-line summary of the counters, e.g. for the shutdown log
+     */
+    public String stats() {
+        long b = batches.get();
+        return saved.get() + " messages in " + b + " batches ("
+                + String.format("%.1f", b == 0 ? 0.0 : (double) saved.get() / b) + " per batch), "
+                + dropped.get() + " dropped, " + failed.get() + " failed, "
+                + backpressureEvents.get() + " backpressure events";
+    }
+
+    /**
+     * Stops accepting messages and waits up to five seconds for the writer to store what is queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
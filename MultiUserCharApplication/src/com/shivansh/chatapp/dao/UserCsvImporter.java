@@ -0,0 +1,180 @@
+package com.shivansh.chatapp.dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.shivansh.chatapp.dto.UserDTO;
+import com.shivansh.chatapp.dto.UserImportResult;
+import com.shivansh.chatapp.dto.UserImportResult.Status;
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Imports users from a CSV file with {@link UserDAO#addAll(java.util.Collection, int)}.
+ * <p>
+ * The file has one <code>userid,password</code> row per line. A header row with exactly these
+ * names, blank lines and lines starting with <code>#</code> are skipped. Fields may be quoted
+ * with <code>"</code>, with <code>""</code> standing for a quote inside a quoted field.
+ * </p>
+ * The input is streamed: only one chunk of <code>USER_IMPORT_BATCH_SIZE</code> rows is in
+ * memory at a time, and each row's result is handed to a listener as soon as its chunk is
+ * written, so files with millions of users can be imported.
+ * <p>
+ * Usage: <code>java com.shivansh.chatapp.dao.UserCsvImporter users.csv</code> prints every
+ * row that was not added, then a summary.
+ * </p>
+ */
+public class UserCsvImporter {
+
+    /**
+     * Totals of one import.
+     *
+     * @param added      users created
+     * @param duplicates rows whose user ID already existed
+     * @param failed     rows that were malformed or rejected
+     * @param millis     duration of the import
+     */
+    public record Summary(long added, long duplicates, long failed, long millis) {
+    }
+
+    private final UserDAO userDAO;
+    private final int chunkSize;
+
+    /**
+     * @param userDAO   DAO the users are added through
+     * @param chunkSize rows read and written per batch
+     */
+    public UserCsvImporter(UserDAO userDAO, int chunkSize) {
+        this.userDAO = userDAO;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Creates an importer with chunks of <code>USER_IMPORT_BATCH_SIZE</code> rows.
+     */
+    public UserCsvImporter() {
+        this(new UserDAO(), Integer.parseInt(ConfigReader.getValue("USER_IMPORT_BATCH_SIZE", "1000")));
+    }
+
+    /**
+     * Reads users from CSV and registers them chunk by chunk.
+     *
+     * @param in       the CSV input; not closed
+     * @param listener receives every row's result, in file order
+     * @return the totals
+     * @throws IOException if the input cannot be read
+     * @throws ClassNotFoundException if the database driver is missing
+     * @throws SQLException if the database connection could not be obtained or broke
+     */
+    public Summary importCsv(Reader in, Consumer<UserImportResult> listener)
+            throws IOException, ClassNotFoundException, SQLException {
+        long start = System.currentTimeMillis();
+        long[] counts = new long[Status.values().length];
+        Consumer<UserImportResult> counting = result -> {
+            counts[result.getStatus().ordinal()]++;
+            listener.accept(result);
+        };
+
+        BufferedReader reader = in instanceof BufferedReader buffered ? buffered : new BufferedReader(in);
+        List<UserDTO> chunk = new ArrayList<>(chunkSize);
+        String line;
+        int lineNumber = 0;
+        boolean first = true;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> fields = parse(line);
+            boolean header = first;
+            first = false;
+            if (header && fields.size() == 2
+                    && fields.get(0).equalsIgnoreCase("userid") && fields.get(1).equalsIgnoreCase("password")) {
+                continue; // header
+            }
+            if (fields.size() != 2) {
+                flush(chunk, counting); // keep results in file order
+                counting.accept(new UserImportResult(fields.isEmpty() ? "" : fields.get(0), Status.FAILED,
+                        "Line " + lineNumber + ": expected userid,password"));
+                continue;
+            }
+            chunk.add(new UserDTO(fields.get(0).trim(), fields.get(1).toCharArray()));
+            if (chunk.size() >= chunkSize) {
+                flush(chunk, counting);
+            }
+        }
+        flush(chunk, counting);
+
+        return new Summary(counts[Status.ADDED.ordinal()], counts[Status.DUPLICATE.ordinal()],
+                counts[Status.FAILED.ordinal()], System.currentTimeMillis() - start);
+    }
+
+    private void flush(List<UserDTO> chunk, Consumer<UserImportResult> listener)
+            throws ClassNotFoundException, SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        userDAO.addAll(chunk, chunkSize).forEach(listener);
+        chunk.clear();
+    }
+
+    /**
+     * Splits one CSV line into fields, honouring quotes.
+     */
+    static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Imports the CSV file given as the first argument into the configured database.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java com.shivansh.chatapp.dao.UserCsvImporter <users.csv>");
+            return;
+        }
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            Summary summary = new UserCsvImporter().importCsv(in, result -> {
+                if (result.getStatus() != Status.ADDED) {
+                    System.out.println(result);
+                }
+            });
+            System.out.println("Imported " + summary.added() + " users in " + summary.millis() + " ms: "
+                    + summary.duplicates() + " duplicates, " + summary.failed() + " failed.");
+        } catch (IOException | ClassNotFoundException | SQLException e) {
+            System.err.println("Import failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
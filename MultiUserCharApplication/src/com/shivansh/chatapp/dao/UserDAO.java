@@ -5,53 +5,108 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 import com.shivansh.chatapp.dto.UserDTO;
+import com.shivansh.chatapp.dto.UserImportResult;
+import com.shivansh.chatapp.dto.UserImportResult.Status;
+import com.shivansh.chatapp.utils.ConfigReader;
 import com.shivansh.chatapp.utils.Encryption;
+import com.shivansh.chatapp.utils.LatencyHistogram;
+import com.shivansh.chatapp.utils.Srp;
 
 /**
  * Data Access Object (DAO) for user-related operations.
  * <p>
  * Handles communication with the database for user login validation
- * and new user registration. Passwords are stored securely after
- * encryption.
+ * and new user registration. Passwords are stored as salted SRP verifiers
+ * ({@link Srp#newCredential}), which cannot be used to log in. Many users can be
+ * registered at once with {@link #addAll(Collection)}.
  * </p>
+ * Successful logins are remembered for a while in a bounded {@link CredentialCache}
+ * shared by all instances (<code>CREDENTIAL_CACHE_SIZE</code>,
+ * <code>CREDENTIAL_CACHE_TTL_SECONDS</code>), so users logging in again and again
+ * do not query the database each time. The time of every login query and registration
+ * is recorded in {@link #databaseLatency()}.
  */
 public class UserDAO {
 
+    /** Recently verified logins, shared so that {@link #add(UserDTO)} invalidates them for every caller. */
+    private static final CredentialCache CREDENTIALS = CredentialCache.fromConfig();
+
+    /** Time taken by each login query and registration, including getting a connection. */
+    private static final LatencyHistogram DB_LATENCY = new LatencyHistogram();
+
+    private static final String INSERT_USER = "INSERT INTO users(userid, password) VALUES(?, ?)";
+
     /**
-     * Validates user credentials against the database.
+     * Validates user credentials, from the credential cache if this user logged in
+     * recently, otherwise against the database.
      *
      * @param userDTO contains the user ID and password entered by the user
-     * @return true if a matching user record is found; false otherwise
+     * @return true if the password matches the user's stored credential; false otherwise
      * @throws ClassNotFoundException if the database driver is missing
      * @throws SQLException if a database access error occurs
      * @throws Exception for encryption-related errors
      */
     public boolean doLogin(UserDTO userDTO) throws ClassNotFoundException, SQLException, Exception {
-        Connection connection = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        final String SQL = "SELECT userid FROM users WHERE userid = ? AND password = ?";
+        String userid = userDTO.getUserid();
+        String encryptPass = Encryption.passwordEncrypt(new String(userDTO.getPassword()));
+        if (CREDENTIALS.matches(userid, credential -> Srp.matches(credential, userid, encryptPass))) {
+            return true; // confirmed by the database within the cache TTL
+        }
 
-        try {
-            // Establish a connection to the database
-            connection = CommonDAO.createConnection();
-            ps = connection.prepareStatement(SQL);
+        String credential = queryCredential(userid);
+        if (credential != null && Srp.matches(credential, userid, encryptPass)) {
+            CREDENTIALS.put(userid, credential);
+            return true;
+        }
+        return false;
+    }
 
-            // Set query parameters: user ID and encrypted password
-            ps.setString(1, userDTO.getUserid());
-            String encryptPass = Encryption.passwordEncrypt(new String(userDTO.getPassword()));
-            ps.setString(2, encryptPass);
+    /**
+     * Looks up the credential a login through the server is checked against, from the
+     * credential cache if the user logged in recently, otherwise from the database.
+     * Call {@link #rememberLogin(String, String)} once the login succeeded.
+     *
+     * @param userid the user logging in
+     * @return the stored credential: an SRP verifier, or a bare password hash in rows
+     *         from before verifiers; null if there is no such user
+     * @throws ClassNotFoundException if the database driver is missing
+     * @throws SQLException if a database access error occurs
+     */
+    public String findCredential(String userid) throws ClassNotFoundException, SQLException {
+        String credential = CREDENTIALS.get(userid);
+        return credential != null ? credential : queryCredential(userid);
+    }
 
-            // Execute the query to check if the user exists
-            rs = ps.executeQuery();
-            return rs.next(); // returns true if at least one record matches
+    /**
+     * Caches the credential a login through the server was just confirmed with, so the
+     * next login of this user needs no query.
+     *
+     * @param userid     the user who logged in
+     * @param credential the credential from {@link #findCredential(String)}
+     */
+    public void rememberLogin(String userid, String credential) {
+        CREDENTIALS.put(userid, credential);
+    }
+
+    private String queryCredential(String userid) throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = CommonDAO.createConnection();
+                PreparedStatement ps = connection.prepareStatement("SELECT password FROM users WHERE userid = ?")) {
+            ps.setString(1, userid);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
         } finally {
-            // Clean up database resources
-            if (rs != null) rs.close();
-            if (ps != null) ps.close();
-            if (connection != null) connection.close();
+            DB_LATENCY.record(System.nanoTime() - start);
         }
     }
 
@@ -65,20 +120,33 @@ public class UserDAO {
      * @throws NoSuchAlgorithmException if the encryption algorithm is not found
      */
     public int add(UserDTO userDTO) throws ClassNotFoundException, SQLException, NoSuchAlgorithmException {
+        // Store a salted verifier of the password, never the password or its hash
+        return add(userDTO.getUserid(),
+                Srp.newCredential(userDTO.getUserid(), Encryption.passwordEncrypt(new String(userDTO.getPassword()))));
+    }
+
+    /**
+     * Registers a new user whose credential was already made with {@link Srp#newCredential},
+     * e.g. by a client registering through the server.
+     *
+     * @param userid     the new user's ID
+     * @param credential the new user's password verifier
+     * @return number of rows affected (1 if successful, 0 otherwise)
+     * @throws ClassNotFoundException if the database driver is missing
+     * @throws SQLException if a database access error occurs, e.g. the user ID is taken
+     */
+    public int add(String userid, String credential) throws ClassNotFoundException, SQLException {
         Connection connection = null;
         PreparedStatement ps = null;
 
+        long start = System.nanoTime();
         try {
             // Establish a connection to the database
             connection = CommonDAO.createConnection();
-            String query = "INSERT INTO users(userid, password) VALUES(?, ?)";
-            ps = connection.prepareStatement(query);
-
-            // Encrypt the password before storing it
-            String encryptedPassword = Encryption.passwordEncrypt(new String(userDTO.getPassword()));
+            ps = connection.prepareStatement(INSERT_USER);
 
-            ps.setString(1, userDTO.getUserid());
-            ps.setString(2, encryptedPassword);
+            ps.setString(1, userid);
+            ps.setString(2, credential);
 
             // Execute the insert operation
             return ps.executeUpdate();
@@ -86,6 +154,207 @@ public class UserDAO {
             // Close resources to avoid memory leaks
             if (ps != null) ps.close();
             if (connection != null) connection.close();
+            DB_LATENCY.record(System.nanoTime() - start);
+            invalidateCachedLogin(userid);
+        }
+    }
+
+    /**
+     * Registers many users at once, e.g. when importing them from a directory
+     * (see {@link UserCsvImporter}). Uses chunks of <code>USER_IMPORT_BATCH_SIZE</code> users.
+     *
+     * @param users the users to create
+     * @return one result per user, in input order
+     * @throws ClassNotFoundException if the database driver is missing
+     * @throws SQLException if no database connection could be obtained
+     * @see #addAll(Collection, int)
+     */
+    public List<UserImportResult> addAll(Collection<UserDTO> users) throws ClassNotFoundException, SQLException {
+        return addAll(users, Integer.parseInt(ConfigReader.getValue("USER_IMPORT_BATCH_SIZE", "1000")));
+    }
+
+    /**
+     * Registers many users at once, much faster than calling {@link #add(UserDTO)} for each:
+     * <ul>
+     *     <li>password verifiers are computed in parallel on all cores before the database is touched;</li>
+     *     <li>all chunks are written on one pooled connection. Per chunk, one query finds the user
+     *         IDs that already exist, then one batch insert and one commit write the others;</li>
+     *     <li>if the database still rejects a chunk (e.g. a user registered meanwhile), the
+     *         chunk is rolled back and inserted row by row, so only the offending rows fail.</li>
+     * </ul>
+     * Rows without user ID or password fail, and a user ID repeated within the input is
+     * reported as a duplicate of its first occurrence.
+     *
+     * @param users     the users to create
+     * @param chunkSize users per batch insert and transaction
+     * @return one result per user, in input order
+     * @throws ClassNotFoundException if the database driver is missing
+     * @throws SQLException if no database connection could be obtained, or it broke during the import
+     */
+    public List<UserImportResult> addAll(Collection<UserDTO> users, int chunkSize) throws ClassNotFoundException, SQLException {
+        List<UserDTO> rows = new ArrayList<>(users);
+        UserImportResult[] results = new UserImportResult[rows.size()];
+        String[] credentials = new String[rows.size()];
+
+        // Make every verifier up front, in parallel; results are written to distinct slots
+        IntStream.range(0, rows.size()).parallel().forEach(i -> {
+            UserDTO user = rows.get(i);
+            if (user.getUserid() == null || user.getUserid().isEmpty()
+                    || user.getPassword() == null || user.getPassword().length == 0) {
+                results[i] = new UserImportResult(user.getUserid(), Status.FAILED, "Missing user ID or password");
+                return;
+            }
+            try {
+                credentials[i] = Srp.newCredential(user.getUserid(), Encryption.passwordEncrypt(new String(user.getPassword())));
+            } catch (NoSuchAlgorithmException e) {
+                results[i] = new UserImportResult(user.getUserid(), Status.FAILED, e.getMessage());
+            }
+        });
+
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (results[i] == null && !seen.add(rows.get(i).getUserid())) {
+                results[i] = new UserImportResult(rows.get(i).getUserid(), Status.DUPLICATE, "Repeated in this import");
+            }
+        }
+
+        Connection connection = null;
+        try {
+            connection = CommonDAO.createConnection();
+            connection.setAutoCommit(false); // one transaction per chunk; the pool switches it back on
+            int size = Math.max(1, chunkSize);
+            for (int from = 0; from < rows.size(); from += size) {
+                insertChunk(connection, rows, credentials, results, from, Math.min(rows.size(), from + size));
+            }
+        } finally {
+            if (connection != null) connection.close();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Writes the rows <code>from</code> to <code>to</code> that have no result yet in one transaction.
+     */
+    private void insertChunk(Connection connection, List<UserDTO> rows, String[] credentials,
+                             UserImportResult[] results, int from, int to) throws SQLException {
+        List<Integer> pending = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            if (results[i] == null) {
+                pending.add(i);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        try {
+            Set<String> existing = existingUsers(connection, rows, pending);
+            List<Integer> batched = new ArrayList<>(pending.size());
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_USER)) {
+                for (int i : pending) {
+                    String userid = rows.get(i).getUserid();
+                    if (existing.contains(userid)) {
+                        results[i] = new UserImportResult(userid, Status.DUPLICATE, "Already registered");
+                        continue;
+                    }
+                    ps.setString(1, userid);
+                    ps.setString(2, credentials[i]);
+                    ps.addBatch();
+                    batched.add(i);
+                }
+                if (!batched.isEmpty()) {
+                    ps.executeBatch();
+                }
+            }
+            connection.commit();
+            for (int i : batched) {
+                results[i] = new UserImportResult(rows.get(i).getUserid(), Status.ADDED, null);
+            }
+        } catch (SQLException e) {
+            // Some row was rejected; find out which by inserting them one at a time
+            connection.rollback();
+            insertOneByOne(connection, rows, credentials, results, pending);
+        }
+    }
+
+    /**
+     * Fallback for a rejected chunk: inserts and commits each row on its own and classifies failures.
+     */
+    private void insertOneByOne(Connection connection, List<UserDTO> rows, String[] credentials,
+                                UserImportResult[] results, List<Integer> pending) throws SQLException {
+        for (int i : pending) {
+            if (results[i] != null) {
+                continue; // already known to exist
+            }
+            String userid = rows.get(i).getUserid();
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_USER)) {
+                ps.setString(1, userid);
+                ps.setString(2, credentials[i]);
+                ps.executeUpdate();
+                connection.commit();
+                results[i] = new UserImportResult(userid, Status.ADDED, null);
+            } catch (SQLException e) {
+                connection.rollback();
+                // SQLState class 23 is an integrity constraint violation, e.g. a duplicate key
+                boolean duplicate = e.getSQLState() != null && e.getSQLState().startsWith("23");
+                results[i] = new UserImportResult(userid, duplicate ? Status.DUPLICATE : Status.FAILED, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Finds which of the pending rows' user IDs are already registered, with one query.
+     */
+    private Set<String> existingUsers(Connection connection, List<UserDTO> rows, List<Integer> pending) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT userid FROM users WHERE userid IN (");
+        for (int k = 0; k < pending.size(); k++) {
+            sql.append(k == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        Set<String> existing = new HashSet<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            for (int k = 0; k < pending.size(); k++) {
+                ps.setString(k + 1, rows.get(pending.get(k)).getUserid());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
+            }
         }
+        return existing;
+    }
+
+    /**
+     * Drops a user's cached login, so the next login is checked against the database.
+     * Call it whenever a password or account is changed or removed.
+     *
+     * @param userid the user to forget
+     */
+    public static void invalidateCachedLogin(String userid) {
+        CREDENTIALS.invalidate(userid);
+    }
+
+    /**
+     * Drops every cached login.
+     */
+    public static void invalidateCachedLogins() {
+        CREDENTIALS.invalidateAll();
+    }
+
+    /**
+     * @return hits, misses and size of the credential cache, e.g. for the server log
+     */
+    public static String credentialCacheStats() {
+        return CREDENTIALS.stats();
+    }
+
+    /**
+     * @return durations in nanoseconds of the login queries and single registrations made
+     *         so far by this process; bulk imports are not included
+     */
+    public static LatencyHistogram databaseLatency() {
+        return DB_LATENCY;
     }
 }
@@ -0,0 +1,79 @@
+package com.shivansh.chatapp.dto;
+
+/**
+ * Data Transfer Object (DTO) for one chat message stored in the
+ * <code>messages</code> table.
+ * <p>
+ * Created by the server for every public room message and handed to
+ * the message DAO, which writes it asynchronously.
+ * </p>
+ */
+public class MessageDTO {
+
+    /** Cluster node the message was sent on (empty for a single server) */
+    private final String node;
+
+    /** Sequence number assigned by that node */
+    private final long seq;
+
+    /** Room the message was sent to, including the leading '#' */
+    private final String room;
+
+    /** Name of the sending user */
+    private final String sender;
+
+    /** Time the message was sent, in epoch milliseconds */
+    private final long sentAt;
+
+    /** Message text */
+    private final String body;
+
+    /**
+     * Constructs a new MessageDTO.
+     *
+     * @param node   cluster node id, or an empty string
+     * @param seq    sequence number on that node
+     * @param room   room name
+     * @param sender sending user
+     * @param sentAt epoch milliseconds
+     * @param body   message text
+     */
+    public MessageDTO(String node, long seq, String room, String sender, long sentAt, String body) {
+        this.node = node;
+        this.seq = seq;
+        this.room = room;
+        this.sender = sender;
+        this.sentAt = sentAt;
+        this.body = body;
+    }
+
+    /** @return the cluster node id, or an empty string */
+    public String getNode() {
+        return node;
+    }
+
+    /** @return the sequence number on the sending node */
+    public long getSeq() {
+        return seq;
+    }
+
+    /** @return the room name */
+    public String getRoom() {
+        return room;
+    }
+
+    /** @return the sending user */
+    public String getSender() {
+        return sender;
+    }
+
+    /** @return the send time in epoch milliseconds */
+    public long getSentAt() {
+        return sentAt;
+    }
+
+    /** @return the message text */
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,64 @@
+package com.shivansh.chatapp.dto;
+
+/**
+ * Data Transfer Object (DTO) for the outcome of provisioning one user
+ * through {@link com.shivansh.chatapp.dao.UserDAO#addAll(java.util.Collection)}.
+ * <p>
+ * One result is reported per input row, in input order, so callers can show
+ * which users were created and why the others were not.
+ * </p>
+ */
+public class UserImportResult {
+
+    /** What happened to the row */
+    public enum Status {
+        /** The user was inserted */
+        ADDED,
+        /** A user with this ID already exists, or appeared earlier in the same import */
+        DUPLICATE,
+        /** The row was invalid or the database rejected it */
+        FAILED
+    }
+
+    /** User ID of the row */
+    private final String userid;
+
+    /** Outcome for the row */
+    private final Status status;
+
+    /** Reason for a failure, or null */
+    private final String message;
+
+    /**
+     * Constructs a new UserImportResult.
+     *
+     * @param userid  the row's user ID
+     * @param status  the outcome
+     * @param message reason for a failure, or null
+     */
+    public UserImportResult(String userid, Status status, String message) {
+        this.userid = userid;
+        this.status = status;
+        this.message = message;
+    }
+
+    /** @return the row's user ID */
+    public String getUserid() {
+        return userid;
+    }
+
+    /** @return the outcome */
+    public Status getStatus() {
+        return status;
+    }
+
+    /** @return the reason for a failure, or null */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return userid + "," + status + (message != null ? "," + message : "");
+    }
+}
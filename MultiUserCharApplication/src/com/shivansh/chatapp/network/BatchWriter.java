@@ -0,0 +1,252 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes the backlog of an {@link OutboundQueue}, many messages per system call.
+ * <p>
+ * Everything queued for a connection is moved into a batch, copied into one direct
+ * buffer borrowed from the {@link BufferPool} and handed to the channel in a single
+ * plain write &ndash; not a gathering write over the messages themselves &ndash; so
+ * replaying a hundred history lines, or catching up a briefly stalled client, costs
+ * one system call instead of one per message. The batch array starts small and grows
+ * only for connections that actually build up a backlog.
+ * </p>
+ * <p>
+ * Queued buffers are the ones shared by every recipient (see {@link ChatMessage#shared(boolean)}).
+ * They are only read with absolute gets, and the writer tracks its progress itself, so
+ * writing a message allocates nothing. It does copy: every recipient's writer copies
+ * the shared bytes into its own direct buffer, so a broadcast to N clients copies the
+ * message N times. That copy replaces the one the JDK would make from heap buffers
+ * anyway. A gathering write straight from the shared buffers would avoid it, but
+ * would need a view per recipient to track each position, since a channel advances
+ * the positions of the buffers it writes.
+ * </p>
+ * <p>
+ * Writes are coalesced adaptively with a micro-batch window:
+ * <ul>
+ *     <li>if the previous write is older than the window, the connection is
+ *         quiet and the batch goes out immediately &ndash; idle-room latency is unchanged;</li>
+ *     <li>otherwise traffic is busy, and the batch waits until one window after
+ *         the previous write, or until <code>maxBytes</code> are pending, so a
+ *         burst leaves in one write (and usually fewer TCP segments) instead of one per message.</li>
+ * </ul>
+ * A window of 0 disables coalescing.
+ * </p>
+ * Not thread-safe: each instance belongs to the one thread that writes to its connection.
+ */
+final class BatchWriter {
+
+    /** Upper bound on messages taken from the queue at once. */
+    private static final int MAX_BATCH = 1024;
+
+    /** Frames and write calls of all writers, for the process-wide average. */
+    private static final LongAdder TOTAL_FRAMES = new LongAdder();
+    private static final LongAdder TOTAL_WRITES = new LongAdder();
+
+    private final long windowNanos;
+    private final int maxBytes;
+
+    private ByteBuffer[] batch = new ByteBuffer[16];
+    private int start;
+    private int end;
+    private long batchBytes;
+
+    /** Bytes of <code>batch[start]</code> already copied into {@link #out}. */
+    private int copied;
+
+    /** Borrowed while data is pending: bytes between position and limit are still to be written. */
+    private ByteBuffer out;
+
+    /** Counts the bytes written, e.g. for {@link ServerMetrics}; may be null. */
+    private final LongAdder bytesWritten;
+
+    private long lastWriteNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+    private long frames;
+    private long writes;
+
+    /**
+     * Creates a writer without coalescing.
+     */
+    BatchWriter() {
+        this(0, 0);
+    }
+
+    /**
+     * @param windowNanos longest time a batch waits for more messages while traffic is busy
+     * @param maxBytes    pending size at which a batch is written without waiting
+     */
+    BatchWriter(long windowNanos, int maxBytes) {
+        this(windowNanos, maxBytes, null);
+    }
+
+    /**
+     * @param windowNanos  longest time a batch waits for more messages while traffic is busy
+     * @param maxBytes     pending size at which a batch is written without waiting
+     * @param bytesWritten counter to add every written byte to, or null
+     */
+    BatchWriter(long windowNanos, int maxBytes, LongAdder bytesWritten) {
+        this.windowNanos = Math.max(0, windowNanos);
+        this.maxBytes = maxBytes;
+        this.bytesWritten = bytesWritten;
+    }
+
+    /**
+     * @return true if buffers from the last batch are still (partially) unwritten
+     */
+    boolean hasPending() {
+        return start < end || (out != null && out.hasRemaining());
+    }
+
+    /**
+     * Refills an empty batch from the queue without waiting.
+     *
+     * @return false once the queue is closed and fully drained
+     */
+    boolean fill(OutboundQueue queue) {
+        return hasPending() || accept(queue.drainTo(batch, 0));
+    }
+
+    /**
+     * Refills an empty batch, waiting for the queue to receive a message. While
+     * traffic is busy, keeps collecting messages until the window ends or
+     * enough bytes are pending.
+     *
+     * @return false once the queue is closed and fully drained
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitFill(OutboundQueue queue) throws InterruptedException {
+        if (hasPending()) {
+            return true;
+        }
+        if (!accept(queue.awaitDrainTo(batch, 0))) {
+            return false;
+        }
+        long delay;
+        while ((delay = delayBeforeWrite(batchBytes)) > 0 && end < MAX_BATCH) {
+            ensureRoom();
+            int drained = queue.awaitDrainTo(batch, end, delay);
+            if (drained <= 0) {
+                break; // window over, or closed: write what we have
+            }
+            add(drained);
+        }
+        return true;
+    }
+
+    /**
+     * Tells a non-blocking caller how long to hold back a flush.
+     *
+     * @param pendingBytes bytes waiting to be written
+     * @return nanoseconds until the batch should be written; 0 or less to write now
+     */
+    long delayBeforeWrite(long pendingBytes) {
+        if (windowNanos == 0 || pendingBytes >= maxBytes) {
+            return 0;
+        }
+        return lastWriteNanos + windowNanos - System.nanoTime();
+    }
+
+    private boolean accept(int drained) {
+        start = 0;
+        end = 0;
+        copied = 0;
+        batchBytes = 0;
+        if (drained < 0) {
+            return false;
+        }
+        add(drained);
+        if (end == batch.length) {
+            ensureRoom(); // this connection builds up backlogs; gather more next time
+        }
+        return true;
+    }
+
+    private void add(int drained) {
+        for (int i = end; i < end + drained; i++) {
+            batchBytes += batch[i].remaining();
+        }
+        end += drained;
+    }
+
+    private void ensureRoom() {
+        if (end == batch.length && batch.length < MAX_BATCH) {
+            ByteBuffer[] larger = new ByteBuffer[Math.min(MAX_BATCH, batch.length * 2)];
+            System.arraycopy(batch, 0, larger, 0, end);
+            batch = larger;
+        }
+    }
+
+    /**
+     * Tops up the output buffer from the batch and writes as much as the channel accepts in one call.
+     *
+     * @return true if the whole batch has been written
+     */
+    boolean write(WritableByteChannel channel) throws IOException {
+        if (!hasPending()) {
+            return true;
+        }
+        if (out == null) {
+            out = BufferPool.SHARED.acquire().limit(0);
+        }
+        out.compact(); // keep what the last write left over, append after it
+        int done = 0;
+        while (start < end && out.hasRemaining()) {
+            ByteBuffer message = batch[start];
+            int n = Math.min(out.remaining(), message.remaining() - copied);
+            out.put(out.position(), message, message.position() + copied, n);
+            out.position(out.position() + n);
+            copied += n;
+            if (copied == message.remaining()) {
+                batch[start++] = null; // the bytes are in out now
+                copied = 0;
+                done++;
+            }
+        }
+        out.flip();
+        int written = channel.write(out);
+        if (bytesWritten != null && written > 0) {
+            bytesWritten.add(written);
+        }
+        lastWriteNanos = System.nanoTime();
+        frames += done;
+        writes++;
+        TOTAL_FRAMES.add(done);
+        TOTAL_WRITES.increment();
+        if (!hasPending()) {
+            release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the output buffer to the pool, dropping anything unwritten. Called once
+     * the batch is written, and by the owner when the connection closes.
+     */
+    void release() {
+        if (out != null) {
+            BufferPool.SHARED.release(out);
+            out = null;
+        }
+    }
+
+    /**
+     * @return frames written and write calls made by this writer, e.g. for a disconnect log line
+     */
+    String stats() {
+        return frames + " frames in " + writes + " writes, "
+                + String.format("%.1f", writes == 0 ? 0.0 : (double) frames / writes) + " frames/write";
+    }
+
+    /**
+     * @return average number of frames per write system call across all writers so far
+     */
+    static double averageFramesPerWrite() {
+        long total = TOTAL_WRITES.sum();
+        return total == 0 ? 0.0 : (double) TOTAL_FRAMES.sum() / total;
+    }
+}
@@ -0,0 +1,75 @@
+package com.shivansh.chatapp.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Pool of direct buffers that {@link BatchWriter}s copy outgoing messages into.
+ * <p>
+ * A socket write from a heap buffer makes the JDK copy it into a temporary direct
+ * buffer first. Writers copy into a pooled direct buffer themselves instead, and the
+ * JDK copy goes away. A writer borrows a buffer only while it has unwritten data and
+ * returns it once drained, so thousands of idle connections hold no buffers:
+ * <ul>
+ *     <li>buffers are <code>WRITE_BUFFER_BYTES</code> large; longer batches are written in several passes;</li>
+ *     <li>at most <code>WRITE_BUFFER_POOL_SIZE</code> free buffers are kept. When the pool is
+ *         empty a new buffer is allocated, and surplus returned buffers are left to the GC.</li>
+ * </ul>
+ * </p>
+ * Borrowing and returning take an uncontended lock and allocate nothing.
+ */
+final class BufferPool {
+
+    /** Pool shared by all writers of this process. */
+    static final BufferPool SHARED = new BufferPool(
+            Integer.parseInt(ConfigReader.getValue("WRITE_BUFFER_BYTES", "16384")),
+            Integer.parseInt(ConfigReader.getValue("WRITE_BUFFER_POOL_SIZE", "256")));
+
+    private final int bufferBytes;
+    private final ByteBuffer[] free;
+    private int count;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param bufferBytes size of each buffer
+     * @param maxFree     most free buffers kept for reuse
+     */
+    BufferPool(int bufferBytes, int maxFree) {
+        this.bufferBytes = Math.max(1024, bufferBytes);
+        this.free = new ByteBuffer[Math.max(0, maxFree)];
+    }
+
+    /**
+     * @return a cleared buffer, from the pool if one is free
+     */
+    ByteBuffer acquire() {
+        lock.lock();
+        try {
+            if (count > 0) {
+                ByteBuffer buffer = free[--count];
+                free[count] = null;
+                return buffer;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    /**
+     * Returns a buffer for reuse. The caller must not touch it afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        lock.lock();
+        try {
+            if (count < free.length) {
+                free[count++] = buffer;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.shivansh.chatapp.network;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Turns chat messages into the display lines users see.
+ * <p>
+ * The server uses it to build text-protocol lines; binary clients use it to
+ * render the frames they receive, so both protocols look identical on screen.
+ * </p>
+ * Lines are appended to a caller's {@link StringBuilder}, and the <code>HH:mm</code>
+ * prefix is formatted once per minute, so the server's line encoder only allocates the
+ * finished line.
+ */
+public final class ChatFormatter {
+
+    private static final DateTimeFormatter HH_MM = DateTimeFormatter.ofPattern("HH:mm");
+
+    private static final long MINUTE_MILLIS = 60_000;
+
+    /** The most recently formatted minute. Replaced as a whole, so readers need no lock. */
+    private record Minute(long minute, String text) {
+    }
+
+    private static volatile Minute lastMinute = new Minute(Long.MIN_VALUE, "");
+
+    private ChatFormatter() {}
+
+    /**
+     * Returns the time of day of an epoch-millisecond timestamp in HH:mm format.
+     * Live messages all fall into the current minute, whose text is cached; only the
+     * first message of a new minute (or an old message from history) formats it again.
+     */
+    public static String time(long timestamp) {
+        long minute = Math.floorDiv(timestamp, MINUTE_MILLIS);
+        Minute cached = lastMinute;
+        if (cached.minute() != minute) {
+            cached = new Minute(minute, HH_MM.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault())));
+            lastMinute = cached;
+        }
+        return cached.text();
+    }
+
+    /**
+     * Formats one message as a display line (without trailing newline).
+     */
+    public static String format(FrameType type, long timestamp, String sender, String target, String body) {
+        return appendTo(new StringBuilder(64), type, timestamp, sender, target, body).toString();
+    }
+
+    /**
+     * Appends one message as a display line (without trailing newline).
+     *
+     * @return <code>line</code>
+     */
+    public static StringBuilder appendTo(StringBuilder line, FrameType type, long timestamp,
+                                         String sender, String target, String body) {
+        switch (type) {
+            case CHAT -> {
+                line.append(time(timestamp)).append(" - ");
+                if (!isDefaultRoom(target)) {
+                    line.append('[').append(target).append("] ");
+                }
+                line.append(sender).append(": ").append(body);
+            }
+            case WHISPER -> line.append(time(timestamp)).append(" [Private] ").append(sender).append(": ").append(body);
+            case WHISPER_SENT -> line.append("To ").append(target).append(": ").append(time(timestamp))
+                    .append(" [Private] ").append(sender).append(": ").append(body);
+            case JOINED -> line.append(time(timestamp)).append(" - ").append(sender).append(" joined ")
+                    .append(roomOrChat(target)).append('.');
+            case LEFT -> line.append(time(timestamp)).append(" - ").append(sender).append(" left ")
+                    .append(roomOrChat(target)).append('.');
+            case USERS -> line.append("/users ").append(body);
+            case ROOM_LIST -> line.append("Rooms: ").append(body == null || body.isEmpty() ? "none"
+                    : body.replaceAll(":(\\d+)", " ($1)").replace(",", ", "));
+            default -> line.append(body);
+        }
+        return line;
+    }
+
+    /**
+     * Messages in the default room look exactly as before rooms existed.
+     */
+    private static boolean isDefaultRoom(String room) {
+        return room == null || room.isEmpty() || room.equalsIgnoreCase(RoomManager.DEFAULT_ROOM);
+    }
+
+    private static String roomOrChat(String room) {
+        return isDefaultRoom(room) ? "the chat" : room;
+    }
+}
@@ -0,0 +1,70 @@
+package com.shivansh.chatapp.network;
+
+import java.util.List;
+
+/**
+ * Receives what a {@link Client} gets from the server.
+ * <p>
+ * This is the only way the client networking talks to its user, so it runs without
+ * any user interface: the chat window implements it on top of Swing, and the load
+ * generator in <code>bench</code> to measure delivery. Every method is called on the
+ * client's reader thread, one call at a time, in the order the server sent things.
+ * Implementations must return quickly and hand anything slow to another thread,
+ * since the next message is not read before they return.
+ * </p>
+ * <p>
+ * Over binary framing every message keeps its fields: type, sender, target, timestamp
+ * and, for stored room messages, sequence number. The text protocol only carries
+ * display lines, so each line arrives as a {@link FrameType#NOTICE} whose body is the
+ * line. Either way, {@link ChatMessage#getText()} is the line to show.
+ * </p>
+ */
+public interface ChatListener {
+
+    /**
+     * A new message: chat, private message, join/leave notice or server notice.
+     * Messages already received are not repeated, e.g. after a reconnect.
+     */
+    void messageReceived(ChatMessage message);
+
+    /**
+     * A page of older messages requested with {@link Client#requestOlderHistory()},
+     * to show above all others.
+     *
+     * @param room     the room the messages belong to
+     * @param messages the page, oldest first; never empty
+     */
+    default void olderMessagesReceived(String room, List<ChatMessage> messages) {
+    }
+
+    /**
+     * The complete list of users online, replacing the previous one.
+     */
+    default void usersReplaced(List<String> users) {
+    }
+
+    /**
+     * A user came online.
+     */
+    default void userJoined(String user) {
+    }
+
+    /**
+     * A user went offline.
+     */
+    default void userLeft(String user) {
+    }
+
+    /**
+     * The connection was lost and the client is reconnecting. Not called when the
+     * client was closed, or when the server ended the session for good.
+     */
+    default void connectionLost() {
+    }
+
+    /**
+     * The client reconnected and rejoined after {@link #connectionLost()}.
+     */
+    default void reconnected() {
+    }
+}
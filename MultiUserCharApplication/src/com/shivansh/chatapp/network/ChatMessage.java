@@ -0,0 +1,295 @@
+package com.shivansh.chatapp.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A server-to-client message, encoded for the wire at most once per protocol.
+ * <p>
+ * The message keeps its typed fields (sender, target, timestamp, sequence
+ * number, body). The first recipient that needs a given wire format &ndash; a
+ * text line or a binary {@link Frame} &ndash; encodes it into a single read-only
+ * buffer, written directly as UTF-8 into an array of the exact size. Outbound queues
+ * hold that very buffer ({@link #shared(boolean)}): writers only read it with absolute
+ * gets, so a broadcast to N clients queues N references and allocates nothing per
+ * recipient. History replay reuses the same buffers. Code that reads with relative gets
+ * takes its own view from {@link #frame(boolean)}.
+ * </p>
+ * <p>
+ * Sharing removes allocations, not copies. Each published message is still a new
+ * instance with its own encoded array, a whisper's echo to its sender is a second
+ * message encoded separately, and every recipient's {@link BatchWriter} copies the
+ * shared bytes into a pooled direct buffer before writing them.
+ * </p>
+ * Clients that negotiated compression get the binary frame compressed
+ * ({@link #compressed()}), which is likewise produced once and shared.
+ */
+public final class ChatMessage {
+
+    /** Reused per thread to build text lines; only the finished line's bytes are allocated. */
+    private static final ThreadLocal<StringBuilder> LINE = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /** Builders grown beyond this by an unusually long line are not kept. */
+    private static final int MAX_KEPT_LINE = 8 * 1024;
+
+    private final FrameType type;
+    private final String sender;
+    private final String target;
+    private final long timestamp;
+    private final String body;
+
+    /**
+     * History position assigned by {@link MessageHistory#append(ChatMessage)}, or presence
+     * version for user-list messages; set before the message is published, 0 if none.
+     */
+    private long seq;
+
+    /**
+     * Node the message was first published on, if it came from another node; {@link #originSeq}
+     * is then the number it got there. Null for a message published here, identified by
+     * {@link #seq}. The empty string stands for this node: a message of its own that came back
+     * in another node's history.
+     */
+    private String origin;
+    private long originSeq;
+
+    // Lazily encoded; a racing second encoding is harmless since both are identical
+    private volatile ByteBuffer text;
+    private volatile ByteBuffer binary;
+    private volatile ByteBuffer deflated;
+
+    /** Log record from {@link #prepareStored()} still waiting for its sequence number. */
+    private ByteBuffer storing;
+
+    /**
+     * @param type      message type
+     * @param sender    originating user, or null
+     * @param target    addressed user for private messages, or null
+     * @param timestamp creation time in epoch milliseconds
+     * @param body      message text, or null
+     */
+    public ChatMessage(FrameType type, String sender, String target, long timestamp, String body) {
+        this.type = type;
+        this.sender = sender;
+        this.target = target;
+        this.timestamp = timestamp;
+        this.body = body;
+    }
+
+    /** Longest notice in chars; a char takes at most 3 bytes in UTF-8, so any notice fits into a frame. */
+    private static final int MAX_NOTICE_CHARS = Frame.MAX_BODY_BYTES / 3;
+
+    /**
+     * Creates an informational message from the server.
+     *
+     * @param text the text shown to the user as is; cut short if it would not fit into a
+     *             frame, since notices may quote what the client sent
+     */
+    public static ChatMessage notice(String text) {
+        if (text != null && text.length() > MAX_NOTICE_CHARS) {
+            int end = Character.isHighSurrogate(text.charAt(MAX_NOTICE_CHARS - 1)) ? MAX_NOTICE_CHARS - 1 : MAX_NOTICE_CHARS;
+            text = text.substring(0, end);
+        }
+        return new ChatMessage(FrameType.NOTICE, null, null, System.currentTimeMillis(), text);
+    }
+
+    public FrameType getType() {
+        return type;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    void assignSeq(long seq) {
+        this.seq = seq;
+        if (storing != null) {
+            storing.putLong(4 + Frame.SEQ, seq); // not yet shared with any reader
+            storing = null;
+        }
+    }
+
+    /**
+     * @return node the message was first published on, null if it was published on this node
+     *         (the empty string if it came back from another node)
+     */
+    String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return sequence number the message got on the node it was first published on
+     */
+    long getOriginSeq() {
+        return origin != null ? originSeq : seq;
+    }
+
+    /**
+     * Marks a message received from another node with where it was first published.
+     *
+     * @param node the origin node, or the empty string for this node
+     * @param seq  the number it got there
+     */
+    void assignOrigin(String node, long seq) {
+        this.origin = node;
+        this.originSeq = seq;
+    }
+
+    /**
+     * @return true if both are the same message, published once on one node, as judged
+     *         by its origin node and the sequence number it got there
+     */
+    boolean isSameAs(ChatMessage other) {
+        return getOriginSeq() == other.getOriginSeq()
+                && (origin != null ? origin : "").equals(other.origin != null ? other.origin : "");
+    }
+
+    /**
+     * Encodes the record kept in the message log: the binary frame, followed for a message
+     * from another node by its origin (uint8 length, node id in UTF-8, int64 sequence number
+     * there), so that a history restored from the log still knows where each message came from.
+     * <p>
+     * The record is built before the message has its sequence number, so that the encoding is
+     * not done under the log's lock; {@link #assignSeq} then only writes the number into it.
+     * The frame part also becomes the message's binary encoding.
+     * </p>
+     */
+    ByteBuffer prepareStored() {
+        ByteBuffer record = Frame.encode(type, 0, timestamp, sender, target, body);
+        int frameLength = record.remaining();
+        if (origin != null) {
+            int nodeLength = Utf8.length(origin); // node ids are checked to fit when configured
+            ByteBuffer frame = record;
+            record = ByteBuffer.allocate(frameLength + 1 + nodeLength + 8);
+            record.put(frame).put((byte) nodeLength);
+            int pos = Utf8.encode(origin, record.array(), record.position());
+            record.putLong(pos, originSeq);
+            record.clear();
+        }
+        storing = record;
+        binary = record.slice(0, frameLength).asReadOnlyBuffer();
+        return record.asReadOnlyBuffer();
+    }
+
+    /**
+     * Rebuilds a message from a record of the message log (see {@link #prepareStored()}).
+     * The frame bytes are kept as the message's binary encoding.
+     *
+     * @param seq    sequence number the message was stored under
+     * @param record encoded frame including its length prefix, possibly followed by the message's origin
+     * @return the message, or null if the frame is malformed or of an unknown type
+     */
+    static ChatMessage decode(long seq, ByteBuffer record) {
+        byte[] bytes = new byte[record.remaining()];
+        record.duplicate().get(bytes);
+        if (bytes.length < 4) {
+            return null;
+        }
+        int frameEnd = 4 + ByteBuffer.wrap(bytes).getInt(0);
+        Frame view = new Frame();
+        if (frameEnd < 4 || frameEnd > bytes.length || !view.wrap(bytes, 4, frameEnd - 4) || view.type() == null) {
+            return null;
+        }
+        ChatMessage message = new ChatMessage(view.type(), view.sender(), view.target(), view.timestamp(), view.body());
+        message.seq = seq;
+        message.binary = ByteBuffer.wrap(bytes, 0, frameEnd).slice().asReadOnlyBuffer();
+        if (frameEnd < bytes.length) {
+            int nodeLength = bytes[frameEnd] & 0xFF;
+            if (frameEnd + 1 + nodeLength + 8 <= bytes.length) {
+                message.assignOrigin(new String(bytes, frameEnd + 1, nodeLength, StandardCharsets.UTF_8),
+                        ByteBuffer.wrap(bytes).getLong(frameEnd + 1 + nodeLength));
+            }
+        }
+        return message;
+    }
+
+    /**
+     * @return the message as a display line, as sent to text-protocol clients
+     */
+    public String getText() {
+        return ChatFormatter.format(type, timestamp, sender, target, body);
+    }
+
+    /**
+     * Returns a read-only view of the encoded bytes, positioned at the start.
+     * Views share the underlying bytes; nothing is copied.
+     *
+     * @param binary true for a binary {@link Frame}, false for a newline-terminated text line
+     */
+    public ByteBuffer frame(boolean binary) {
+        return encoded(binary).duplicate();
+    }
+
+    /**
+     * Returns the encoded bytes shared by every recipient, without a per-caller view.
+     * Its position and limit must never be changed; queue it for a {@link BatchWriter},
+     * which copies from it with absolute gets.
+     *
+     * @param binary true for a binary {@link Frame}, false for a newline-terminated text line
+     */
+    ByteBuffer shared(boolean binary) {
+        return encoded(binary);
+    }
+
+    /**
+     * Returns the binary frame as sent to clients that negotiated compression, shared like
+     * {@link #shared(boolean)}: compressed by {@link FrameCompression} if the body is long
+     * enough and gets smaller, otherwise the plain frame itself.
+     */
+    ByteBuffer compressed() {
+        ByteBuffer frame = this.deflated;
+        if (frame == null) {
+            frame = FrameCompression.compress(encoded(true));
+            this.deflated = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * @return encoded size in bytes in the given wire format
+     */
+    public int size(boolean binary) {
+        return encoded(binary).remaining();
+    }
+
+    private ByteBuffer encoded(boolean binary) {
+        if (binary) {
+            ByteBuffer frame = this.binary;
+            if (frame == null) {
+                frame = Frame.encode(type, seq, timestamp, sender, target, body).asReadOnlyBuffer();
+                this.binary = frame;
+            }
+            return frame;
+        }
+        ByteBuffer line = this.text;
+        if (line == null) {
+            StringBuilder builder = LINE.get();
+            builder.setLength(0);
+            ChatFormatter.appendTo(builder, type, timestamp, sender, target, body).append('\n');
+            byte[] bytes = new byte[Utf8.length(builder)];
+            Utf8.encode(builder, bytes, 0);
+            if (builder.capacity() > MAX_KEPT_LINE) {
+                LINE.remove();
+            }
+            line = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            this.text = line;
+        }
+        return line;
+    }
+}
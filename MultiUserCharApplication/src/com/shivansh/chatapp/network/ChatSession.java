@@ -0,0 +1,932 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.shivansh.chatapp.utils.Srp;
+
+/**
+ * Transport-independent state and protocol handling for one connected client.
+ * <p>
+ * Both server execution models share this class so that chat behaviour stays
+ * identical no matter how bytes reach the server:
+ * <ul>
+ *     <li>{@link ServerWorker} reads with blocking I/O on its own thread.</li>
+ *     <li>{@link NioSession} reads a non-blocking channel on an event loop.</li>
+ * </ul>
+ * Subclasses read into the session's {@link InboundDecoder} and call
+ * {@link #processInput()}, call {@link #onDisconnect()} once when the
+ * connection ends, and drain the session's {@link OutboundQueue}.
+ * </p>
+ * Two wire formats are spoken:
+ * <ul>
+ *     <li><b>text</b> &ndash; newline-terminated lines. Legacy clients simply send
+ *         their name (or <code>/join &lt;name&gt;</code>) as the first line and stay in text mode.</li>
+ *     <li><b>binary</b> &ndash; length-prefixed {@link Frame}s. A client asks for it with
+ *         <code>/hello v=1 framing=binary</code> as its first line; the server answers
+ *         <code>/hello v=1 framing=binary</code> (or <code>framing=text</code> if binary is
+ *         disabled) and both sides switch right after that line.</li>
+ * </ul>
+ * Before joining, a text client may log in with SRP (see {@link Srp}):
+ * it sends <code>/login &lt;user&gt; &lt;A&gt;</code>, the server answers
+ * <code>/challenge &lt;salt&gt; &lt;B&gt;</code>, the client sends <code>/proof &lt;proof&gt;</code>
+ * and the server answers <code>/token &lt;token&gt;</code> (see {@link Server#login}). The client joins with
+ * <code>/join &lt;token&gt;</code>, now or on any later connection until the token expires.
+ * Unless <code>AUTH_REQUIRED=false</code>, a join without a valid token is rejected.
+ * New users are created with <code>/register &lt;user&gt; &lt;verifier&gt;</code> (see
+ * {@link Server#register}), which sends a salted verifier of the password, never the
+ * password or its hash. Logins and registrations are charged to the {@link RateLimiter}.
+ * After joining, every user is in {@link RoomManager#DEFAULT_ROOM}. <code>/join #room</code>
+ * enters (or switches to) another room, <code>/leave #room</code> leaves it and
+ * <code>/rooms</code> lists the rooms; plain messages go to the current room.
+ * <code>/history [#room] [count] [before &lt;seq&gt;]</code> (or a {@link FrameType#HISTORY}
+ * frame) fetches a page of older messages, so clients can scroll back through the whole
+ * stored history while joining only replays the last few messages. Pages, the history of a
+ * room being created and what a resuming client missed are read from the message log on a history thread (see
+ * {@link #readHistory}); the client's further input waits meanwhile, so requests are still
+ * answered in order.
+ * A binary client that lost its connection rejoins with the newest sequence number it
+ * received in each room (the <i>seq</i> of its {@link FrameType#JOIN} and
+ * {@link FrameType#ROOM_JOIN} frames) and is sent only the messages it missed.
+ * A binary client may also ask for <code>presence=delta</code> in its hello: it then
+ * receives the user list once and afterwards only versioned join/leave deltas
+ * (see {@link Server#join(ChatSession)}). Everyone else keeps receiving full lists.
+ * With <code>compress=deflate</code> in its hello, a binary client is sent long messages
+ * compressed and stored messages as compressed batches (see {@link FrameCompression}),
+ * if the server has <code>COMPRESSION_ENABLED</code>.
+ * Each session's public messages, history pages, private messages and bytes received are rate-limited by
+ * a {@link RateLimiter}: a client over its limits is not read from until it is back under
+ * them (see {@link #readPauseNanos()}), and one that keeps flooding is disconnected.
+ * Sending never blocks: {@link #send(ChatMessage)} only queues the encoded
+ * message, so a broadcast costs one enqueue per recipient however slow their
+ * network is.
+ */
+public abstract class ChatSession {
+
+    /** Protocol version announced in the handshake. */
+    static final int PROTOCOL_VERSION = 1;
+
+    /** Messages per history page when the client does not say. */
+    static final int DEFAULT_PAGE = 50;
+
+    /** Sent before closing a connection whose session token was rejected; clients must log in again. */
+    static final String SESSION_INVALID = "Your session has expired or is invalid. Please log in again.";
+
+    /** Sent to a connection replaced by a newer one of the same user; clients must not reconnect. */
+    static final String SESSION_REPLACED = "You connected from somewhere else. This connection is closed.";
+
+    /** Sent instead of publishing a message whose body would not fit into a frame. */
+    static final String TOO_LONG = "Message not sent: longer than " + Frame.MAX_BODY_BYTES + " bytes.";
+
+    /** Sent before closing the connection of a client that kept exceeding its rate limits. */
+    static final String FLOODING = "You are sending too much, too fast. This connection is closed.";
+
+    protected final Server server;
+
+    protected final OutboundQueue outbound;
+
+    /** The server's metrics, or null if they are turned off. */
+    protected final ServerMetrics metrics;
+
+    /** Bytes received from the client; only touched by the reading thread. */
+    protected final InboundDecoder decoder = new InboundDecoder();
+
+    protected String clientName;
+
+    /** Flood protection, or null if <code>RATE_LIMIT_ENABLED=false</code>; only touched by the reading thread. */
+    protected final RateLimiter limiter;
+
+    /** Rooms this client is in, and the one plain messages go to; only touched by the reading thread. */
+    private final List<Room> rooms = new ArrayList<>();
+    private Room currentRoom;
+
+    /** Oldest message replayed when each room was joined: paging back starts below it. Reading thread only. */
+    private final Map<Room, Long> replayedFrom = new HashMap<>();
+
+    /** Wire format, presence mode and compression negotiated with the client. Fixed before the session joins. */
+    private boolean binary;
+    private boolean presenceDeltas;
+    private boolean compress;
+    private boolean greeted;
+
+    /** Set while a {@link #readHistory read of stored history} is under way; input waits meanwhile. Reading thread only. */
+    private boolean readingHistory;
+
+    /** What to do with the result of that read, handed over by the history thread once it is done. */
+    private volatile Runnable historyRead;
+
+    /** Login waiting for the client's proof, handed over by a login thread; used once. */
+    private volatile Server.PendingLogin pendingLogin;
+
+    /**
+     * @param server reference to the server for broadcasting messages
+     */
+    protected ChatSession(Server server) {
+        this.server = server;
+        this.outbound = server.newOutboundQueue();
+        this.metrics = server.metrics;
+        this.limiter = server.rateLimits != null ? new RateLimiter(server.rateLimits, metrics != null ? metrics.rateLimitViolations : null)
+                : null;
+    }
+
+    /**
+     * Queues an informational message for this client. Never blocks; safe to call from any thread.
+     *
+     * @param message the message text (without trailing newline)
+     */
+    public void sendMessage(String message) {
+        send(ChatMessage.notice(message));
+    }
+
+    /**
+     * Queues a message for this client in its wire format. The encoded bytes are
+     * shared with every other recipient and queued as they are; nothing is allocated per recipient,
+     * though the writer later copies the bytes into its own direct buffer.
+     * Clients that negotiated compression share the compressed frame instead.
+     *
+     * @param message the shared message
+     */
+    public void send(ChatMessage message) {
+        enqueue(compress ? message.compressed() : message.shared(binary));
+    }
+
+    /**
+     * Queues an encoded message and applies the overflow policy.
+     */
+    protected void enqueue(ByteBuffer message) {
+        if (outbound.offer(message)) {
+            onEnqueued();
+        } else {
+            System.err.println("Outbound queue full, disconnecting " + clientName);
+            disconnect();
+        }
+    }
+
+    /**
+     * Called after a message was queued, e.g. to wake up the writer.
+     */
+    protected void onEnqueued() {
+    }
+
+    /**
+     * Starts closing the connection without blocking. The caller may hold the
+     * server's worker lock, so implementations must not unregister synchronously.
+     */
+    protected abstract void disconnect();
+
+    /**
+     * Sends a last notice and starts closing the connection, without blocking.
+     * The notice is delivered if the client is still reachable.
+     */
+    protected void closeWith(String notice) {
+        sendMessage(notice);
+        disconnect();
+    }
+
+    /**
+     * Accounts for bytes just read into the {@link #decoder}.
+     *
+     * @param n bytes read, or -1 at the end of the stream
+     */
+    protected void received(int n) {
+        if (metrics != null) {
+            metrics.bytesRead(n);
+        }
+        if (limiter != null) {
+            limiter.bytesRead(n);
+        }
+    }
+
+    /**
+     * Dispatches every complete line or frame currently held by the {@link #decoder}.
+     * The wire format is re-checked per message, so bytes following the handshake
+     * line are already decoded as frames. Stops early, leaving the rest in the decoder,
+     * while the client is over its rate limits or waits for a read of stored history;
+     * the caller then waits for {@link #readPauseNanos()} and calls again before reading more.
+     *
+     * @return false if the connection must be closed (quit, name rejected, or flooding)
+     * @throws IOException if the client violates the protocol
+     */
+    protected boolean processInput() throws IOException {
+        while (true) {
+            if (readingHistory) {
+                Runnable done = historyRead;
+                if (done == null) {
+                    return true; // still reading; onHistoryRead() calls us back
+                }
+                historyRead = null;
+                readingHistory = false;
+                done.run();
+                continue;
+            }
+            if (limiter != null && limiter.isThrottled()) {
+                if (limiter.isFlooding()) {
+                    System.err.println("Disconnecting " + clientName + " for flooding");
+                    if (metrics != null) {
+                        metrics.floodDisconnect();
+                    }
+                    sendMessage(FLOODING);
+                    return false;
+                }
+                if (limiter.pauseNanos() > 0) {
+                    return true;
+                }
+                limiter.resume();
+            }
+            if (binary) {
+                Frame frame = decoder.nextFrame();
+                if (frame == null) {
+                    return true;
+                }
+                if (!onFrame(frame)) {
+                    return false;
+                }
+            } else {
+                String line = decoder.nextLine();
+                if (line == null) {
+                    return true;
+                }
+                if (!onLine(line)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds to wait before handling more input and reading from the
+     *         socket again, or 0 if the client is within its rate limits; <code>Long.MAX_VALUE</code>
+     *         while a read of stored history is under way, which ends with {@link #onHistoryRead()}
+     */
+    protected long readPauseNanos() {
+        if (readingHistory) {
+            return Long.MAX_VALUE;
+        }
+        return limiter != null && limiter.isThrottled() ? Math.max(1, limiter.pauseNanos()) : 0;
+    }
+
+    /**
+     * Reads stored messages on a history thread if that means scanning the message log, and
+     * then hands the result to <code>then</code> on the reading thread, from
+     * {@link #processInput()}. Further input waits until then, so the client's requests are
+     * still handled one after the other and a session never has more than one read under way.
+     * Without a log everything is in memory, and both run right away.
+     *
+     * @param read reads the messages; must be safe to run on any thread
+     * @param then uses them on the reading thread
+     */
+    private <T> void readHistory(Supplier<T> read, Consumer<T> then) {
+        if (server.rooms.log() == null) {
+            then.accept(read.get());
+            return;
+        }
+        readingHistory = true;
+        Runnable task = () -> {
+            try {
+                T result = read.get();
+                historyRead = () -> then.accept(result);
+            } catch (RuntimeException e) {
+                System.err.println("Reading the history for " + clientName + " failed");
+                e.printStackTrace();
+                historyRead = () -> sendMessage("The history is not available right now.");
+            }
+            onHistoryRead();
+        };
+        if (!server.readHistory(task)) {
+            task.run(); // shutting down
+        }
+    }
+
+    /**
+     * Called on the history thread once a read has finished; the reading thread must then
+     * call {@link #processInput()} again.
+     */
+    protected void onHistoryRead() {
+    }
+
+    /**
+     * Handles one text line: the optional handshake, the join line, then commands and chat.
+     *
+     * @param line the received line
+     * @return false if the client asked to quit or its name was rejected
+     */
+    protected boolean onLine(String line) {
+        if (clientName == null) {
+            if (!greeted && line.startsWith("/hello")) {
+                greeted = true;
+                negotiate(line);
+                return true;
+            }
+            if (line.startsWith("/login ")) {
+                login(line.substring(7));
+                return true;
+            }
+            if (line.startsWith("/proof ")) {
+                proveLogin(line.substring(7).trim());
+                return true;
+            }
+            if (line.startsWith("/register ")) {
+                register(line.substring(10));
+                return true;
+            }
+            greeted = true;
+            // First message received is treated as the client username
+            return join(line.startsWith("/join ") ? line.substring(6) : line, 0);
+        }
+
+        // Handle client quit
+        if (line.equalsIgnoreCase("quit")) {
+            return false;
+        }
+
+        // Handle private messaging: /w username message
+        if (line.startsWith("/w ")) {
+            String[] parts = line.split(" ", 3);
+            if (parts.length >= 3) {
+                sendPrivateMessage(parts[1], parts[2]);
+            }
+        } else if (line.startsWith("/join ")) {
+            enterRoom(line.substring(6).trim(), 0);
+        } else if (line.startsWith("/leave ")) {
+            leaveRoom(line.substring(7).trim());
+        } else if (line.equals("/rooms")) {
+            listRooms();
+        } else if (line.equals("/history") || line.startsWith("/history ")) {
+            historyCommand(line.substring(8).trim());
+        } else {
+            publicMessage(null, line);
+        }
+        return true;
+    }
+
+    /**
+     * Handles one binary frame. Frames other than {@link FrameType#JOIN} are
+     * ignored until the session has joined; unknown types are ignored for
+     * forward compatibility.
+     *
+     * @return false if the client asked to quit or its name was rejected
+     */
+    protected boolean onFrame(Frame frame) {
+        FrameType type = frame.type();
+        if (type == null) {
+            return true;
+        }
+        if (type == FrameType.QUIT) {
+            return false;
+        }
+        if (clientName == null) {
+            return type != FrameType.JOIN || join(frame.body(), frame.seq());
+        }
+        switch (type) {
+            case CHAT -> publicMessage(frame.target(), frame.body());
+            case WHISPER -> sendPrivateMessage(frame.target(), frame.body());
+            case USERS -> server.sendUserList(this); // client detected a presence version gap
+            case ROOM_JOIN -> enterRoom(frame.body(), frame.seq());
+            case ROOM_LEAVE -> leaveRoom(frame.body());
+            case ROOM_LIST -> listRooms();
+            case HISTORY -> sendHistoryPage(frame.target(), frame.seq(), parseCount(frame.body()));
+            default -> {
+                // not a client request
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answers the <code>/hello</code> handshake and switches to binary framing if
+     * the client asked for it and the server allows it. Presence deltas and compression
+     * are only granted together with binary framing. The answer itself is always a text line.
+     */
+    private void negotiate(String hello) {
+        boolean wantsBinary = false;
+        boolean wantsDeltas = false;
+        boolean wantsCompression = false;
+        for (String option : hello.split(" ")) {
+            if (option.equalsIgnoreCase("framing=binary")) {
+                wantsBinary = true;
+            } else if (option.equalsIgnoreCase("presence=delta")) {
+                wantsDeltas = true;
+            } else if (option.equalsIgnoreCase(FrameCompression.OPTION)) {
+                wantsCompression = true;
+            }
+        }
+        boolean useBinary = wantsBinary && server.isBinaryFramingEnabled();
+        String reply = "/hello v=" + PROTOCOL_VERSION + " framing=" + (useBinary ? "binary" : "text");
+        if (useBinary && wantsDeltas) {
+            reply += " presence=delta";
+        }
+        boolean useCompression = useBinary && wantsCompression && server.isCompressionEnabled();
+        if (useCompression) {
+            reply += " " + FrameCompression.OPTION;
+        }
+        send(ChatMessage.notice(reply));
+        binary = useBinary; // no broadcast reaches us before join, so nothing else is encoded meanwhile
+        presenceDeltas = useBinary && wantsDeltas;
+        compress = useCompression;
+        if (useCompression) {
+            decoder.acceptCompressed();
+        }
+    }
+
+    /**
+     * Hands a <code>/login &lt;user&gt; &lt;A&gt;</code> request to the server, which answers
+     * with a challenge in the background. Older clients that send their password or
+     * nothing along are refused without looking at it.
+     */
+    private void login(String request) {
+        if (limiter != null) {
+            limiter.login();
+        }
+        pendingLogin = null;
+        String[] parts = request.trim().split(" ");
+        if (parts[0].isEmpty()) {
+            sendMessage("/login failed");
+            return;
+        }
+        if (parts.length != 2) {
+            sendMessage("/login error Please update your chat client");
+            return;
+        }
+        server.login(this, parts[0], parts[1]);
+    }
+
+    /**
+     * Called on a login thread with the login that was started for this session, just before
+     * the challenge is sent.
+     */
+    void loginStarted(Server.PendingLogin login) {
+        pendingLogin = login;
+    }
+
+    /**
+     * Hands the proof for the last challenge to the server, which checks it in the background
+     * and answers with a token. A challenge is only good for one proof.
+     */
+    private void proveLogin(String proof) {
+        Server.PendingLogin login = pendingLogin;
+        pendingLogin = null;
+        if (login == null || proof.isEmpty()) {
+            sendMessage("/login failed");
+            return;
+        }
+        server.finishLogin(this, login, proof);
+    }
+
+    /**
+     * Hands a <code>/register &lt;user&gt; &lt;verifier&gt;</code> request to the server.
+     * The user ID must be usable as a chat name. Older clients that send a password hash
+     * are refused without storing it.
+     */
+    private void register(String request) {
+        if (limiter != null) {
+            limiter.login();
+        }
+        String[] parts = request.trim().split(" ");
+        if (parts.length != 2 || parts[0].startsWith("#") || Utf8.length(parts[0]) > Frame.MAX_NAME_BYTES
+                || parts[1].isEmpty()) {
+            sendMessage("/register failed");
+            return;
+        }
+        if (!Srp.isCredential(parts[1])) {
+            sendMessage("/register error Please update your chat client");
+            return;
+        }
+        server.register(this, parts[0], parts[1]);
+    }
+
+    /**
+     * Registers the client under the user its session token was issued to (or, if
+     * tokens are not required, under the name it sent), replays the history and announces it.
+     *
+     * @param requested the session token or name sent by the client
+     * @return false if the token is invalid, or the name is empty or already taken, and the connection must be closed
+     */
+    private boolean join(String requested, long resumeAfter) {
+        String name = requested.trim();
+        String user = server.verifyToken(name); // no database round trip
+        if (user != null) {
+            name = user;
+        } else if (server.isAuthRequired()) {
+            sendMessage(SESSION_INVALID);
+            System.out.println("Rejected join without a valid session token.");
+            return false;
+        }
+        if (Utf8.length(name) > Frame.MAX_NAME_BYTES) {
+            sendMessage("Names are limited to " + Frame.MAX_NAME_BYTES + " bytes. Please reconnect with another name.");
+            System.out.println("Rejected a name longer than " + Frame.MAX_NAME_BYTES + " bytes.");
+            return false;
+        }
+        this.clientName = name;
+        if (name.isEmpty() || name.startsWith("#") || !server.join(this)) {
+            this.clientName = null;
+            ChatSession stale = user != null && resumeAfter > 0 ? server.sessions.find(name) : null;
+            if (stale != null) {
+                // The same user resumes, so the old connection is most likely dead but not
+                // noticed yet. Close it; the client retries once it is gone.
+                stale.closeWith(SESSION_REPLACED);
+                sendMessage("Closing your previous connection, please retry.");
+                System.out.println("Closing the previous connection of '" + name + "', which reconnected.");
+                return false;
+            }
+            sendMessage("The name '" + name + "' is already in use or invalid. Please reconnect with another name.");
+            System.out.println("Rejected duplicate or empty name '" + name + "'.");
+            return false;
+        }
+        System.out.println(clientName + (resumeAfter > 0 ? " has rejoined the chat." : " has joined the chat."));
+
+        // Place the user in the default room: replays its history and notifies its members
+        enterRoom(RoomManager.DEFAULT_ROOM, resumeAfter);
+        return true;
+    }
+
+    /**
+     * Joins a room, replaying its history, and makes it the current room.
+     * If the client already is a member, the room just becomes the current one.
+     *
+     * @param resumeAfter newest sequence number of the room the client already has, to
+     *                    replay only newer messages; 0 to replay the history
+     */
+    private void enterRoom(String name, long resumeAfter) {
+        if (!RoomManager.isValidName(name)) {
+            sendMessage("Invalid room name '" + name + "'. Room names start with # and contain no spaces or commas.");
+            return;
+        }
+        Room member = joinedRoom(name);
+        if (member != null) {
+            currentRoom = member;
+            sendMessage("Now talking in " + member.getName() + ".");
+            return;
+        }
+        Room existing = server.rooms.find(name);
+        boolean build = existing == null && server.rooms.log() != null;
+        boolean catchUp = server.rooms.needsLogRead(existing, resumeAfter);
+        if (!build && !catchUp) {
+            joinRoom(name, resumeAfter, null, null);
+            return;
+        }
+        // Reading the log is real work: it takes a message token, and happens on a history thread
+        if (limiter != null) {
+            limiter.historyRead();
+        }
+        readHistory(() -> new JoinRead(build ? server.rooms.newRoom(name) : null,
+                        catchUp ? server.rooms.readMissed(name, resumeAfter) : null),
+                read -> joinRoom(name, resumeAfter, read.room(), read.missed()));
+    }
+
+    /**
+     * What joining a room read from the log on a history thread.
+     *
+     * @param room   the room built from the log, or null if it existed
+     * @param missed what the resuming client missed, or null if it is not resuming or the room's history has it
+     */
+    private record JoinRead(Room room, RoomManager.Missed missed) {
+    }
+
+    /**
+     * Joins a room that exists or has been built, and replays what the client missed or the history.
+     *
+     * @param built  the room built by {@link RoomManager#newRoom(String)}, or null
+     * @param missed what was read from the log for a resuming client, or null
+     */
+    private void joinRoom(String name, long resumeAfter, Room built, RoomManager.Missed missed) {
+        long replayStart = metrics != null ? System.nanoTime() : 0;
+        Room room = server.rooms.join(name, this, built, joined -> replay(joined, resumeAfter, missed));
+        if (room == null) {
+            if (built == null) {
+                enterRoom(name, resumeAfter); // removed since we looked: build it after all
+            }
+            return;
+        }
+        if (metrics != null) {
+            metrics.replayed(System.nanoTime() - replayStart);
+        }
+        rooms.add(room);
+        currentRoom = room;
+        server.publish(room, new ChatMessage(FrameType.JOINED, clientName, room.getName(), System.currentTimeMillis(), null));
+    }
+
+    /**
+     * Queues what the client missed in a room it is joining, or the room's history, as it
+     * becomes a member: nothing broadcast to the room can be queued in between. Only queues,
+     * since the room's broadcasts wait meanwhile.
+     */
+    private void replay(Room room, long resumeAfter, RoomManager.Missed missed) {
+        MessageHistory.Snapshot history = room.history();
+        replayedFrom.put(room, history.firstSeq());
+        List<ChatMessage> replay = resumeAfter > 0 ? server.rooms.since(room, resumeAfter, missed) : null;
+        if (replay != null) {
+            sendMessages(replay);
+        } else {
+            sendHistory(history);
+        }
+    }
+
+    /**
+     * Leaves a room; plain messages then go to the default room again.
+     */
+    private void leaveRoom(String name) {
+        Room room = joinedRoom(name);
+        if (room == null) {
+            sendMessage("You are not in " + name + ".");
+            return;
+        }
+        if (room == server.rooms.defaultRoom()) {
+            sendMessage("You cannot leave " + RoomManager.DEFAULT_ROOM + ".");
+            return;
+        }
+        exitRoom(room);
+        if (currentRoom == room) {
+            currentRoom = server.rooms.defaultRoom();
+        }
+    }
+
+    /**
+     * Announces the departure (the leaving client sees it too) and removes the membership.
+     */
+    private void exitRoom(Room room) {
+        server.publish(room, new ChatMessage(FrameType.LEFT, clientName, room.getName(), System.currentTimeMillis(), null));
+        server.rooms.leave(room.getName(), this);
+        rooms.remove(room);
+        replayedFrom.remove(room);
+    }
+
+    /**
+     * Sends the list of rooms with their member counts.
+     */
+    private void listRooms() {
+        StringBuilder list = new StringBuilder();
+        for (Room room : server.rooms.list()) {
+            if (list.length() > 0) {
+                list.append(",");
+            }
+            list.append(room.getName()).append(":").append(room.size());
+        }
+        send(new ChatMessage(FrameType.ROOM_LIST, null, null, System.currentTimeMillis(), list.toString()));
+    }
+
+    /**
+     * @return the joined room with this name, or null
+     */
+    private Room joinedRoom(String name) {
+        for (Room room : rooms) {
+            if (room.getName().equalsIgnoreCase(name)) {
+                return room;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Broadcasts a public message from this client to a room it is in.
+     *
+     * @param roomName the room, or null/empty for the current room
+     */
+    private void publicMessage(String roomName, String text) {
+        Room room = roomName == null || roomName.isEmpty() ? currentRoom : joinedRoom(roomName);
+        if (room == null) {
+            sendMessage("You are not in " + roomName + ".");
+            return;
+        }
+        if (!fitsFrame(text)) {
+            sendMessage(TOO_LONG);
+            return;
+        }
+        if (metrics != null) {
+            metrics.messageReceived();
+        }
+        if (limiter != null) {
+            limiter.message();
+        }
+        server.publish(room, new ChatMessage(FrameType.CHAT, clientName, room.getName(), System.currentTimeMillis(), text));
+    }
+
+    /**
+     * @return true if <code>text</code> fits into the body of a frame whatever its sender and target;
+     *         only long texts are measured, since a char takes at most 3 bytes in UTF-8
+     */
+    private static boolean fitsFrame(String text) {
+        return text.length() <= Frame.MAX_BODY_BYTES / 3 || Utf8.length(text) <= Frame.MAX_BODY_BYTES;
+    }
+
+    /**
+     * Unregisters this session and notifies the remaining users.
+     * Must be called exactly once when the connection ends.
+     */
+    protected void onDisconnect() {
+        server.removeWorker(this);
+        for (int i = rooms.size() - 1; i >= 0; i--) { // the default room, joined first, is left last
+            Room room = rooms.get(i);
+            server.rooms.leave(room.getName(), this);
+            server.publish(room, new ChatMessage(FrameType.LEFT, clientName, room.getName(), System.currentTimeMillis(), null));
+        }
+        rooms.clear();
+        if (metrics != null) {
+            metrics.sessionClosed(outbound);
+        }
+        String stats = outboundStats();
+        System.out.println(clientName + " disconnected." + (stats != null ? " (" + stats + ")" : ""));
+    }
+
+    /**
+     * @return a summary of how well outbound writes were coalesced, or null if not applicable
+     */
+    protected String outboundStats() {
+        return null;
+    }
+
+    /**
+     * Sends the stored chat history to this client upon connection.
+     * The whole history is queued as one batch, so the writer sends it in a
+     * single write. A client that negotiated compression is sent the
+     * history's compressed batch frame, built once for everyone joining meanwhile.
+     *
+     * @param history snapshot of the recent messages stored on the server
+     */
+    public void sendHistory(MessageHistory.Snapshot history) {
+        ByteBuffer[] frames = new ByteBuffer[history.size()];
+        ByteBuffer batch = compress ? history.compressedBatch() : null;
+        int count;
+        if (batch != null) {
+            frames[0] = batch;
+            count = 1;
+        } else {
+            count = history.framesInto(frames, binary, compress);
+        }
+        if (count > 0) {
+            outbound.offerAll(frames, count);
+            onEnqueued();
+        }
+    }
+
+    /**
+     * Queues stored messages as one batch, like {@link #sendHistory(MessageHistory.Snapshot)}.
+     */
+    private void sendMessages(List<ChatMessage> messages) {
+        if (!messages.isEmpty()) {
+            queueStored(null, messages);
+        }
+    }
+
+    /**
+     * Queues stored messages, after an optional header frame, as one batch. A client that
+     * negotiated compression gets them all in one compressed {@link FrameType#BATCH} frame
+     * if that is worth it, and otherwise each message compressed on its own.
+     *
+     * @param header frame or line to send first, or null
+     */
+    private void queueStored(ByteBuffer header, List<ChatMessage> messages) {
+        int first = header != null ? 1 : 0;
+        ByteBuffer[] frames = new ByteBuffer[first + messages.size()];
+        if (header != null) {
+            frames[0] = header;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            frames[first + i] = messages.get(i).shared(binary);
+        }
+        int count = frames.length;
+        if (compress) {
+            ByteBuffer batch = FrameCompression.batch(frames, count);
+            if (batch != null) {
+                frames[0] = batch;
+                count = 1;
+            } else {
+                for (int i = 0; i < messages.size(); i++) {
+                    frames[first + i] = messages.get(i).compressed();
+                }
+            }
+        }
+        outbound.offerAll(frames, count);
+        onEnqueued();
+    }
+
+    /**
+     * Parses <code>[#room] [count] [before &lt;seq&gt;]</code> and sends the page.
+     */
+    private void historyCommand(String args) {
+        String room = null;
+        int count = DEFAULT_PAGE;
+        long before = 0;
+        String[] words = args.isEmpty() ? new String[0] : args.split("\\s+");
+        try {
+            for (int i = 0; i < words.length; i++) {
+                if (words[i].startsWith("#")) {
+                    room = words[i];
+                } else if (words[i].equalsIgnoreCase("before") && i + 1 < words.length) {
+                    before = Long.parseLong(words[++i]);
+                } else {
+                    count = Integer.parseInt(words[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            sendMessage("Usage: /history [#room] [count] [before <seq>]");
+            return;
+        }
+        sendHistoryPage(room, before, count);
+    }
+
+    private static int parseCount(String count) {
+        try {
+            return count == null || count.isEmpty() ? DEFAULT_PAGE : Integer.parseInt(count.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_PAGE;
+        }
+    }
+
+    /**
+     * Sends one page of a joined room's older messages (see {@link RoomManager#page}),
+     * preceded by a header naming the room, the cursor to continue from and the number of
+     * messages that follow (<code>/history #room cursor count</code> in text mode). Header and
+     * messages are queued as one batch, so no live message can come between them.
+     * Each request takes a message token from the rate limiter, and the page is read on a history thread.
+     *
+     * @param roomName the room, or null/empty for the current room
+     * @param before   sequence number to start before, or 0 for the messages older than those replayed on join
+     * @param count    number of messages wanted
+     */
+    private void sendHistoryPage(String roomName, long before, int count) {
+        Room room = roomName == null || roomName.isEmpty() ? currentRoom : joinedRoom(roomName);
+        if (room == null) {
+            sendMessage("You are not in " + roomName + ".");
+            return;
+        }
+        if (limiter != null) {
+            limiter.historyRead();
+        }
+        long from = before > 0 ? before : replayedFrom.getOrDefault(room, 0L);
+        readHistory(() -> server.rooms.page(room, from, count), page -> sendPage(room, page));
+    }
+
+    private void sendPage(Room room, RoomManager.Page page) {
+        List<ChatMessage> messages = page.messages();
+        ByteBuffer header = binary
+                ? Frame.encode(FrameType.HISTORY, page.cursor(), 0, null, room.getName(), Integer.toString(messages.size()))
+                : ByteBuffer.wrap(("/history " + room.getName() + " " + page.cursor() + " " + messages.size() + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        queueStored(header, messages);
+    }
+
+    /**
+     * Sends a private message to a specified user, found by O(1) name lookup
+     * here or in the directory of users on other cluster nodes.
+     *
+     * @param targetUser recipient's username
+     * @param text the private message content
+     */
+    private void sendPrivateMessage(String targetUser, String text) {
+        if (Utf8.length(targetUser) > Frame.MAX_NAME_BYTES) {
+            sendMessage("User not found.");
+            return;
+        }
+        if (!fitsFrame(text)) {
+            sendMessage(TOO_LONG);
+            return;
+        }
+        ChatSession target = server.sessions.find(targetUser);
+        long now = System.currentTimeMillis();
+        ChatMessage whisper = new ChatMessage(FrameType.WHISPER, clientName, targetUser, now, text);
+        if (metrics != null) {
+            metrics.messageReceived();
+        }
+        if (limiter != null) {
+            limiter.whisper();
+        }
+        if (target != null) {
+            target.send(whisper);
+            if (metrics != null) {
+                metrics.delivered();
+            }
+        } else if (!server.relayWhisper(whisper)) { // maybe connected to another cluster node
+            sendMessage("User " + targetUser + " not found.");
+            return;
+        }
+        send(new ChatMessage(FrameType.WHISPER_SENT, clientName, targetUser, now, text)); // sender copy
+    }
+
+    /**
+     * Returns the username of the connected client.
+     */
+    public String getClientName() {
+        return clientName;
+    }
+
+    /**
+     * @return true if this client receives presence deltas instead of full user lists
+     */
+    public boolean wantsPresenceDeltas() {
+        return presenceDeltas;
+    }
+
+    /**
+     * @return true if this client negotiated binary framing
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+}
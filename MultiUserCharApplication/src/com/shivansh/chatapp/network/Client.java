@@ -1,17 +1,31 @@
 package com.shivansh.chatapp.network;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.UnknownHostException;
-import java.net.ConnectException;
-
-import javax.swing.DefaultListModel;
-import javax.swing.JOptionPane;
-import javax.swing.JTextArea;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.shivansh.chatapp.utils.ConfigReader;
+import com.shivansh.chatapp.utils.Encryption;
+import com.shivansh.chatapp.utils.Srp;
 
 /**
  * Represents the client-side network handler for the chat application.
@@ -21,96 +35,599 @@ import com.shivansh.chatapp.utils.ConfigReader;
  *   <li>Establishing and maintaining a connection with the chat server.</li>
  *   <li>Sending messages to the server.</li>
  *   <li>Receiving messages asynchronously via {@link ClientWorker}.</li>
- *   <li>Updating the chat display area and active user list in real time.</li>
+ *   <li>Reporting messages and the active user list to a {@link ChatListener}.</li>
  * </ul>
+ * It has no user interface of its own: the chat window is one listener, and
+ * tools can drive many clients from one process without Swing.
+ * With <code>CLIENT_FRAMING=binary</code> (the default) the client opens with a
+ * <code>/hello</code> handshake and, if the server agrees, exchanges length-prefixed
+ * {@link Frame}s from then on; typed commands are turned into frame types here,
+ * so the server never has to parse them out of chat text.
+ * Otherwise it speaks the original newline-delimited text protocol.
+ * In binary mode it also asks for compression unless <code>CLIENT_COMPRESSION=false</code>;
+ * if the server agrees, long messages go out compressed, and compressed frames from the
+ * server are inflated while reading (see {@link FrameCompression}).
+ * <p>
+ * Outgoing messages are queued and written by a background writer with the
+ * same adaptive coalescing as the server (<code>FLUSH_WINDOW_MICROS</code>,
+ * <code>FLUSH_MAX_BYTES</code>, see {@link BatchWriter}), so a burst of
+ * messages costs one write instead of a write and flush each.
+ * </p>
+ * <p>
+ * When the connection drops, the client reconnects by itself (see {@link #reconnect()})
+ * and rejoins with the same session token and rooms. In binary mode it tells the server
+ * the newest message it has of each room, and only the messages it missed are sent;
+ * messages typed while it is disconnected fail with an error instead of being queued.
+ * </p>
  */
 public class Client {
 
-    private Socket socket;                 // TCP connection to the server
-    private InputStream in;                // Stream for incoming messages
-    private OutputStream out;              // Stream for outgoing messages
-    private ClientWorker worker;           // Background thread to handle incoming data
+    private volatile SocketChannel channel;    // TCP connection to the server
+    private volatile InputStream in;           // Stream for incoming messages
+    private volatile boolean binary;           // Negotiated wire format
+    private volatile boolean compress;         // Negotiated compression of long messages
+    private volatile OutboundQueue outbound;   // Messages not written yet
+    private volatile Thread writerThread;      // Background thread to write queued messages
+    private ClientWorker worker;               // Handles incoming data
+    private Thread workerThread;               // Background thread running the worker
+    private final ThreadFactory threads;       // Creates both threads; null for platform threads
+    private volatile boolean closed;
+
+    private final String serverAddress = ConfigReader.getValue("ServerAddress");
+    private final int port = Integer.parseInt(ConfigReader.getValue("PORT_NUMBER"));
+
+    /** Room plain messages go to, as far as the commands sent so far tell; older pages are fetched for it. */
+    private volatile String currentRoom = RoomManager.DEFAULT_ROOM;
+    private final int historyPageSize = Integer.parseInt(ConfigReader.getValue("HISTORY_PAGE_SIZE", "50"));
+
+    /** Token or name sent with the first <code>/join</code>, and the rooms joined since, to rejoin after a reconnect. */
+    private volatile String identity;
+    private final Map<String, String> rooms = new LinkedHashMap<>();
+    private final ReentrantLock roomsLock = new ReentrantLock();
+
+    private final long reconnectMinMillis = Math.max(10,
+            Long.parseLong(ConfigReader.getValue("RECONNECT_MIN_MILLIS", "500")));
+    private final long reconnectMaxMillis = Math.max(reconnectMinMillis,
+            Long.parseLong(ConfigReader.getValue("RECONNECT_MAX_MILLIS", "30000")));
+    private long reconnectDelay = reconnectMinMillis;
+    private long connectedAt;
+
+    /**
+     * Connects a new client to the server and starts reading from it.
+     * The reader and writer run on platform threads.
+     *
+     * @param listener Receives incoming messages and user list changes.
+     * @throws java.net.ConnectException if the server is not running,
+     *         {@link java.net.UnknownHostException} if its address is not valid,
+     *         or another IOException if there is an error connecting to the server.
+     */
+    public static Client open(ChatListener listener) throws IOException {
+        return open(listener, null);
+    }
 
     /**
-     * Creates a new client and attempts to connect to the server.
+     * Connects a new client whose reader and writer threads come from <code>threads</code>,
+     * e.g. virtual threads for a process that runs thousands of clients.
      *
-     * @param chatArea      Text area where incoming messages are displayed.
-     * @param userListModel List model that holds the active users.
+     * @param listener Receives incoming messages and user list changes.
+     * @param threads  Creates the client's threads, or null for platform threads.
      * @throws IOException if there is an error connecting to the server.
      */
-    public Client(JTextArea chatArea, DefaultListModel<String> userListModel) throws IOException {
+    public static Client open(ChatListener listener, ThreadFactory threads) throws IOException {
+        Client client = new Client(threads);
+        // The reader gets the client only once it is fully constructed
+        client.startWorker(listener);
+        return client;
+    }
+
+    private Client(ThreadFactory threads) throws IOException {
+        this.threads = threads;
+
+        // Establish a socket connection to the server
+        connect();
+    }
+
+    /**
+     * Starts the background thread that reads incoming messages.
+     */
+    private void startWorker(ChatListener listener) {
+        worker = new ClientWorker(this, listener);
+        workerThread = threads != null ? threads.newThread(worker) : new Thread(worker, "ClientWorker");
+        workerThread.start();
+
+        System.out.println("Connected to chat server at " + serverAddress + ":" + port);
+    }
+
+    /**
+     * Opens a connection, negotiates the wire format and starts its writer thread.
+     * If the user has joined before, the commands to rejoin are queued first, so
+     * nothing typed meanwhile can reach the server ahead of them.
+     */
+    private void connect() throws IOException {
+        SocketChannel opened = SocketChannel.open(new InetSocketAddress(InetAddress.getByName(serverAddress), port));
         try {
-            // Read server address and port from configuration file
-            String serverAddress = ConfigReader.getValue("ServerAddress");
-            int port = Integer.parseInt(ConfigReader.getValue("PORT_NUMBER"));
-
-            // Establish a socket connection to the server
-            socket = new Socket(serverAddress, port);
-            in = socket.getInputStream();
-            out = socket.getOutputStream();
-
-            // Start background thread to read incoming messages
-            worker = new ClientWorker(in, chatArea, userListModel);
-            worker.start();
-
-            System.out.println("Connected to chat server at " + serverAddress + ":" + port);
-
-        } catch (ConnectException e) {
-            // Server not reachable or not running
-            JOptionPane.showMessageDialog(null,
-                    "Unable to connect to the server.\nPlease make sure the server is running.",
-                    "Connection Error", JOptionPane.ERROR_MESSAGE);
-            throw e;
-        } catch (UnknownHostException e) {
-            // Host address not recognized
-            JOptionPane.showMessageDialog(null,
-                    "Invalid server address. Check your configuration.",
-                    "Host Error", JOptionPane.ERROR_MESSAGE);
+            opened.setOption(StandardSocketOptions.TCP_NODELAY, true); // writes are coalesced by BatchWriter
+            InputStream input = opened.socket().getInputStream();
+            String agreed = "binary".equalsIgnoreCase(ConfigReader.getValue("CLIENT_FRAMING", "binary"))
+                    ? negotiate(opened, input, Boolean.parseBoolean(ConfigReader.getValue("CLIENT_COMPRESSION", "true")))
+                    : "";
+            boolean useBinary = agreed.contains(" framing=binary ");
+            boolean useCompression = useBinary && agreed.contains(" " + FrameCompression.OPTION + " ");
+
+            OutboundQueue queue = new OutboundQueue(
+                    Integer.parseInt(ConfigReader.getValue("OUTBOUND_QUEUE_CAPACITY", "1024")),
+                    OutboundQueue.OverflowPolicy.DISCONNECT);
+            BatchWriter writer = new BatchWriter(
+                    1000L * Integer.parseInt(ConfigReader.getValue("FLUSH_WINDOW_MICROS", "500")),
+                    Integer.parseInt(ConfigReader.getValue("FLUSH_MAX_BYTES", "16384")));
+            if (identity != null) {
+                for (ByteBuffer command : rejoinCommands(useBinary)) {
+                    queue.offer(command);
+                }
+            }
+
+            in = input;
+            binary = useBinary;
+            compress = useCompression;
+            outbound = queue;
+            channel = opened;
+            connectedAt = System.nanoTime();
+            Runnable writing = () -> writeLoop(opened, queue, writer);
+            Thread thread = threads != null ? threads.newThread(writing)
+                    : Thread.ofPlatform().daemon().name("ClientWriter").unstarted(writing);
+            writerThread = thread;
+            thread.start();
+        } catch (IOException | RuntimeException e) {
+            opened.close();
             throw e;
+        }
+    }
+
+    /**
+     * Builds the commands that put a new connection back where the last one was:
+     * <code>/join</code> with the same token or name, then every other room joined,
+     * the current room last so plain messages go there again.
+     * <p>
+     * In binary mode each join carries the newest sequence number received in that
+     * room, and the server sends only the messages after it. Text mode has no way to
+     * say so, and the server replays the usual history instead.
+     * </p>
+     */
+    private List<ByteBuffer> rejoinCommands(boolean useBinary) {
+        List<String> joined;
+        roomsLock.lock();
+        try {
+            joined = new ArrayList<>(rooms.values());
+        } finally {
+            roomsLock.unlock();
+        }
+        String current = currentRoom;
+        joined.removeIf(room -> room.equalsIgnoreCase(current));
+        if (!current.equalsIgnoreCase(RoomManager.DEFAULT_ROOM)) {
+            joined.add(current);
+        }
+
+        List<ByteBuffer> commands = new ArrayList<>(joined.size() + 1);
+        if (useBinary) {
+            commands.add(Frame.encode(FrameType.JOIN, worker.newestSeq(RoomManager.DEFAULT_ROOM), 0, null, null, identity));
+            for (String room : joined) {
+                commands.add(Frame.encode(FrameType.ROOM_JOIN, worker.newestSeq(room), 0, null, null, room));
+            }
+        } else {
+            commands.add(ByteBuffer.wrap(("/join " + identity + "\n").getBytes(StandardCharsets.UTF_8)));
+            for (String room : joined) {
+                commands.add(ByteBuffer.wrap(("/join " + room + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Reconnects after the connection was lost, waiting longer after each failed attempt.
+     * <p>
+     * The wait doubles from <code>RECONNECT_MIN_MILLIS</code> up to <code>RECONNECT_MAX_MILLIS</code>,
+     * and a random half of it is skipped, so clients dropped by the same server restart
+     * do not all come back at the same moment. A connection that lasted less than the
+     * longest wait does not reset it, so a server that keeps turning the client away is
+     * not hammered either. Called by the {@link ClientWorker} once its stream has ended.
+     * </p>
+     *
+     * @return true once connected and rejoined; false if the client was closed meanwhile
+     */
+    boolean reconnect() {
+        closeConnection();
+        if (System.nanoTime() - connectedAt > TimeUnit.MILLISECONDS.toNanos(reconnectMaxMillis)) {
+            reconnectDelay = reconnectMinMillis;
+        }
+        while (!closed) {
+            long half = reconnectDelay / 2;
+            try {
+                Thread.sleep(half + ThreadLocalRandom.current().nextLong(half + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            reconnectDelay = Math.min(reconnectMaxMillis, reconnectDelay * 2);
+            if (closed) {
+                break;
+            }
+            try {
+                connect();
+                if (closed) {
+                    closeConnection(); // close() ran while connecting
+                    break;
+                }
+                System.out.println("Reconnected to chat server at " + serverAddress + ":" + port);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Reconnect failed: " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops the writer thread of the current connection and closes it.
+     */
+    private void closeConnection() {
+        OutboundQueue queue = outbound;
+        if (queue != null) {
+            queue.close();
+        }
+        try {
+            if (channel != null) channel.close();
         } catch (IOException e) {
-            // General I/O errors
-            JOptionPane.showMessageDialog(null,
-                    "I/O error occurred while connecting to the server.",
-                    "I/O Error", JOptionPane.ERROR_MESSAGE);
-            throw e;
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return true if the current connection uses binary framing
+     */
+    boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * @return true once {@link #close()} was called
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Logs in through the chat server, which checks the password and issues a
+     * session token. Uses a short text-mode connection of its own; the token is
+     * then sent with <code>/join</code> on every chat connection until it expires.
+     * The password is checked with {@link Srp}: neither it, its hash nor anything to test
+     * guesses against is sent, so logging in is safe from any machine even though the
+     * connection is not encrypted.
+     *
+     * @param userid   the user ID
+     * @param password the password
+     * @return the session token, or null if the user ID or password is wrong
+     * @throws IOException if the server cannot be reached or could not check the password
+     */
+    public static String login(String userid, char[] password) throws IOException {
+        try (Socket login = openCommandConnection()) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(login.getInputStream(), StandardCharsets.UTF_8));
+            Srp.ClientLogin exchange = new Srp.ClientLogin();
+            writeLine(login, "/login " + userid + " " + exchange.publicKey());
+            String reply = readReply(reader);
+            if (reply.startsWith("/challenge ")) {
+                String[] challenge = reply.substring(11).trim().split(" ");
+                String proof = challenge.length == 2 ? exchange.proof(userid, hash(password), challenge[0], challenge[1]) : null;
+                if (proof == null) {
+                    throw new IOException("Malformed challenge from the server");
+                }
+                writeLine(login, "/proof " + proof);
+                reply = readReply(reader);
+            }
+            if (reply.startsWith("/token ")) {
+                return reply.substring(7).trim();
+            }
+            if (reply.equals("/login failed")) {
+                return null;
+            }
+            throw new IOException(reply.startsWith("/login error ") ? reply.substring(13) : reply);
+        }
+    }
+
+    /**
+     * Registers a new user through the chat server, so the client needs no database access.
+     * Only a salted verifier of the password is sent ({@link Srp#newCredential}), as the
+     * database stores it. It cannot be used to log in, but it lets whoever overhears it
+     * test password guesses offline, so register over a network you trust.
+     *
+     * @param userid   the new user's ID
+     * @param password the new user's password
+     * @return true if the user was created, false if the user ID is taken or not a valid name
+     * @throws IOException if the server cannot be reached or could not store the user
+     */
+    public static boolean register(String userid, char[] password) throws IOException {
+        try (Socket register = openCommandConnection()) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(register.getInputStream(), StandardCharsets.UTF_8));
+            writeLine(register, "/register " + userid + " " + Srp.newCredential(userid, hash(password)));
+            String reply = readReply(reader);
+            if (reply.equals("/registered")) {
+                return true;
+            }
+            if (reply.equals("/register failed")) {
+                return false;
+            }
+            throw new IOException(reply.startsWith("/register error ") ? reply.substring(16) : reply);
+        }
+    }
+
+    /**
+     * Opens a short text-mode connection for a login or registration.
+     */
+    private static Socket openCommandConnection() throws IOException {
+        Socket socket = new Socket(ConfigReader.getValue("ServerAddress"),
+                Integer.parseInt(ConfigReader.getValue("PORT_NUMBER")));
+        socket.setSoTimeout(30_000);
+        return socket;
+    }
+
+    private static void writeLine(Socket socket, String line) throws IOException {
+        socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readReply(BufferedReader reader) throws IOException {
+        String reply = reader.readLine();
+        if (reply == null) {
+            throw new IOException("Connection closed by the server");
+        }
+        return reply;
+    }
+
+    private static String hash(char[] password) {
+        try {
+            return Encryption.passwordEncrypt(new String(password));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e); // required of every JRE
         }
     }
 
     /**
-     * Sends a message to the server.
+     * Asks the server for binary framing, presence deltas and optionally compression.
+     * Nothing else is sent to a client before it joins, so the next line is the server's
+     * answer. It is read byte by byte so no binary data after it is swallowed by a buffer.
+     *
+     * @return the options the server agreed to, separated and surrounded by spaces
+     */
+    private static String negotiate(SocketChannel channel, InputStream in, boolean compression) throws IOException {
+        ByteBuffer hello = ByteBuffer.wrap(("/hello v=" + ChatSession.PROTOCOL_VERSION
+                + " framing=binary presence=delta" + (compression ? " " + FrameCompression.OPTION : "")
+                + "\n").getBytes(StandardCharsets.UTF_8));
+        while (hello.hasRemaining()) {
+            channel.write(hello);
+        }
+        StringBuilder reply = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            reply.append((char) b);
+        }
+        return " " + reply.toString().trim() + " ";
+    }
+
+    /**
+     * Asks the server for the full user list, used when presence deltas were missed.
+     */
+    void requestUserList() {
+        if (binary) {
+            outbound.offer(Frame.encode(FrameType.USERS, 0, 0, null, null, null));
+        }
+    }
+
+    /**
+     * Asks the server for the next page of older messages of the current room, unless one
+     * is already on its way or the room's history has been read back to its beginning.
+     * The messages are shown above the others when they arrive. Safe to call from any thread.
+     */
+    public void requestOlderHistory() {
+        ClientWorker reader = worker;
+        if (reader == null) {
+            return;
+        }
+        String room = currentRoom;
+        long before = reader.startPageRequest(room);
+        if (before < 0) {
+            return;
+        }
+        ByteBuffer request = binary
+                ? Frame.encode(FrameType.HISTORY, before, 0, null, room, Integer.toString(historyPageSize))
+                : ByteBuffer.wrap(("/history " + room + " " + historyPageSize + (before > 0 ? " before " + before : "") + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        if (!outbound.offer(request)) {
+            reader.cancelPageRequest();
+        }
+    }
+
+    /**
+     * Writer thread execution: writes queued messages until the connection is closed.
+     * A failed write closes the connection, so the {@link ClientWorker} notices and reconnects.
+     */
+    private static void writeLoop(SocketChannel channel, OutboundQueue outbound, BatchWriter writer) {
+        try {
+            while (writer.awaitFill(outbound)) {
+                while (!writer.write(channel)) {
+                    // blocking channel: keep going until the whole batch is out
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // connection closed
+        } catch (IOException e) {
+            System.err.println("Failed to send message to server: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already broken
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * Queues a message for the server; it is written by the writer thread.
+     * In binary mode, <code>/join &lt;name&gt;</code>, <code>/w &lt;user&gt; &lt;text&gt;</code>,
+     * <code>/join #room</code>, <code>/leave #room</code>, <code>/rooms</code> and
+     * <code>quit</code> become their own frame types; everything else is a chat message.
      *
      * @param message Text message to send.
-     * @throws IOException if the output stream cannot be accessed.
+     * @throws IOException if the connection is closed (e.g. while reconnecting), too many messages are still
+     *                     unsent, or the message is too long to send (see {@link #validate(String)}).
      */
     public void sendMessage(String message) throws IOException {
-        if (out != null) {
-            out.write((message + "\n").getBytes()); // Append newline as a delimiter
-            out.flush();
+        String problem = validate(message);
+        if (problem != null) {
+            throw new IOException(problem);
+        }
+        if (channel != null) {
+            if (!channel.isOpen()) {
+                throw new IOException("Connection to server is closed");
+            }
+            boolean binary = this.binary;
+            OutboundQueue outbound = this.outbound;
+            ByteBuffer encoded;
+            if (binary) {
+                encoded = toFrame(message);
+                if (encoded == null) {
+                    return; // incomplete command, ignored like the server does in text mode
+                }
+                if (compress) {
+                    encoded = FrameCompression.compress(encoded); // long pasted text only
+                }
+            } else {
+                encoded = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8)); // Append newline as a delimiter
+            }
+            if (!outbound.offer(encoded)) {
+                throw new IOException("Too many unsent messages");
+            }
+            if (message.startsWith("/join #")) {
+                currentRoom = message.substring(6).trim();
+                rememberRoom(currentRoom, true);
+            } else if (message.startsWith("/join ")) {
+                if (identity == null) {
+                    identity = message.substring(6);
+                }
+            } else if (message.startsWith("/leave ")) {
+                String room = message.substring(7).trim();
+                rememberRoom(room, false);
+                if (room.equalsIgnoreCase(currentRoom)) {
+                    currentRoom = RoomManager.DEFAULT_ROOM;
+                }
+            }
         }
     }
 
+    /**
+     * Checks that a typed message fits into one frame or text line, whichever the wire
+     * format: its text at most {@link Frame#MAX_BODY_BYTES} and the user named by
+     * <code>/w</code> at most {@link Frame#MAX_NAME_BYTES} bytes. Longer text would make
+     * the frame encoder throw, or the server drop a text connection.
+     *
+     * @return null if the message can be sent, otherwise a notice for the user
+     */
+    public static String validate(String message) {
+        if (Utf8.length(message) > Frame.MAX_BODY_BYTES) {
+            return "Message not sent: longer than " + Frame.MAX_BODY_BYTES + " bytes.";
+        }
+        if (message.startsWith("/w ")) {
+            String[] parts = message.split(" ", 3);
+            if (parts.length >= 3 && Utf8.length(parts[1]) > Frame.MAX_NAME_BYTES) {
+                return "Message not sent: user names are at most " + Frame.MAX_NAME_BYTES + " bytes.";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds or removes a room other than the default one from the rooms to rejoin.
+     */
+    private void rememberRoom(String room, boolean joined) {
+        String key = room.toLowerCase(Locale.ROOT);
+        if (key.equals(RoomManager.DEFAULT_ROOM)) {
+            return;
+        }
+        roomsLock.lock();
+        try {
+            if (joined) {
+                rooms.put(key, room);
+            } else {
+                rooms.remove(key);
+            }
+        } finally {
+            roomsLock.unlock();
+        }
+    }
+
+    /**
+     * Encodes a typed command as a binary frame.
+     *
+     * @return the frame, or null for a private message without text
+     */
+    private static ByteBuffer toFrame(String message) {
+        if (message.equalsIgnoreCase("quit")) {
+            return Frame.encode(FrameType.QUIT, 0, 0, null, null, null);
+        }
+        if (message.startsWith("/join #")) {
+            return Frame.encode(FrameType.ROOM_JOIN, 0, 0, null, null, message.substring(6).trim());
+        }
+        if (message.startsWith("/join ")) {
+            return Frame.encode(FrameType.JOIN, 0, 0, null, null, message.substring(6));
+        }
+        if (message.startsWith("/leave ")) {
+            return Frame.encode(FrameType.ROOM_LEAVE, 0, 0, null, null, message.substring(7).trim());
+        }
+        if (message.equals("/rooms")) {
+            return Frame.encode(FrameType.ROOM_LIST, 0, 0, null, null, null);
+        }
+        if (message.startsWith("/w ")) {
+            String[] parts = message.split(" ", 3);
+            if (parts.length >= 3) {
+                return Frame.encode(FrameType.WHISPER, 0, 0, null, parts[1], parts[2]);
+            }
+            return null;
+        }
+        return Frame.encode(FrameType.CHAT, 0, 0, null, null, message);
+    }
+
     /**
      * Provides access to the input stream for advanced operations.
      *
-     * @return the InputStream connected to the server.
+     * @return the InputStream of the current connection to the server.
      */
     public InputStream getInputStream() {
         return in;
     }
 
     /**
-     * Closes the client connection and all associated resources.
+     * Closes the client connection and all associated resources, and stops reconnecting.
+     * Messages still queued get up to a second to be written.
      */
     public void close() {
+        closed = true;
         try {
-            if (worker != null && worker.isAlive()) {
-                worker.interrupt(); // Stop worker thread
+            if (outbound != null) outbound.close();
+            Thread writing = writerThread;
+            if (writing != null) {
+                writing.join(1000); // let queued messages (e.g. "quit") go out
+            }
+            if (workerThread != null && workerThread.isAlive()) {
+                workerThread.interrupt(); // Stop worker thread, also while it waits to reconnect
             }
             if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) socket.close();
+            if (channel != null) channel.close();
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
@@ -1,79 +1,383 @@
 package com.shivansh.chatapp.network;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-
-import javax.swing.DefaultListModel;
-import javax.swing.JTextArea;
-import javax.swing.JList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Client-side worker thread responsible for continuously listening to
- * incoming messages from the server and updating the client's GUI.
+ * Client-side reader, run on its own thread, responsible for continuously listening
+ * to incoming messages from the server and passing them on to a {@link ChatListener}.
  * <p>
  * Key responsibilities:
  * <ul>
- *     <li>Appends new chat messages to the chat display area.</li>
- *     <li>Updates the active user list when receiving "/users" commands.</li>
+ *     <li>Reports new chat messages.</li>
+ *     <li>Reports the active user list when receiving "/users" commands.</li>
  *     <li>Handles message history sent by the server when connecting.</li>
  * </ul>
+ * It has no user interface of its own; the chat window shows what the listener gets.
+ * Reads either text lines or binary {@link Frame}s, depending on what was
+ * negotiated by {@link Client}. Frames become {@link ChatMessage}s whose
+ * {@link ChatMessage#getText()} looks like the text protocol's line.
+ * Compressed frames and batches are unpacked by the {@link InboundDecoder}, so
+ * they are handled like any other frames.
+ * <p>
+ * Binary clients receive the user list once and then only versioned
+ * {@link FrameType#PRESENCE} deltas, which are applied to the list model one by
+ * one. If a version is skipped, the full list is requested again.
+ * </p>
+ * <p>
+ * Older messages are fetched a page at a time (see {@link FrameType#HISTORY}). The
+ * worker remembers, per room, where the next page starts: the oldest sequence number
+ * seen, or the cursor of the last page. A page arrives as a header followed by its
+ * messages, which are handed to the listener in one call, to be shown above the others.
+ * </p>
+ * <p>
+ * When the connection ends, the worker asks the {@link Client} to reconnect and goes
+ * on reading from the new connection. It keeps the newest sequence number received
+ * per room, which the client sends when rejoining so that only missed messages are
+ * replayed. It stops for good if the server says the session is no longer valid, or
+ * that the same user connected from somewhere else.
+ * </p>
  */
-public class ClientWorker extends Thread {
+public class ClientWorker implements Runnable {
+
+    /** How long a page request may go unanswered before another one is allowed. */
+    private static final long PAGE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Client client;
+    private final ChatListener listener;
+
+    /** Newest stored-message sequence number received, per room. */
+    private final ConcurrentHashMap<String, Long> newestSeq = new ConcurrentHashMap<>();
+    /** Set when the server ended the session in a way reconnecting cannot fix. */
+    private boolean sessionEnded;
 
-    private final InputStream in;
-    private final JTextArea chatArea;
-    private final DefaultListModel<String> userListModel;
+    /** Most recent stored-message sequence numbers displayed, per room, on this connection. */
+    private final Map<String, RecentSeqs> recent = new HashMap<>();
+
+    /** Sequence number the next older page of each room starts below; 0 if not known yet. */
+    private final ConcurrentHashMap<String, Long> pageCursor = new ConcurrentHashMap<>();
+    /** Rooms whose history has been paged back to its beginning. */
+    private final Set<String> exhausted = ConcurrentHashMap.newKeySet();
+    /** When the page on its way was requested, or 0 if none is. */
+    private final AtomicLong pageRequestedAt = new AtomicLong();
+
+    /** Page being received: its room, cursor, messages still to come and lines so far. */
+    private String pageRoom;
+    private long pageNext;
+    private int pageRemaining;
+    private List<ChatMessage> pageLines;
+
+    /** Presence version the user list reflects, and whether a full list was requested. */
+    private long presenceVersion;
+    private boolean resyncPending;
 
     /**
      * Constructs a ClientWorker.
      *
-     * @param in             Input stream to receive data from the server
-     * @param chatArea       The chat display area to append messages to
-     * @param userListModel  Model backing the active users JList
+     * @param client   Connection to the server; reconnected through it when lost
+     * @param listener Receives messages and user list changes
      */
-    public ClientWorker(InputStream in, JTextArea chatArea, DefaultListModel<String> userListModel) {
-        this.in = in;
-        this.chatArea = chatArea;
-        this.userListModel = userListModel;
+    public ClientWorker(Client client, ChatListener listener) {
+        this.client = client;
+        this.listener = listener;
     }
 
     /**
-     * Continuously listens for incoming messages from the server.
+     * Continuously listens for incoming messages from the server, reconnecting
+     * whenever the connection is lost, until the client is closed.
      * Updates the chat area or active user list depending on the message type.
      */
     @Override
     public void run() {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Handle active users update: message starts with "/users"
-                if (line.startsWith("/users ")) {
-                    updateUserList(line.substring(7));
+        while (true) {
+            read(client.getInputStream(), client.isBinary());
+            if (client.isClosed() || sessionEnded) {
+                return;
+            }
+            listener.connectionLost();
+            resetConnectionState();
+            if (!client.reconnect()) {
+                return;
+            }
+            listener.reconnected();
+        }
+    }
+
+    /**
+     * Reads one connection until it ends. Package-private for the benchmarks, which
+     * feed it prepared input.
+     */
+    void read(InputStream in, boolean binary) {
+        InboundDecoder decoder = new InboundDecoder(FrameCompression.MAX_BATCH_BYTES);
+        try (in) {
+            while (!sessionEnded && decoder.readFrom(in) >= 0) {
+                if (binary) {
+                    Frame frame;
+                    while ((frame = decoder.nextFrame()) != null) {
+                        handleFrame(frame);
+                    }
                 } else {
-                    // Append chat messages (including history and timestamps) to the chat area
-                    chatArea.append(line + "\n");
-                    chatArea.setCaretPosition(chatArea.getDocument().getLength()); // auto-scroll
+                    String line;
+                    while ((line = decoder.nextLine()) != null) {
+                        handleLine(line);
+                    }
                 }
             }
         } catch (IOException e) {
-            chatArea.append("Connection to server lost.\n");
+            // connection lost or closed
+        }
+    }
+
+    /**
+     * Forgets what only made sense on the previous connection: a page half received
+     * or still awaited, and the presence version, which a restarted server counts anew.
+     * Recent sequence numbers are cleared too, since a server restarted without its
+     * message log numbers messages from 1 again.
+     */
+    private void resetConnectionState() {
+        pageRemaining = 0;
+        pageLines = null;
+        pageRequestedAt.set(0);
+        presenceVersion = 0;
+        resyncPending = false;
+        recent.clear();
+    }
+
+    /**
+     * @return the newest stored-message sequence number received in a room, or 0 if none
+     */
+    long newestSeq(String room) {
+        return newestSeq.getOrDefault(key(room), 0L);
+    }
+
+    /**
+     * Stops reconnecting if the server ended the session for good.
+     */
+    private void checkSessionEnded(String notice) {
+        if (ChatSession.SESSION_INVALID.equals(notice) || ChatSession.SESSION_REPLACED.equals(notice)) {
+            sessionEnded = true;
         }
     }
 
     /**
-     * Updates the active user list in the GUI based on the server's "/users" message.
+     * Handles one text-protocol line.
+     */
+    private void handleLine(String line) {
+        if (pageRemaining > 0) {
+            addToPage(ChatMessage.notice(line));
+            return;
+        }
+        // Handle active users update: message starts with "/users"
+        if (line.startsWith("/users ")) {
+            updateUserList(line.substring(7));
+        } else if (line.startsWith("/history ")) {
+            String[] header = line.split(" "); // /history #room cursor count
+            try {
+                startPage(header[1], Long.parseLong(header[2]), Integer.parseInt(header[3]));
+            } catch (RuntimeException e) {
+                System.err.println("Ignoring malformed history header: " + line);
+            }
+        } else {
+            // Chat messages (including history and timestamps) arrive as display lines
+            checkSessionEnded(line);
+            listener.messageReceived(ChatMessage.notice(line));
+        }
+    }
+
+    /**
+     * Handles one binary frame. Stored messages already seen are skipped: a message
+     * sent while we joined a room can arrive both live and as part of the history replay,
+     * so duplicates are looked up among the recent numbers. Live messages of one room arrive
+     * in sequence order (see {@link Room#broadcast}), so the newest number is a safe point to resume from.
+     */
+    private void handleFrame(Frame frame) {
+        FrameType type = frame.type();
+        if (type == null) {
+            return; // sent by a newer server
+        }
+        long seq = frame.seq();
+        if (pageRemaining > 0) {
+            addToPage(toMessage(frame));
+            return;
+        }
+        switch (type) {
+            case USERS -> {
+                if (seq >= presenceVersion || resyncPending) {
+                    presenceVersion = seq;
+                    resyncPending = false;
+                    updateUserList(frame.body());
+                }
+            }
+            case PRESENCE -> applyPresence(seq, frame.sender(), frame.body());
+            case HISTORY -> startPage(frame.target(), seq, parseCount(frame.body()));
+            default -> {
+                if (seq != 0) {
+                    String room = key(frame.target());
+                    if (!recent.computeIfAbsent(room, r -> new RecentSeqs()).add(seq)) {
+                        return;
+                    }
+                    pageCursor.merge(room, seq, Math::min);
+                    newestSeq.merge(room, seq, Math::max);
+                } else if (type == FrameType.NOTICE) {
+                    checkSessionEnded(frame.body());
+                }
+                listener.messageReceived(toMessage(frame));
+            }
+        }
+    }
+
+    /**
+     * Applies one presence delta if it is the next version; asks for the full
+     * list once if versions were skipped.
+     */
+    private void applyPresence(long version, String user, String change) {
+        if (resyncPending || version <= presenceVersion) {
+            return; // waiting for the full list, or already reflected in it
+        }
+        if (version != presenceVersion + 1) {
+            resyncPending = true;
+            client.requestUserList();
+            return;
+        }
+        presenceVersion = version;
+        if (change.equals("+")) {
+            listener.userJoined(user);
+        } else {
+            listener.userLeft(user);
+        }
+    }
+
+    /**
+     * Claims the right to ask for the next older page of a room. Only one page is
+     * requested at a time; a request that got no answer is given up after a while.
+     *
+     * @return the sequence number to page back from (0 for "before the replayed history"),
+     *         or -1 if a page is already on its way or the room has no older messages
+     */
+    long startPageRequest(String room) {
+        String key = key(room);
+        if (exhausted.contains(key)) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        long requested = pageRequestedAt.get();
+        if (requested != 0 && now - requested < PAGE_TIMEOUT_NANOS || !pageRequestedAt.compareAndSet(requested, now)) {
+            return -1;
+        }
+        return pageCursor.getOrDefault(key, 0L);
+    }
+
+    /**
+     * Forgets a page request that could not be sent.
+     */
+    void cancelPageRequest() {
+        pageRequestedAt.set(0);
+    }
+
+    /**
+     * Starts receiving a page of older messages announced by its header.
+     */
+    private void startPage(String room, long cursor, int count) {
+        pageRoom = room;
+        pageNext = cursor;
+        pageRemaining = count;
+        pageLines = new ArrayList<>(count);
+        if (count == 0) {
+            endPage();
+        }
+    }
+
+    private void addToPage(ChatMessage message) {
+        pageLines.add(message);
+        if (--pageRemaining == 0) {
+            endPage();
+        }
+    }
+
+    /**
+     * Shows a complete page and records where the next one starts. A page that came
+     * back empty only because the server stopped scanning is followed up right away.
+     */
+    private void endPage() {
+        String key = key(pageRoom);
+        if (pageNext == 0) {
+            exhausted.add(key);
+        } else {
+            pageCursor.merge(key, pageNext, Math::min);
+        }
+        if (!pageLines.isEmpty()) {
+            listener.olderMessagesReceived(pageRoom, pageLines);
+        }
+        boolean empty = pageLines.isEmpty();
+        pageLines = null;
+        pageRequestedAt.set(0);
+        if (empty && pageNext != 0) {
+            client.requestOlderHistory();
+        }
+    }
+
+    private static int parseCount(String count) {
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the map key of a room; messages of the default room may have no target
+     */
+    private static String key(String room) {
+        return (room == null || room.isEmpty() ? RoomManager.DEFAULT_ROOM : room).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the message a frame carries
+     */
+    private static ChatMessage toMessage(Frame frame) {
+        ChatMessage message = new ChatMessage(frame.type(), frame.sender(), frame.target(), frame.timestamp(), frame.body());
+        message.assignSeq(frame.seq());
+        return message;
+    }
+
+    /**
+     * Reports the active user list based on the server's "/users" message.
      *
      * @param usersCSV Comma-separated string of active usernames
      */
     private void updateUserList(String usersCSV) {
-        userListModel.clear();
-        if (usersCSV != null && !usersCSV.isEmpty()) {
-            String[] users = usersCSV.split(",");
-            for (String user : users) {
-                userListModel.addElement(user);
+        listener.usersReplaced(usersCSV != null && !usersCSV.isEmpty() ? List.of(usersCSV.split(",")) : List.of());
+    }
+
+    /**
+     * The last few sequence numbers displayed in one room, to drop a message that arrives twice.
+     */
+    private static final class RecentSeqs {
+
+        private final long[] seqs = new long[256];
+        private int next;
+
+        /**
+         * @return false if <code>seq</code> is among the recent numbers
+         */
+        boolean add(long seq) {
+            for (long seen : seqs) {
+                if (seen == seq) {
+                    return false;
+                }
             }
+            seqs[next] = seq;
+            next = (next + 1) % seqs.length;
+            return true;
         }
     }
 }
@@ -0,0 +1,400 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Connects several server processes into one chat.
+ * <p>
+ * Every node knows every other node from <code>CLUSTER_PEERS</code> and keeps one
+ * {@link PeerLink} to each of them (a full mesh). For every pair, the node with
+ * the smaller <code>CLUSTER_NODE_ID</code> dials and keeps redialling while the other is down.
+ * What travels over the links:
+ * <ul>
+ *     <li>room messages, joins and leaves of local users are sent once to every peer,
+ *         which delivers them to its own members of that room and stores them in its history;</li>
+ *     <li>a private message for a user on another node goes only to that node;</li>
+ *     <li>presence: when a link comes up, each side sends <code>+name</code> for all its
+ *         users, then every local join and leave; the users of a node that goes away are removed.</li>
+ * </ul>
+ * A node only relays what its own clients produced and never forwards what it
+ * received from a peer. In a full mesh every node still gets every message, and each
+ * message crosses each link at most once; there are no loops to break and no ids to deduplicate.
+ * Relaying reuses the message's binary encoding, which local binary clients share
+ * already, so node-local fan-out costs one extra enqueue per peer.
+ * </p>
+ * <p>
+ * A node that starts while others are running asks the first peer it links
+ * to for its history ({@link FrameType#HISTORY}). The answer covers the rooms that
+ * exist on both nodes, which after a restart is the default room; rooms created later
+ * fill their history from live traffic. Sequence numbers stay per node: a message is
+ * known cluster-wide by the node it was first published on and the number it got there,
+ * which live frames carry as their sequence number. Catch-up frames carry it too, after a
+ * {@link FrameType#HISTORY} frame with {@link Frame#FLAG_REPLAY} naming the node they come from.
+ * </p>
+ * Peers relay chat and presence under any user name, so links are authenticated with
+ * <code>TOKEN_SECRET</code>, which all nodes share anyway to accept each other's session
+ * tokens: each side sends a random challenge and only accepts a peer that answers with
+ * an HMAC, keyed with the secret, over both challenges and the direction of the answer
+ * (see {@link PeerLink#handshake(String)}). A node refuses to start clustering without a
+ * configured secret. At most {@link #MAX_PENDING_HANDSHAKES} accepted connections may be
+ * in their handshake at once; more are closed right away.
+ */
+final class ClusterNode {
+
+    /** First word of the handshake line of a peer link. */
+    static final String PEER_HELLO = "/peer";
+
+    /** First word of the line answering the other side's handshake challenge. */
+    static final String PEER_AUTH = "/peer-auth";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final long RECONNECT_MILLIS = 2000;
+
+    /** Accepted connections that may be in their handshake at once, each holding a thread. */
+    static final int MAX_PENDING_HANDSHAKES = 16;
+
+    private final Server server;
+    private final String nodeId;
+    private final int port;
+
+    /** Configured peers by node id. */
+    private final Map<String, InetSocketAddress> peers;
+
+    /** Established links by peer node id. */
+    private final ConcurrentHashMap<String, PeerLink> links = new ConcurrentHashMap<>();
+
+    /** Maximum frames queued for one peer before the link is reset. */
+    private final int queueCapacity;
+
+    /** Key shared by all nodes, from <code>TOKEN_SECRET</code>, that authenticates links. */
+    private final SecretKeySpec linkKey;
+    private final SecureRandom random = new SecureRandom();
+
+    private final AtomicBoolean historyRequested = new AtomicBoolean();
+
+    /** Permits for accepted connections in their handshake; unauthenticated peers cannot pile up threads. */
+    private final Semaphore handshakes = new Semaphore(MAX_PENDING_HANDSHAKES);
+    private ServerSocketChannel listener;
+
+    private ClusterNode(Server server, String nodeId, int port, Map<String, InetSocketAddress> peers, int queueCapacity,
+            byte[] secret) {
+        this.server = server;
+        this.nodeId = nodeId;
+        this.port = port;
+        this.peers = peers;
+        this.queueCapacity = queueCapacity;
+        this.linkKey = new SecretKeySpec(secret, MAC_ALGORITHM);
+    }
+
+    /**
+     * Reads <code>CLUSTER_NODE_ID</code>, <code>CLUSTER_PORT</code> and
+     * <code>CLUSTER_PEERS</code> (<code>id@host:port,...</code>) from config.properties.
+     * Links are authenticated with <code>TOKEN_SECRET</code>, which must be set.
+     *
+     * @return the cluster node, or null if no node id is configured and the server runs alone
+     * @throws IllegalArgumentException if the configuration is invalid or <code>TOKEN_SECRET</code> is empty
+     */
+    static ClusterNode fromConfig(Server server) {
+        String nodeId = ConfigReader.getValue("CLUSTER_NODE_ID", "");
+        if (nodeId.isEmpty()) {
+            return null;
+        }
+        if (Utf8.length(nodeId) > Frame.MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("CLUSTER_NODE_ID is longer than " + Frame.MAX_NAME_BYTES + " bytes");
+        }
+        String secret = ConfigReader.getValue("TOKEN_SECRET", "");
+        if (secret.isEmpty()) {
+            throw new IllegalArgumentException("CLUSTER_NODE_ID is set but TOKEN_SECRET is empty;"
+                    + " cluster nodes authenticate each other with that shared secret");
+        }
+        Map<String, InetSocketAddress> peers = new LinkedHashMap<>();
+        for (String peer : ConfigReader.getValue("CLUSTER_PEERS", "").split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int at = peer.indexOf('@');
+            int colon = peer.lastIndexOf(':');
+            if (at <= 0 || colon < at) {
+                throw new IllegalArgumentException("CLUSTER_PEERS entry '" + peer + "' is not id@host:port");
+            }
+            String id = peer.substring(0, at);
+            if (!id.equals(nodeId)) { // allows the same peer list on every node
+                peers.put(id, InetSocketAddress.createUnresolved(peer.substring(at + 1, colon),
+                        Integer.parseInt(peer.substring(colon + 1))));
+            }
+        }
+        int port = Integer.parseInt(ConfigReader.getValue("CLUSTER_PORT"));
+        int capacity = Integer.parseInt(ConfigReader.getValue("CLUSTER_QUEUE_CAPACITY", "65536"));
+        return new ClusterNode(server, nodeId, port, peers, capacity, secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return true if <code>id</code> is a configured peer
+     */
+    boolean isPeer(String id) {
+        return peers.containsKey(id);
+    }
+
+    /**
+     * @return a new random challenge for a link handshake, base64url-encoded
+     */
+    String newChallenge() {
+        byte[] nonce = new byte[24];
+        random.nextBytes(nonce);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(nonce);
+    }
+
+    /**
+     * Answers a peer's challenge: HMAC of both node ids and both challenges of the handshake,
+     * keyed with the shared secret. Naming the sender and putting the receiver's challenge first
+     * keeps an answer from being reflected back, and covering the sender's own challenge ties it
+     * to this one handshake, so it is no use on any other connection.
+     *
+     * @param from          node answering
+     * @param to            node that sent the challenge
+     * @param challenge     the challenge of <code>to</code>
+     * @param fromChallenge the challenge <code>from</code> sent in the same handshake
+     */
+    String linkProof(String from, String to, String challenge, String fromChallenge) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(linkKey);
+            byte[] proof = mac.doFinal((PEER_AUTH + " " + from + " " + to + " " + challenge + " " + fromChallenge)
+                    .getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(proof);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available", e); // required of every JRE
+        }
+    }
+
+    /**
+     * @param challenge     the challenge this node sent to <code>from</code>
+     * @param fromChallenge the challenge <code>from</code> sent to this node
+     * @return true if <code>proof</code> is the answer of node <code>from</code> in this handshake
+     */
+    boolean checkLinkProof(String from, String challenge, String fromChallenge, String proof) {
+        // Constant-time comparison, so response times do not reveal how much of a forged answer was right
+        return MessageDigest.isEqual(linkProof(from, nodeId, challenge, fromChallenge).getBytes(StandardCharsets.UTF_8),
+                proof.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Binds the cluster port and starts linking to the peers, in the background.
+     */
+    void start() throws IOException {
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(port));
+        Thread.ofPlatform().name("ClusterAcceptor").daemon().start(this::acceptLoop);
+        for (Map.Entry<String, InetSocketAddress> peer : peers.entrySet()) {
+            if (nodeId.compareTo(peer.getKey()) < 0) {
+                Thread.ofPlatform().name("ClusterLink-" + peer.getKey()).daemon()
+                        .start(() -> dialLoop(peer.getKey(), peer.getValue()));
+            }
+        }
+        System.out.println("Cluster node " + nodeId + " listening for peers on port " + port
+                + ", peers: " + peers.keySet());
+    }
+
+    /**
+     * Closes the cluster port and all links.
+     */
+    void close() throws IOException {
+        if (listener != null) {
+            listener.close();
+        }
+        for (PeerLink link : links.values()) {
+            link.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (listener.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = listener.accept();
+            } catch (ClosedChannelException e) {
+                return; // shut down
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (!handshakes.tryAcquire()) {
+                System.err.println("Too many cluster handshakes in progress; refusing a connection");
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // refused anyway
+                }
+                continue;
+            }
+            Thread.ofPlatform().name("ClusterLink-accepted").daemon().start(() -> serve(channel, null));
+        }
+    }
+
+    /**
+     * Keeps a link to one peer open, redialling while the peer is unreachable.
+     */
+    private void dialLoop(String peerId, InetSocketAddress address) {
+        while (listener.isOpen()) {
+            try {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(address.getHostString(), address.getPort()));
+                serve(channel, peerId);
+            } catch (IOException e) {
+                // peer not up yet
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs one link on the calling thread: handshake, presence exchange, then frames until it closes.
+     * An accepted link gives back its handshake permit once the handshake is over.
+     */
+    private void serve(SocketChannel channel, String expectedPeer) {
+        PeerLink link;
+        try {
+            link = new PeerLink(this, channel, new OutboundQueue(queueCapacity, OutboundQueue.OverflowPolicy.DISCONNECT),
+                    server.newWriter());
+            link.handshake(expectedPeer);
+        } catch (IOException e) {
+            System.err.println("Cluster handshake failed: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already failed
+            }
+            return;
+        } finally {
+            if (expectedPeer == null) {
+                handshakes.release();
+            }
+        }
+        linkUp(link);
+        link.run();
+        linkDown(link);
+    }
+
+    private void linkUp(PeerLink link) {
+        PeerLink previous = links.put(link.getPeerId(), link);
+        if (previous != null) {
+            previous.close(); // the peer restarted before we noticed
+        }
+        System.out.println("Cluster link to " + link.getPeerId() + " established.");
+        server.announcePresence(link); // every join and leave after this is relayed over the link as well
+        if (historyRequested.compareAndSet(false, true)) {
+            link.send(Frame.encode(FrameType.HISTORY, 0, System.currentTimeMillis(), nodeId, null, null));
+        }
+    }
+
+    private void linkDown(PeerLink link) {
+        if (links.remove(link.getPeerId(), link)) {
+            System.out.println("Cluster link to " + link.getPeerId() + " lost.");
+            server.remoteNodeDown(link.getPeerId());
+        }
+    }
+
+    /**
+     * Sends a message produced by a local client to every peer.
+     */
+    void relay(ChatMessage message) {
+        for (PeerLink link : links.values()) {
+            link.send(message.shared(true));
+        }
+    }
+
+    /**
+     * Sends a message to one peer only.
+     *
+     * @return false if there is no link to that node
+     */
+    boolean sendTo(String peerId, ChatMessage message) {
+        PeerLink link = links.get(peerId);
+        if (link == null) {
+            return false;
+        }
+        link.send(message.shared(true));
+        return true;
+    }
+
+    /**
+     * Handles a frame received from a peer, on that link's reader thread. Nothing
+     * received here is relayed any further.
+     */
+    void onFrame(PeerLink link, Frame frame) {
+        FrameType type = frame.type();
+        if (type == null) {
+            return; // newer peer
+        }
+        switch (type) {
+            case CHAT, JOINED, LEFT -> {
+                boolean replay = (frame.flags() & Frame.FLAG_REPLAY) != 0;
+                String origin = replay && link.getReplayOrigin() != null ? link.getReplayOrigin() : link.getPeerId();
+                ChatMessage message = new ChatMessage(type, frame.sender(), frame.target(), frame.timestamp(), frame.body());
+                message.assignOrigin(origin.equals(nodeId) ? "" : origin, frame.seq());
+                server.deliverRemote(message, replay);
+            }
+            case WHISPER -> server.deliverRemoteWhisper(
+                    new ChatMessage(type, frame.sender(), frame.target(), frame.timestamp(), frame.body()));
+            case PRESENCE -> server.remotePresence(frame.sender(), "+".equals(frame.body()), link.getPeerId());
+            case HISTORY -> {
+                if ((frame.flags() & Frame.FLAG_REPLAY) != 0) {
+                    link.setReplayOrigin(frame.sender()); // the catch-up frames that follow come from there
+                } else {
+                    sendHistory(link);
+                }
+            }
+            default -> {
+                // not exchanged between nodes
+            }
+        }
+    }
+
+    /**
+     * Answers a history request with the stored messages of every room, oldest first per room.
+     * Each message is sent with the number it got on the node it was first published on,
+     * after a frame naming that node whenever it changes.
+     */
+    private void sendHistory(PeerLink link) {
+        String[] origin = new String[1];
+        for (Room room : server.rooms.list()) {
+            room.history().forEach(message -> {
+                String from = message.getOrigin() == null || message.getOrigin().isEmpty() ? nodeId : message.getOrigin();
+                if (!from.equals(origin[0])) {
+                    origin[0] = from;
+                    link.send(Frame.encode(FrameType.HISTORY, Frame.FLAG_REPLAY, 0, 0, from, null, null));
+                }
+                link.send(Frame.encode(message.getType(), Frame.FLAG_REPLAY, message.getOriginSeq(),
+                        message.getTimestamp(), message.getSender(), message.getTarget(), message.getBody()));
+            });
+        }
+    }
+}
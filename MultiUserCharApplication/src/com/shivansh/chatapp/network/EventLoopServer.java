@@ -0,0 +1,278 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Selector-based execution model for the chat server.
+ * <p>
+ * Instead of one thread per client, a single acceptor thread hands each new
+ * connection to one of a small, fixed number of {@link EventLoop}s. Every loop
+ * owns a {@link Selector} and multiplexes reads and writes of all its
+ * {@link NioSession}s with non-blocking channels.
+ * </p>
+ * Enabled with <code>SERVER_MODE=nio</code> in <code>config.properties</code>;
+ * the number of loops comes from <code>IO_THREADS</code>.
+ */
+class EventLoopServer {
+
+    private final Server server;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private int nextLoop;
+
+    /**
+     * Binds the listening channel and prepares the I/O loops.
+     *
+     * @param server    server that owns the shared chat state
+     * @param port      TCP port to listen on
+     * @param ioThreads number of event-loop threads
+     * @throws IOException if the port cannot be bound
+     */
+    EventLoopServer(Server server, int port, int ioThreads) throws IOException {
+        this.server = server;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port), Server.ACCEPT_BACKLOG);
+        this.loops = new EventLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(Selector.open());
+        }
+    }
+
+    /**
+     * Starts the I/O threads and accepts clients on the calling thread.
+     * Accepted channels are switched to non-blocking mode and assigned round-robin.
+     * A channel that fails during that setup, e.g. one the peer already reset,
+     * is closed and skipped; it never stops the accept loop.
+     */
+    void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            Thread t = new Thread(loops[i], "EventLoop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        while (serverChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return; // shut down
+            }
+            EventLoop loop = loops[nextLoop];
+            NioSession session;
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // writes are coalesced by BatchWriter
+                session = new NioSession(channel, loop, server);
+            } catch (IOException e) {
+                System.err.println("Dropping connection that failed during setup: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                continue;
+            }
+            nextLoop = (nextLoop + 1) % loops.length;
+
+            server.addWorker(session);
+            loop.execute(() -> loop.register(session));
+        }
+    }
+
+    /**
+     * Returns the local port the listening channel is bound to.
+     */
+    int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Stops accepting new connections.
+     */
+    void close() throws IOException {
+        serverChannel.close();
+    }
+
+    /**
+     * One I/O thread with its own selector.
+     * Other threads never touch the selector directly; they submit tasks
+     * through {@link #execute(Runnable)}, which wakes the loop up.
+     * Tasks that must run later, such as coalesced flushes, are kept in a timer
+     * queue owned by the loop thread; the selector sleeps until the earliest one is due.
+     * Neither queuing or scheduling a task nor dispatching ready keys allocates: tasks go
+     * into two array deques that are swapped under a lock, timer entries are recycled once
+     * they have fired, and keys are handed to a {@link Consumer} created once instead of
+     * being iterated from the selected-key set.
+     * A task or key handler that throws is logged and, if it belongs to a session, closes
+     * that session; it never ends the loop, which would strand every session on it.
+     */
+    static final class EventLoop implements Runnable {
+
+        /** A delayed task; put back into {@link #freeTimers} once it has fired. */
+        private static final class Timer {
+            long deadline;
+            Runnable task;
+        }
+
+        private final Selector selector;
+
+        /** Tasks queued by any thread, and the batch the loop is running; swapped under {@link #tasksLock}. */
+        private ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private ArrayDeque<Runnable> running = new ArrayDeque<>();
+        private final ReentrantLock tasksLock = new ReentrantLock();
+
+        private final Consumer<SelectionKey> dispatch = this::dispatch;
+        private final PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong(timer -> timer.deadline));
+        private final ArrayDeque<Timer> freeTimers = new ArrayDeque<>();
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Queues a task to run on the I/O thread and wakes up the selector.
+         */
+        void execute(Runnable task) {
+            tasksLock.lock();
+            try {
+                tasks.addLast(task);
+            } finally {
+                tasksLock.unlock();
+            }
+            selector.wakeup();
+        }
+
+        /**
+         * Runs a task on the loop after a delay. Must be called on the loop thread.
+         * The selector wakes up with millisecond granularity, so shorter delays round up to 1 ms.
+         */
+        void schedule(Runnable task, long delayNanos) {
+            Timer timer = freeTimers.pollFirst();
+            if (timer == null) {
+                timer = new Timer();
+            }
+            timer.deadline = System.nanoTime() + delayNanos;
+            timer.task = task;
+            timers.add(timer);
+        }
+
+        /**
+         * Registers a session for read events. Must run on the loop thread.
+         */
+        void register(NioSession session) {
+            try {
+                SelectionKey key = session.channel().register(selector, SelectionKey.OP_READ, session);
+                session.attach(key);
+            } catch (IOException e) {
+                session.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Timer next = timers.peek();
+                    try {
+                        if (next == null) {
+                            selector.select(dispatch);
+                        } else {
+                            long waitNanos = next.deadline - System.nanoTime();
+                            if (waitNanos <= 0) {
+                                selector.selectNow(dispatch);
+                            } else {
+                                selector.select(dispatch, Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999)));
+                            }
+                        }
+                    } catch (ClosedSelectorException e) {
+                        throw e; // shut down
+                    } catch (RuntimeException e) {
+                        // e.g. closing a failed session failed too; keys not handled yet are still ready next time
+                        System.err.println("Event loop dispatch failed");
+                        e.printStackTrace();
+                    }
+                    runTasks();
+                    runTimers();
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                System.err.println("Event loop stopped: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Handles one ready key during select.
+         */
+        private void dispatch(SelectionKey key) {
+            NioSession session = (NioSession) key.attachment();
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                if (key.isReadable()) {
+                    session.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    session.onWritable();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error handling client " + session.getClientName());
+                e.printStackTrace();
+                session.close();
+            }
+        }
+
+        /**
+         * Runs the tasks queued so far. Tasks queued meanwhile go into the other deque
+         * and run on the next pass; their wakeup makes sure the selector does not sleep first.
+         */
+        private void runTasks() {
+            tasksLock.lock();
+            ArrayDeque<Runnable> batch = tasks;
+            try {
+                tasks = running;
+                running = batch;
+            } finally {
+                tasksLock.unlock();
+            }
+            Runnable task;
+            while ((task = batch.pollFirst()) != null) {
+                runSafely(task);
+            }
+        }
+
+        private void runTimers() {
+            long now = System.nanoTime();
+            Timer timer;
+            while ((timer = timers.peek()) != null && timer.deadline - now <= 0) {
+                timers.poll();
+                Runnable task = timer.task;
+                timer.task = null;
+                freeTimers.addFirst(timer); // free before running, the task may schedule again
+                runSafely(task);
+            }
+        }
+
+        private static void runSafely(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Event loop task failed");
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.shivansh.chatapp.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary wire format of the chat protocol, and a reusable read-only view of one frame.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   int32   length      number of bytes that follow
+ *   uint8   version     {@link #VERSION}
+ *   uint8   type        {@link FrameType#code()}
+ *   uint8   flags       {@link #FLAG_REPLAY}, {@link #FLAG_DEFLATE}, otherwise 0
+ *   int64   seq         server-assigned sequence number (history position, or
+ *                       presence version for USERS/PRESENCE), 0 if none
+ *   int64   timestamp   epoch milliseconds, 0 if none
+ *   uint8   senderLen,  sender (UTF-8)
+ *   uint8   targetLen,  target (UTF-8)
+ *   ...     body        UTF-8, up to the end of the frame; deflated with {@link #FLAG_DEFLATE}
+ * </pre>
+ * Text is never escaped, so chat messages may contain newlines.
+ * </p>
+ * A decoded <code>Frame</code> points into the decoder's buffer: numeric fields
+ * are read in place and strings are only created for the fields that are
+ * actually requested. The view is valid until the decoder is fed again.
+ */
+public final class Frame {
+
+    /** Protocol version written into every frame. */
+    public static final byte VERSION = 1;
+
+    /** Largest accepted frame, excluding the length prefix. */
+    public static final int MAX_FRAME_BYTES = 64 * 1024;
+
+    /** Longest sender or target, in UTF-8 bytes. */
+    public static final int MAX_NAME_BYTES = 255;
+
+    /** Flag of a stored message replayed from another cluster node's history: store it, do not deliver it. */
+    public static final byte FLAG_REPLAY = 1;
+
+    /**
+     * Flag of a frame whose body is compressed (see {@link FrameCompression}). Only sent to a
+     * peer that negotiated compression; {@link InboundDecoder} inflates it, so a decoded
+     * frame never carries it.
+     */
+    public static final byte FLAG_DEFLATE = 2;
+
+    /** Fixed part: version, type, flags, seq, timestamp and the two string lengths. */
+    static final int MIN_FRAME_BYTES = 21;
+
+    /**
+     * Longest body that fits into a frame whatever its sender and target. Text received from
+     * clients is checked against it before the server puts it into a frame of its own.
+     */
+    public static final int MAX_BODY_BYTES = MAX_FRAME_BYTES - MIN_FRAME_BYTES - 2 * MAX_NAME_BYTES;
+
+    private static final int TYPE = 1;
+    static final int FLAGS = 2;
+    static final int SEQ = 3;
+    private static final int TIMESTAMP = 11;
+    private static final int SENDER_LENGTH = 19;
+
+    private byte[] buf;
+    private int offset;
+    private int length;
+
+    Frame() {
+    }
+
+    /**
+     * Points this view at a complete frame (without its length prefix).
+     *
+     * @return false if the frame is malformed
+     */
+    boolean wrap(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+        return length >= MIN_FRAME_BYTES
+                && buf[offset] == VERSION
+                && bodyOffset() <= offset + length;
+    }
+
+    /**
+     * @return the frame type, or null if this build does not know it
+     */
+    public FrameType type() {
+        return FrameType.of(buf[offset + TYPE]);
+    }
+
+    public byte flags() {
+        return buf[offset + FLAGS];
+    }
+
+    public long seq() {
+        return readLong(offset + SEQ);
+    }
+
+    public long timestamp() {
+        return readLong(offset + TIMESTAMP);
+    }
+
+    public String sender() {
+        return string(offset + SENDER_LENGTH);
+    }
+
+    public String target() {
+        return string(targetLengthOffset());
+    }
+
+    public String body() {
+        int start = bodyOffset();
+        return new String(buf, start, offset + length - start, StandardCharsets.UTF_8);
+    }
+
+    private int targetLengthOffset() {
+        return offset + SENDER_LENGTH + 1 + (buf[offset + SENDER_LENGTH] & 0xFF);
+    }
+
+    /**
+     * @return position of the body in the wrapped array
+     */
+    int bodyOffset() {
+        int targetLength = targetLengthOffset();
+        if (targetLength >= offset + length) {
+            return Integer.MAX_VALUE; // truncated header
+        }
+        return targetLength + 1 + (buf[targetLength] & 0xFF);
+    }
+
+    private String string(int lengthOffset) {
+        int len = buf[lengthOffset] & 0xFF;
+        return len == 0 ? "" : new String(buf, lengthOffset + 1, len, StandardCharsets.UTF_8);
+    }
+
+    private long readLong(int pos) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buf[pos + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Encodes one frame, including its length prefix.
+     *
+     * @param sender may be null; at most 255 bytes in UTF-8
+     * @param target may be null; at most 255 bytes in UTF-8
+     * @param body   may be null
+     * @return a buffer positioned at the start of the frame
+     * @throws IllegalArgumentException if a name or the whole frame is too long
+     */
+    public static ByteBuffer encode(FrameType type, long seq, long timestamp,
+                                    String sender, String target, String body) {
+        return encode(type, (byte) 0, seq, timestamp, sender, target, body);
+    }
+
+    /**
+     * Encodes one frame with flags, including its length prefix.
+     *
+     * @param flags e.g. {@link #FLAG_REPLAY}
+     * @see #encode(FrameType, long, long, String, String, String)
+     */
+    public static ByteBuffer encode(FrameType type, byte flags, long seq, long timestamp,
+                                    String sender, String target, String body) {
+        int senderLength = Utf8.length(sender);
+        int targetLength = Utf8.length(target);
+        if (senderLength > MAX_NAME_BYTES || targetLength > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Sender/target longer than " + MAX_NAME_BYTES + " bytes");
+        }
+        int length = MIN_FRAME_BYTES + senderLength + targetLength + Utf8.length(body);
+        if (length > MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("Frame larger than " + MAX_FRAME_BYTES + " bytes");
+        }
+        // Strings are written straight into the frame's array, without a temporary byte[] per field
+        ByteBuffer frame = ByteBuffer.allocate(4 + length);
+        byte[] bytes = frame.array();
+        frame.putInt(length)
+                .put(VERSION)
+                .put(type.code())
+                .put(flags)
+                .putLong(seq)
+                .putLong(timestamp);
+        int pos = frame.position();
+        bytes[pos++] = (byte) senderLength;
+        pos = Utf8.encode(sender, bytes, pos);
+        bytes[pos++] = (byte) targetLength;
+        pos = Utf8.encode(target, bytes, pos);
+        Utf8.encode(body, bytes, pos);
+        return frame.clear();
+    }
+}
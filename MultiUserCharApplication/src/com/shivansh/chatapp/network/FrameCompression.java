@@ -0,0 +1,230 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Optional deflate compression of binary frames, asked for with <code>compress=deflate</code>
+ * in the <code>/hello</code> handshake (see {@link ChatSession}).
+ * <p>
+ * Only the body of a frame is compressed. The header stays as it is, with
+ * {@link Frame#FLAG_DEFLATE} set, and {@link InboundDecoder} inflates the body again
+ * before anyone looks at the frame. Every frame is compressed on its own, as raw deflate
+ * primed with {@link #DICTIONARY}, a preset dictionary of common chat text that both sides
+ * know. No compression state is kept per connection, so a compressed frame is the same
+ * bytes for every recipient: a broadcast is compressed once, kept by its {@link ChatMessage}
+ * next to the plain frame and queued for every compressing client, and history replay
+ * reuses it.
+ * </p>
+ * <p>
+ * Bodies shorter than <code>COMPRESSION_MIN_BYTES</code>, and bodies that would not get
+ * smaller, are sent as they are. Short messages compress best together, so stored messages
+ * sent in one go &ndash; the history replayed on join, missed messages after a reconnect and
+ * history pages &ndash; travel as a single compressed {@link FrameType#BATCH} frame holding
+ * all of their frames.
+ * </p>
+ * Deflaters and inflaters are pooled, since each one holds native memory and a server may
+ * run thousands of session threads.
+ */
+final class FrameCompression {
+
+    /** Option sent in the handshake, by the client to ask and by the server to agree. */
+    static final String OPTION = "compress=deflate";
+
+    /** Smallest body, or batch, worth compressing. */
+    static final int MIN_BYTES = Math.max(1, Integer.parseInt(ConfigReader.getValue("COMPRESSION_MIN_BYTES", "256")));
+
+    /** Largest inflated {@link FrameType#BATCH} body a client accepts. */
+    static final int MAX_BATCH_BYTES = 8 * 1024 * 1024;
+
+    private static final int LEVEL = Integer.parseInt(ConfigReader.getValue("COMPRESSION_LEVEL", "6"));
+
+    /** Deflaters and inflaters kept for reuse; more may be in use at once. */
+    private static final int MAX_POOLED = 32;
+
+    /**
+     * Preset dictionary. Part of the protocol: both sides must use exactly these bytes, so
+     * any change needs a new <code>compress=</code> option. Deflate finds matches for the
+     * strings near the end most cheaply, so the most common ones come last.
+     */
+    static final byte[] DICTIONARY = ("""
+            https://www. https://github.com/ .com/ .html .pdf .png .jpg \
+            Exception in thread "main" java.lang.NullPointerException at java.base/ \
+            Caused by: ERROR WARN INFO DEBUG stack trace error: failed to null undefined \
+            function return public static void private final class String int new \
+            SELECT * FROM WHERE INSERT INTO UPDATE ORDER BY \
+            meeting tomorrow today yesterday morning afternoon please thanks thank you \
+            could you would you can you let me know I think I don't know what about \
+            the customer the report the server the office the team the issue the file \
+            sounds good see you later no problem of course right now as soon as possible \
+            has joined the chat. has left the chat. #general \
+            and the that this with have for not are was but you your they from will \
+            """).getBytes(StandardCharsets.UTF_8);
+
+    private static final ConcurrentLinkedQueue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+
+    private FrameCompression() {
+    }
+
+    /**
+     * Compresses the body of an encoded frame.
+     *
+     * @param frame a frame including its length prefix, positioned at its start; not changed
+     * @return a new read-only frame with a compressed body, or <code>frame</code> itself if
+     *         its body is too short or would not get smaller
+     */
+    static ByteBuffer compress(ByteBuffer frame) {
+        int length = frame.remaining();
+        if (length - 4 - Frame.MIN_FRAME_BYTES < MIN_BYTES) {
+            return frame; // the body cannot reach the threshold
+        }
+        byte[] plain = new byte[length];
+        frame.get(frame.position(), plain);
+        Frame view = new Frame();
+        if (!view.wrap(plain, 4, length - 4) || (view.flags() & Frame.FLAG_DEFLATE) != 0) {
+            return frame;
+        }
+        int bodyStart = view.bodyOffset();
+        if (length - bodyStart < MIN_BYTES) {
+            return frame;
+        }
+        byte[] out = new byte[length - 1]; // anything that does not fit is not worth sending
+        System.arraycopy(plain, 0, out, 0, bodyStart);
+        int compressed = deflate(plain, bodyStart, length - bodyStart, out, bodyStart);
+        if (compressed < 0) {
+            return frame;
+        }
+        return finish(out, bodyStart + compressed);
+    }
+
+    /**
+     * Puts encoded frames into one {@link FrameType#BATCH} frame with a compressed body.
+     *
+     * @param frames frames including their length prefixes; only read with absolute gets
+     * @param count  number of frames to take from <code>frames</code>
+     * @return the batch frame, or null if the frames are too short to be worth it, would not
+     *         get smaller, or do not fit into one frame even compressed
+     */
+    static ByteBuffer batch(ByteBuffer[] frames, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += frames[i].remaining();
+        }
+        if (total < MIN_BYTES || total > MAX_BATCH_BYTES) {
+            return null;
+        }
+        byte[] plain = new byte[(int) total];
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer frame = frames[i];
+            frame.get(frame.position(), plain, pos, frame.remaining());
+            pos += frame.remaining();
+        }
+        ByteBuffer header = Frame.encode(FrameType.BATCH, Frame.FLAG_DEFLATE, 0, 0, null, null, null);
+        int headerLength = header.remaining();
+        byte[] out = new byte[(int) Math.min(headerLength + total - 1, 4 + Frame.MAX_FRAME_BYTES)];
+        header.get(0, out, 0, headerLength);
+        int compressed = deflate(plain, 0, plain.length, out, headerLength);
+        if (compressed < 0) {
+            return null;
+        }
+        return finish(out, headerLength + compressed);
+    }
+
+    /**
+     * Marks a frame built in <code>out</code> as compressed and fixes its length prefix.
+     */
+    private static ByteBuffer finish(byte[] out, int length) {
+        out[4 + Frame.FLAGS] |= Frame.FLAG_DEFLATE;
+        if (length < out.length / 2) {
+            out = Arrays.copyOf(out, length); // the frame may be kept for long, e.g. in the history
+        }
+        ByteBuffer frame = ByteBuffer.wrap(out, 0, length);
+        frame.putInt(0, length - 4);
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Deflates <code>src</code> into the rest of <code>dst</code>.
+     *
+     * @return number of bytes written, or -1 if they did not fit
+     */
+    private static int deflate(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(LEVEL, true);
+        }
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            int written = deflater.deflate(dst, dstOffset, dst.length - dstOffset);
+            return deflater.finished() ? written : -1;
+        } finally {
+            deflater.reset();
+            release(DEFLATERS, deflater);
+        }
+    }
+
+    /**
+     * Inflates a compressed body into <code>dst</code> after the first <code>dstOffset</code>
+     * bytes, which are kept; a larger array is used if it does not fit.
+     *
+     * @param maxBytes largest accepted inflated body
+     * @return the array holding the result, wrapped up to the end of the inflated body
+     * @throws IOException if the data is corrupt, truncated or inflates to more than <code>maxBytes</code>
+     */
+    static ByteBuffer inflate(byte[] src, int offset, int length, byte[] dst, int dstOffset, int maxBytes)
+            throws IOException {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(src, offset, length);
+            int end = dstOffset;
+            while (!inflater.finished()) {
+                if (end == dst.length) {
+                    if (end - dstOffset >= maxBytes) {
+                        throw new IOException("Compressed frame inflates to more than " + maxBytes + " bytes");
+                    }
+                    long grown = Math.max(2L * (end - dstOffset), 4L * length);
+                    byte[] larger = new byte[dstOffset + (int) Math.min(maxBytes, grown)];
+                    System.arraycopy(dst, 0, larger, 0, end);
+                    dst = larger;
+                }
+                int inflated = inflater.inflate(dst, end, dst.length - end);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated compressed frame");
+                }
+                end += inflated;
+            }
+            return ByteBuffer.wrap(dst, 0, end);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame", e);
+        } finally {
+            inflater.reset();
+            release(INFLATERS, inflater);
+        }
+    }
+
+    private static <T> void release(ConcurrentLinkedQueue<T> pool, T coder) {
+        if (pool.size() < MAX_POOLED) {
+            pool.offer(coder);
+        } else if (coder instanceof Deflater deflater) {
+            deflater.end();
+        } else {
+            ((Inflater) coder).end();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.shivansh.chatapp.network;
+
+/**
+ * Message types of the binary wire protocol (see {@link Frame}).
+ * <p>
+ * Control messages travel as their own types instead of being mixed into
+ * chat text and recognised with <code>startsWith</code>.
+ * </p>
+ */
+public enum FrameType {
+
+    /** Client &rarr; server: identify as the user named in the body. */
+    JOIN(1),
+    /** Both ways: public chat message; <i>target</i> is the room (client &rarr; server: empty for the current room). */
+    CHAT(2),
+    /** Client &rarr; server: private message to <i>target</i>; server &rarr; recipient: private message from <i>sender</i>. */
+    WHISPER(3),
+    /** Server &rarr; sender: copy of a private message that was delivered to <i>target</i>. */
+    WHISPER_SENT(4),
+    /** Server &rarr; client: <i>sender</i> joined the room in <i>target</i>. */
+    JOINED(5),
+    /** Server &rarr; client: <i>sender</i> left the room in <i>target</i>. */
+    LEFT(6),
+    /** Server &rarr; client: informational text from the server. */
+    NOTICE(7),
+    /**
+     * Server &rarr; client: comma-separated list of online users in the body, <i>seq</i> is the presence version.
+     * Client &rarr; server: request the full list again (resync).
+     */
+    USERS(8),
+    /** Client &rarr; server: close the session. */
+    QUIT(9),
+    /** Server &rarr; client: <i>sender</i> came online (body <code>+</code>) or went offline (<code>-</code>); <i>seq</i> is the presence version. */
+    PRESENCE(10),
+    /** Client &rarr; server: join the room in the body, or make it the current room if already a member. */
+    ROOM_JOIN(11),
+    /** Client &rarr; server: leave the room in the body. */
+    ROOM_LEAVE(12),
+    /**
+     * Client &rarr; server: list the rooms.
+     * Server &rarr; client: comma-separated <code>#room:members</code> entries in the body.
+     */
+    ROOM_LIST(13),
+    /**
+     * Node &rarr; node (see {@link ClusterNode}): request the stored history of every room; answered
+     * with the stored messages, each flagged {@link Frame#FLAG_REPLAY} and numbered as on the node
+     * in <i>sender</i> of the last HISTORY frame flagged {@link Frame#FLAG_REPLAY} before it.
+     * Client &rarr; server: request up to <i>body</i> (a decimal number) older messages of the
+     * room in <i>target</i> (empty for the current room) with sequence numbers below <i>seq</i>
+     * (0: older than the history replayed on join).
+     * Server &rarr; client: a page follows &ndash; the next <i>body</i> frames are stored messages
+     * of the room in <i>target</i>, oldest first; <i>seq</i> is where to continue, 0 if there is nothing older.
+     */
+    HISTORY(14),
+    /**
+     * Server &rarr; client: several frames sent together, one after another in the body
+     * (each with its length prefix), which is normally compressed as a whole (see
+     * {@link FrameCompression}). The decoder hands them out as if they had arrived one
+     * by one, so no other code ever sees this type.
+     */
+    BATCH(15);
+
+    private static final FrameType[] BY_CODE = new FrameType[16];
+
+    static {
+        for (FrameType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    FrameType(int code) {
+        this.code = (byte) code;
+    }
+
+    /**
+     * @return the byte written on the wire for this type
+     */
+    public byte code() {
+        return code;
+    }
+
+    /**
+     * @return the type for a wire code, or null if the code is unknown
+     */
+    public static FrameType of(byte code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
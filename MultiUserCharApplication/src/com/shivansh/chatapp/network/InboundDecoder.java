@@ -0,0 +1,246 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the bytes received on one connection into text lines or binary {@link Frame}s.
+ * <p>
+ * Data is read straight into a reusable buffer that grows only up to the
+ * maximum frame size. The caller decides, message by message, whether to read
+ * a line or a frame, so a connection can switch from the text handshake to
+ * binary framing at an exact byte boundary.
+ * </p>
+ * <p>
+ * Compressed frames ({@link Frame#FLAG_DEFLATE}) are inflated here, so callers only ever
+ * see plain frames. A server-side decoder only inflates once the session negotiated
+ * compression ({@link #acceptCompressed()}); before that a compressed frame is a protocol
+ * violation, so a client cannot make the server inflate data it never agreed to.
+ * The frames of a {@link FrameType#BATCH} are handed out one by one,
+ * as if they had arrived separately; only decoders created to accept batches do so.
+ * </p>
+ * Not thread-safe: used by the single thread that reads the connection.
+ */
+final class InboundDecoder {
+
+    /** Longest accepted text line: a chat line must fit into a frame whatever its sender and room. */
+    static final int MAX_LINE_BYTES = Frame.MAX_BODY_BYTES;
+
+    private static final int MAX_BUFFER = Frame.MAX_FRAME_BYTES + 4;
+
+    private byte[] buf = new byte[1024];
+    private ByteBuffer window = ByteBuffer.wrap(buf);
+    private int start;
+    private int end;
+    private int scanned; // bytes after start already searched for '\n'
+
+    private final Frame frame = new Frame();
+
+    /** Largest inflated batch accepted; 0 if batches are a protocol violation. */
+    private final int maxBatchBytes;
+
+    /** Whether compressed frames are inflated; if not, they are a protocol violation. */
+    private boolean inflate;
+
+    /** Frames of the batch being handed out, and the range not handed out yet. */
+    private byte[] batch;
+    private int batchStart;
+    private int batchEnd;
+
+    /**
+     * Creates a decoder that rejects {@link FrameType#BATCH} frames, as the server does,
+     * and compressed frames until {@link #acceptCompressed()} is called.
+     */
+    InboundDecoder() {
+        this(0);
+    }
+
+    /**
+     * @param maxBatchBytes largest inflated {@link FrameType#BATCH} body accepted, or 0 to reject
+     *                      batches and, until {@link #acceptCompressed()}, compressed frames
+     */
+    InboundDecoder(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+        this.inflate = maxBatchBytes > 0;
+    }
+
+    /**
+     * Starts inflating compressed frames, once the connection negotiated compression.
+     */
+    void acceptCompressed() {
+        inflate = true;
+    }
+
+    /**
+     * Reads whatever the channel has into the buffer.
+     *
+     * @return bytes read, or -1 at end of stream
+     * @throws IOException on read failure, or if a single message exceeds the size limit
+     */
+    int readFrom(ReadableByteChannel channel) throws IOException {
+        makeRoom();
+        window.limit(buf.length).position(end);
+        int n = channel.read(window);
+        if (n > 0) {
+            end += n;
+        }
+        return n;
+    }
+
+    /**
+     * Blocking-stream variant of {@link #readFrom(ReadableByteChannel)}.
+     */
+    int readFrom(InputStream in) throws IOException {
+        makeRoom();
+        int n = in.read(buf, end, buf.length - end);
+        if (n > 0) {
+            end += n;
+        }
+        return n;
+    }
+
+    /**
+     * @return the next complete line without its line terminator, or null if none is buffered yet
+     * @throws IOException if the pending line is longer than {@link #MAX_LINE_BYTES}
+     */
+    String nextLine() throws IOException {
+        for (int i = start + scanned; i < end; i++) {
+            if (buf[i] == '\n') {
+                int len = i - start;
+                if (len > 0 && buf[i - 1] == '\r') {
+                    len--;
+                }
+                String line = new String(buf, start, len, StandardCharsets.UTF_8);
+                consume(i + 1);
+                return line;
+            }
+        }
+        scanned = end - start;
+        if (scanned > MAX_LINE_BYTES) {
+            throw new IOException("Line too long");
+        }
+        return null;
+    }
+
+    /**
+     * @return a view of the next complete frame, or null if none is buffered yet;
+     *         the view is valid until the next read
+     * @throws IOException if the frame is malformed or too large
+     */
+    Frame nextFrame() throws IOException {
+        if (batch != null) {
+            if (batchStart < batchEnd) {
+                int length = frameLength(batch, batchStart, batchEnd);
+                int frameStart = batchStart;
+                batchStart += 4 + length;
+                return take(batch, frameStart, length, false);
+            }
+            batch = null;
+        }
+        if (end - start < 4) {
+            return null;
+        }
+        int length = frameLength(buf, start, Integer.MAX_VALUE);
+        if (end - start < 4 + length) {
+            return null;
+        }
+        int frameStart = start;
+        consume(start + 4 + length); // the bytes stay where they are until the next read
+        Frame taken = take(buf, frameStart, length, true);
+        return taken != null ? taken : nextFrame();
+    }
+
+    /**
+     * Reads and checks the length prefix of a frame.
+     *
+     * @param limit end of the bytes available for the frame, or {@link Integer#MAX_VALUE} if more may still arrive
+     */
+    private static int frameLength(byte[] array, int pos, int limit) throws IOException {
+        if (limit - pos < 4) {
+            throw new IOException("Truncated frame in batch");
+        }
+        int length = ((array[pos] & 0xFF) << 24) | ((array[pos + 1] & 0xFF) << 16)
+                | ((array[pos + 2] & 0xFF) << 8) | (array[pos + 3] & 0xFF);
+        if (length < Frame.MIN_FRAME_BYTES || length > Frame.MAX_FRAME_BYTES || length > limit - pos - 4) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Points the frame view at a complete frame, inflating its body if it is compressed.
+     *
+     * @param batchAllowed false inside a batch, which cannot hold another one
+     * @return the frame, or null if it was a batch, whose frames are handed out next
+     */
+    private Frame take(byte[] array, int frameStart, int length, boolean batchAllowed) throws IOException {
+        if (!frame.wrap(array, frameStart + 4, length)) {
+            throw new IOException("Malformed frame");
+        }
+        boolean deflated = (frame.flags() & Frame.FLAG_DEFLATE) != 0;
+        if (deflated && !inflate) {
+            throw new IOException("Compressed frame without negotiated compression");
+        }
+        int bodyStart = frame.bodyOffset();
+        int frameEnd = frameStart + 4 + length;
+        if (frame.type() == FrameType.BATCH) {
+            if (!batchAllowed || maxBatchBytes == 0) {
+                throw new IOException("Unexpected batch frame");
+            }
+            ByteBuffer frames = deflated
+                    ? FrameCompression.inflate(array, bodyStart, frameEnd - bodyStart, new byte[0], 0, maxBatchBytes)
+                    : ByteBuffer.wrap(array, bodyStart, frameEnd - bodyStart);
+            batch = frames.array();
+            batchStart = frames.position();
+            batchEnd = frames.limit();
+            return null;
+        }
+        if (!deflated) {
+            return frame;
+        }
+        int headerLength = bodyStart - frameStart;
+        // Chat text often shrinks tenfold or more; guess generously rather than grow and copy
+        byte[] plain = new byte[headerLength + Math.min(Frame.MAX_FRAME_BYTES, Math.max(1024, 16 * (frameEnd - bodyStart)))];
+        System.arraycopy(array, frameStart, plain, 0, headerLength);
+        ByteBuffer inflated = FrameCompression.inflate(array, bodyStart, frameEnd - bodyStart,
+                plain, headerLength, Frame.MAX_FRAME_BYTES + 4 - headerLength);
+        plain = inflated.array();
+        plain[4 + Frame.FLAGS] &= ~Frame.FLAG_DEFLATE;
+        frame.wrap(plain, 4, inflated.limit() - 4);
+        return frame;
+    }
+
+    private void consume(int newStart) {
+        start = newStart;
+        scanned = 0;
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+    }
+
+    /**
+     * Ensures there is free space after <code>end</code>: compacts first, grows if still full.
+     */
+    private void makeRoom() throws IOException {
+        if (end < buf.length) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+            return;
+        }
+        if (buf.length >= MAX_BUFFER) {
+            throw new IOException("Message exceeds " + Frame.MAX_FRAME_BYTES + " bytes");
+        }
+        byte[] larger = new byte[Math.min(MAX_BUFFER, buf.length * 2)];
+        System.arraycopy(buf, 0, larger, 0, end);
+        buf = larger;
+        window = ByteBuffer.wrap(buf);
+    }
+}
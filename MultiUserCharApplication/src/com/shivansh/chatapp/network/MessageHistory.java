@@ -0,0 +1,341 @@
+package com.shivansh.chatapp.network;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.shivansh.chatapp.store.MessageLog;
+
+/**
+ * Fixed-capacity ring buffer of recent, already-encoded messages.
+ * <p>
+ * Appends overwrite the oldest slot in O(1). Readers take a {@link Snapshot},
+ * which only records a range of positions in the live ring &ndash; nothing is
+ * copied. Because the stored {@link ChatMessage}s are immutable and already
+ * encoded, replaying history to a joining client is just a matter of queuing
+ * read-only views of their bytes.
+ * </p>
+ * Appends are serialized by a lock; reads are lock-free. A reader that falls
+ * more than one full lap behind the writer skips the overwritten slots: like a
+ * seqlock, it checks the append count again after reading a slot, and drops the
+ * message if that slot may have been reused in the meantime. The ring has one
+ * slot more than the capacity, the one the next append writes, so a fresh
+ * snapshot never contains a slot that is being reused.
+ * <p>
+ * With a {@link MessageLog}, every appended message is also written to disk and
+ * takes its sequence number from the log, which keeps numbers in file order
+ * across all histories sharing it.
+ * </p>
+ * <p>
+ * For clients that negotiated compression, the replay is one compressed batch
+ * ({@link Snapshot#compressedBatch()}). The last one built is kept, so everyone
+ * joining until the next message arrives is sent the same bytes.
+ * </p>
+ */
+public class MessageHistory {
+
+    private final ChatMessage[] ring;
+    private final int capacity;
+    private final AtomicLong sequence;
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /** Durable copy of appended messages, or null. */
+    private final MessageLog log;
+
+    /** Message being written to the log, and its record; guarded by {@link #appendLock}. */
+    private ChatMessage appending;
+    private ByteBuffer appendingRecord;
+    private final MessageLog.RecordEncoder encoder = this::encodeAppending;
+
+    /**
+     * Total number of messages ever appended. Written only under {@link #appendLock},
+     * after the slot itself, so a reader that sees a count also sees the slots below it.
+     */
+    private volatile long appended;
+
+    /**
+     * Newest sequence number the ring may be missing a message of this history up to: that of
+     * the last message to leave it, or where a restore from the log started reading. Written
+     * under {@link #appendLock} before the slot is reused.
+     */
+    private volatile long missingUpTo;
+
+    /**
+     * Newest origin sequence number, per origin node ("" for this node), of the messages put back
+     * from the log; anything up to it was seen before the restart. Guarded by {@link #appendLock}.
+     */
+    private final Map<String, Long> restoredUpTo = new HashMap<>();
+
+    /** The compressed replay of the range of positions last asked for; null batch if not worth it. */
+    private volatile CompressedReplay replay;
+
+    private record CompressedReplay(long from, long to, ByteBuffer batch) {
+    }
+
+    /**
+     * @param capacity number of most recent messages to keep
+     */
+    public MessageHistory(int capacity) {
+        this(capacity, new AtomicLong());
+    }
+
+    /**
+     * @param capacity number of most recent messages to keep
+     * @param sequence source of sequence numbers, may be shared by several histories
+     */
+    public MessageHistory(int capacity, AtomicLong sequence) {
+        this(capacity, sequence, null);
+    }
+
+    /**
+     * @param capacity number of most recent messages to keep
+     * @param sequence source of sequence numbers when there is no log
+     * @param log      durable log that numbers and stores every appended message, or null
+     */
+    public MessageHistory(int capacity, AtomicLong sequence, MessageLog log) {
+        this.capacity = Math.max(1, capacity);
+        this.ring = new ChatMessage[this.capacity + 1];
+        this.sequence = sequence;
+        this.log = log;
+    }
+
+    /**
+     * Stores a message, evicting the oldest one once the ring is full.
+     * The message is given the next sequence number; it is taken under the
+     * append lock, so sequence order always matches history order. With a log,
+     * the message's binary frame is what gets stored; it is encoded once and
+     * shared with binary clients as usual. It is encoded before the log is asked
+     * for a number, so that the log's lock, shared by all rooms, is only held for
+     * numbering and copying the record.
+     */
+    public void append(ChatMessage message) {
+        appendLock.lock();
+        try {
+            if (log != null) {
+                appending = message;
+                appendingRecord = message.prepareStored();
+                log.append(encoder);
+                appending = null;
+                appendingRecord = null;
+            } else {
+                message.assignSeq(sequence.incrementAndGet());
+            }
+            store(message);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private ByteBuffer encodeAppending(long seq) {
+        appending.assignSeq(seq); // also writes the number into the record
+        return appendingRecord; // the log copies it with absolute gets
+    }
+
+    /**
+     * Appends a message caught up from another node's history, unless it is already known:
+     * held in the ring, or not newer than what was restored from the log from the same origin.
+     * Messages are recognized by their origin node and the number they got there (see
+     * {@link ChatMessage#isSameAs}), not by time, so messages sent in the same millisecond or
+     * stamped by a node with a skewed clock are all kept. Messages arrive in their origin's
+     * order, so each origin's messages stay in order in the history.
+     *
+     * @return true if the message was appended
+     */
+    boolean record(ChatMessage message) {
+        appendLock.lock();
+        try {
+            String origin = message.getOrigin() != null ? message.getOrigin() : "";
+            if (message.getOriginSeq() <= restoredUpTo.getOrDefault(origin, 0L)) {
+                return false;
+            }
+            long end = appended;
+            for (long position = Math.max(0, end - capacity); position < end; position++) {
+                if (ring[(int) (position % ring.length)].isSameAs(message)) {
+                    return false;
+                }
+            }
+            append(message);
+            return true;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Puts back a message read from the log, keeping its sequence number and without logging it again.
+     * Only used while the history is not yet shared.
+     */
+    void restore(ChatMessage message) {
+        appendLock.lock();
+        try {
+            store(message);
+            restoredUpTo.merge(message.getOrigin() != null ? message.getOrigin() : "", message.getOriginSeq(), Math::max);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void store(ChatMessage message) {
+        long position = appended;
+        if (position >= capacity) { // the oldest message leaves every new snapshot
+            missingUpTo = Math.max(missingUpTo, ring[(int) ((position - capacity) % ring.length)].getSeq());
+        }
+        ring[(int) (position % ring.length)] = message;
+        appended = position + 1;
+    }
+
+    /**
+     * Records that the history may lack messages numbered up to <code>seq</code>, e.g. those
+     * older than a restore from the log reached back. Only used while the history is not yet shared.
+     */
+    void missingUpTo(long seq) {
+        missingUpTo = Math.max(missingUpTo, seq);
+    }
+
+    /**
+     * @return the most recently appended message, or null if none
+     */
+    public ChatMessage newest() {
+        long end = appended;
+        return end == 0 ? null : ring[(int) ((end - 1) % ring.length)];
+    }
+
+    /**
+     * @return the maximum number of messages kept
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Captures the range of messages currently held, oldest first.
+     */
+    public Snapshot snapshot() {
+        long end = appended;
+        return new Snapshot(Math.max(0, end - capacity), end);
+    }
+
+    /**
+     * A view of the messages that were in the ring when it was taken.
+     */
+    public final class Snapshot {
+
+        private final long from;
+        private final long to;
+
+        private Snapshot(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return number of messages in the snapshot
+         */
+        public int size() {
+            return (int) (to - from);
+        }
+
+        /**
+         * @return sequence number of the oldest message still in the snapshot, or 0 if there is none
+         */
+        public long firstSeq() {
+            for (long position = Math.max(from, appended - capacity); position < to; position++) {
+                ChatMessage message = read(position);
+                if (message != null) {
+                    return message.getSeq();
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Tells whether the history holds every one of its messages numbered above <code>seq</code>.
+         * Asked after the snapshot has been visited, the answer also covers messages that were
+         * skipped because their slot was reused meanwhile.
+         *
+         * @return true if no message newer than <code>seq</code> has left the ring, or was left out
+         *         when the history was restored from the log
+         */
+        public boolean holdsAllAfter(long seq) {
+            return missingUpTo <= seq;
+        }
+
+        /**
+         * Copies references to the encoded frames of the snapshot into <code>dst</code>,
+         * oldest first. Messages overwritten since the snapshot was taken are skipped.
+         *
+         * @param binary wire format of the receiving client, see {@link ChatMessage#shared(boolean)}
+         * @return number of frames written to <code>dst</code>
+         */
+        public int framesInto(ByteBuffer[] dst, boolean binary) {
+            return framesInto(dst, binary, false);
+        }
+
+        /**
+         * Like {@link #framesInto(ByteBuffer[], boolean)}, with each message compressed on its
+         * own if <code>compressed</code> (see {@link ChatMessage#compressed()}).
+         */
+        int framesInto(ByteBuffer[] dst, boolean binary, boolean compressed) {
+            int n = 0;
+            for (long position = from; position < to && n < dst.length; position++) {
+                ChatMessage message = read(position);
+                if (message == null) {
+                    continue; // slot reused by a newer message while we were reading
+                }
+                dst[n++] = compressed ? message.compressed() : message.shared(binary);
+            }
+            return n;
+        }
+
+        /**
+         * Returns the whole snapshot as one compressed {@link FrameType#BATCH} frame, see
+         * {@link FrameCompression#batch(ByteBuffer[], int)}. It is built once per range of
+         * messages and shared by every snapshot of the same range.
+         *
+         * @return the batch, or null if the snapshot is not worth compressing this way or
+         *         messages were overwritten since it was taken
+         */
+        public ByteBuffer compressedBatch() {
+            CompressedReplay cached = replay;
+            if (cached != null && cached.from() == from && cached.to() == to) {
+                return cached.batch();
+            }
+            ByteBuffer[] frames = new ByteBuffer[size()];
+            if (framesInto(frames, true) < frames.length) {
+                return null;
+            }
+            ByteBuffer batch = FrameCompression.batch(frames, frames.length);
+            replay = new CompressedReplay(from, to, batch); // a racing second build is identical
+            return batch;
+        }
+
+        /**
+         * Visits the messages of the snapshot, oldest first.
+         */
+        public void forEach(Consumer<ChatMessage> action) {
+            for (long position = from; position < to; position++) {
+                ChatMessage message = read(position);
+                if (message != null) {
+                    action.accept(message);
+                }
+            }
+        }
+
+        /**
+         * Reads the message at a position of the snapshot, or returns null if its slot may
+         * already hold a newer one. {@link #store} writes a slot before it counts the message,
+         * so the slot of <code>position</code> is only safe while fewer than
+         * <code>position + capacity + 1</code> (the ring's length) messages have been counted,
+         * checked after the read.
+         */
+        private ChatMessage read(long position) {
+            ChatMessage message = ring[(int) (position % ring.length)];
+            VarHandle.loadLoadFence(); // the count below must not be read before the slot
+            return appended < position + ring.length ? message : null;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A client connection served by an {@link EventLoopServer.EventLoop}.
+ * <p>
+ * Reads are non-blocking: incoming bytes accumulate in the session's decoder
+ * and every complete line or frame is handed to the shared protocol in {@link ChatSession}. Messages
+ * queued from any thread are flushed by the owning loop, which registers
+ * interest in <code>OP_WRITE</code> only while the socket buffer is full.
+ * </p>
+ * A failure while handling the connection, even an unexpected runtime exception, closes
+ * this session only.
+ * All methods except {@link #sendMessage(String)} and {@link #disconnect()} run on the loop thread.
+ */
+class NioSession extends ChatSession {
+
+    private final SocketChannel channel;
+    private final EventLoopServer.EventLoop loop;
+    private SelectionKey key;
+
+    /** Batch taken from the outbound queue, possibly only partially written. */
+    private final BatchWriter writer;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /** A scheduled flush is waiting for the coalescing window to end. */
+    private volatile boolean flushDeferred;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /** Created once: a flush is scheduled for nearly every message a quiet client receives. */
+    private final Runnable flushTask = this::flushSoon;
+    private final Runnable resumeTask = this::resumeReading;
+
+    NioSession(SocketChannel channel, EventLoopServer.EventLoop loop, Server server) throws IOException {
+        super(server);
+        this.channel = channel;
+        this.loop = loop;
+        this.writer = server.newWriter();
+        System.out.println("New client connected from " + channel.getRemoteAddress());
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+        if (!outbound.isEmpty()) {
+            flush(); // messages broadcast between accept and registration
+        }
+    }
+
+    /**
+     * Reads whatever is available and dispatches every complete line or frame.
+     */
+    void onReadable() {
+        try {
+            int n = decoder.readFrom(channel);
+            received(n);
+            if (n < 0 || !processInput()) {
+                close();
+                return;
+            }
+            long pause = readPauseNanos();
+            if (pause > 0) {
+                // Over its rate limits, or waiting for the history: leave the client's bytes in the socket until then
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                if (pause < Long.MAX_VALUE) {
+                    loop.schedule(resumeTask, pause);
+                } // else onHistoryRead() resumes
+            }
+        } catch (IOException e) {
+            System.err.println("Connection error with client " + clientName);
+            close();
+        } catch (RuntimeException e) {
+            System.err.println("Error handling client " + clientName);
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Handles the input held back by a rate-limit pause or a read of stored history and,
+     * once the pause is over, reads again.
+     */
+    private void resumeReading() {
+        if (closed.get()) {
+            return;
+        }
+        try {
+            if (!processInput()) {
+                close();
+                return;
+            }
+            long pause = readPauseNanos();
+            if (pause > 0) {
+                if (pause < Long.MAX_VALUE) {
+                    loop.schedule(resumeTask, pause);
+                }
+            } else if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            System.err.println("Connection error with client " + clientName);
+            close();
+        } catch (RuntimeException e) {
+            System.err.println("Error handling client " + clientName);
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Handles the rest of the input on the loop once the history has been read.
+     */
+    @Override
+    protected void onHistoryRead() {
+        loop.execute(resumeTask);
+    }
+
+    /**
+     * Continues a partial write once the socket has room again.
+     */
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * Schedules a flush on the loop. Always flushes from a loop task: callers may be
+     * iterating the session list, and a failed write closes (and unregisters) this session.
+     * While a flush is held back by the coalescing window, it is brought forward
+     * once enough bytes are pending.
+     */
+    @Override
+    protected void onEnqueued() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(flushTask);
+        } else if (flushDeferred && outbound.pendingBytes() >= server.getFlushMaxBytes()) {
+            flushDeferred = false;
+            loop.execute(flushTask);
+        }
+    }
+
+    /**
+     * Flushes now if the connection was quiet, otherwise at the end of the coalescing window.
+     */
+    private void flushSoon() {
+        if (!flushScheduled.get()) {
+            return; // already flushed early
+        }
+        long delay = writer.delayBeforeWrite(outbound.pendingBytes());
+        if (delay > 0) {
+            flushDeferred = true;
+            loop.schedule(flushTask, delay);
+            return;
+        }
+        flushDeferred = false;
+        flushScheduled.set(false);
+        flush();
+    }
+
+    /**
+     * Closes the session from its own loop.
+     */
+    @Override
+    protected void disconnect() {
+        loop.execute(this::close);
+    }
+
+    /**
+     * Writes queued messages, in batches, until the queue is empty or the socket is full.
+     */
+    private void flush() {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            while (writer.fill(outbound) && writer.hasPending()) {
+                if (!writer.write(channel)) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            System.err.println("Failed to send message to " + clientName);
+            close();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to send message to " + clientName);
+            e.printStackTrace();
+            close(); // returns at once if already closing
+        }
+    }
+
+    /**
+     * Closes the channel and unregisters the session. Runs at most once.
+     * Messages that do not fit into the socket buffer right away are dropped.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        outbound.close();
+        flush(); // best effort for anything still queued, e.g. a rejection notice
+        writer.release();
+        try {
+            if (key != null) {
+                key.cancel();
+            }
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        onDisconnect();
+    }
+
+    @Override
+    protected String outboundStats() {
+        return writer.stats();
+    }
+}
@@ -0,0 +1,256 @@
+package com.shivansh.chatapp.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of encoded messages waiting to be written to one client.
+ * <p>
+ * Broadcasters only {@link #offer(ByteBuffer)} and return immediately; the
+ * session's own writer drains the queue. A client that reads slower than the
+ * room talks therefore fills its own queue instead of stalling everyone else.
+ * What happens when the queue is full is decided by an {@link OverflowPolicy}.
+ * </p>
+ * Guarded by a {@link ReentrantLock} so that waiting writers on virtual threads
+ * never pin their carrier.
+ */
+public class OutboundQueue {
+
+    /**
+     * Reaction to a message arriving while the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the oldest queued message to make room (client sees a gap, stays current). */
+        DROP_OLDEST,
+        /** Discard the arriving message (client keeps the backlog it already has). */
+        DROP_NEWEST,
+        /** Refuse the message; the session disconnects the client. */
+        DISCONNECT
+    }
+
+    private final ArrayDeque<ByteBuffer> queue;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private boolean closed;
+    private long dropped;
+    private long bytes;
+
+    /**
+     * @param capacity maximum number of queued messages
+     * @param policy   what to do when a message arrives at a full queue
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.queue = new ArrayDeque<>(Math.min(this.capacity, 64));
+    }
+
+    /**
+     * Queues a message without blocking.
+     *
+     * @param message encoded message
+     * @return false only if the queue is full under {@link OverflowPolicy#DISCONNECT}
+     *         and the caller must drop the client; true otherwise (including drops)
+     */
+    public boolean offer(ByteBuffer message) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                    case DROP_OLDEST -> bytes -= queue.pollFirst().remaining();
+                    case DROP_NEWEST -> {
+                        dropped++;
+                        return true;
+                    }
+                    case DISCONNECT -> {
+                        return false;
+                    }
+                }
+                dropped++;
+            }
+            queue.addLast(message);
+            bytes += message.remaining();
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a batch as one unit, e.g. the history replayed to a joining client.
+     * The batch is accepted even if it exceeds the capacity: it is bounded by the
+     * history size and sent once per connection.
+     *
+     * @param batch encoded messages, oldest first
+     * @param count number of leading entries of <code>batch</code> to queue
+     */
+    public void offerAll(ByteBuffer[] batch, int count) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                queue.addLast(batch[i]);
+                bytes += batch[i].remaining();
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves as many queued messages as fit into <code>dst</code> without waiting.
+     *
+     * @return number of messages moved, or -1 once the queue is closed and empty
+     */
+    public int drainTo(ByteBuffer[] dst, int offset) {
+        lock.lock();
+        try {
+            return drainLocked(dst, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #drainTo(ByteBuffer[], int)}, but first waits until at least
+     * one message is queued or the queue is closed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int awaitDrainTo(ByteBuffer[] dst, int offset) throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            return drainLocked(dst, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #awaitDrainTo(ByteBuffer[], int)}, but waits at most <code>timeoutNanos</code>.
+     *
+     * @return number of messages moved (0 on timeout), or -1 once the queue is closed and empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int awaitDrainTo(ByteBuffer[] dst, int offset, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (queue.isEmpty() && !closed && remaining > 0) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return drainLocked(dst, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int drainLocked(ByteBuffer[] dst, int offset) {
+        if (queue.isEmpty()) {
+            return closed ? -1 : 0;
+        }
+        int n = 0;
+        while (offset + n < dst.length && !queue.isEmpty()) {
+            ByteBuffer message = queue.pollFirst();
+            bytes -= message.remaining();
+            dst[offset + n++] = message;
+        }
+        return n;
+    }
+
+    /**
+     * Removes the next message without waiting.
+     *
+     * @return the next message, or null if the queue is empty
+     */
+    public ByteBuffer poll() {
+        lock.lock();
+        try {
+            ByteBuffer message = queue.pollFirst();
+            if (message != null) {
+                bytes -= message.remaining();
+            }
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if no message is waiting
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return queue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of messages currently waiting
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return total size in bytes of the messages currently waiting
+     */
+    public long pendingBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of messages discarded by the drop policies so far
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting messages and wakes up a waiting writer. Messages already
+     * queued can still be drained, after which {@link #drainTo(ByteBuffer[], int)} returns -1.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
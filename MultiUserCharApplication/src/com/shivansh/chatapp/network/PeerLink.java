@@ -0,0 +1,223 @@
+package com.shivansh.chatapp.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One TCP connection between two cluster nodes (see {@link ClusterNode}).
+ * <p>
+ * Both ends open the link with a text handshake,
+ * <code>/peer v=1 node=&lt;id&gt; challenge=&lt;nonce&gt;</code>, prove that they know the
+ * cluster secret with <code>/peer-auth &lt;proof&gt;</code> &ndash; the dialling side first,
+ * the accepting side only once that proof checked out &ndash; and then exchange binary
+ * {@link Frame}s in both directions. A handshake that takes longer than
+ * {@link #HANDSHAKE_TIMEOUT_MILLIS} fails. Like a client session, the link has:
+ * <ul>
+ *     <li>a reader, running on the thread that connected or accepted the link,
+ *         which hands every frame to {@link ClusterNode#onFrame(PeerLink, Frame)};</li>
+ *     <li>a writer thread that drains an {@link OutboundQueue} with a
+ *         {@link BatchWriter}, so relaying never blocks the broadcasting thread
+ *         and a burst of chat crosses the link in a few large writes.</li>
+ * </ul>
+ * A peer that cannot keep up overflows the queue and the link is closed; the
+ * nodes then reconnect and exchange presence again.
+ */
+final class PeerLink {
+
+    /** Longest time the other end may take for the whole handshake. */
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+
+    private final ClusterNode node;
+    private final SocketChannel channel;
+    private final OutboundQueue outbound;
+    private final BatchWriter writer;
+    private final InboundDecoder decoder = new InboundDecoder();
+
+    /** Node id of the other end, known once the handshake succeeded. */
+    private String peerId;
+
+    /** Node the history catch-up frames now being received were first published on; reader thread only. */
+    private String replayOrigin;
+
+    /**
+     * @param channel a connected channel, in blocking mode
+     */
+    PeerLink(ClusterNode node, SocketChannel channel, OutboundQueue outbound, BatchWriter writer) throws IOException {
+        this.node = node;
+        this.channel = channel;
+        this.outbound = outbound;
+        this.writer = writer;
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // writes are coalesced by BatchWriter
+    }
+
+    /**
+     * Announces this node with a challenge, reads the peer's announcement, and then
+     * exchanges proofs of the shared secret over both challenges (see {@link ClusterNode#linkProof}).
+     * The side that dialled sends its proof first; an accepting node checks it before
+     * answering, so a connection that cannot prove itself never gets to see a proof.
+     * Nothing else is sent or accepted before both proofs were exchanged.
+     *
+     * @param expectedPeer node id the link was opened to, or null for an accepted link
+     * @return the peer's node id
+     * @throws IOException if the peer does not answer with a valid, expected node id and a valid
+     *                     proof within {@link #HANDSHAKE_TIMEOUT_MILLIS}
+     */
+    String handshake(String expectedPeer) throws IOException {
+        long deadline = System.nanoTime() + HANDSHAKE_TIMEOUT_MILLIS * 1_000_000L;
+        String challenge = node.newChallenge();
+        writeLine(ClusterNode.PEER_HELLO + " v=" + ChatSession.PROTOCOL_VERSION + " node=" + node.getNodeId()
+                + " challenge=" + challenge);
+        String line = readLine(deadline);
+        String id = null;
+        String peerChallenge = null;
+        if (line.startsWith(ClusterNode.PEER_HELLO + " ")) {
+            for (String option : line.split(" ")) {
+                if (option.startsWith("node=")) {
+                    id = option.substring(5);
+                } else if (option.startsWith("challenge=")) {
+                    peerChallenge = option.substring(10);
+                }
+            }
+        }
+        if (id == null || peerChallenge == null || peerChallenge.isEmpty() || !node.isPeer(id)
+                || (expectedPeer != null && !expectedPeer.equals(id))) {
+            throw new IOException("Unexpected peer handshake '" + line + "'");
+        }
+        String proof = ClusterNode.PEER_AUTH + " " + node.linkProof(node.getNodeId(), id, peerChallenge, challenge);
+        boolean dialled = expectedPeer != null;
+        if (dialled) {
+            writeLine(proof);
+        }
+        line = readLine(deadline);
+        if (!line.startsWith(ClusterNode.PEER_AUTH + " ")
+                || !node.checkLinkProof(id, challenge, peerChallenge, line.substring(ClusterNode.PEER_AUTH.length() + 1))) {
+            throw new IOException("Peer claiming to be node " + id + " failed authentication");
+        }
+        if (!dialled) {
+            writeLine(proof);
+        }
+        channel.socket().setSoTimeout(0);
+        this.peerId = id;
+        return id;
+    }
+
+    private void writeLine(String line) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    /**
+     * Reads a handshake line through the channel's socket, whose reads, unlike those of the
+     * channel itself, honour a timeout.
+     *
+     * @param deadline <code>System.nanoTime()</code> by which the line must have arrived
+     */
+    private String readLine(long deadline) throws IOException {
+        Socket socket = channel.socket();
+        InputStream in = socket.getInputStream();
+        String line;
+        while ((line = decoder.nextLine()) == null) {
+            long left = (deadline - System.nanoTime()) / 1_000_000;
+            if (left <= 0) {
+                throw new SocketTimeoutException("Peer handshake timed out");
+            }
+            socket.setSoTimeout((int) left);
+            if (decoder.readFrom(in) < 0) {
+                throw new IOException("Peer closed the link during the handshake");
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return node id of the other end
+     */
+    String getPeerId() {
+        return peerId;
+    }
+
+    /**
+     * @return node the catch-up frames now being received come from, or null if the peer has not said
+     */
+    String getReplayOrigin() {
+        return replayOrigin;
+    }
+
+    void setReplayOrigin(String origin) {
+        this.replayOrigin = origin;
+    }
+
+    /**
+     * Starts the writer thread and reads frames on the calling thread until the link closes.
+     * Frames that followed the handshake line in the same read are already buffered.
+     */
+    void run() {
+        Thread.ofPlatform().name("ClusterLink-" + peerId + "-writer").daemon().start(this::writeLoop);
+        try {
+            do {
+                Frame frame;
+                while ((frame = decoder.nextFrame()) != null) {
+                    node.onFrame(this, frame);
+                }
+            } while (decoder.readFrom(channel) >= 0);
+        } catch (ClosedChannelException e) {
+            // closed by the writer or by the cluster
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                System.err.println("Cluster link to " + peerId + " failed: " + e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Queues an encoded frame for the peer. Never blocks; closes the link if the peer fell too far behind.
+     */
+    void send(ByteBuffer frame) {
+        if (!outbound.offer(frame)) {
+            System.err.println("Cluster link to " + peerId + " overflowed, reconnecting");
+            close();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (writer.awaitFill(outbound)) {
+                while (!writer.write(channel)) {
+                    // blocking channel: keep going until the whole batch is out
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // link closed while writing
+        } catch (IOException e) {
+            System.err.println("Failed to write to cluster node " + peerId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer.release();
+            close();
+        }
+    }
+
+    /**
+     * Closes the link; the reader then returns from {@link #run()}.
+     */
+    void close() {
+        outbound.close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
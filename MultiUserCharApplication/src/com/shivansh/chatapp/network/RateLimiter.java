@@ -0,0 +1,220 @@
+package com.shivansh.chatapp.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Flood protection for one client: token buckets for public messages (which reads of
+ * stored history, logins and registrations draw from too), private messages and bytes received.
+ * <p>
+ * Each bucket holds up to a burst of tokens and refills at a steady rate; a message or
+ * a byte read takes one. When a bucket runs dry the session is <i>throttled</i>: it
+ * stops handling what it has buffered and stops reading from the socket until the bucket
+ * has a token again (see {@link ChatSession#readPauseNanos()}). Meanwhile the client's
+ * data piles up in the kernel's buffers and TCP flow control slows the sender down, so
+ * a flood never costs the server more than the configured rates, and nothing is dropped.
+ * </p>
+ * <p>
+ * Running dry counts as a violation, at most once per second of throttling; a client with
+ * more than <code>RATE_LIMIT_MAX_VIOLATIONS</code> of them is disconnected. A minute without
+ * a violation forgives the earlier ones, so an occasional long paste does no harm, while a
+ * client that floods without pause is gone within seconds.
+ * </p>
+ * A bucket is one number &ndash; the time at which it will be full again &ndash; so taking
+ * tokens is a clock read and a little arithmetic, without a timer or a lock. Used only by
+ * the thread reading the session's connection.
+ */
+final class RateLimiter {
+
+    private static final long VIOLATION_SPACING_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long FORGIVE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /** Public message tokens taken by a login or registration. */
+    private static final int LOGIN_TOKENS = 10;
+
+    /**
+     * Limits shared by all sessions of a server.
+     *
+     * @param messagesPerSecond public messages allowed per second
+     * @param messageBurst      public messages allowed at once after a quiet spell
+     * @param whispersPerSecond private messages allowed per second
+     * @param whisperBurst      private messages allowed at once after a quiet spell
+     * @param bytesPerSecond    bytes received allowed per second
+     * @param byteBurst         bytes received allowed at once after a quiet spell
+     * @param maxViolations     violations tolerated before the client is disconnected
+     */
+    record Limits(double messagesPerSecond, int messageBurst, double whispersPerSecond, int whisperBurst,
+                  double bytesPerSecond, int byteBurst, int maxViolations) {
+
+        /**
+         * @return the configured limits, or null if <code>RATE_LIMIT_ENABLED=false</code>
+         */
+        static Limits fromConfig() {
+            if (!Boolean.parseBoolean(ConfigReader.getValue("RATE_LIMIT_ENABLED", "true"))) {
+                return null;
+            }
+            return new Limits(
+                    Double.parseDouble(ConfigReader.getValue("RATE_LIMIT_MESSAGES_PER_SECOND", "10")),
+                    Integer.parseInt(ConfigReader.getValue("RATE_LIMIT_MESSAGE_BURST", "30")),
+                    Double.parseDouble(ConfigReader.getValue("RATE_LIMIT_WHISPERS_PER_SECOND", "5")),
+                    Integer.parseInt(ConfigReader.getValue("RATE_LIMIT_WHISPER_BURST", "20")),
+                    1024 * Double.parseDouble(ConfigReader.getValue("RATE_LIMIT_KB_PER_SECOND", "64")),
+                    // A whole frame must fit into one burst
+                    Math.max(Frame.MAX_FRAME_BYTES + 4,
+                            1024 * Integer.parseInt(ConfigReader.getValue("RATE_LIMIT_KB_BURST", "256"))),
+                    Integer.parseInt(ConfigReader.getValue("RATE_LIMIT_MAX_VIOLATIONS", "10")));
+        }
+    }
+
+    private final Bucket messages;
+    private final Bucket whispers;
+    private final Bucket bytes;
+    private final int maxViolations;
+    /** Counts violations for the server's metrics, or null. */
+    private final LongAdder violationCount;
+
+    /** Set when a bucket ran dry; cleared by the session once reading may go on. */
+    private boolean throttled;
+    /** When all buckets that ran dry have a token again. */
+    private long resumeAt;
+
+    private int violations;
+    private long lastViolation;
+
+    /**
+     * @param violationCount counter to add violations to, or null
+     */
+    RateLimiter(Limits limits, LongAdder violationCount) {
+        this.messages = new Bucket(limits.messagesPerSecond(), limits.messageBurst());
+        this.whispers = new Bucket(limits.whispersPerSecond(), limits.whisperBurst());
+        this.bytes = new Bucket(limits.bytesPerSecond(), limits.byteBurst());
+        this.maxViolations = limits.maxViolations();
+        this.violationCount = violationCount;
+        this.lastViolation = System.nanoTime() - FORGIVE_NANOS;
+    }
+
+    /**
+     * Takes a token for a public message.
+     */
+    void message() {
+        take(messages, 1);
+    }
+
+    /**
+     * Takes a public message token for reading stored messages: a history page, or the log
+     * scan that creates a room. Reading messages back costs the server at least as much as
+     * sending them did.
+     */
+    void historyRead() {
+        take(messages, 1);
+    }
+
+    /**
+     * Takes {@value #LOGIN_TOKENS} public message tokens for a login or registration: each
+     * costs a database query and modular exponentiations on a login thread, and repeated
+     * attempts are password guesses.
+     */
+    void login() {
+        take(messages, LOGIN_TOKENS);
+    }
+
+    /**
+     * Takes a token for a private message.
+     */
+    void whisper() {
+        take(whispers, 1);
+    }
+
+    /**
+     * Takes tokens for bytes just read from the socket.
+     */
+    void bytesRead(int n) {
+        if (n > 0) {
+            take(bytes, n);
+        }
+    }
+
+    private void take(Bucket bucket, long tokens) {
+        long now = System.nanoTime();
+        long wait = bucket.take(now, tokens);
+        if (wait > 0) {
+            throttle(now, wait);
+        }
+    }
+
+    private void throttle(long now, long wait) {
+        if (now - lastViolation >= VIOLATION_SPACING_NANOS) {
+            if (now - lastViolation >= FORGIVE_NANOS) {
+                violations = 0;
+            }
+            violations++;
+            lastViolation = now;
+            if (violationCount != null) {
+                violationCount.increment();
+            }
+        }
+        resumeAt = throttled ? Math.max(resumeAt, now + wait) : now + wait;
+        throttled = true;
+    }
+
+    /**
+     * @return true if a bucket ran dry and the session has not resumed since
+     */
+    boolean isThrottled() {
+        return throttled;
+    }
+
+    /**
+     * @return nanoseconds until the session may resume, at most 0 if it may now
+     */
+    long pauseNanos() {
+        return resumeAt - System.nanoTime();
+    }
+
+    /**
+     * Ends a throttling pause that is over.
+     */
+    void resume() {
+        throttled = false;
+    }
+
+    /**
+     * @return true once the client ran dry more often than tolerated
+     */
+    boolean isFlooding() {
+        return violations > maxViolations;
+    }
+
+    /**
+     * Token bucket kept as the time at which it will be full again ("theoretical
+     * arrival time"): each token moves that time one refill interval further, and the
+     * bucket is empty once it lies a whole burst ahead of now.
+     */
+    private static final class Bucket {
+
+        /** Time to refill one token; at least 1 ns, so very high rates are capped at 1e9/s. */
+        private final long interval;
+        /** Time to refill the whole burst. */
+        private final long capacity;
+        private long fullAt = Long.MIN_VALUE; // nanoTime may be negative
+
+        Bucket(double perSecond, int burst) {
+            this.interval = Math.max(1, Math.round(1e9 / Math.max(perSecond, 1e-3)));
+            this.capacity = interval * Math.max(1, burst);
+        }
+
+        /**
+         * Takes tokens, running into debt if there are fewer.
+         *
+         * @return 0 if at least one token is left, otherwise nanoseconds until there is one
+         */
+        long take(long now, long tokens) {
+            long full = Math.max(fullAt, now) + tokens * interval;
+            fullAt = full;
+            long ahead = full - now;
+            return ahead <= capacity - interval ? 0 : ahead - (capacity - interval);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.shivansh.chatapp.network;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A chat room: its own broadcast group and its own history.
+ * <p>
+ * Members are kept in a {@link SessionRegistry} and messages in a
+ * {@link MessageHistory}, each with its own lock, so traffic in one room never
+ * contends with traffic in another &ndash; except for the brief numbering and copy
+ * into a {@link com.shivansh.chatapp.store.MessageLog}, when there is one, since all
+ * rooms share its sequence. A session can be a member of any number of rooms.
+ * </p>
+ * <p>
+ * Messages are queued for members in the order of their sequence numbers, so a client
+ * that resumes after the newest number it received has not skipped an older one. That
+ * includes the replay a member is sent on joining: it is queued before any message
+ * broadcast after it.
+ * </p>
+ * Rooms are created and removed by {@link RoomManager}.
+ */
+public class Room {
+
+    private final String name;
+    private final SessionRegistry members = new SessionRegistry();
+    private final MessageHistory history;
+
+    /** Keeps numbering and queuing of a broadcast together, so members receive a room's messages in sequence order. */
+    private final ReentrantLock broadcastLock = new ReentrantLock();
+
+    Room(String name, MessageHistory history) {
+        this.name = name;
+        this.history = history;
+    }
+
+    /**
+     * @return the room name, including the leading <code>#</code>
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Stores a message in the room's history and queues it for every member.
+     * The message is encoded at most once per wire format, however many members there are.
+     * Queuing never blocks, so holding the room's broadcast lock meanwhile only orders
+     * concurrent senders of the same room, which the history's append lock did already.
+     *
+     * @return number of members it was queued for
+     */
+    public int broadcast(ChatMessage message) {
+        broadcastLock.lock();
+        try {
+            history.append(message); // assigns its sequence number
+            ChatSession[] recipients = members.snapshot();
+            for (ChatSession member : recipients) {
+                member.send(message);
+            }
+            return recipients.length;
+        } finally {
+            broadcastLock.unlock();
+        }
+    }
+
+    /**
+     * Stores a message in the room's history without sending it, e.g. history caught up from another cluster node.
+     * Messages the room already has are skipped (see {@link MessageHistory#record}), so a node that
+     * restored its history from disk, or received live messages first, only fills in what it missed.
+     */
+    public void record(ChatMessage message) {
+        history.record(message);
+    }
+
+    /**
+     * Puts back a message from the durable log while the room is being created.
+     */
+    void restore(ChatMessage message) {
+        history.restore(message);
+    }
+
+    /**
+     * Records, while the room is being created, that messages up to <code>seq</code> were not restored.
+     */
+    void missingUpTo(long seq) {
+        history.missingUpTo(seq);
+    }
+
+    /**
+     * @return a snapshot of the room's recent messages
+     */
+    public MessageHistory.Snapshot history() {
+        return history.snapshot();
+    }
+
+    /**
+     * @return true if the session is currently a member
+     */
+    public boolean isMember(ChatSession session) {
+        return members.find(session.getClientName()) == session;
+    }
+
+    /**
+     * @return number of members
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Adds a member, and has its replay queued before any later broadcast can reach it.
+     *
+     * @param replay queues the stored messages for the new member; runs under the broadcast
+     *               lock, so it must only queue, never block
+     * @return false if the session already is a member
+     */
+    boolean add(ChatSession session, Consumer<Room> replay) {
+        broadcastLock.lock();
+        try {
+            if (!members.register(session, session.getClientName())) {
+                return false;
+            }
+            replay.accept(this);
+            return true;
+        } finally {
+            broadcastLock.unlock();
+        }
+    }
+
+    boolean remove(ChatSession session) {
+        return members.remove(session);
+    }
+}
@@ -0,0 +1,397 @@
+package com.shivansh.chatapp.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.shivansh.chatapp.store.MessageLog;
+
+/**
+ * The set of chat rooms on this server.
+ * <p>
+ * Rooms are created when the first member joins and removed, together with
+ * their history, when the last member leaves &ndash; except {@link #DEFAULT_ROOM},
+ * which every user joins automatically and which always exists. Membership
+ * changes run inside {@link ConcurrentHashMap#compute}, so a room can never be
+ * removed while someone is joining it. Names are compared case-insensitively.
+ * A new room is built, and its history refilled from the log, before it is put
+ * into the map, never inside <code>compute</code>, whose lock also covers other rooms:
+ * the joining session {@link #newRoom builds it} on a history thread and passes it to
+ * {@link #join(String, ChatSession, Room, Consumer)}.
+ * </p>
+ * All rooms draw their sequence numbers from one counter, so a number
+ * identifies a message server-wide. With a {@link MessageLog} that counter is the
+ * log itself: every room message is persisted, and a room that is created &ndash;
+ * including the default room after a restart &ndash; refills its history from the log.
+ * <p>
+ * Older messages are fetched on demand, one {@link #page(Room, long, int) page} at a
+ * time, from the log or, without one, from the room's in-memory history. A client that
+ * reconnects gets only what it {@link #since(Room, long, Missed) missed} instead of the
+ * history; the part its in-memory history no longer holds is {@link #readMissed read from
+ * the log} before it rejoins.
+ * </p>
+ */
+public class RoomManager {
+
+    /** Room every user is placed in on join, and which cannot be left. */
+    public static final String DEFAULT_ROOM = "#general";
+
+    /** Longest accepted room name, including the <code>#</code>. */
+    static final int MAX_ROOM_NAME = 32;
+
+    private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+    /** Log records scanned per new room to refill its history. */
+    private static final int RESTORE_SCAN = 10_000;
+
+    /** Most messages returned by one {@link #page(Room, long, int)} request. */
+    static final int MAX_PAGE = 500;
+
+    /** Log records scanned at most per page request; a short page then ends with a cursor to continue from. */
+    private static final int PAGE_SCAN = 20_000;
+
+    /** Log records read at once while scanning backwards for a page. */
+    private static final int PAGE_SCAN_STEP = 1_000;
+
+    /** Log records scanned at most to find what a resuming client missed. */
+    private static final int RESUME_SCAN = 20_000;
+
+    /**
+     * One page of a room's older messages.
+     *
+     * @param messages the messages, oldest first
+     * @param cursor   sequence number to ask for messages before next time, or 0 if there are no older messages
+     */
+    public record Page(List<ChatMessage> messages, long cursor) {
+    }
+
+    /**
+     * What a resuming client missed in a room, as far as it was read from the log.
+     *
+     * @param messages the room's messages newer than the client's number, oldest first; null if
+     *                 the client is too far behind, or its number is not from this log
+     * @param readTo   newest sequence number read; newer messages come from the room's history
+     */
+    public record Missed(List<ChatMessage> messages, long readTo) {
+    }
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final int historySize;
+    private final MessageLog log;
+    private final Room defaultRoom;
+
+    /**
+     * @param historySize number of recent messages kept per room
+     */
+    public RoomManager(int historySize) {
+        this(historySize, null);
+    }
+
+    /**
+     * @param historySize number of recent messages kept per room
+     * @param log         durable message log, or null to keep history in memory only
+     */
+    public RoomManager(int historySize, MessageLog log) {
+        this.historySize = historySize;
+        this.log = log;
+        this.defaultRoom = newRoom(DEFAULT_ROOM);
+        rooms.put(key(DEFAULT_ROOM), defaultRoom);
+    }
+
+    /**
+     * @return the room all users are in
+     */
+    public Room defaultRoom() {
+        return defaultRoom;
+    }
+
+    /**
+     * @return true if <code>name</code> is a valid room name: <code>#</code> followed by
+     *         up to 31 characters, without spaces or commas
+     */
+    public static boolean isValidName(String name) {
+        if (name == null || name.length() < 2 || name.length() > MAX_ROOM_NAME || name.charAt(0) != '#') {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isWhitespace(c) || c == ',' || c == '#') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a session to a room that exists, or that can be created without reading the log.
+     *
+     * @param name a valid room name
+     * @return the room, or null if the session already is a member or the room must first
+     *         be built with {@link #newRoom(String)}
+     */
+    public Room join(String name, ChatSession session) {
+        return join(name, session, null, room -> {
+        });
+    }
+
+    /**
+     * Adds a session to a room, creating the room if needed. Without a log a new room is
+     * created right here; with one it has to be built beforehand, since that reads the log.
+     *
+     * @param name    a valid room name
+     * @param created the room built by {@link #newRoom(String)}, to put in if there still is
+     *                none by that name, or null; if someone else created one meanwhile, theirs
+     *                is joined and this one dropped
+     * @param replay  queues the room's stored messages for the session as it becomes a member,
+     *                ahead of any live message (see {@link Room#add})
+     * @return the room, or null if the session already is a member, or the room does not
+     *         exist and <code>created</code> is null (with a log, or if it was removed just now)
+     */
+    public Room join(String name, ChatSession session, Room created, Consumer<Room> replay) {
+        Room[] joined = new Room[1];
+        Room fresh = created == null && log == null && find(name) == null ? newRoom(name) : created;
+        rooms.compute(key(name), (k, existing) -> {
+            Room target = existing != null ? existing : fresh;
+            if (target != null && target.add(session, replay)) {
+                joined[0] = target;
+            }
+            return target;
+        });
+        return joined[0];
+    }
+
+    /**
+     * Removes a session from a room; the room is dropped once it is empty.
+     *
+     * @return the room left, or null if the session was not a member
+     */
+    public Room leave(String name, ChatSession session) {
+        Room[] left = new Room[1];
+        rooms.computeIfPresent(key(name), (k, room) -> {
+            if (room.remove(session)) {
+                left[0] = room;
+            }
+            return room.size() == 0 && room != defaultRoom ? null : room;
+        });
+        return left[0];
+    }
+
+    /**
+     * Looks up a room by name, ignoring case.
+     *
+     * @return the room, or null if it does not exist
+     */
+    public Room find(String name) {
+        return rooms.get(key(name));
+    }
+
+    /**
+     * @return a point-in-time list of rooms, sorted by name
+     */
+    public List<Room> list() {
+        List<Room> list = new ArrayList<>(rooms.values());
+        list.sort(Comparator.comparing(Room::getName, String.CASE_INSENSITIVE_ORDER));
+        return list;
+    }
+
+    /**
+     * Builds a room that does not exist yet, refilling its history from the end of the log
+     * if there is one. That scan is the slow part of creating a room, so sessions call this
+     * on a history thread and then {@link #join(String, ChatSession, Room, Consumer) join} the result.
+     */
+    Room newRoom(String name) {
+        Room room = new Room(name, new MessageHistory(historySize, sequence, log));
+        if (log != null) {
+            restore(room);
+        }
+        return room;
+    }
+
+    /**
+     * Refills a new room's history with its most recent messages from the end of the log.
+     */
+    private void restore(Room room) {
+        ArrayDeque<ChatMessage> recent = new ArrayDeque<>();
+        long last = log.lastSeq();
+        long first = Math.max(1, last - RESTORE_SCAN + 1);
+        long[] dropped = {first - 1};
+        log.read(first, last + 1, (seq, payload) -> {
+            ChatMessage message = ChatMessage.decode(seq, payload);
+            if (isIn(message, room.getName())) {
+                recent.addLast(message);
+                if (recent.size() > historySize) {
+                    dropped[0] = recent.removeFirst().getSeq();
+                }
+            }
+        });
+        for (ChatMessage message : recent) {
+            room.restore(message);
+        }
+        room.missingUpTo(dropped[0]);
+    }
+
+    /**
+     * Returns up to <code>limit</code> of a room's messages older than <code>before</code>,
+     * the newest of them first in line.
+     * <p>
+     * With a log, it is read backwards from <code>before</code>, skipping other rooms'
+     * records, for at most {@link #PAGE_SCAN} records; the cost of a request therefore
+     * does not depend on how long the log is. Without a log, only the room's
+     * in-memory history can be paged.
+     * </p>
+     *
+     * @param before sequence number to start before; 0 or less for the messages
+     *               older than those the room's history currently holds
+     * @param limit  most messages wanted, capped at {@link #MAX_PAGE}
+     */
+    public Page page(Room room, long before, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE));
+        if (before <= 0) {
+            before = room.history().firstSeq();
+            if (before == 0) { // nothing recent: start at the end of the log
+                if (log == null) {
+                    return new Page(List.of(), 0);
+                }
+                before = log.lastSeq() + 1;
+            }
+        }
+        return log != null ? pageFromLog(room, before, limit) : pageFromHistory(room, before, limit);
+    }
+
+    private Page pageFromLog(Room room, long before, int limit) {
+        ArrayDeque<ChatMessage> page = new ArrayDeque<>(limit);
+        ArrayList<ChatMessage> step = new ArrayList<>();
+        long first = log.firstSeq();
+        long to = Math.min(before, log.lastSeq() + 1);
+        long scanned = 0;
+        while (page.size() < limit && to > first && scanned < PAGE_SCAN) {
+            long from = Math.max(first, to - PAGE_SCAN_STEP);
+            log.read(from, to, (seq, payload) -> {
+                ChatMessage message = ChatMessage.decode(seq, payload);
+                if (isIn(message, room.getName())) {
+                    step.add(message);
+                }
+            });
+            for (int i = step.size() - 1; i >= 0 && page.size() < limit; i--) {
+                page.addFirst(step.get(i));
+            }
+            step.clear();
+            scanned += to - from;
+            to = from;
+        }
+        long cursor;
+        if (page.size() == limit) {
+            cursor = page.peekFirst().getSeq();
+        } else {
+            cursor = to > first ? to : 0; // scan limit reached, or start of the log
+        }
+        return new Page(new ArrayList<>(page), cursor);
+    }
+
+    private static Page pageFromHistory(Room room, long before, int limit) {
+        ArrayDeque<ChatMessage> page = new ArrayDeque<>(limit);
+        boolean[] more = new boolean[1];
+        room.history().forEach(message -> {
+            if (message.getSeq() < before) {
+                page.addLast(message);
+                if (page.size() > limit) {
+                    page.removeFirst();
+                    more[0] = true;
+                }
+            }
+        });
+        return new Page(new ArrayList<>(page), more[0] ? page.peekFirst().getSeq() : 0);
+    }
+
+    /**
+     * Tells whether a client that rejoins a room after <code>after</code> missed messages that
+     * are no longer in the room's in-memory history, or the room has yet to be built; the log
+     * must then be {@link #readMissed read} first.
+     *
+     * @param room the room, or null if it does not exist
+     */
+    public boolean needsLogRead(Room room, long after) {
+        return log != null && after > 0 && (room == null || !room.history().holdsAllAfter(after));
+    }
+
+    /**
+     * Reads the messages of a room newer than <code>after</code> from the log, up to its end,
+     * for a client that lost its connection and is about to rejoin. The rest comes from the
+     * room's history once the client has joined (see {@link #since}). Reads at most
+     * {@link #RESUME_SCAN} records, so call it on a history thread.
+     *
+     * @param name  the room
+     * @param after newest sequence number the client had received in this room
+     */
+    public Missed readMissed(String name, long after) {
+        long last = log.lastSeq();
+        if (after > last || last - after > RESUME_SCAN) {
+            return new Missed(null, last);
+        }
+        List<ChatMessage> missed = new ArrayList<>();
+        log.read(after + 1, last + 1, (seq, payload) -> {
+            ChatMessage message = ChatMessage.decode(seq, payload);
+            if (isIn(message, name)) {
+                missed.add(message);
+            }
+        });
+        return new Missed(missed, last);
+    }
+
+    /**
+     * Returns a room's messages newer than <code>after</code>, for a client that lost its
+     * connection and has just rejoined: what was {@link #readMissed read from the log}
+     * beforehand, followed by the newer messages of the room's in-memory history. Reads nothing
+     * from the log.
+     *
+     * @param after newest sequence number the client had received in this room
+     * @param read  what was read from the log, or null if {@link #needsLogRead} said the history reaches back far enough
+     * @return the missed messages, oldest first; or null if the client is too far behind
+     *         (more than {@link #RESUME_SCAN} log records), its number comes from an earlier
+     *         run of a server without a log, or messages it missed left the history before it
+     *         joined &ndash; the room's history is then replayed as on a first join
+     */
+    public List<ChatMessage> since(Room room, long after, Missed read) {
+        if (read == null) {
+            if (after > (log != null ? log.lastSeq() : sequence.get())) {
+                return null;
+            }
+            read = new Missed(List.of(), after);
+        } else if (read.messages() == null) {
+            return null;
+        }
+        long readTo = read.readTo();
+        MessageHistory.Snapshot history = room.history();
+        List<ChatMessage> missed = new ArrayList<>(read.messages());
+        history.forEach(message -> {
+            if (message.getSeq() > readTo) {
+                missed.add(message);
+            }
+        });
+        // Without a log, messages that left the history are gone; the client gets what is left
+        return log == null || history.holdsAllAfter(readTo) ? missed : null;
+    }
+
+    /**
+     * @return true if <code>message</code> was sent to <code>room</code>; the default room's messages may have no target
+     */
+    private static boolean isIn(ChatMessage message, String room) {
+        return message != null && room.equalsIgnoreCase(
+                message.getTarget() == null || message.getTarget().isEmpty() ? DEFAULT_ROOM : message.getTarget());
+    }
+
+    /**
+     * @return the durable message log, or null
+     */
+    public MessageLog log() {
+        return log;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
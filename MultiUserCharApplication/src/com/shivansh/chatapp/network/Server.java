@@ -1,13 +1,30 @@
 package com.shivansh.chatapp.network;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.shivansh.chatapp.dao.MessageDAO;
+import com.shivansh.chatapp.dao.UserDAO;
+import com.shivansh.chatapp.dto.MessageDTO;
+import com.shivansh.chatapp.store.MessageLog;
 import com.shivansh.chatapp.utils.ConfigReader;
+import com.shivansh.chatapp.utils.SessionTokens;
+import com.shivansh.chatapp.utils.Srp;
 
 /**
  * Main server class for the multi-user chat application.
@@ -15,119 +32,740 @@ import com.shivansh.chatapp.utils.ConfigReader;
  * Responsibilities:
  * <ul>
  *   <li>Listens for incoming client connections.</li>
- *   <li>Maintains a list of connected clients (workers).</li>
- *   <li>Stores a rolling history of the last 100 messages for new clients.</li>
- *   <li>Provides broadcast utilities to send messages and user list updates to all clients.</li>
+ *   <li>Maintains a list of connected clients (sessions).</li>
+ *   <li>Keeps chat rooms (see {@link RoomManager}), each with its own members and a rolling
+ *       history of the last <code>HISTORY_SIZE</code> messages for new members.</li>
+ *   <li>Publishes the list of online users to all clients.</li>
  * </ul>
+ * Three execution models are available through <code>SERVER_MODE</code> in
+ * <code>config.properties</code>:
+ * <ul>
+ *   <li><code>thread</code> (default) &ndash; one blocking {@link ServerWorker} per client on a platform thread.</li>
+ *   <li><code>virtual</code> &ndash; the same blocking {@link ServerWorker}, but on a virtual thread,
+ *       so idle connections cost a few hundred bytes of heap instead of a native stack.</li>
+ *   <li><code>nio</code> &ndash; non-blocking {@link NioSession}s multiplexed by
+ *       <code>IO_THREADS</code> selector loops (see {@link EventLoopServer}).</li>
+ * </ul>
+ * Clients speak either the original newline-delimited text protocol or, after
+ * a <code>/hello</code> handshake, length-prefixed binary {@link Frame}s (see
+ * {@link ChatSession}). <code>BINARY_FRAMING=false</code> makes the server answer every
+ * handshake with text framing, and <code>COMPRESSION_ENABLED=false</code> turns down
+ * requests for compressed frames.
+ * <p>
+ * With <code>CLUSTER_NODE_ID</code> set, several server processes form one chat
+ * (see {@link ClusterNode}): messages, private messages and presence reach users
+ * on every node, and the user list includes users connected elsewhere.
+ * <p>
+ * Users log in once with <code>/login</code>, which checks the password (through the
+ * cached {@link UserDAO}) and returns a signed session token, and join with that
+ * token. Joining verifies the token locally, so reconnects never reach the database.
+ * <code>AUTH_REQUIRED=false</code> also lets clients join with a plain name. The chat
+ * connection is not encrypted, so logins use SRP (see {@link #login}): neither the password
+ * nor anything an eavesdropper could log in with or test guesses against crosses it.
+ * New users register through the server as well, with <code>/register</code>, which sends
+ * the salted verifier the database stores. Both are charged to the client's {@link RateLimiter}.
+ * <p>
+ * Each client's messages, private messages and bytes received are rate-limited (see
+ * {@link RateLimiter}): a client over its limits is throttled by not reading from its
+ * socket, and one that keeps flooding is disconnected.
+ * <p>
+ * Connections, traffic, fan-out and replay latencies, outbound backlogs and database
+ * latency are recorded by {@link ServerMetrics}, readable over JMX and logged every
+ * <code>METRICS_LOG_SECONDS</code>.
+ * <p>
+ * Shared state is guarded with {@link java.util.concurrent.locks} rather than
+ * <code>synchronized</code>: a virtual thread blocked in a socket write inside a
+ * monitor would pin its carrier thread.
  */
 public class Server {
 
-    private ServerSocket serverSocket;
+    private final String mode;
+    private ServerSocketChannel serverChannel;
+    private EventLoopServer eventLoopServer;
+    private ThreadFactory workerThreads;
+
+    /** Per-client outbound queue settings, see {@link OutboundQueue}. */
+    private final int outboundCapacity;
+    private final OutboundQueue.OverflowPolicy overflowPolicy;
+
+    /** Write coalescing settings, see {@link BatchWriter}. */
+    private final long flushWindowNanos;
+    private final int flushMaxBytes;
+
+    /** Whether clients may negotiate binary framing. */
+    private final boolean binaryFraming;
+
+    /** Whether binary clients may negotiate compressed frames. */
+    private final boolean compression;
 
     /**
-     * List of all currently connected client handlers.
-     * Each client runs in its own ServerWorker thread.
+     * All sessions that have joined the chat, indexed by username.
      */
-    protected final ArrayList<ServerWorker> workers = new ArrayList<>();
+    protected final SessionRegistry sessions = new SessionRegistry();
+
+    /** Open connections, including those that have not joined yet. */
+    private final AtomicInteger connections = new AtomicInteger();
 
     /**
-     * Stores the last N messages for history replay.
-     * LinkedList chosen for efficient removal of oldest messages.
+     * Serializes joins and leaves, so presence versions reach every client in
+     * order and a user-list snapshot always matches its version.
      */
-    private final List<String> messageHistory = new LinkedList<>();
+    private final ReentrantLock presenceLock = new ReentrantLock();
+    private long presenceVersion;
+
+    /** Users connected to other cluster nodes, by lowercase name; changed only under {@link #presenceLock}. */
+    private final ConcurrentHashMap<String, RemoteUser> remoteUsers = new ConcurrentHashMap<>();
+
+    private record RemoteUser(String name, String node) {
+    }
+
+    /** Links to the other nodes, or null if this server runs alone. */
+    private final ClusterNode cluster;
+
+    /**
+     * Chat rooms, each keeping its last <code>HISTORY_SIZE</code> messages, already encoded, for history replay.
+     * With <code>STORE_DIR</code> set, all room messages are also persisted in a {@link MessageLog}.
+     */
+    protected final RoomManager rooms;
+
+    /** Writes chat messages sent on this node to the database in the background, or null. */
+    private final MessageDAO messageStore;
+
+    /** Signs the session tokens handed out by <code>/login</code> and checks them on join. */
+    private final SessionTokens tokens;
+
+    /** Counters and latency histograms, or null if <code>METRICS_ENABLED=false</code>. */
+    final ServerMetrics metrics;
+
+    /** Per-session rate limits, or null if <code>RATE_LIMIT_ENABLED=false</code>. */
+    final RateLimiter.Limits rateLimits;
+
+    /** Whether joining requires a session token, rather than accepting any name. */
+    private final boolean authRequired;
+
+    /** Checks passwords and registers users; successful logins are cached, see {@link UserDAO}. */
+    private final UserDAO userDAO = new UserDAO();
 
     /**
-     * Maximum number of messages stored in history.
+     * Runs password checks and registrations off the session threads: a database query must not stall an event loop.
+     * The bounded queue turns a login storm into quick "busy" answers instead of an unbounded backlog.
      */
-    private static final int MAX_HISTORY = 100;
+    private final ThreadPoolExecutor logins;
 
     /**
-     * Initializes the server on the configured port.
-     * Reads port number from config.properties.
+     * Reads the message log for history pages and room joins off the session threads: scanning
+     * thousands of records must not stall an event loop. A session waits for at most one read at
+     * a time (see {@link ChatSession}), so the queue never holds more tasks than there are sessions.
+     */
+    private final ExecutorService historyReads;
+
+    /**
+     * Pending-connection queue length. The JDK default of 50 makes clients
+     * wait for SYN retransmits when thousands reconnect at once.
+     */
+    static final int ACCEPT_BACKLOG = 1024;
+
+    /**
+     * Initializes the server on the configured port and serves clients forever.
+     * Reads port number and execution model from config.properties.
      */
     public Server() throws IOException {
-        int PORT = Integer.parseInt(ConfigReader.getValue("PORT_NUMBER"));
-        serverSocket = new ServerSocket(PORT);
-        System.out.println("Server started on port " + PORT + " and waiting for clients...");
-        handleClientRequest();
+        this(Integer.parseInt(ConfigReader.getValue("PORT_NUMBER")),
+                ConfigReader.getValue("SERVER_MODE", "thread"));
+        // Force the last batch of history to disk, and the last messages to the database, on Ctrl-C
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeStores, "StoreShutdown"));
+        start();
     }
 
     /**
-     * Continuously accepts new client connections and assigns each one a dedicated ServerWorker thread.
+     * Binds the listening socket without accepting clients yet.
+     *
+     * @param port TCP port to listen on (0 picks a free port)
+     * @param mode execution model: <code>thread</code>, <code>virtual</code> or <code>nio</code>
+     * @throws IOException if the port cannot be bound
      */
-    private void handleClientRequest() throws IOException {
-        while (true) {
-            Socket clientSocket = serverSocket.accept();
-            ServerWorker serverWorker = new ServerWorker(clientSocket, this);
+    Server(int port, String mode) throws IOException {
+        this.mode = mode.toLowerCase();
+        this.rooms = new RoomManager(Integer.parseInt(ConfigReader.getValue("HISTORY_SIZE", "100")), MessageLog.fromConfig());
+        this.outboundCapacity = Integer.parseInt(ConfigReader.getValue("OUTBOUND_QUEUE_CAPACITY", "1024"));
+        this.overflowPolicy = OutboundQueue.OverflowPolicy.valueOf(
+                ConfigReader.getValue("OUTBOUND_OVERFLOW_POLICY", "DROP_OLDEST").toUpperCase());
+        this.flushWindowNanos = 1000L * Integer.parseInt(ConfigReader.getValue("FLUSH_WINDOW_MICROS", "500"));
+        this.flushMaxBytes = Integer.parseInt(ConfigReader.getValue("FLUSH_MAX_BYTES", "16384"));
+        this.binaryFraming = Boolean.parseBoolean(ConfigReader.getValue("BINARY_FRAMING", "true"));
+        this.compression = Boolean.parseBoolean(ConfigReader.getValue("COMPRESSION_ENABLED", "true"));
+        this.cluster = ClusterNode.fromConfig(this);
+        this.messageStore = MessageDAO.fromConfig();
+        this.tokens = SessionTokens.fromConfig();
+        this.metrics = ServerMetrics.fromConfig(this);
+        this.rateLimits = RateLimiter.Limits.fromConfig();
+        this.authRequired = Boolean.parseBoolean(ConfigReader.getValue("AUTH_REQUIRED", "true"));
+        int loginThreads = Integer.parseInt(ConfigReader.getValue("LOGIN_THREADS", "4"));
+        this.logins = new ThreadPoolExecutor(loginThreads, loginThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Integer.parseInt(ConfigReader.getValue("LOGIN_QUEUE_CAPACITY", "1000"))),
+                Thread.ofPlatform().name("Login-", 0).daemon().factory());
+        this.historyReads = Executors.newFixedThreadPool(Integer.parseInt(ConfigReader.getValue("STORE_READ_THREADS", "2")),
+                Thread.ofPlatform().name("HistoryReader-", 0).daemon().factory());
+        switch (this.mode) {
+            case "nio" -> {
+                int ioThreads = Integer.parseInt(ConfigReader.getValue("IO_THREADS", "2"));
+                eventLoopServer = new EventLoopServer(this, port, ioThreads);
+            }
+            case "virtual" -> {
+                serverChannel = openBlockingChannel(port);
+                workerThreads = Thread.ofVirtual().name("ServerWorker-", 0).factory();
+            }
+            default -> {
+                serverChannel = openBlockingChannel(port);
+                workerThreads = Thread.ofPlatform().name("ServerWorker-", 0).factory();
+            }
+        }
+    }
+
+    /**
+     * Opens the listening channel for the blocking (thread/virtual) models.
+     */
+    private static ServerSocketChannel openBlockingChannel(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        return channel;
+    }
+
+    /**
+     * Accepts clients on the calling thread until the server socket is closed.
+     */
+    void start() throws IOException {
+        System.out.println("Server started on port " + getPort() + " (" + mode
+                + " mode) and waiting for clients...");
+        if (cluster != null) {
+            cluster.start();
+        }
+        if (metrics != null) {
+            metrics.start(getPort());
+        }
+        if (eventLoopServer != null) {
+            eventLoopServer.run();
+        } else {
+            handleClientRequest();
+        }
+    }
+
+    /**
+     * Returns the port the server is actually bound to.
+     */
+    int getPort() throws IOException {
+        return eventLoopServer != null ? eventLoopServer.getPort()
+                : ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
 
-            synchronized (workers) {
-                workers.add(serverWorker);
+    /**
+     * Stops accepting new clients and closes the message stores. Existing sessions are left to finish on their own.
+     */
+    void shutdown() throws IOException {
+        closeStores();
+        if (metrics != null) {
+            metrics.close();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+        if (eventLoopServer != null) {
+            eventLoopServer.close();
+        } else {
+            serverChannel.close();
+        }
+    }
+
+    /**
+     * Flushes and closes the message log and the database writer.
+     */
+    private void closeStores() {
+        logins.shutdown();
+        historyReads.shutdown();
+        System.out.println("Login cache: " + UserDAO.credentialCacheStats());
+        if (metrics != null) {
+            System.out.println("Metrics: " + metrics.getSnapshot());
+        }
+        if (messageStore != null) {
+            messageStore.close();
+            System.out.println("Message database: " + messageStore.stats());
+        }
+        MessageLog log = rooms.log();
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        }
+    }
 
-            serverWorker.start();
+    /**
+     * Continuously accepts new client connections and runs each one as a
+     * ServerWorker on a thread from the configured factory (platform or virtual).
+     * A connection that fails while its worker is set up, e.g. one the peer
+     * already reset, is closed and skipped; it never stops the accept loop.
+     */
+    private void handleClientRequest() throws IOException {
+        while (serverChannel.isOpen()) {
+            SocketChannel clientChannel;
+            try {
+                clientChannel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return; // shut down
+            }
+            ServerWorker serverWorker;
+            try {
+                serverWorker = new ServerWorker(clientChannel, this);
+            } catch (IOException e) {
+                System.err.println("Dropping connection that failed during setup: " + e.getMessage());
+                try {
+                    clientChannel.close();
+                } catch (IOException ignored) {
+                }
+                continue;
+            }
+            addWorker(serverWorker);
+            serverWorker.start(workerThreads);
         }
     }
 
     /**
-     * Broadcasts a message to all connected clients and stores it in the server's history.
-     * 
+     * Creates the outbound queue for a new session using the configured capacity and policy.
+     */
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(outboundCapacity, overflowPolicy);
+    }
+
+    /**
+     * Creates the outbound writer for a new session using the configured flush window.
+     */
+    BatchWriter newWriter() {
+        return new BatchWriter(flushWindowNanos, flushMaxBytes, metrics != null ? metrics.bytesOut : null);
+    }
+
+    /**
+     * @return pending outbound bytes at which a coalesced write is no longer delayed
+     */
+    int getFlushMaxBytes() {
+        return flushMaxBytes;
+    }
+
+    /**
+     * @return true if clients may switch to binary framing
+     */
+    boolean isBinaryFramingEnabled() {
+        return binaryFraming;
+    }
+
+    /**
+     * @return true if binary clients may ask for compressed frames
+     */
+    boolean isCompressionEnabled() {
+        return compression;
+    }
+
+    /**
+     * A login waiting for the client's proof.
+     *
+     * @param userid     the user logging in
+     * @param credential the credential the login is checked against, or null if there is no such user
+     * @param exchange   the server's side of the SRP exchange
+     */
+    record PendingLogin(String userid, String credential, Srp.ServerLogin exchange) {
+    }
+
+    /**
+     * Starts a login on a login thread: looks up the user's credential and answers the session
+     * with <code>/challenge &lt;salt&gt; &lt;B&gt;</code> (see {@link Srp}), having handed it the
+     * {@link PendingLogin} to answer with {@link ChatSession#loginStarted}. Answers
+     * <code>/login error &lt;reason&gt;</code> instead if that fails. Returns immediately.
+     * <p>
+     * A user ID that does not exist gets a challenge all the same, so the answer does not
+     * tell which users exist; no proof will match it.
+     * </p>
+     *
+     * @param session   the connection that sent <code>/login</code>
+     * @param userid    the user ID
+     * @param clientKey the client's public key A
+     */
+    void login(ChatSession session, String userid, String clientKey) {
+        try {
+            logins.execute(() -> {
+                String credential;
+                try {
+                    credential = userDAO.findCredential(userid);
+                } catch (Exception e) {
+                    System.err.println("Login of " + userid + " failed: " + e.getMessage());
+                    session.sendMessage("/login error Database unavailable");
+                    return;
+                }
+                Srp.ServerLogin exchange = Srp.ServerLogin.start(userid, credential, clientKey);
+                if (exchange == null) {
+                    session.sendMessage("/login error Please update your chat client");
+                    return;
+                }
+                session.loginStarted(new PendingLogin(userid, credential, exchange));
+                session.sendMessage("/challenge " + exchange.challenge());
+            });
+        } catch (RejectedExecutionException e) {
+            session.sendMessage("/login error Server busy, try again");
+        }
+    }
+
+    /**
+     * Checks the client's proof for a login on a login thread and answers the session with
+     * <code>/token &lt;token&gt;</code> or <code>/login failed</code>. Returns immediately.
+     * <p>
+     * A failed login drops the user's cached credential, so if the password was changed
+     * elsewhere the next attempt is checked against the database.
+     * </p>
+     *
+     * @param session the connection that sent <code>/proof</code>
+     * @param login   the login it answers, used once
+     * @param proof   the client's proof
+     */
+    void finishLogin(ChatSession session, PendingLogin login, String proof) {
+        try {
+            logins.execute(() -> {
+                if (login.credential() != null && login.exchange().check(proof)) {
+                    userDAO.rememberLogin(login.userid(), login.credential());
+                    session.sendMessage("/token " + tokens.issue(login.userid()));
+                } else {
+                    UserDAO.invalidateCachedLogin(login.userid());
+                    session.sendMessage("/login failed");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            session.sendMessage("/login error Server busy, try again");
+        }
+    }
+
+    /**
+     * Registers a new user on a login thread and answers the session with <code>/registered</code>,
+     * <code>/register failed</code> if the user ID is taken, or <code>/register error &lt;reason&gt;</code>.
+     * Returns immediately.
+     *
+     * @param session    the connection that sent <code>/register</code>
+     * @param userid     the new user's ID
+     * @param credential the password verifier made by the client with {@link Srp#newCredential}
+     */
+    void register(ChatSession session, String userid, String credential) {
+        try {
+            logins.execute(() -> {
+                try {
+                    if (userDAO.add(userid, credential) > 0) {
+                        System.out.println("Registered user: " + userid);
+                        session.sendMessage("/registered");
+                    } else {
+                        session.sendMessage("/register failed");
+                    }
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    session.sendMessage("/register failed");
+                } catch (Exception e) {
+                    System.err.println("Registration of " + userid + " failed: " + e.getMessage());
+                    session.sendMessage("/register error Database unavailable");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            session.sendMessage("/register error Server busy, try again");
+        }
+    }
+
+    /**
+     * Starts a read of stored history on a history thread. Returns immediately.
+     *
+     * @return false if the server is shutting down and no longer reads the history
+     */
+    boolean readHistory(Runnable read) {
+        try {
+            historyReads.execute(read);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks a session token without touching the database.
+     *
+     * @return the user the token was issued to, or null if it is not a valid, unexpired token
+     */
+    String verifyToken(String token) {
+        return tokens.verify(token);
+    }
+
+    /**
+     * @return true if clients must join with a session token
+     */
+    boolean isAuthRequired() {
+        return authRequired;
+    }
+
+    /**
+     * Counts a newly accepted client connection. It joins the broadcast list
+     * once it has sent its name, see {@link SessionRegistry#register(ChatSession, String)}.
+     */
+    protected void addWorker(ChatSession worker) {
+        connections.incrementAndGet();
+        if (metrics != null) {
+            metrics.accepted();
+        }
+    }
+
+    /**
+     * @return number of open client connections, joined or not
+     */
+    int connectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Broadcasts a message to everyone in the default room, i.e. to all joined
+     * clients, and stores it in that room's history.
+     *
      * @param message the message to broadcast
      */
-    protected void broadcastMessage(String message) {
-        synchronized (messageHistory) {
-            if (messageHistory.size() >= MAX_HISTORY) {
-                messageHistory.remove(0); // remove oldest
+    protected void broadcastMessage(ChatMessage message) {
+        publish(rooms.defaultRoom(), message);
+    }
+
+    /**
+     * Broadcasts a message produced on this node to a room, here and on every other cluster node.
+     * Chat messages are also queued for the database; only the node they were sent on stores them.
+     */
+    void publish(Room room, ChatMessage message) {
+        broadcast(room, message);
+        if (cluster != null) {
+            cluster.relay(message); // reuses the binary encoding the local members already share
+        }
+        if (messageStore != null && message.getType() == FrameType.CHAT) {
+            messageStore.save(new MessageDTO(cluster != null ? cluster.getNodeId() : "", message.getSeq(),
+                    room.getName(), message.getSender(), message.getTimestamp(), message.getBody()));
+        }
+    }
+
+    /**
+     * Delivers a room message relayed by another node to the local members of
+     * that room, without relaying it again. Rooms without local members ignore it.
+     *
+     * @param replay true for a history catch-up message, which is only stored
+     */
+    void deliverRemote(ChatMessage message, boolean replay) {
+        String target = message.getTarget();
+        Room room = target == null || target.isEmpty() ? rooms.defaultRoom() : rooms.find(target);
+        if (room == null) {
+            return;
+        }
+        if (replay) {
+            room.record(message);
+        } else {
+            broadcast(room, message);
+        }
+    }
+
+    /**
+     * Broadcasts a message to a room's local members, counting it if metrics are on
+     * and timing the fan-out of a sample of broadcasts.
+     */
+    private void broadcast(Room room, ChatMessage message) {
+        if (metrics == null) {
+            room.broadcast(message);
+            return;
+        }
+        if (!metrics.timeThisBroadcast()) {
+            metrics.broadcast(room.broadcast(message));
+            return;
+        }
+        long start = System.nanoTime();
+        int recipients = room.broadcast(message);
+        metrics.broadcast(recipients, System.nanoTime() - start);
+    }
+
+    /**
+     * Routes a private message to a user on another node.
+     *
+     * @return false if no node hosts the addressed user
+     */
+    boolean relayWhisper(ChatMessage message) {
+        RemoteUser user = remoteUsers.get(key(message.getTarget()));
+        return user != null && cluster.sendTo(user.node(), message);
+    }
+
+    /**
+     * Delivers a private message relayed by another node to its local recipient, if still connected.
+     */
+    void deliverRemoteWhisper(ChatMessage message) {
+        ChatSession target = sessions.find(message.getTarget());
+        if (target != null) {
+            target.send(message);
+        }
+    }
+
+    /**
+     * Registers a session under its client name and publishes the change:
+     * the joining client receives the full user list, clients that negotiated
+     * presence deltas receive <code>+name</code>, and all others a full list.
+     *
+     * @return false if the name is already in use, here or on another cluster node
+     */
+    protected boolean join(ChatSession session) {
+        presenceLock.lock();
+        try {
+            if (remoteUsers.containsKey(key(session.getClientName()))
+                    || !sessions.register(session, session.getClientName())) {
+                return false;
+            }
+            long version = ++presenceVersion;
+            session.send(userList(version));
+            ChatMessage delta = publishPresence(session.getClientName(), true, version, session);
+            if (cluster != null) {
+                cluster.relay(delta);
             }
-            messageHistory.add(message);
+            return true;
+        } finally {
+            presenceLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the full user list with its current version to one client,
+     * e.g. after it detected a gap in the presence deltas.
+     */
+    protected void sendUserList(ChatSession session) {
+        presenceLock.lock();
+        try {
+            session.send(userList(presenceVersion));
+        } finally {
+            presenceLock.unlock();
         }
+    }
 
-        synchronized (workers) {
-            for (ServerWorker worker : workers) {
-                worker.sendMessage(message);
+    /**
+     * Sends one join or leave to every joined client except <code>skip</code>.
+     * A delta costs a few dozen bytes per recipient; the full list for legacy
+     * clients is only built if one of them is connected.
+     *
+     * @return the delta, for relaying to other nodes
+     */
+    private ChatMessage publishPresence(String name, boolean joined, long version, ChatSession skip) {
+        ChatMessage delta = new ChatMessage(FrameType.PRESENCE, name, null, System.currentTimeMillis(), joined ? "+" : "-");
+        delta.assignSeq(version);
+        ChatMessage fullList = null;
+        for (ChatSession worker : sessions.snapshot()) {
+            if (worker == skip) {
+                continue;
+            }
+            if (worker.wantsPresenceDeltas()) {
+                worker.send(delta);
+            } else {
+                if (fullList == null) {
+                    fullList = userList(version);
+                }
+                worker.send(fullList);
             }
         }
+        return delta;
     }
 
     /**
-     * Sends the current user list to all connected clients.
+     * Applies a join or leave reported by another node. Repeated joins are ignored,
+     * since a link that comes up announces users whose join may have been relayed already.
      */
-    protected void updateUserList() {
-        StringBuilder userList = new StringBuilder("/users ");
-        synchronized (workers) {
-            for (ServerWorker worker : workers) {
-                userList.append(worker.getClientName()).append(",");
+    void remotePresence(String name, boolean joined, String node) {
+        presenceLock.lock();
+        try {
+            String key = key(name);
+            if (joined) {
+                if (sessions.find(name) == null && remoteUsers.putIfAbsent(key, new RemoteUser(name, node)) == null) {
+                    publishPresence(name, true, ++presenceVersion, null);
+                }
+            } else {
+                RemoteUser user = remoteUsers.get(key);
+                if (user != null && user.node().equals(node)) {
+                    remoteUsers.remove(key);
+                    publishPresence(name, false, ++presenceVersion, null);
+                }
             }
+        } finally {
+            presenceLock.unlock();
         }
+    }
 
-        // Remove trailing comma
-        if (userList.charAt(userList.length() - 1) == ',') {
-            userList.deleteCharAt(userList.length() - 1);
+    /**
+     * Removes every user of a node whose link was lost.
+     */
+    void remoteNodeDown(String node) {
+        presenceLock.lock();
+        try {
+            for (RemoteUser user : remoteUsers.values()) {
+                if (user.node().equals(node)) {
+                    remoteUsers.remove(key(user.name()));
+                    publishPresence(user.name(), false, ++presenceVersion, null);
+                }
+            }
+        } finally {
+            presenceLock.unlock();
         }
+    }
 
-        synchronized (workers) {
-            for (ServerWorker worker : workers) {
-                worker.sendMessage(userList.toString());
+    /**
+     * Tells a newly linked node about every local user. Holding {@link #presenceLock}
+     * keeps this in order with the joins and leaves relayed to the link from now on.
+     */
+    void announcePresence(PeerLink link) {
+        presenceLock.lock();
+        try {
+            for (ChatSession worker : sessions.snapshot()) {
+                link.send(Frame.encode(FrameType.PRESENCE, 0, System.currentTimeMillis(), worker.getClientName(), null, "+"));
             }
+        } finally {
+            presenceLock.unlock();
         }
     }
 
     /**
-     * Returns a copy of the stored message history.
+     * Builds the comma-separated list of joined users. Must hold {@link #presenceLock}.
      */
-    protected List<String> getMessageHistory() {
-        synchronized (messageHistory) {
-            return new LinkedList<>(messageHistory);
+    private ChatMessage userList(long version) {
+        StringBuilder userList = new StringBuilder();
+        for (ChatSession worker : sessions.snapshot()) {
+            if (userList.length() > 0) {
+                userList.append(",");
+            }
+            userList.append(worker.getClientName());
         }
+        for (RemoteUser user : remoteUsers.values()) {
+            if (userList.length() > 0) {
+                userList.append(",");
+            }
+            userList.append(user.name());
+        }
+        ChatMessage message = new ChatMessage(FrameType.USERS, null, null, System.currentTimeMillis(), userList.toString());
+        message.assignSeq(version);
+        return message;
     }
 
     /**
-     * Removes a worker when the client disconnects.
+     * Removes a session when the client disconnects.
      */
-    protected void removeWorker(ServerWorker worker) {
-        synchronized (workers) {
-            workers.remove(worker);
+    protected void removeWorker(ChatSession worker) {
+        connections.decrementAndGet();
+        presenceLock.lock();
+        try {
+            if (sessions.remove(worker)) { // connections that never joined are not in the list
+                ChatMessage delta = publishPresence(worker.getClientName(), false, ++presenceVersion, worker);
+                if (cluster != null) {
+                    cluster.relay(delta);
+                }
+            }
+        } finally {
+            presenceLock.unlock();
         }
-        updateUserList();
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
     }
 
     /**
@@ -0,0 +1,458 @@
+package com.shivansh.chatapp.network;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.shivansh.chatapp.dao.UserDAO;
+import com.shivansh.chatapp.utils.ConfigReader;
+import com.shivansh.chatapp.utils.LatencyHistogram;
+
+/**
+ * Counters and latency histograms of one {@link Server}, published over JMX (see
+ * {@link ServerMetricsMBean}) and logged as a one-line snapshot.
+ * <p>
+ * Recording is cheap enough to leave on under full load:
+ * <ul>
+ *     <li>counters are {@link LongAdder}s, which spread concurrent updates over
+ *         several cells instead of contending on one;</li>
+ *     <li>latencies go into a {@link LatencyHistogram}, a fixed array of atomic
+ *         counters that takes no lock and allocates nothing;</li>
+ *     <li>the message path records once per broadcast or replay, never per recipient.
+ *         Only one broadcast in {@link #FANOUT_SAMPLING}, chosen at random, is timed: reading
+ *         the clock twice would otherwise add several percent to a broadcast to a small
+ *         room, and a random sample gives the same percentiles;</li>
+ *     <li>everything costly (rates, percentiles, walking the sessions for their
+ *         backlogs) is computed by the reader: the sampler thread once per interval,
+ *         or a JMX client when it asks.</li>
+ * </ul>
+ * Every <code>METRICS_INTERVAL_SECONDS</code> the sampler turns the counters into rates
+ * and starts new histograms, so percentiles describe recent traffic rather than the
+ * whole uptime; every <code>METRICS_LOG_SECONDS</code> it prints the snapshot.
+ * <code>METRICS_ENABLED=false</code> turns recording off altogether.
+ * </p>
+ */
+public final class ServerMetrics implements ServerMetricsMBean {
+
+    /** One broadcast in this many has its fan-out timed. */
+    static final int FANOUT_SAMPLING = 16;
+
+    /** Sessions listed by {@link #getOutboundBacklogs()}. */
+    private static final int BACKLOGS_LISTED = 10;
+
+    private final Server server;
+    private final int intervalSeconds;
+    private final int logSeconds;
+
+    private final LongAdder accepts = new LongAdder();
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    /** Added to by every session's {@link BatchWriter}. */
+    final LongAdder bytesOut = new LongAdder();
+    /** Messages dropped by the queues of sessions that have disconnected. */
+    private final LongAdder droppedClosed = new LongAdder();
+    /** Added to by every session's {@link RateLimiter}. */
+    final LongAdder rateLimitViolations = new LongAdder();
+    private final LongAdder floodDisconnects = new LongAdder();
+
+    private final Window fanout = new Window();
+    private final Window replay = new Window();
+
+    /** Rates over the last interval, in the order of {@link #totals()}. */
+    private volatile double[] rates = new double[5];
+
+    private Thread sampler;
+    private ObjectName name;
+
+    /**
+     * Histogram of the current interval and of the last completed one, which is what is reported.
+     */
+    private static final class Window {
+
+        private volatile LatencyHistogram current = new LatencyHistogram();
+        private volatile LatencyHistogram last = new LatencyHistogram();
+
+        void record(long nanos) {
+            current.record(nanos);
+        }
+
+        void roll() {
+            last = current;
+            current = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return the metrics of a server, or null if <code>METRICS_ENABLED=false</code>
+     */
+    static ServerMetrics fromConfig(Server server) {
+        if (!Boolean.parseBoolean(ConfigReader.getValue("METRICS_ENABLED", "true"))) {
+            return null;
+        }
+        return new ServerMetrics(server,
+                Math.max(1, Integer.parseInt(ConfigReader.getValue("METRICS_INTERVAL_SECONDS", "10"))),
+                Math.max(0, Integer.parseInt(ConfigReader.getValue("METRICS_LOG_SECONDS", "60"))));
+    }
+
+    ServerMetrics(Server server, int intervalSeconds, int logSeconds) {
+        this.server = server;
+        this.intervalSeconds = intervalSeconds;
+        this.logSeconds = logSeconds;
+    }
+
+    /**
+     * Registers the MBean and starts the sampler thread.
+     *
+     * @param port the port the server listens on, which tells servers in one JVM apart
+     */
+    void start(int port) {
+        try {
+            MBeanServer beans = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("com.shivansh.chatapp:type=Server,port=" + port);
+            beans.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Server metrics are not available over JMX: " + e.getMessage());
+            name = null;
+        }
+        sampler = Thread.ofPlatform().name("ServerMetrics").daemon().start(this::sampleLoop);
+    }
+
+    /**
+     * Stops the sampler and unregisters the MBean.
+     */
+    void close() {
+        if (sampler != null) {
+            sampler.interrupt();
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+            name = null;
+        }
+    }
+
+    private void sampleLoop() {
+        long[] before = totals();
+        long start = System.nanoTime();
+        long lastLog = start;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(intervalSeconds));
+                long now = System.nanoTime();
+                long[] after = totals();
+                double[] next = new double[after.length];
+                for (int i = 0; i < after.length; i++) {
+                    next[i] = (after[i] - before[i]) * 1e9 / (now - start);
+                }
+                rates = next;
+                fanout.roll();
+                replay.roll();
+                before = after;
+                start = now;
+                if (logSeconds > 0 && now - lastLog >= TimeUnit.SECONDS.toNanos(logSeconds) - TimeUnit.MILLISECONDS.toNanos(100)) {
+                    System.out.println("Metrics: " + getSnapshot());
+                    lastLog = now;
+                }
+            }
+        } catch (InterruptedException e) {
+            // server shut down
+        }
+    }
+
+    private long[] totals() {
+        return new long[] {accepts.sum(), messagesIn.sum(), deliveries.sum(), bytesIn.sum(), bytesOut.sum()};
+    }
+
+    // Recording, called on the session and event-loop threads
+
+    void accepted() {
+        accepts.increment();
+    }
+
+    void messageReceived() {
+        messagesIn.increment();
+    }
+
+    void bytesRead(int n) {
+        if (n > 0) {
+            bytesIn.add(n);
+        }
+    }
+
+    /**
+     * @return true if the caller should time the broadcast it is about to make
+     */
+    boolean timeThisBroadcast() {
+        return ThreadLocalRandom.current().nextInt(FANOUT_SAMPLING) == 0;
+    }
+
+    /**
+     * @param recipients members the message was queued for
+     */
+    void broadcast(int recipients) {
+        deliveries.add(recipients);
+    }
+
+    /**
+     * @param recipients members the message was queued for
+     * @param nanos      time taken to store the message and queue it
+     */
+    void broadcast(int recipients, long nanos) {
+        deliveries.add(recipients);
+        fanout.record(nanos);
+    }
+
+    /**
+     * Counts a message queued for one recipient outside a broadcast, e.g. a private message.
+     */
+    void delivered() {
+        deliveries.increment();
+    }
+
+    void replayed(long nanos) {
+        replay.record(nanos);
+    }
+
+    /**
+     * Keeps the drop count of a session's queue once the session is gone.
+     */
+    void sessionClosed(OutboundQueue queue) {
+        droppedClosed.add(queue.getDropped());
+    }
+
+    void floodDisconnect() {
+        floodDisconnects.increment();
+    }
+
+    // Reading
+
+    @Override
+    public int getConnections() {
+        return server.connectionCount();
+    }
+
+    @Override
+    public int getJoinedSessions() {
+        return server.sessions.size();
+    }
+
+    @Override
+    public long getAccepts() {
+        return accepts.sum();
+    }
+
+    @Override
+    public double getAcceptsPerSecond() {
+        return rates[0];
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesIn.sum();
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        return rates[1];
+    }
+
+    @Override
+    public long getDeliveries() {
+        return deliveries.sum();
+    }
+
+    @Override
+    public double getDeliveriesPerSecond() {
+        return rates[2];
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public double getBytesInPerSecond() {
+        return rates[3];
+    }
+
+    @Override
+    public double getBytesOutPerSecond() {
+        return rates[4];
+    }
+
+    @Override
+    public double getFanoutMicrosP50() {
+        return micros(fanout.last.percentile(50));
+    }
+
+    @Override
+    public double getFanoutMicrosP99() {
+        return micros(fanout.last.percentile(99));
+    }
+
+    @Override
+    public double getFanoutMicrosP999() {
+        return micros(fanout.last.percentile(99.9));
+    }
+
+    @Override
+    public double getFanoutMicrosMax() {
+        return micros(fanout.last.max());
+    }
+
+    @Override
+    public double getReplayMicrosP50() {
+        return micros(replay.last.percentile(50));
+    }
+
+    @Override
+    public double getReplayMicrosP99() {
+        return micros(replay.last.percentile(99));
+    }
+
+    @Override
+    public double getReplayMicrosMax() {
+        return micros(replay.last.max());
+    }
+
+    @Override
+    public long getOutboundQueuedMessages() {
+        long total = 0;
+        for (ChatSession session : server.sessions.snapshot()) {
+            total += session.outbound.size();
+        }
+        return total;
+    }
+
+    @Override
+    public long getOutboundQueuedBytes() {
+        long total = 0;
+        for (ChatSession session : server.sessions.snapshot()) {
+            total += session.outbound.pendingBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public int getOutboundLargestBacklog() {
+        int largest = 0;
+        for (ChatSession session : server.sessions.snapshot()) {
+            largest = Math.max(largest, session.outbound.size());
+        }
+        return largest;
+    }
+
+    @Override
+    public long getOutboundDropped() {
+        long total = droppedClosed.sum();
+        for (ChatSession session : server.sessions.snapshot()) {
+            total += session.outbound.getDropped();
+        }
+        return total;
+    }
+
+    @Override
+    public long getRateLimitViolations() {
+        return rateLimitViolations.sum();
+    }
+
+    @Override
+    public long getFloodDisconnects() {
+        return floodDisconnects.sum();
+    }
+
+    private record Backlog(String name, int messages, long bytes) {
+    }
+
+    @Override
+    public String[] getOutboundBacklogs() {
+        List<Backlog> backlogs = new ArrayList<>();
+        for (ChatSession session : server.sessions.snapshot()) {
+            int messages = session.outbound.size();
+            if (messages > 0) {
+                backlogs.add(new Backlog(session.getClientName(), messages, session.outbound.pendingBytes()));
+            }
+        }
+        backlogs.sort(Comparator.comparingLong(Backlog::bytes).reversed());
+        String[] listed = new String[Math.min(BACKLOGS_LISTED, backlogs.size())];
+        for (int i = 0; i < listed.length; i++) {
+            Backlog backlog = backlogs.get(i);
+            listed[i] = backlog.name() + ": " + backlog.messages() + " messages, " + backlog.bytes() + " bytes";
+        }
+        return listed;
+    }
+
+    @Override
+    public long getDbCalls() {
+        return UserDAO.databaseLatency().count();
+    }
+
+    @Override
+    public double getDbMillisP50() {
+        return millis(UserDAO.databaseLatency().percentile(50));
+    }
+
+    @Override
+    public double getDbMillisP99() {
+        return millis(UserDAO.databaseLatency().percentile(99));
+    }
+
+    @Override
+    public double getDbMillisP999() {
+        return millis(UserDAO.databaseLatency().percentile(99.9));
+    }
+
+    @Override
+    public double getDbMillisMax() {
+        return millis(UserDAO.databaseLatency().max());
+    }
+
+    @Override
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    @Override
+    public String getSnapshot() {
+        double[] r = rates;
+        LatencyHistogram fan = fanout.last;
+        LatencyHistogram rep = replay.last;
+        LatencyHistogram db = UserDAO.databaseLatency();
+        return String.format(Locale.ROOT, "%d connections (%d joined), %.1f accepts/s, %.0f messages/s in,"
+                        + " %.0f deliveries/s, %.1f KB/s in, %.1f KB/s out;"
+                        + " fan-out p50/p99/p99.9 %.0f/%.0f/%.0f us; replay p99 %.0f us;"
+                        + " backlog %d messages (largest %d, %d dropped); rate limited %d times (%d disconnected);"
+                        + " db p50/p99 %.1f/%.1f ms (%d calls)",
+                getConnections(), getJoinedSessions(), r[0], r[1], r[2], r[3] / 1024, r[4] / 1024,
+                micros(fan.percentile(50)), micros(fan.percentile(99)), micros(fan.percentile(99.9)),
+                micros(rep.percentile(99)), getOutboundQueuedMessages(), getOutboundLargestBacklog(),
+                getOutboundDropped(), getRateLimitViolations(), getFloodDisconnects(), millis(db.percentile(50)), millis(db.percentile(99)), db.count());
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,95 @@
+package com.shivansh.chatapp.network;
+
+/**
+ * Management interface of {@link ServerMetrics}, registered with the platform MBean
+ * server as <code>com.shivansh.chatapp:type=Server,port=&lt;port&gt;</code>, e.g. for JConsole.
+ * <p>
+ * Totals count since the server started. Rates and percentiles cover the last
+ * completed interval of <code>METRICS_INTERVAL_SECONDS</code>; database percentiles
+ * cover every call, since logins that miss the credential cache are rare.
+ * </p>
+ */
+public interface ServerMetricsMBean {
+
+    /** @return open client connections, joined or not */
+    int getConnections();
+
+    /** @return sessions that have joined the chat */
+    int getJoinedSessions();
+
+    /** @return connections accepted */
+    long getAccepts();
+
+    double getAcceptsPerSecond();
+
+    /** @return chat and private messages received from clients */
+    long getMessagesReceived();
+
+    double getMessagesPerSecond();
+
+    /** @return messages queued for a recipient, one per member of the room for a broadcast */
+    long getDeliveries();
+
+    double getDeliveriesPerSecond();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    double getBytesInPerSecond();
+
+    double getBytesOutPerSecond();
+
+    /** @return time to store a room message and queue it for every member, 50th percentile of a sample of broadcasts */
+    double getFanoutMicrosP50();
+
+    double getFanoutMicrosP99();
+
+    double getFanoutMicrosP999();
+
+    double getFanoutMicrosMax();
+
+    /** @return time to queue the history replayed to a session joining a room, 50th percentile */
+    double getReplayMicrosP50();
+
+    double getReplayMicrosP99();
+
+    double getReplayMicrosMax();
+
+    /** @return messages waiting in the outbound queues of all joined sessions */
+    long getOutboundQueuedMessages();
+
+    long getOutboundQueuedBytes();
+
+    /** @return messages waiting for the session with the longest queue */
+    int getOutboundLargestBacklog();
+
+    /** @return messages discarded by the outbound overflow policy */
+    long getOutboundDropped();
+
+    /** @return times a client exceeded its rate limits and was paused, counted at most once per second per client */
+    long getRateLimitViolations();
+
+    /** @return clients disconnected for exceeding their rate limits too often */
+    long getFloodDisconnects();
+
+    /** @return the sessions with the largest outbound backlogs, largest first, as <code>name: messages, bytes</code> */
+    String[] getOutboundBacklogs();
+
+    /** @return login and registration queries made by <code>UserDAO</code> */
+    long getDbCalls();
+
+    double getDbMillisP50();
+
+    double getDbMillisP99();
+
+    double getDbMillisP999();
+
+    double getDbMillisMax();
+
+    /** @return length of the interval that rates and percentiles cover */
+    int getIntervalSeconds();
+
+    /** @return the whole last interval as one line, as written to the log */
+    String getSnapshot();
+}
@@ -1,168 +1,167 @@
 package com.shivansh.chatapp.network;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Handles communication between the server and a single connected client.
+ * Handles communication between the server and a single connected client
+ * using blocking socket I/O.
  * <p>
- * Each connected client runs on its own thread. This class:
+ * Each connected client is served by two threads (platform or virtual,
+ * depending on the server mode):
  * <ul>
- *     <li>Receives messages from its client.</li>
- *     <li>Broadcasts messages to all clients or sends private messages.</li>
- *     <li>Sends stored message history when a client connects.</li>
- *     <li>Updates and notifies the server about user join/leave events.</li>
+ *     <li>a reader that receives lines or frames and hands them to the shared protocol in {@link ChatSession};</li>
+ *     <li>a writer that drains the session's {@link OutboundQueue} to the socket,
+ *         so a slow reader only ever blocks its own writer.</li>
  * </ul>
  */
-public class ServerWorker extends Thread {
+public class ServerWorker extends ChatSession implements Runnable {
 
-    private final Socket clientSocket;
-    private final Server server;
-    private final InputStream in;
-    private final OutputStream out;
+    private final SocketChannel channel;
+    private final BatchWriter writer;
 
-    private String clientName;
+    /** Parks while the session waits for its rate limits or a read of stored history. */
+    private volatile Thread reader;
 
     /**
      * Creates a new ServerWorker for an incoming client connection.
      *
-     * @param clientSocket the client's socket
+     * @param channel the client's connection, in blocking mode
      * @param server reference to the server for broadcasting messages
-     * @throws IOException if an I/O error occurs when creating input/output streams
+     * @throws IOException if the socket cannot be configured
      */
-    public ServerWorker(Socket clientSocket, Server server) throws IOException {
-        this.clientSocket = clientSocket;
-        this.server = server;
-        this.in = clientSocket.getInputStream();
-        this.out = clientSocket.getOutputStream();
-        System.out.println("New client connected from " + clientSocket.getInetAddress());
+    public ServerWorker(SocketChannel channel, Server server) throws IOException {
+        super(server);
+        this.channel = channel;
+        this.writer = server.newWriter();
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // writes are coalesced by BatchWriter
+        System.out.println("New client connected from " + channel.getRemoteAddress());
     }
 
     /**
-     * Main thread execution.
-     * Reads incoming messages, processes commands, and broadcasts messages.
+     * Starts the reader and writer threads for this client.
+     *
+     * @param threads factory matching the server's execution model
+     */
+    void start(ThreadFactory threads) {
+        threads.newThread(this::writeLoop).start();
+        threads.newThread(this).start();
+    }
+
+    /**
+     * Reader thread execution.
+     * Reads incoming bytes straight into the session's decoder and passes every
+     * complete message to the chat protocol.
      */
     @Override
     public void run() {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
-            // First message received is treated as the client username
-            this.clientName = br.readLine();
-            System.out.println(clientName + " has joined the chat.");
-
-            // Send message history to the newly connected client
-            sendHistory(server.getMessageHistory());
-
-            // Notify all users about the new join
-            server.broadcastMessage(getTimestamp() + " - " + clientName + " joined the chat.");
-            server.updateUserList();
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Handle client quit
-                if (line.equalsIgnoreCase("quit")) {
-                    break;
+        reader = Thread.currentThread();
+        try {
+            int n;
+            reading:
+            while ((n = decoder.readFrom(channel)) >= 0) {
+                received(n);
+                if (!processInput()) {
+                    break; // quit, name rejected, or flooding
                 }
-
-                // Handle private messaging: /w username message
-                if (line.startsWith("/w ")) {
-                    String[] parts = line.split(" ", 3);
-                    if (parts.length >= 3) {
-                        String targetUser = parts[1];
-                        String privateMsg = getTimestamp() + " [Private] " + clientName + ": " + parts[2];
-                        sendPrivateMessage(targetUser, privateMsg);
+                // Over its rate limits: leave the client's bytes in the socket until it is back under them.
+                // Parking also hands the carrier back: virtual threads are not time-sliced, and a client
+                // that floods us would otherwise starve the writers broadcasting its messages.
+                // While the history is read for it, we park until onHistoryRead() wakes us up.
+                long pause;
+                while ((pause = readPauseNanos()) > 0) {
+                    LockSupport.parkNanos(pause);
+                    if (!processInput()) {
+                        break reading;
                     }
-                } else {
-                    // Broadcast public message to all connected clients
-                    String broadcastMsg = getTimestamp() + " - " + clientName + ": " + line;
-                    server.broadcastMessage(broadcastMsg);
                 }
             }
+        } catch (ClosedChannelException e) {
+            // closed by the writer
         } catch (IOException e) {
-            System.err.println("Connection error with client " + clientName);
-            e.printStackTrace();
+            if (channel.isOpen()) {
+                System.err.println("Connection error with client " + clientName);
+                e.printStackTrace();
+            }
         } finally {
             cleanup();
         }
     }
 
     /**
-     * Sends the stored chat history to this client upon connection.
-     *
-     * @param history list of recent messages stored on the server
-     */
-    public void sendHistory(List<String> history) {
-        for (String msg : history) {
-            sendMessage(msg);
-        }
-    }
-
-    /**
-     * Sends a message to this client.
-     *
-     * @param message the message text
+     * Writer thread execution.
+     * Writes queued messages in order until the session is closed and its
+     * backlog is drained, then closes the channel.
+     * Messages are read-only views shared with other recipients; everything
+     * queued at that moment (plus, while traffic is busy, whatever arrives
+     * within the flush window) is copied into one pooled direct buffer and
+     * goes out in one write.
      */
-    public void sendMessage(String message) {
+    private void writeLoop() {
         try {
-            out.write((message + "\n").getBytes());
-            out.flush();
+            while (writer.awaitFill(outbound)) {
+                while (!writer.write(channel)) {
+                    // blocking channel: keep going until the whole batch is out
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // session closed while writing
         } catch (IOException e) {
             System.err.println("Failed to send message to " + clientName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer.release();
+            disconnect();
         }
     }
 
     /**
-     * Sends a private message to a specified user.
-     *
-     * @param targetUser recipient's username
-     * @param message the private message content
+     * Closes the channel; the reader thread then fails and runs {@link #cleanup()}.
      */
-    private void sendPrivateMessage(String targetUser, String message) {
-        synchronized (server.workers) {
-            for (ServerWorker worker : server.workers) {
-                if (worker.getClientName() != null &&
-                        worker.getClientName().equalsIgnoreCase(targetUser)) {
-                    worker.sendMessage(message);
-                    this.sendMessage("To " + targetUser + ": " + message); // sender copy
-                    return;
-                }
-            }
+    @Override
+    protected void disconnect() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        sendMessage("User " + targetUser + " not found.");
     }
 
     /**
-     * Cleans up resources and notifies the server when the client disconnects.
+     * Ends reading right away, so the session is unregistered at once, while the
+     * writer thread still sends the notice and then closes the channel.
      */
-    private void cleanup() {
+    @Override
+    protected void closeWith(String notice) {
+        sendMessage(notice);
         try {
-            server.removeWorker(this);
-            server.broadcastMessage(getTimestamp() + " - " + clientName + " left the chat.");
-            clientSocket.close();
-            System.out.println(clientName + " disconnected.");
+            channel.shutdownInput();
         } catch (IOException e) {
-            e.printStackTrace();
+            disconnect();
         }
     }
 
-    /**
-     * Returns the username of the connected client.
-     */
-    public String getClientName() {
-        return clientName;
+    @Override
+    protected void onHistoryRead() {
+        LockSupport.unpark(reader);
+    }
+
+    @Override
+    protected String outboundStats() {
+        return writer.stats();
     }
 
     /**
-     * Returns the current timestamp in HH:mm format.
+     * Notifies the server when the client disconnects. The writer thread
+     * flushes what is still queued (e.g. a rejection notice) and closes the channel.
      */
-    private String getTimestamp() {
-        return new SimpleDateFormat("HH:mm").format(new Date());
+    private void cleanup() {
+        onDisconnect();
+        outbound.close();
     }
 }
-
@@ -0,0 +1,110 @@
+package com.shivansh.chatapp.network;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent registry of the sessions that have joined the chat.
+ * <p>
+ * A connection is registered once it has identified itself, so broadcasts
+ * never reach a client that is still negotiating its wire protocol.
+ * Two views are maintained:
+ * <ul>
+ *     <li>a case-insensitive username index, giving O(1) lookup for private
+ *         messages and atomic duplicate-name detection at join time;</li>
+ *     <li>a copy-on-write array of all sessions. Broadcasts iterate a
+ *         {@link #snapshot()} without taking any lock, so public chat never
+ *         contends with whispers, joins or leaves.</li>
+ * </ul>
+ * Joins and leaves are rare compared with messages, so they pay for the copy;
+ * they are serialized by a {@link ReentrantLock}.
+ * </p>
+ */
+public class SessionRegistry {
+
+    private static final ChatSession[] EMPTY = new ChatSession[0];
+
+    private final ConcurrentHashMap<String, ChatSession> byName = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile ChatSession[] sessions = EMPTY;
+
+    /**
+     * Binds a username to a session unless another session already uses it
+     * (names are compared case-insensitively). From then on the session
+     * receives broadcasts and is addressable by name.
+     *
+     * @return true if the name was free and the session is now registered
+     */
+    public boolean register(ChatSession session, String name) {
+        if (byName.putIfAbsent(key(name), session) != null) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            ChatSession[] current = sessions;
+            ChatSession[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = session;
+            sessions = next;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a session and releases its name.
+     *
+     * @return true if the session was registered
+     */
+    public boolean remove(ChatSession session) {
+        if (session.getClientName() != null) {
+            byName.remove(key(session.getClientName()), session);
+        }
+        writeLock.lock();
+        try {
+            ChatSession[] current = sessions;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == session) {
+                    ChatSession[] next = new ChatSession[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    sessions = next;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a joined session by username, ignoring case.
+     *
+     * @return the session, or null if no such user is connected
+     */
+    public ChatSession find(String name) {
+        return byName.get(key(name));
+    }
+
+    /**
+     * Returns all joined sessions at this instant. The array is never
+     * modified after publication and must not be modified by callers.
+     */
+    public ChatSession[] snapshot() {
+        return sessions;
+    }
+
+    /**
+     * @return number of joined sessions
+     */
+    public int size() {
+        return sessions.length;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
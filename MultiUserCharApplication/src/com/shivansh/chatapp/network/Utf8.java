@@ -0,0 +1,79 @@
+package com.shivansh.chatapp.network;
+
+/**
+ * UTF-8 encoding straight into a caller's array.
+ * <p>
+ * {@link String#getBytes(java.nio.charset.Charset)} returns a new array per
+ * field, which the frame and line encoders would immediately copy again. Here
+ * the exact size is computed first, and each field is then written once into
+ * the message's final byte array.
+ * </p>
+ * Unpaired surrogates are encoded as <code>'?'</code>, like <code>getBytes</code> does.
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * @return number of bytes {@link #encode(CharSequence, byte[], int)} writes for <code>text</code> (0 for null)
+     */
+    static int length(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int n = text.length();
+        int bytes = n;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes++;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 2; // 4 bytes for 2 chars
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired: '?'
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes <code>text</code> as UTF-8 into <code>dst</code>, which must have room for {@link #length(CharSequence)} bytes.
+     *
+     * @return the position after the last byte written
+     */
+    static int encode(CharSequence text, byte[] dst, int pos) {
+        if (text == null) {
+            return pos;
+        }
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                dst[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[pos++] = (byte) (0xC0 | (c >> 6));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                dst[pos++] = (byte) (0xF0 | (cp >> 18));
+                dst[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                dst[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                dst[pos++] = '?';
+            } else {
+                dst[pos++] = (byte) (0xE0 | (c >> 12));
+                dst[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,237 @@
+package com.shivansh.chatapp.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * One file pair of a {@link MessageLog}: a data file of records and a dense index.
+ * <p>
+ * Both files are preallocated and memory-mapped, so appending is a copy into
+ * the page cache and never a system call. Record layout (big-endian):
+ * <pre>
+ *   int32   length   payload bytes
+ *   int32   crc      CRC-32C of the payload
+ *   int64   seq      sequence number
+ *   ...     payload
+ * </pre>
+ * Sequence numbers in a segment are consecutive from {@link #baseSeq}, so the
+ * index is just an array of 4-byte record offsets: entry <code>seq - baseSeq</code>
+ * locates a record without any search.
+ * </p>
+ * Appends happen under the owning log's lock. Readers run concurrently and only
+ * look at records below {@link #count()}, which is published after the bytes are written.
+ */
+final class LogSegment {
+
+    static final int HEADER_BYTES = 16;
+
+    private final long baseSeq;
+    private final Path dataPath;
+    private final Path indexPath;
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+
+    /** Next write offset in the data file; only touched under the log's lock. */
+    private int position;
+
+    /** Records written and visible to readers. */
+    private volatile int count;
+
+    /** Bytes up to which data and index were last forced to disk; only touched by the flusher. */
+    private int forcedPosition;
+    private int forcedCount;
+
+    private volatile long lastAppendMillis;
+
+    private LogSegment(Path dir, long baseSeq, int dataBytes, int indexEntries) throws IOException {
+        this.baseSeq = baseSeq;
+        this.dataPath = dir.resolve(String.format("%020d.log", baseSeq));
+        this.indexPath = dir.resolve(String.format("%020d.idx", baseSeq));
+        this.dataChannel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Mapping beyond the end grows the files; on most file systems they stay sparse until written.
+        // Existing files keep their size, in case the configured segment size changed since.
+        this.data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(dataBytes, dataChannel.size()));
+        this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(4L * indexEntries, indexChannel.size()));
+        this.lastAppendMillis = Files.getLastModifiedTime(dataPath).toMillis();
+    }
+
+    /**
+     * Creates an empty segment whose first record will have <code>baseSeq</code>.
+     */
+    static LogSegment create(Path dir, long baseSeq, int dataBytes, int indexEntries) throws IOException {
+        return new LogSegment(dir, baseSeq, dataBytes, indexEntries);
+    }
+
+    /**
+     * Reopens a sealed segment without scanning its data: records are counted through the
+     * index, as long as each entry points past the previous record at a header with the
+     * expected sequence number. Entries a crash left unwritten are zero and end the count
+     * early, so the missing tail is skipped by readers instead of being read from offset 0.
+     *
+     * @param maxCount records up to the next segment's base
+     */
+    static LogSegment openSealed(Path dir, long baseSeq, long maxCount, int dataBytes, int indexEntries) throws IOException {
+        LogSegment segment = new LogSegment(dir, baseSeq, dataBytes, indexEntries);
+        int limit = (int) Math.min(maxCount, segment.index.capacity() / 4);
+        int capacity = segment.data.capacity();
+        int end = 0;
+        int n = 0;
+        while (n < limit) {
+            int pos = segment.index.getInt(4 * n);
+            if (pos != end || pos + HEADER_BYTES > capacity) {
+                break;
+            }
+            int length = segment.data.getInt(pos);
+            if (length <= 0 || (long) pos + HEADER_BYTES + length > capacity
+                    || segment.data.getLong(pos + 8) != baseSeq + n) {
+                break;
+            }
+            end = pos + HEADER_BYTES + length;
+            n++;
+        }
+        segment.position = end;
+        segment.count = n;
+        segment.forcedPosition = segment.position;
+        segment.forcedCount = segment.count;
+        return segment;
+    }
+
+    /**
+     * Reopens the last segment, which may have been cut off by a crash: records
+     * are scanned from the start and the tail ends at the first record that is
+     * incomplete, fails its checksum or breaks the sequence. The index is rebuilt on the way.
+     */
+    static LogSegment recover(Path dir, long baseSeq, int dataBytes, int indexEntries) throws IOException {
+        LogSegment segment = new LogSegment(dir, baseSeq, dataBytes, indexEntries);
+        CRC32C crc = new CRC32C();
+        int pos = 0;
+        int n = 0;
+        int maxCount = segment.index.capacity() / 4;
+        int capacity = segment.data.capacity();
+        while (n < maxCount && pos + HEADER_BYTES <= capacity) {
+            int length = segment.data.getInt(pos);
+            if (length <= 0 || (long) pos + HEADER_BYTES + length > capacity
+                    || segment.data.getLong(pos + 8) != baseSeq + n) {
+                break;
+            }
+            crc.reset();
+            crc.update(segment.data.slice(pos + HEADER_BYTES, length));
+            if ((int) crc.getValue() != segment.data.getInt(pos + 4)) {
+                break; // torn write
+            }
+            segment.index.putInt(4 * n, pos);
+            n++;
+            pos += HEADER_BYTES + length;
+        }
+        segment.position = pos;
+        segment.count = n;
+        return segment;
+    }
+
+    long baseSeq() {
+        return baseSeq;
+    }
+
+    /**
+     * @return records written
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return true if a payload of this size still fits, in the data file and in the index
+     */
+    boolean fits(int payloadBytes) {
+        return count < index.capacity() / 4 && (long) position + HEADER_BYTES + payloadBytes <= data.capacity();
+    }
+
+    /**
+     * Writes one record. The caller holds the log's lock and has checked {@link #fits}.
+     */
+    void append(long seq, ByteBuffer payload, CRC32C crc) {
+        int length = payload.remaining();
+        crc.reset();
+        crc.update(payload.duplicate());
+        data.putInt(position, length)
+                .putInt(position + 4, (int) crc.getValue())
+                .putLong(position + 8, seq)
+                .put(position + HEADER_BYTES, payload, payload.position(), length);
+        int n = count;
+        index.putInt(4 * n, position);
+        position += HEADER_BYTES + length;
+        lastAppendMillis = System.currentTimeMillis();
+        count = n + 1; // publishes the record to readers
+    }
+
+    /**
+     * Hands the payloads of records <code>[from, to)</code> that are in this segment to the reader.
+     *
+     * @return the sequence number after the last record read
+     */
+    long read(long from, long to, MessageLog.RecordReader reader) {
+        long end = Math.min(to, baseSeq + count);
+        long seq = Math.max(from, baseSeq);
+        for (; seq < end; seq++) {
+            int pos = index.getInt(4 * (int) (seq - baseSeq));
+            reader.accept(seq, data.slice(pos + HEADER_BYTES, data.getInt(pos)).asReadOnlyBuffer());
+        }
+        return seq;
+    }
+
+    /**
+     * Forces the records written so far to disk. Only called by the log's flusher thread.
+     *
+     * @param upToPosition data bytes captured under the log's lock
+     * @param upToCount    records captured under the log's lock
+     */
+    void force(int upToPosition, int upToCount) {
+        if (upToPosition > forcedPosition) {
+            data.force(forcedPosition, upToPosition - forcedPosition);
+            index.force(4 * forcedCount, 4 * (upToCount - forcedCount));
+            forcedPosition = upToPosition;
+            forcedCount = upToCount;
+        }
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * @return bytes of data and index actually in use
+     */
+    long sizeBytes() {
+        return position + 4L * count;
+    }
+
+    long lastAppendMillis() {
+        return lastAppendMillis;
+    }
+
+    /**
+     * Closes the files. The mappings stay valid until collected, so a reader still
+     * holding this segment can finish.
+     */
+    void close() throws IOException {
+        dataChannel.close();
+        indexChannel.close();
+    }
+
+    /**
+     * @return the data and index file
+     */
+    List<Path> files() {
+        return List.of(dataPath, indexPath);
+    }
+}
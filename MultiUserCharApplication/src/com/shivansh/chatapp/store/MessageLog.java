@@ -0,0 +1,393 @@
+package com.shivansh.chatapp.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Durable, append-only log of chat messages, made of memory-mapped segment files.
+ * <p>
+ * The log hands out sequence numbers itself: {@link #append(RecordEncoder)}
+ * takes the next number and asks the caller to encode its record for it, all
+ * under one lock. Numbers therefore have no gaps, files hold them in order, and
+ * every segment can use a dense index (see {@link LogSegment}) to find any
+ * record without scanning. {@link #read(long, long, RecordReader)} returns any range.
+ * </p>
+ * <p>
+ * Appending never waits for the disk:
+ * <ul>
+ *     <li>a record is copied into a mapped page under the lock; no system call,
+ *         except when a full segment is replaced by a new one;</li>
+ *     <li>a background flusher forces written pages to disk every
+ *         <code>fsyncIntervalMillis</code>, or as soon as <code>fsyncEvery</code>
+ *         records are pending. A crash loses at most that batch, and the torn
+ *         tail is cut off by checksum on the next start;</li>
+ *     <li>the flusher also forces and closes full segments, and deletes the oldest ones
+ *         once they are older than the retention age or the log exceeds the retention size.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * There is one log, and so one append lock, for all rooms: rooms share one sequence, which
+ * is what lets a number identify a message server-wide and lets a resuming client ask for
+ * everything after one number. Rooms therefore do contend here, but only for the time it
+ * takes to number a record, checksum it and copy it into the page cache; encoding is left to
+ * the caller (see {@link RecordEncoder}) and disk writes to the flusher. Only replacing a full
+ * segment creates files under the lock.
+ * </p>
+ * Segments are never unmapped explicitly: the JDK has no safe way to do that, and a
+ * mapping stays readable after its file is deleted, so readers need no locks.
+ */
+public final class MessageLog implements Closeable {
+
+    /**
+     * Supplies the record for a sequence number assigned by the log. Called under the
+     * log's lock, so it should only fill in the number of a record encoded beforehand.
+     */
+    @FunctionalInterface
+    public interface RecordEncoder {
+        /**
+         * @return the record bytes between position and limit; not modified by the log
+         */
+        ByteBuffer encode(long seq);
+    }
+
+    /**
+     * Receives records read from the log.
+     */
+    @FunctionalInterface
+    public interface RecordReader {
+        /**
+         * @param payload read-only view of the record, valid as long as the caller keeps it
+         */
+        void accept(long seq, ByteBuffer payload);
+    }
+
+    /** Records that fit one segment's index, assuming records of at least this size. */
+    private static final int MIN_RECORD_BYTES = 32;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int indexEntries;
+    private final long fsyncIntervalNanos;
+    private final int fsyncEvery;
+    private final long retentionMillis;
+    private final long retentionBytes;
+
+    /** All segments by base sequence; readers look them up without locking. */
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32C crc = new CRC32C();
+    private volatile LogSegment active;
+    private long nextSeq;
+    private int unforced;
+    private boolean failing;
+
+    /** Full segments waiting for the flusher to force and close them; guarded by {@link #appendLock}. */
+    private final List<LogSegment> sealed = new ArrayList<>();
+
+    /**
+     * Files of segments dropped by retention that could not be deleted yet, and whether that
+     * was reported; only touched by the flusher.
+     */
+    private final Map<Path, Boolean> undeleted = new LinkedHashMap<>();
+
+    /** Last sequence number readers may ask for. */
+    private volatile long lastSeq;
+
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * Opens the log in <code>dir</code>, creating it if needed, and recovers its tail.
+     *
+     * @param segmentBytes        size of one data file; records never span files
+     * @param fsyncIntervalMillis longest time written records wait to be forced to disk; 0 leaves it to the OS
+     * @param fsyncEvery          pending records that trigger a force early; 0 for the interval only
+     * @param retentionMillis     age after which full segments are deleted; 0 keeps them
+     * @param retentionBytes      total size above which the oldest segments are deleted; 0 for no limit
+     * @throws IOException if the directory or a segment cannot be opened
+     */
+    public MessageLog(Path dir, int segmentBytes, long fsyncIntervalMillis, int fsyncEvery,
+                      long retentionMillis, long retentionBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.max(1 << 20, segmentBytes);
+        this.indexEntries = this.segmentBytes / MIN_RECORD_BYTES;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.fsyncEvery = fsyncEvery;
+        this.retentionMillis = retentionMillis;
+        this.retentionBytes = retentionBytes;
+        Files.createDirectories(dir);
+        openSegments();
+        this.flusher = Thread.ofPlatform().name("MessageLogFlusher").daemon().unstarted(this::flushLoop);
+        flusher.start();
+    }
+
+    /**
+     * Opens the log configured with <code>STORE_DIR</code>, <code>STORE_SEGMENT_MB</code>,
+     * <code>STORE_FSYNC_INTERVAL_MILLIS</code>, <code>STORE_FSYNC_EVERY</code>,
+     * <code>STORE_RETENTION_HOURS</code> and <code>STORE_RETENTION_MB</code>.
+     *
+     * @return the log, or null if <code>STORE_DIR</code> is empty and history is kept in memory only
+     */
+    public static MessageLog fromConfig() throws IOException {
+        String dir = ConfigReader.getValue("STORE_DIR", "");
+        if (dir.isEmpty()) {
+            return null;
+        }
+        return new MessageLog(Paths.get(dir),
+                Integer.parseInt(ConfigReader.getValue("STORE_SEGMENT_MB", "64")) << 20,
+                Long.parseLong(ConfigReader.getValue("STORE_FSYNC_INTERVAL_MILLIS", "1000")),
+                Integer.parseInt(ConfigReader.getValue("STORE_FSYNC_EVERY", "10000")),
+                TimeUnit.HOURS.toMillis(Long.parseLong(ConfigReader.getValue("STORE_RETENTION_HOURS", "168"))),
+                Long.parseLong(ConfigReader.getValue("STORE_RETENTION_MB", "1024")) << 20);
+    }
+
+    private void openSegments() throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(".log"))
+                    .forEach(name -> bases.add(Long.parseLong(name.substring(0, name.length() - 4))));
+        }
+        bases.sort(null);
+        for (int i = 0; i < bases.size() - 1; i++) {
+            long base = bases.get(i);
+            segments.put(base, LogSegment.openSealed(dir, base, bases.get(i + 1) - base, segmentBytes, indexEntries));
+        }
+        if (bases.isEmpty()) {
+            active = LogSegment.create(dir, 1, segmentBytes, indexEntries);
+        } else {
+            active = LogSegment.recover(dir, bases.get(bases.size() - 1), segmentBytes, indexEntries);
+        }
+        segments.put(active.baseSeq(), active);
+        nextSeq = active.baseSeq() + active.count();
+        lastSeq = nextSeq - 1;
+    }
+
+    /**
+     * Appends one record under the next sequence number. Never blocks on I/O other
+     * than creating a new segment when the current one is full. If the disk fails,
+     * the record is lost, the error is reported once, and the number is still used.
+     *
+     * @param encoder called under the log's lock with the assigned number
+     * @return the assigned sequence number
+     */
+    public long append(RecordEncoder encoder) {
+        appendLock.lock();
+        try {
+            long seq = nextSeq++;
+            ByteBuffer payload = encoder.encode(seq);
+            if (!active.fits(payload.remaining()) || active.baseSeq() + active.count() != seq) {
+                if (!roll(seq)) {
+                    return seq;
+                }
+            }
+            active.append(seq, payload, crc);
+            lastSeq = seq;
+            if (fsyncEvery > 0 && ++unforced >= fsyncEvery) {
+                unforced = 0;
+                LockSupport.unpark(flusher);
+            }
+            return seq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new segment at <code>seq</code>; the flusher forces and closes the old one.
+     */
+    private boolean roll(long seq) {
+        try {
+            LogSegment next = LogSegment.create(dir, seq, segmentBytes, indexEntries);
+            sealed.add(active);
+            active = next;
+            segments.put(seq, next);
+            failing = false;
+            return true;
+        } catch (IOException e) {
+            if (!failing) {
+                failing = true;
+                System.err.println("Could not create a message log segment in " + dir + "; history is not being persisted.");
+                e.printStackTrace();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return the oldest sequence number still stored, or {@link #lastSeq()} + 1 if the log is empty
+     */
+    public long firstSeq() {
+        Map.Entry<Long, LogSegment> first = segments.firstEntry();
+        return first != null ? first.getKey() : lastSeq + 1;
+    }
+
+    /**
+     * @return the newest sequence number stored, 0 if none
+     */
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Reads the records with <code>from &lt;= seq &lt; to</code> that are still retained, oldest first.
+     * Safe to call from any thread, concurrently with appends.
+     *
+     * @return number of records read
+     */
+    public int read(long from, long to, RecordReader reader) {
+        long end = Math.min(to, lastSeq + 1);
+        Long base = segments.floorKey(from);
+        long seq = base != null ? from : firstSeq();
+        int n = 0;
+        while (seq < end) {
+            Map.Entry<Long, LogSegment> entry = segments.floorEntry(seq);
+            if (entry == null) {
+                break;
+            }
+            long after = entry.getValue().read(seq, end, reader);
+            n += (int) (after - seq);
+            if (after == seq) {
+                Long nextBase = segments.higherKey(seq);
+                if (nextBase == null) {
+                    break; // records lost to a disk failure at the end
+                }
+                after = nextBase;
+            }
+            seq = after;
+        }
+        return n;
+    }
+
+    private void flushLoop() {
+        long idleNanos = fsyncIntervalNanos > 0 ? fsyncIntervalNanos : TimeUnit.SECONDS.toNanos(1);
+        while (!closed) {
+            LockSupport.parkNanos(this, idleNanos);
+            try {
+                flush(fsyncIntervalNanos > 0 || fsyncEvery > 0);
+                applyRetention();
+            } catch (Exception e) {
+                e.printStackTrace(); // keep flushing
+            }
+        }
+    }
+
+    /**
+     * Forces full segments and then the written part of the active one, outside the append lock.
+     *
+     * @param force false to only close full segments and leave writing back to the OS
+     */
+    private void flush(boolean force) throws IOException {
+        List<LogSegment> full;
+        LogSegment current;
+        int position;
+        int count;
+        appendLock.lock();
+        try {
+            full = new ArrayList<>(sealed);
+            sealed.clear();
+            current = active;
+            position = current.position();
+            count = current.count();
+            unforced = 0;
+        } finally {
+            appendLock.unlock();
+        }
+        for (LogSegment segment : full) {
+            if (force) {
+                segment.force(segment.position(), segment.count());
+            }
+            segment.close();
+        }
+        if (force) {
+            current.force(position, count);
+        }
+    }
+
+    /**
+     * Deletes the oldest full segments beyond the retention age or size.
+     */
+    private void applyRetention() throws IOException {
+        deleteDropped();
+        if (retentionMillis <= 0 && retentionBytes <= 0) {
+            return;
+        }
+        long total = 0;
+        for (LogSegment segment : segments.values()) {
+            total += segment.sizeBytes();
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (LogSegment segment : segments.values()) {
+            if (segment == active) {
+                break; // never deletes the segment being written
+            }
+            boolean tooOld = retentionMillis > 0 && segment.lastAppendMillis() < cutoff;
+            boolean tooBig = retentionBytes > 0 && total > retentionBytes;
+            if (!tooOld && !tooBig) {
+                break;
+            }
+            segments.remove(segment.baseSeq());
+            total -= segment.sizeBytes();
+            segment.close();
+            for (Path file : segment.files()) {
+                undeleted.putIfAbsent(file, false);
+            }
+        }
+        deleteDropped();
+    }
+
+    /**
+     * Deletes the files of dropped segments. Windows refuses to delete a file that is still
+     * mapped, and a mapping lasts until the segment is garbage collected &ndash; a reader may
+     * even still be using it &ndash; so files that fail stay listed and are retried every round.
+     * Each failure is reported once.
+     */
+    private void deleteDropped() {
+        for (Iterator<Map.Entry<Path, Boolean>> it = undeleted.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Boolean> entry = it.next();
+            try {
+                Files.deleteIfExists(entry.getKey());
+                it.remove();
+            } catch (IOException e) {
+                if (!entry.getValue()) {
+                    entry.setValue(true);
+                    System.err.println("Could not delete " + entry.getKey() + " yet (" + e + "); will retry.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the flusher and forces everything written to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+        active.close();
+    }
+}
@@ -10,6 +10,9 @@ import java.util.ResourceBundle;
  * provides a simple static method to retrieve configuration values
  * by key.
  * </p>
+ * A JVM system property with the same name (<code>-DPORT_NUMBER=9998</code>)
+ * overrides the file, so several server processes can share one
+ * <code>config.properties</code>, e.g. the nodes of a local cluster.
  */
 public class ConfigReader {
 
@@ -39,6 +42,26 @@ public class ConfigReader {
      * @throws NullPointerException if the resource bundle failed to load
      */
     public static String getValue(String key) {
-        return rb.getString(key);
+        String override = System.getProperty(key);
+        return override != null ? override.trim() : rb.getString(key);
+    }
+
+    /**
+     * Retrieves the value associated with the specified key, falling back to
+     * a default when the key is not present in the configuration file.
+     *
+     * @param key          the property key
+     * @param defaultValue the value returned when the key is missing
+     * @return the configured value, or <code>defaultValue</code> if absent
+     */
+    public static String getValue(String key, String defaultValue) {
+        String override = System.getProperty(key);
+        if (override != null) {
+            return override.trim();
+        }
+        if (rb == null || !rb.containsKey(key)) {
+            return defaultValue;
+        }
+        return rb.getString(key).trim();
     }
 }
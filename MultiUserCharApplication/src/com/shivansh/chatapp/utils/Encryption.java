@@ -11,6 +11,8 @@ import java.security.NoSuchAlgorithmException;
  * Although MD5 is used here for demonstration purposes,
  * it is not recommended for production systems due to known vulnerabilities.
  * </p>
+ * The hash is not what the database stores: logins and registrations through the server
+ * turn it into a salted verifier with {@link Srp}.
  */
 public interface Encryption {
 
@@ -0,0 +1,136 @@
+package com.shivansh.chatapp.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations, for reporting latency percentiles.
+ * <p>
+ * Values are counted in buckets whose width grows with the value: every power of
+ * two is split into 32 buckets, so a percentile is accurate to about 3% whether it
+ * is microseconds or minutes, and the histogram has a fixed size of a few kilobytes
+ * however many values it holds.
+ * <ul>
+ *     <li>{@link #record(long)} may be called from any number of threads at once and
+ *         allocates nothing;</li>
+ *     <li>percentiles report the upper end of their bucket, never less than the true value
+ *         (and never more than the largest value recorded).</li>
+ * </ul>
+ * Reads taken while values are still being recorded are approximate, e.g. the count
+ * may include a value not yet in its bucket.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    /** Buckets per power of two, as a power of two. */
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts one value. Negative values are counted as 0.
+     *
+     * @param value e.g. a duration in nanoseconds
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        long previous = max.get();
+        while (v > previous && !max.compareAndSet(previous, v)) {
+            previous = max.get();
+        }
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return mean of the values recorded, or 0 if none
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return largest value recorded, or 0 if none
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below or at which the given share of the recorded values lie.
+     *
+     * @param percentile e.g. 99.9
+     * @return the percentile, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Adds all values of another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long n = other.counts.get(i);
+            if (n > 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        long otherMax = other.max.get();
+        long previous = max.get();
+        while (otherMax > previous && !max.compareAndSet(previous, otherMax)) {
+            previous = max.get();
+        }
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return the largest value that falls into bucket <code>index</code>
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,129 @@
+package com.shivansh.chatapp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies signed, time-limited session tokens.
+ * <p>
+ * The server hands out a token after checking a user's password. The client
+ * then joins the chat with the token. The server can check the token without
+ * asking the database, so reconnecting clients cost no database query:
+ * <pre>
+ * base64url(userid) "." expiry "." base64url(HMAC-SHA256(secret, base64url(userid) "." expiry))
+ * </pre>
+ * <ul>
+ *     <li>the expiry is in epoch milliseconds, <code>TOKEN_TTL_MINUTES</code> after the token was issued;</li>
+ *     <li>the secret is <code>TOKEN_SECRET</code>. Cluster nodes that share the secret accept each
+ *         other's tokens. If no secret is configured, a random one is generated, and tokens
+ *         stop working when the server restarts.</li>
+ * </ul>
+ * A token cannot be revoked before it expires, so keep the TTL short enough for that to be acceptable.
+ * </p>
+ */
+public final class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /** Keyed MAC that is cloned for every signature, so threads never share its state. */
+    private final Mac prototype;
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+
+    /**
+     * @param secret    signing key
+     * @param ttlMillis how long an issued token stays valid
+     */
+    public SessionTokens(byte[] secret, long ttlMillis) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        try {
+            this.prototype = Mac.getInstance(ALGORITHM);
+            this.prototype.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e); // required of every JRE
+        }
+    }
+
+    /**
+     * Creates the token service configured with <code>TOKEN_SECRET</code> and <code>TOKEN_TTL_MINUTES</code>.
+     */
+    public static SessionTokens fromConfig() {
+        String secret = ConfigReader.getValue("TOKEN_SECRET", "");
+        byte[] key;
+        if (secret.isEmpty()) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            System.out.println("TOKEN_SECRET is not set: session tokens are valid until this server restarts.");
+        } else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        return new SessionTokens(key, TimeUnit.MINUTES.toMillis(
+                Long.parseLong(ConfigReader.getValue("TOKEN_TTL_MINUTES", "720"))));
+    }
+
+    /**
+     * Issues a token for a user whose password has just been checked.
+     *
+     * @param userid the authenticated user
+     * @return the token; it contains no spaces and can be sent as a command argument
+     */
+    public String issue(String userid) {
+        String payload = ENCODER.encodeToString(userid.getBytes(StandardCharsets.UTF_8))
+                + "." + (System.currentTimeMillis() + ttlMillis);
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * Checks a token's signature and expiry.
+     *
+     * @param token the token sent by a client
+     * @return the user the token was issued to, or null if it is malformed, forged or expired
+     */
+    public String verify(String token) {
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        if (first <= 0 || last <= first + 1 || last == token.length() - 1) {
+            return null;
+        }
+        try {
+            long expiry = Long.parseLong(token, first + 1, last, 10);
+            if (System.currentTimeMillis() > expiry) {
+                return null;
+            }
+            String payload = token.substring(0, last);
+            // Constant-time comparison, so response times do not reveal how much of a forged signature was right
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(last + 1)))) {
+                return null;
+            }
+            return new String(DECODER.decode(token.substring(0, first)), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null; // not a number or not base64: a plain name, or garbage
+        }
+    }
+
+    private byte[] sign(String payload) {
+        Mac mac;
+        try {
+            mac = (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+            } catch (GeneralSecurityException e1) {
+                throw new IllegalStateException(e1);
+            }
+        }
+        return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+}
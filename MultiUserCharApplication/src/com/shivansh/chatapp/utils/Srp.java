@@ -0,0 +1,315 @@
+package com.shivansh.chatapp.utils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Password logins with SRP-6a (RFC 5054's 2048-bit group, SHA-256), so the server stores a
+ * salted verifier instead of anything a client could log in with, and nothing sent during a
+ * login lets an eavesdropper log in or test password guesses offline.
+ * <p>
+ * The SRP password is the hash from {@link Encryption#passwordEncrypt(String)}, so a user's
+ * password still goes through the same function everywhere:
+ * <pre>
+ * x = H(salt | H(userid ":" passwordHash))     v = g^x mod N
+ * credential = "srp:" base64url(salt) ":" base64url(v)
+ * </pre>
+ * A login is one round trip on top of the answer:
+ * <ol>
+ *     <li>the client sends its public key A ({@link ClientLogin#publicKey()});</li>
+ *     <li>the server answers with the salt and its own public key B, derived from v
+ *         ({@link ServerLogin#challenge()});</li>
+ *     <li>both compute the same session key from their secrets, and the client proves it with
+ *         M = H(A | B | K | userid | salt) ({@link ClientLogin#proof}, {@link ServerLogin#check}).</li>
+ * </ol>
+ * A user ID without a credential gets a made-up salt and verifier that stay the same for
+ * that ID, so the answer does not tell whether the user exists. Rows from before verifiers
+ * (a bare password hash) still log in, with a verifier computed on the fly; they remain as
+ * good as the password to anyone who reads the database, until the user registers again.
+ * </p>
+ * The verifier itself is not secret enough to send around carelessly: whoever has it can
+ * test password guesses against it offline, as with any salted hash. Registration sends it
+ * once, so register over a network you trust.
+ */
+public final class Srp {
+
+    private static final BigInteger N = new BigInteger(
+            "AC6BDB41324A9A9BF166DE5E1389582FAF72B6651987EE07FC3192943DB56050A37329CBB4A099ED"
+            + "8193E0757767A13DD52312AB4B03310DCD7F48A9DA04FD50E8083969EDB767B0CF6095179A163AB3"
+            + "661A05FBD5FAAAE82918A9962F0B93B855F97993EC975EEAA80D740ADBF4FF747359D041D5C33EA7"
+            + "1D281E446B14773BCA97B43A23FB801676BD207A436C6481F1D2B9078717461A5B9D32E688F87748"
+            + "544523B524B0D57D5EA77A2775D2ECFA032CFBDBF52FB3786160279004E57AE6AF874E7303CE5329"
+            + "9CCC041C7BC308D82A5698F3A8D0C38271AE35F8E9DBFBB694B5C803D89F7AE435DE236D525F5475"
+            + "9B65E372FCD68EF20FA7111F9E4AFF73", 16);
+    private static final BigInteger G = BigInteger.TWO;
+
+    /** Bytes of N; numbers are padded to this length before hashing. */
+    private static final int LENGTH = (N.bitLength() + 7) / 8;
+
+    /** The multiplier of SRP-6a: k = H(N | PAD(g)). */
+    private static final BigInteger MULTIPLIER = new BigInteger(1, hash(pad(N), pad(G)));
+
+    private static final String PREFIX = "srp:";
+    private static final int SALT_BYTES = 16;
+    private static final int SECRET_BYTES = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** Key for the made-up salts of users without a verifier; new for every run of the server. */
+    private static final byte[] FAKE_SALT_KEY = randomBytes(SECRET_BYTES);
+
+    private Srp() {
+    }
+
+    /**
+     * Creates the credential to store for a new user, with a new random salt.
+     *
+     * @param userid       the user ID, which is part of the verifier
+     * @param passwordHash the password hashed with {@link Encryption#passwordEncrypt(String)}
+     * @return the credential, about 370 characters without spaces
+     */
+    public static String newCredential(String userid, String passwordHash) {
+        byte[] salt = randomBytes(SALT_BYTES);
+        return PREFIX + ENCODER.encodeToString(salt) + ":" + ENCODER.encodeToString(pad(verifier(salt, userid, passwordHash)));
+    }
+
+    /**
+     * @return true if <code>credential</code> is a well-formed verifier, as sent with a registration
+     */
+    public static boolean isCredential(String credential) {
+        return Verifier.parse(credential) != null;
+    }
+
+    /**
+     * Checks a password against a stored credential, for code that has the password at hand.
+     *
+     * @param credential   the stored credential, or a bare password hash from before verifiers
+     * @param userid       the user ID
+     * @param passwordHash the password hashed with {@link Encryption#passwordEncrypt(String)}
+     * @return true if the password is the user's
+     */
+    public static boolean matches(String credential, String userid, String passwordHash) {
+        Verifier stored = Verifier.parse(credential);
+        if (stored == null) {
+            return !credential.startsWith(PREFIX) && MessageDigest.isEqual(
+                    credential.getBytes(StandardCharsets.UTF_8), passwordHash.getBytes(StandardCharsets.UTF_8));
+        }
+        return MessageDigest.isEqual(pad(stored.v()), pad(verifier(stored.salt(), userid, passwordHash)));
+    }
+
+    /**
+     * The client's side of one login. Not thread-safe; use each instance for one login.
+     */
+    public static final class ClientLogin {
+
+        private final BigInteger a = new BigInteger(1, randomBytes(SECRET_BYTES));
+        private final BigInteger publicKey = G.modPow(a, N);
+
+        /**
+         * @return A, base64url-encoded, to send with the login request
+         */
+        public String publicKey() {
+            return ENCODER.encodeToString(pad(publicKey));
+        }
+
+        /**
+         * Answers the server's challenge.
+         *
+         * @param userid       the user logging in
+         * @param passwordHash the password hashed with {@link Encryption#passwordEncrypt(String)}
+         * @param salt         the salt the server sent
+         * @param serverKey    the public key B the server sent
+         * @return the proof to send, or null if the challenge is malformed and must not be answered
+         */
+        public String proof(String userid, String passwordHash, String salt, String serverKey) {
+            byte[] saltBytes = decode(salt, SALT_BYTES);
+            BigInteger b = key(serverKey);
+            if (saltBytes == null || b == null) {
+                return null;
+            }
+            BigInteger u = scramble(publicKey, b);
+            if (u.signum() == 0) {
+                return null;
+            }
+            BigInteger x = x(saltBytes, userid, passwordHash);
+            BigInteger s = b.subtract(MULTIPLIER.multiply(G.modPow(x, N))).mod(N).modPow(a.add(u.multiply(x)), N);
+            return evidence(publicKey, b, s, userid, saltBytes);
+        }
+    }
+
+    /**
+     * The server's side of one login. Not thread-safe; use each instance for one login.
+     */
+    public static final class ServerLogin {
+
+        private final String userid;
+        private final byte[] salt;
+        private final BigInteger clientKey;
+        private final BigInteger b;
+        private final BigInteger publicKey;
+        private final BigInteger v;
+
+        private ServerLogin(String userid, byte[] salt, BigInteger v, BigInteger clientKey) {
+            this.userid = userid;
+            this.salt = salt;
+            this.v = v;
+            this.clientKey = clientKey;
+            this.b = new BigInteger(1, randomBytes(SECRET_BYTES));
+            this.publicKey = MULTIPLIER.multiply(v).add(G.modPow(b, N)).mod(N);
+        }
+
+        /**
+         * Starts a login.
+         *
+         * @param userid     the user logging in
+         * @param credential the user's stored credential, a bare password hash from before
+         *                   verifiers, or null if there is no such user
+         * @param clientKey  the public key A the client sent
+         * @return the login, or null if <code>clientKey</code> is malformed
+         */
+        public static ServerLogin start(String userid, String credential, String clientKey) {
+            BigInteger a = key(clientKey);
+            if (a == null) {
+                return null;
+            }
+            Verifier stored = credential != null ? Verifier.parse(credential) : null;
+            if (stored != null) {
+                return new ServerLogin(userid, stored.salt(), stored.v(), a);
+            }
+            byte[] salt = fakeSalt(userid);
+            if (credential == null || credential.startsWith(PREFIX)) {
+                // No usable verifier: a random one, so no password matches
+                return new ServerLogin(userid, salt, G.modPow(new BigInteger(1, randomBytes(SECRET_BYTES)), N), a);
+            }
+            return new ServerLogin(userid, salt, verifier(salt, userid, credential), a);
+        }
+
+        /**
+         * @return the salt and B, base64url-encoded and separated by a space
+         */
+        public String challenge() {
+            return ENCODER.encodeToString(salt) + " " + ENCODER.encodeToString(pad(publicKey));
+        }
+
+        /**
+         * @param proof the client's answer to {@link #challenge()}
+         * @return true if the client knows the password
+         */
+        public boolean check(String proof) {
+            BigInteger u = scramble(clientKey, publicKey);
+            if (u.signum() == 0) {
+                return false;
+            }
+            BigInteger s = clientKey.multiply(v.modPow(u, N)).mod(N).modPow(b, N);
+            // Constant-time comparison, so response times do not reveal how much of a forged answer was right
+            return MessageDigest.isEqual(evidence(clientKey, publicKey, s, userid, salt).getBytes(StandardCharsets.UTF_8),
+                    proof.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** A parsed credential. */
+    private record Verifier(byte[] salt, BigInteger v) {
+
+        /**
+         * @return the verifier, or null if <code>credential</code> is not a well-formed one
+         */
+        static Verifier parse(String credential) {
+            if (credential == null || !credential.startsWith(PREFIX)) {
+                return null;
+            }
+            int colon = credential.indexOf(':', PREFIX.length());
+            if (colon < 0) {
+                return null;
+            }
+            byte[] salt = decode(credential.substring(PREFIX.length(), colon), SALT_BYTES);
+            BigInteger v = key(credential.substring(colon + 1));
+            return salt != null && v != null ? new Verifier(salt, v) : null;
+        }
+    }
+
+    private static BigInteger verifier(byte[] salt, String userid, String passwordHash) {
+        return G.modPow(x(salt, userid, passwordHash), N);
+    }
+
+    private static BigInteger x(byte[] salt, String userid, String passwordHash) {
+        byte[] identity = hash((userid + ":" + passwordHash).getBytes(StandardCharsets.UTF_8));
+        return new BigInteger(1, hash(salt, identity));
+    }
+
+    private static BigInteger scramble(BigInteger clientKey, BigInteger serverKey) {
+        return new BigInteger(1, hash(pad(clientKey), pad(serverKey)));
+    }
+
+    private static String evidence(BigInteger clientKey, BigInteger serverKey, BigInteger s, String userid, byte[] salt) {
+        byte[] sessionKey = hash(pad(s));
+        return ENCODER.encodeToString(hash(pad(clientKey), pad(serverKey), sessionKey,
+                userid.getBytes(StandardCharsets.UTF_8), salt));
+    }
+
+    /**
+     * @return the public key or verifier, or null if it is malformed or 0 mod N
+     */
+    private static BigInteger key(String encoded) {
+        byte[] bytes = encoded != null && encoded.length() <= (LENGTH * 4 + 2) / 3 ? decode(encoded, -1) : null;
+        if (bytes == null || bytes.length == 0 || bytes.length > LENGTH) {
+            return null;
+        }
+        BigInteger key = new BigInteger(1, bytes);
+        return key.mod(N).signum() != 0 && key.compareTo(N) < 0 ? key : null;
+    }
+
+    /**
+     * @param length the expected number of bytes, or -1 for any
+     * @return the bytes, or null if <code>encoded</code> is not base64url or has the wrong length
+     */
+    private static byte[] decode(String encoded, int length) {
+        try {
+            byte[] bytes = DECODER.decode(encoded);
+            return length < 0 || bytes.length == length ? bytes : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] fakeSalt(String userid) {
+        byte[] salt = new byte[SALT_BYTES];
+        System.arraycopy(hash(FAKE_SALT_KEY, userid.getBytes(StandardCharsets.UTF_8)), 0, salt, 0, SALT_BYTES);
+        return salt;
+    }
+
+    /**
+     * @return <code>n</code> as an unsigned big-endian number of {@link #LENGTH} bytes
+     */
+    private static byte[] pad(BigInteger n) {
+        byte[] bytes = n.toByteArray();
+        byte[] padded = new byte[LENGTH];
+        int copy = Math.min(bytes.length, LENGTH);
+        System.arraycopy(bytes, bytes.length - copy, padded, LENGTH - copy, copy);
+        return padded;
+    }
+
+    private static byte[] hash(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // required of every JRE
+        }
+    }
+
+    private static byte[] randomBytes(int n) {
+        byte[] bytes = new byte[n];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+}
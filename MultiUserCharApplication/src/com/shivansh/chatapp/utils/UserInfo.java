@@ -26,4 +26,11 @@ public class UserInfo {
      * </p>
      */
     public static String USER_NAME;
+
+    /**
+     * Session token issued by the server at login, sent instead of the
+     * password whenever the client (re)joins the chat. Null if not logged in
+     * through the server.
+     */
+    public static String SESSION_TOKEN;
 }
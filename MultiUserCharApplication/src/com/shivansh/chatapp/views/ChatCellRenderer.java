@@ -0,0 +1,48 @@
+package com.shivansh.chatapp.views;
+
+import java.awt.Color;
+import java.awt.Component;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
+
+/**
+ * Renders one chat line in the chat list.
+ * <p>
+ * Every row is a single line of the same height, so the list can place rows
+ * without measuring them and only renders the visible ones. Private messages
+ * are highlighted, join/leave notices are greyed out, and a line too long for
+ * the window shows in full as a tooltip.
+ * </p>
+ */
+class ChatCellRenderer extends DefaultListCellRenderer {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Color PRIVATE = new Color(0, 90, 160);
+    private static final Color NOTICE = Color.GRAY;
+
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                  boolean isSelected, boolean cellHasFocus) {
+        super.getListCellRendererComponent(list, value, index, isSelected, false);
+        String line = String.valueOf(value);
+        setToolTipText(getFontMetrics(getFont()).stringWidth(line) > list.getWidth() ? line : null);
+        if (!isSelected) {
+            if (line.contains(" [Private] ")) {
+                setForeground(PRIVATE);
+            } else if (isNotice(line)) {
+                setForeground(NOTICE);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return true for server notices such as "12:00 - bob joined the chat.", which have no "sender: " part
+     */
+    private static boolean isNotice(String line) {
+        int dash = line.indexOf(" - ");
+        return dash > 0 && line.indexOf(": ", dash) < 0;
+    }
+}
@@ -0,0 +1,214 @@
+package com.shivansh.chatapp.views;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.swing.DefaultListModel;
+import javax.swing.Timer;
+
+import com.shivansh.chatapp.network.ChatListener;
+import com.shivansh.chatapp.network.ChatMessage;
+import com.shivansh.chatapp.utils.ConfigReader;
+
+/**
+ * Hands what the {@link com.shivansh.chatapp.network.Client} receives to the Swing
+ * components, in batches on the EDT.
+ * <p>
+ * The network thread only appends to pending lists under a lock. The first change
+ * after a refresh starts a one-shot Swing {@link Timer}, which applies everything
+ * pending at once, so:
+ * <ul>
+ *     <li>components are only touched on the event dispatch thread;</li>
+ *     <li>a burst of messages is one model update and one repaint, and the
+ *         screen is refreshed at most once per <code>CHAT_VIEW_REFRESH_MILLIS</code>;</li>
+ *     <li>a quiet room still shows a message as soon as the previous refresh is a frame old.</li>
+ * </ul>
+ * Pages of older messages are queued separately and handed to their own view, to be
+ * shown above the lines already there.
+ * Pending chat lines are capped at <code>CHAT_VIEW_MAX_LINES</code> like the view itself,
+ * so a stalled EDT does not make memory grow either: the oldest pending lines are
+ * dropped, as the view would have dropped them anyway.
+ * </p>
+ */
+public final class ChatFeed implements ChatListener {
+
+    private final Consumer<List<String>> chatView;
+    private final Consumer<List<String>> olderView;
+    private final DefaultListModel<String> userListModel;
+    private final int maxLines;
+    private final long refreshNanos;
+    private final Timer timer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private ArrayDeque<String> pendingLines = new ArrayDeque<>();
+    private List<Runnable> pendingUsers = new ArrayList<>();
+    private List<String> pendingOlder = new ArrayList<>();
+    private boolean scheduled;
+
+    /** When the EDT last applied a batch. */
+    private volatile long lastRefreshNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    /**
+     * @param chatView      receives each batch of new chat lines, oldest first, on the EDT
+     * @param olderView     receives older messages to show above all others, oldest first, on the EDT
+     * @param userListModel model backing the active users list
+     */
+    public ChatFeed(Consumer<List<String>> chatView, Consumer<List<String>> olderView,
+                    DefaultListModel<String> userListModel) {
+        this.chatView = chatView;
+        this.olderView = olderView;
+        this.userListModel = userListModel;
+        this.maxLines = Math.max(1, Integer.parseInt(ConfigReader.getValue("CHAT_VIEW_MAX_LINES", "5000")));
+        int refreshMillis = Math.max(1, Integer.parseInt(ConfigReader.getValue("CHAT_VIEW_REFRESH_MILLIS", "33")));
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        this.timer = new Timer(refreshMillis, e -> refresh());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * @return the most chat lines kept
+     */
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * Queues one message for display.
+     */
+    @Override
+    public void messageReceived(ChatMessage message) {
+        appendLine(message.getText());
+    }
+
+    @Override
+    public void olderMessagesReceived(String room, List<ChatMessage> messages) {
+        List<String> lines = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            lines.add(message.getText());
+        }
+        prependLines(lines);
+    }
+
+    @Override
+    public void usersReplaced(List<String> users) {
+        updateUsers(() -> {
+            userListModel.clear();
+            for (String user : users) {
+                userListModel.addElement(user);
+            }
+        });
+    }
+
+    @Override
+    public void userJoined(String user) {
+        updateUsers(() -> {
+            if (!userListModel.contains(user)) {
+                userListModel.addElement(user);
+            }
+        });
+    }
+
+    @Override
+    public void userLeft(String user) {
+        updateUsers(() -> userListModel.removeElement(user));
+    }
+
+    @Override
+    public void connectionLost() {
+        appendLine("Connection to server lost. Reconnecting...");
+    }
+
+    @Override
+    public void reconnected() {
+        appendLine("Reconnected.");
+    }
+
+    /**
+     * Queues one chat line for display.
+     */
+    private void appendLine(String line) {
+        lock.lock();
+        try {
+            if (pendingLines.size() == maxLines) {
+                pendingLines.pollFirst();
+            }
+            pendingLines.addLast(line);
+            scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a page of older messages, which goes above everything queued or shown so far.
+     *
+     * @param lines the page, oldest first
+     */
+    private void prependLines(List<String> lines) {
+        lock.lock();
+        try {
+            pendingOlder.addAll(0, lines);
+            scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateUsers(Runnable change) {
+        lock.lock();
+        try {
+            pendingUsers.add(change);
+            scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts the timer for the next refresh, one frame after the previous one.
+     */
+    private void scheduleLocked() {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        long waitNanos = lastRefreshNanos + refreshNanos - System.nanoTime();
+        timer.setInitialDelay((int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        timer.restart();
+    }
+
+    /**
+     * Applies everything pending. Runs on the EDT.
+     */
+    private void refresh() {
+        ArrayDeque<String> lines;
+        List<Runnable> users;
+        List<String> older;
+        lock.lock();
+        try {
+            lines = pendingLines;
+            users = pendingUsers;
+            older = pendingOlder;
+            pendingLines = new ArrayDeque<>();
+            pendingUsers = new ArrayList<>();
+            pendingOlder = new ArrayList<>();
+            scheduled = false;
+        } finally {
+            lock.unlock();
+        }
+        lastRefreshNanos = System.nanoTime();
+        for (Runnable change : users) {
+            change.run();
+        }
+        if (!lines.isEmpty()) {
+            chatView.accept(new ArrayList<>(lines));
+        }
+        if (!older.isEmpty()) {
+            olderView.accept(older);
+        }
+    }
+}
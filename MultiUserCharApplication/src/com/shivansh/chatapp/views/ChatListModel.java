@@ -0,0 +1,98 @@
+package com.shivansh.chatapp.views;
+
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * List model holding the most recent chat lines, up to a fixed number.
+ * <p>
+ * Lines are kept in a ring buffer: appending a batch to a full model drops the
+ * oldest lines, so memory stays bounded however long the client runs. Older
+ * lines fetched on demand are inserted at the top while there is room. Each batch
+ * fires one removal and one insertion event, and the {@link javax.swing.JList}
+ * showing the model only lays out the rows that are visible.
+ * </p>
+ * Like all Swing models, it must only be used on the event dispatch thread.
+ */
+public class ChatListModel extends AbstractListModel<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String[] lines;
+    private int head; // index of the oldest line
+    private int size;
+
+    /**
+     * @param maxLines most lines kept
+     */
+    public ChatListModel(int maxLines) {
+        this.lines = new String[Math.max(1, maxLines)];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return lines[(head + index) % lines.length];
+    }
+
+    /**
+     * Appends lines, dropping the oldest ones beyond the capacity.
+     *
+     * @param batch new lines, oldest first
+     */
+    public void appendAll(List<String> batch) {
+        int count = Math.min(batch.size(), lines.length);
+        if (count == 0) {
+            return;
+        }
+        int evicted = Math.max(0, size + count - lines.length);
+        if (evicted > 0) {
+            for (int i = 0; i < evicted; i++) {
+                lines[(head + i) % lines.length] = null;
+            }
+            head = (head + evicted) % lines.length;
+            size -= evicted;
+            fireIntervalRemoved(this, 0, evicted - 1);
+        }
+        int first = size;
+        for (String line : batch.subList(batch.size() - count, batch.size())) {
+            lines[(head + size) % lines.length] = line;
+            size++;
+        }
+        fireIntervalAdded(this, first, size - 1);
+    }
+
+    /**
+     * Inserts older lines above the others, as far as there is room: lines already shown
+     * are never dropped for older ones. The lines closest to the current top are kept.
+     *
+     * @param batch older lines, oldest first
+     * @return number of lines inserted
+     */
+    public int prependAll(List<String> batch) {
+        int count = Math.min(batch.size(), lines.length - size);
+        if (count == 0) {
+            return 0;
+        }
+        head = (head - count + lines.length) % lines.length;
+        List<String> kept = batch.subList(batch.size() - count, batch.size());
+        for (int i = 0; i < count; i++) {
+            lines[(head + i) % lines.length] = kept.get(i);
+        }
+        size += count;
+        fireIntervalAdded(this, 0, count - 1);
+        return count;
+    }
+
+    /**
+     * @return true if no more lines can be added without dropping the oldest
+     */
+    public boolean isFull() {
+        return size == lines.length;
+    }
+}
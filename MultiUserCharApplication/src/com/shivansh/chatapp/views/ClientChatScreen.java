@@ -2,7 +2,11 @@ package com.shivansh.chatapp.views;
 
 import java.awt.BorderLayout;
 import java.awt.Font;
+import java.awt.Point;
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.List;
 
 import javax.swing.DefaultListModel;
 import javax.swing.JButton;
@@ -10,9 +14,10 @@ import javax.swing.JFrame;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 
@@ -29,11 +34,19 @@ import com.shivansh.chatapp.utils.UserInfo;
  *     <li>Shows a list of active users on the right.</li>
  *     <li>Supports public and private messages (/w username message).</li>
  * </ul>
+ * Messages are shown in a {@link JList} over a {@link ChatListModel} that keeps the
+ * last <code>CHAT_VIEW_MAX_LINES</code> lines. Rows have a fixed height, so only the
+ * visible rows are laid out and painted, and incoming messages arrive in batches
+ * from a {@link ChatFeed} at most once per <code>CHAT_VIEW_REFRESH_MILLIS</code>.
+ * Scrolling to the top loads the next <code>HISTORY_PAGE_SIZE</code> older messages of
+ * the current room from the server, until the list is full.
  */
 public class ClientChatScreen extends JFrame {
 
     private JPanel contentPane;
-    private JTextArea chatArea; // Main chat display area
+    private ChatListModel chatModel; // Most recent chat lines
+    private JList<String> chatList; // Main chat display area
+    private JScrollPane chatScrollPane;
     private JTextField inputField; // Field to type messages
     private JButton sendButton; // Button to send messages
     private Client client; // Handles server communication
@@ -62,6 +75,11 @@ public class ClientChatScreen extends JFrame {
         if (message.isEmpty()) {
             return; // Ignore empty messages
         }
+        String problem = Client.validate(message);
+        if (problem != null) {
+            JOptionPane.showMessageDialog(this, problem, "Message Too Long", JOptionPane.WARNING_MESSAGE);
+            return; // keep the text so it can be shortened
+        }
 
         try {
             if (client != null) {
@@ -94,16 +112,33 @@ public class ClientChatScreen extends JFrame {
         contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
         setContentPane(contentPane);
 
-        // Center: chat area
-        chatArea = new JTextArea();
-        chatArea.setEditable(false);
-        chatArea.setLineWrap(true);
-        chatArea.setWrapStyleWord(true);
-        JScrollPane chatScrollPane = new JScrollPane(chatArea);
+        // Right: active users list, and the feed that updates it and the chat
+        userListModel = new DefaultListModel<>();
+        ChatFeed feed = new ChatFeed(this::showMessages, this::showOlderMessages, userListModel);
+
+        // Center: chat list. A fixed cell size spares measuring every row; rows still
+        // span the whole width, since the list tracks the viewport width.
+        chatModel = new ChatListModel(feed.getMaxLines());
+        chatList = new JList<>(chatModel);
+        chatList.setCellRenderer(new ChatCellRenderer());
+        chatList.setFixedCellHeight(chatList.getFontMetrics(chatList.getFont()).getHeight() + 4);
+        chatList.setFixedCellWidth(1);
+        chatScrollPane = new JScrollPane(chatList);
         contentPane.add(chatScrollPane, BorderLayout.CENTER);
 
-        // Right: active users list
-        userListModel = new DefaultListModel<>();
+        // Reaching the top, by dragging or by turning the wheel further, loads older messages
+        JScrollBar scrollBar = chatScrollPane.getVerticalScrollBar();
+        scrollBar.addAdjustmentListener(e -> {
+            if (e.getValue() == scrollBar.getMinimum() && scrollBar.getVisibleAmount() < scrollBar.getMaximum()) {
+                loadOlderMessages();
+            }
+        });
+        chatList.addMouseWheelListener(e -> {
+            if (e.getWheelRotation() < 0 && scrollBar.getValue() == scrollBar.getMinimum()) {
+                loadOlderMessages();
+            }
+        });
+
         userList = new JList<>(userListModel);
         JScrollPane userScrollPane = new JScrollPane(userList);
         userScrollPane.setPreferredSize(new java.awt.Dimension(180, 0)); // width adjusts with window
@@ -123,9 +158,73 @@ public class ClientChatScreen extends JFrame {
         contentPane.add(bottomPanel, BorderLayout.SOUTH);
 
         // Connect to server and register user
-        client = new Client(chatArea, userListModel);
-        client.sendMessage("/join " + UserInfo.USER_NAME);
+        client = connect(feed);
+        client.sendMessage("/join " + (UserInfo.SESSION_TOKEN != null ? UserInfo.SESSION_TOKEN : UserInfo.USER_NAME));
 
         setVisible(true);
     }
+
+    /**
+     * Connects to the chat server, telling the user what went wrong if it fails.
+     */
+    private static Client connect(ChatFeed feed) throws IOException {
+        try {
+            return Client.open(feed);
+        } catch (ConnectException e) {
+            // Server not reachable or not running
+            JOptionPane.showMessageDialog(null,
+                    "Unable to connect to the server.\nPlease make sure the server is running.",
+                    "Connection Error", JOptionPane.ERROR_MESSAGE);
+            throw e;
+        } catch (UnknownHostException e) {
+            // Host address not recognized
+            JOptionPane.showMessageDialog(null,
+                    "Invalid server address. Check your configuration.",
+                    "Host Error", JOptionPane.ERROR_MESSAGE);
+            throw e;
+        } catch (IOException e) {
+            // General I/O errors
+            JOptionPane.showMessageDialog(null,
+                    "I/O error occurred while connecting to the server.",
+                    "I/O Error", JOptionPane.ERROR_MESSAGE);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a batch of received lines, scrolling to the newest one unless the
+     * user has scrolled up to read older messages.
+     */
+    private void showMessages(List<String> lines) {
+        int last = chatModel.getSize() - 1;
+        int lastVisible = chatList.getLastVisibleIndex();
+        boolean atBottom = lastVisible < 0 || lastVisible >= last;
+        chatModel.appendAll(lines);
+        if (atBottom) {
+            chatList.ensureIndexIsVisible(chatModel.getSize() - 1);
+        }
+    }
+
+    /**
+     * Asks for the next page of older messages, unless the list has no room left for them.
+     */
+    private void loadOlderMessages() {
+        if (client != null && chatModel.getSize() > 0 && !chatModel.isFull()) {
+            client.requestOlderHistory();
+        }
+    }
+
+    /**
+     * Inserts a page of older messages at the top, keeping the lines the user is
+     * looking at in place.
+     */
+    private void showOlderMessages(List<String> lines) {
+        JViewport viewport = chatScrollPane.getViewport();
+        Point position = viewport.getViewPosition();
+        int added = chatModel.prependAll(lines);
+        if (added > 0) {
+            viewport.validate(); // let the list grow before moving the view down
+            viewport.setViewPosition(new Point(position.x, position.y + added * chatList.getFixedCellHeight()));
+        }
+    }
 }
@@ -4,7 +4,7 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.SQLException;
+import java.io.IOException;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
@@ -14,22 +14,20 @@ import javax.swing.JPasswordField;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
 
-import com.shivansh.chatapp.dao.UserDAO;
-import com.shivansh.chatapp.dto.UserDTO;
+import com.shivansh.chatapp.network.Client;
 import com.shivansh.chatapp.utils.UserInfo;
 
 /**
  * Simple login and registration screen for the multi-user chat app.
- * Connects to the database via UserDAO and navigates to the dashboard on successful login.
+ * Logs in through the chat server, which checks the password and returns a session
+ * token for joining the chat, and navigates to the dashboard on successful login.
+ * Registration goes through the chat server as well, so the client needs no database access.
  */
 public class UserScreen extends JFrame {
 
     private JTextField useridtxt;
     private JPasswordField passwordField;
 
-    // Data access object for user authentication and registration
-    private final UserDAO userDAO = new UserDAO();
-
     /**
      * Entry point for testing this screen independently.
      */
@@ -45,12 +43,12 @@ public class UserScreen extends JFrame {
         String userid = useridtxt.getText();
         char[] password = passwordField.getPassword();
 
-        UserDTO userDTO = new UserDTO(userid, password);
-
         try {
-            if (userDAO.doLogin(userDTO)) {
-                // Login successful
+            String token = Client.login(userid, password);
+            if (token != null) {
+                // Login successful: the token is used to join the chat
                 UserInfo.USER_NAME = userid;
+                UserInfo.SESSION_TOKEN = token;
                 JOptionPane.showMessageDialog(this, "Welcome " + userid);
 
                 // Open dashboard and close login screen
@@ -62,12 +60,9 @@ public class UserScreen extends JFrame {
                 // Invalid credentials
                 JOptionPane.showMessageDialog(this, "Invalid Userid or Password");
             }
-        } catch (ClassNotFoundException | SQLException ex) {
-            System.out.println("Database error during login");
-            ex.printStackTrace();
-        } catch (Exception ex) {
-            System.out.println("Unexpected error during login");
-            ex.printStackTrace();
+        } catch (IOException ex) {
+            System.out.println("Login failed: " + ex.getMessage());
+            JOptionPane.showMessageDialog(this, "Unable to log in: " + ex.getMessage());
         }
     }
 
@@ -79,24 +74,17 @@ public class UserScreen extends JFrame {
         String userid = useridtxt.getText();
         char[] password = passwordField.getPassword();
 
-        UserDTO userDTO = new UserDTO(userid, password);
-
         try {
-            int result = userDAO.add(userDTO);
-            if (result > 0) {
+            if (Client.register(userid, password)) {
                 JOptionPane.showMessageDialog(this, "Registered successfully!");
+                System.out.println("Registered user: " + userid);
             } else {
                 JOptionPane.showMessageDialog(this, "Registration failed. Try again.");
             }
-        } catch (ClassNotFoundException | SQLException ex) {
-            System.out.println("Database error during registration");
-            ex.printStackTrace();
-        } catch (Exception ex) {
-            System.out.println("Unexpected error during registration");
-            ex.printStackTrace();
+        } catch (IOException ex) {
+            System.out.println("Registration failed: " + ex.getMessage());
+            JOptionPane.showMessageDialog(this, "Unable to register: " + ex.getMessage());
         }
-
-        System.out.println("Registered user: " + userid);
     }
 
     // Getters and setters for testability if needed
@@ -0,0 +1,180 @@
+package com.shivansh.chatapp.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of the {@link ConnectionPool} against an in-memory H2 database: statement caching,
+ * revoking handles kept after they were given back, resetting connections and the acquire timeout.
+ */
+public final class ConnectionPoolTests {
+
+    private static final String SELECT = "SELECT name FROM items WHERE id = ?";
+
+    private ConnectionPoolTests() {
+    }
+
+    /**
+     * @return the connection pool tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("dao.pool.statementCached", ConnectionPoolTests::statementCached),
+                new TestCase("dao.pool.statementRevokedOnReturn", ConnectionPoolTests::statementRevokedOnReturn),
+                new TestCase("dao.pool.statementRevokedOnClose", ConnectionPoolTests::statementRevokedOnClose),
+                new TestCase("dao.pool.statementInUse", ConnectionPoolTests::statementInUse),
+                new TestCase("dao.pool.statementEvicted", ConnectionPoolTests::statementEvicted),
+                new TestCase("dao.pool.connectionRevoked", ConnectionPoolTests::connectionRevoked),
+                new TestCase("dao.pool.rollbackOnReturn", ConnectionPoolTests::rollbackOnReturn),
+                new TestCase("dao.pool.acquireTimeout", ConnectionPoolTests::acquireTimeout));
+    }
+
+    private static void statementCached() throws Exception {
+        ConnectionPool pool = newPool(4);
+        PreparedStatement first;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT)) {
+            first = statement.unwrap(PreparedStatement.class);
+            Check.equal("one", name(statement, 1), "name of item 1");
+        }
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT)) {
+            Check.isTrue(statement.unwrap(PreparedStatement.class) == first, "same statement on the next borrow");
+            Check.isTrue(statement.getConnection() == connection, "statement reports its borrowed connection");
+            Check.equal("two", name(statement, 2), "name of item 2");
+        }
+        Check.equal(1, pool.getTotal(), "connections opened");
+    }
+
+    private static void statementRevokedOnReturn() throws Exception {
+        ConnectionPool pool = newPool(4);
+        Connection first = pool.getConnection();
+        PreparedStatement stale = first.prepareStatement(SELECT);
+        stale.setInt(1, 1);
+        first.close(); // returned with the statement still open
+
+        Check.isTrue(stale.isClosed(), "handle closed with its connection");
+        Check.fails(SQLException.class, stale::executeQuery);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT)) {
+            Check.fails(SQLException.class, statement::executeQuery); // parameters were cleared
+            statement.setInt(1, 2);
+            stale.close(); // must not check in the next borrower's statement
+            Check.fails(SQLException.class, () -> stale.setInt(1, 1));
+            try (ResultSet rows = statement.executeQuery()) {
+                Check.isTrue(rows.next(), "row of item 2");
+                Check.equal("two", rows.getString(1), "name of item 2");
+            }
+        }
+    }
+
+    private static void statementRevokedOnClose() throws Exception {
+        ConnectionPool pool = newPool(4);
+        try (Connection connection = pool.getConnection()) {
+            PreparedStatement statement = connection.prepareStatement(SELECT);
+            PreparedStatement physical = statement.unwrap(PreparedStatement.class);
+            statement.close();
+            Check.fails(SQLException.class, () -> statement.setInt(1, 1));
+            PreparedStatement again = connection.prepareStatement(SELECT);
+            Check.isTrue(again != statement, "new handle");
+            Check.isTrue(again.unwrap(PreparedStatement.class) == physical, "same cached statement");
+            Check.equal("one", name(again, 1), "name of item 1");
+        }
+    }
+
+    private static void statementInUse() throws Exception {
+        ConnectionPool pool = newPool(4);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement first = connection.prepareStatement(SELECT);
+             PreparedStatement second = connection.prepareStatement(SELECT)) {
+            Check.isTrue(first.unwrap(PreparedStatement.class) != second.unwrap(PreparedStatement.class),
+                    "a statement in use is not handed out twice");
+            first.setInt(1, 1);
+            second.setInt(1, 2);
+            Check.equal("one", name(first, 1), "name through the first statement");
+            Check.equal("two", name(second, 2), "name through the second statement");
+        }
+    }
+
+    private static void statementEvicted() throws Exception {
+        ConnectionPool pool = newPool(2);
+        try (Connection connection = pool.getConnection()) {
+            PreparedStatement eldest;
+            try (PreparedStatement statement = connection.prepareStatement(SELECT)) {
+                eldest = statement.unwrap(PreparedStatement.class);
+            }
+            connection.prepareStatement("SELECT id FROM items WHERE name = ?").close();
+            connection.prepareStatement("SELECT COUNT(*) FROM items WHERE id > ?").close();
+            Check.isTrue(eldest.isClosed(), "least recently used statement closed once the cache is full");
+            try (PreparedStatement statement = connection.prepareStatement(SELECT)) {
+                Check.equal("one", name(statement, 1), "name through a statement prepared again");
+            }
+        }
+    }
+
+    private static void connectionRevoked() throws Exception {
+        ConnectionPool pool = newPool(4);
+        Connection connection = pool.getConnection();
+        connection.close();
+        Check.isTrue(connection.isClosed(), "connection closed");
+        Check.fails(SQLException.class, connection::createStatement);
+        Check.fails(SQLException.class, () -> connection.prepareStatement(SELECT));
+        connection.close(); // closing twice returns it once
+        Check.equal(1, pool.getIdle(), "idle connections");
+    }
+
+    private static void rollbackOnReturn() throws Exception {
+        ConnectionPool pool = newPool(4);
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.executeUpdate("INSERT INTO items VALUES(3, 'three')");
+        }
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT)) {
+            Check.isTrue(connection.getAutoCommit(), "auto-commit on again");
+            statement.setInt(1, 3);
+            try (ResultSet rows = statement.executeQuery()) {
+                Check.isTrue(!rows.next(), "uncommitted row rolled back");
+            }
+        }
+    }
+
+    private static void acquireTimeout() throws Exception {
+        ConnectionPool pool = newPool(4);
+        try (Connection held = pool.getConnection()) {
+            long start = System.nanoTime();
+            Check.fails(SQLTimeoutException.class, pool::getConnection);
+            Check.isTrue(System.nanoTime() - start >= 100_000_000, "waited for the acquire timeout");
+        }
+        pool.getConnection().close();
+    }
+
+    /**
+     * @return a pool of one connection to a new database holding items 1 and 2
+     */
+    private static ConnectionPool newPool(int statementCacheSize) throws Exception {
+        String url = H2.newDatabase();
+        try (Connection connection = H2.connect(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items(id INT PRIMARY KEY, name VARCHAR(32))");
+            statement.execute("INSERT INTO items VALUES(1, 'one'), (2, 'two')");
+        }
+        return new ConnectionPool(H2.DRIVER, url, "sa", "", 0, 1, 100, 60_000, true, statementCacheSize);
+    }
+
+    private static String name(PreparedStatement statement, int id) throws SQLException {
+        statement.setInt(1, id);
+        try (ResultSet rows = statement.executeQuery()) {
+            return rows.next() ? rows.getString(1) : null;
+        }
+    }
+}
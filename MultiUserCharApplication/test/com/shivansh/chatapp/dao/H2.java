@@ -0,0 +1,49 @@
+package com.shivansh.chatapp.dao;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.shivansh.chatapp.test.Check;
+
+/**
+ * In-memory H2 databases in MySQL mode for the DAO tests, which are skipped if H2 is not on the classpath.
+ */
+final class H2 {
+
+    static final String DRIVER = "org.h2.Driver";
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private H2() {
+    }
+
+    /**
+     * @return the URL of a new, empty database that lives until the JVM exits
+     */
+    static String newDatabase() {
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            Check.skipUnless(false, "H2 is not on the classpath");
+        }
+        return "jdbc:h2:mem:test" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    static Connection connect(String url) throws SQLException {
+        return DriverManager.getConnection(url, "sa", "");
+    }
+
+    /**
+     * Waits up to ten seconds for a condition that background threads make true.
+     */
+    static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            Check.isTrue(System.nanoTime() < deadline, "timed out waiting until " + what);
+            Thread.sleep(10);
+        }
+    }
+}
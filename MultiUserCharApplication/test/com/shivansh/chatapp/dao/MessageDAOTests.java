@@ -0,0 +1,156 @@
+package com.shivansh.chatapp.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.shivansh.chatapp.dto.MessageDTO;
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of the {@link MessageDAO} group commit against an in-memory H2 database: grouping,
+ * order, retrying after failures, reconnecting, giving up and closing.
+ */
+public final class MessageDAOTests {
+
+    private MessageDAOTests() {
+    }
+
+    /**
+     * @return the message DAO tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("dao.messages.groupCommit", MessageDAOTests::groupCommit),
+                new TestCase("dao.messages.retry", MessageDAOTests::retry),
+                new TestCase("dao.messages.reconnect", MessageDAOTests::reconnect),
+                new TestCase("dao.messages.giveUp", MessageDAOTests::giveUp),
+                new TestCase("dao.messages.close", MessageDAOTests::close));
+    }
+
+    private static void groupCommit() throws Exception {
+        String url = H2.newDatabase();
+        MessageDAO dao = new MessageDAO(() -> H2.connect(url), 10_000, 100, 50);
+        try {
+            save(dao, 0, 1000);
+            H2.await(() -> dao.getSaved() == 1000, "1000 messages are saved");
+            Matcher batches = Pattern.compile(" in (\\d+) batches").matcher(dao.stats());
+            Check.isTrue(batches.find(), "batches in " + dao.stats());
+            int count = Integer.parseInt(batches.group(1));
+            Check.isTrue(count >= 10 && count < 1000, "1000 messages in batches of at most 100: " + count);
+            checkRows(url, 0, 1000);
+        } finally {
+            dao.close();
+        }
+    }
+
+    private static void retry() throws Exception {
+        String url = H2.newDatabase();
+        AtomicInteger attempts = new AtomicInteger();
+        MessageDAO dao = new MessageDAO(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new SQLTransientConnectionException("database starting");
+            }
+            return H2.connect(url);
+        }, 100, 100, 10);
+        try {
+            save(dao, 0, 10);
+            H2.await(() -> dao.getSaved() == 10, "the group is saved on the second attempt");
+            Check.equal(0L, dao.getFailed(), "failed");
+            Check.equal(2, attempts.get(), "connection attempts");
+            checkRows(url, 0, 10);
+        } finally {
+            dao.close();
+        }
+    }
+
+    private static void reconnect() throws Exception {
+        String url = H2.newDatabase();
+        AtomicReference<Connection> current = new AtomicReference<>();
+        AtomicInteger connections = new AtomicInteger();
+        MessageDAO dao = new MessageDAO(() -> {
+            connections.incrementAndGet();
+            current.set(H2.connect(url));
+            return current.get();
+        }, 100, 100, 10);
+        try {
+            save(dao, 0, 10);
+            H2.await(() -> dao.getSaved() == 10, "the first group is saved");
+            current.get().close(); // the database dropped the connection
+            save(dao, 10, 20);
+            H2.await(() -> dao.getSaved() == 20, "the second group is saved on a new connection");
+            Check.equal(2, connections.get(), "connections opened");
+            Check.equal(0L, dao.getFailed(), "failed");
+            checkRows(url, 0, 20);
+        } finally {
+            dao.close();
+        }
+    }
+
+    private static void giveUp() throws Exception {
+        H2.newDatabase(); // skips without H2, like the other database tests
+        AtomicInteger attempts = new AtomicInteger();
+        MessageDAO dao = new MessageDAO(() -> {
+            attempts.incrementAndGet();
+            throw new SQLTransientConnectionException("database down");
+        }, 100, 100, 10);
+        try {
+            save(dao, 0, 5);
+            H2.await(() -> dao.getFailed() == 5, "the group is given up");
+            Check.equal(3, attempts.get(), "attempts before giving up");
+            Check.equal(0L, dao.getSaved(), "saved");
+        } finally {
+            dao.close();
+        }
+    }
+
+    private static void close() throws Exception {
+        String url = H2.newDatabase();
+        MessageDAO dao = new MessageDAO(() -> H2.connect(url), 1000, 100, 1000);
+        save(dao, 0, 50);
+        dao.close();
+        Check.equal(50L, dao.getSaved(), "messages queued before close are saved");
+        Check.isTrue(!dao.save(message(50)), "save after close");
+        Check.equal(1L, dao.getDropped(), "dropped");
+        checkRows(url, 0, 50);
+    }
+
+    private static void save(MessageDAO dao, int from, int to) {
+        for (int seq = from; seq < to; seq++) {
+            Check.isTrue(dao.save(message(seq)), "message " + seq + " queued");
+        }
+    }
+
+    private static MessageDTO message(int seq) {
+        return new MessageDTO("node-1", seq, "#general", "user" + (seq % 7), 1_700_000_000_000L + seq, "message " + seq);
+    }
+
+    /**
+     * Checks that the table holds exactly the messages <code>from</code> to <code>to - 1</code>, in insertion order.
+     */
+    private static void checkRows(String url, int from, int to) throws SQLException {
+        try (Connection connection = H2.connect(url);
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT seq, room, sender, sent_at, body FROM messages ORDER BY id")) {
+            int seq = from;
+            while (rows.next()) {
+                MessageDTO expected = message(seq);
+                Check.equal((long) seq, rows.getLong(1), "seq of row " + (seq - from));
+                Check.equal(expected.getRoom(), rows.getString(2), "room of " + seq);
+                Check.equal(expected.getSender(), rows.getString(3), "sender of " + seq);
+                Check.equal(expected.getSentAt(), rows.getLong(4), "sent_at of " + seq);
+                Check.equal(expected.getBody(), rows.getString(5), "body of " + seq);
+                seq++;
+            }
+            Check.equal(to, seq, "rows stored up to");
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.shivansh.chatapp.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of {@link Frame} encoding and of {@link InboundDecoder}: split and oversized input,
+ * malformed frames, switching from lines to frames, compression and batches.
+ */
+public final class FrameTests {
+
+    private FrameTests() {
+    }
+
+    /**
+     * @return the frame and decoder tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("network.frame.roundTrip", FrameTests::roundTrip),
+                new TestCase("network.frame.nameLimits", FrameTests::nameLimits),
+                new TestCase("network.frame.sizeLimit", FrameTests::sizeLimit),
+                new TestCase("network.decoder.byteByByte", FrameTests::byteByByte),
+                new TestCase("network.decoder.lineThenFrame", FrameTests::lineThenFrame),
+                new TestCase("network.decoder.lineTooLong", FrameTests::lineTooLong),
+                new TestCase("network.decoder.badLength", FrameTests::badLength),
+                new TestCase("network.decoder.malformedHeader", FrameTests::malformedHeader),
+                new TestCase("network.decoder.largestFrame", FrameTests::largestFrame),
+                new TestCase("network.decoder.compressedNeedsNegotiation", FrameTests::compressedNeedsNegotiation),
+                new TestCase("network.decoder.batch", FrameTests::batch));
+    }
+
+    private static void roundTrip() throws IOException {
+        InboundDecoder decoder = new InboundDecoder();
+        feed(decoder, bytes(Frame.encode(FrameType.CHAT, Frame.FLAG_REPLAY, 42, 1_700_000_000_000L,
+                "zoë", "#général", "line one\nline two ✓")));
+        Frame frame = decoder.nextFrame();
+        Check.equal(FrameType.CHAT, frame.type(), "type");
+        Check.equal(Frame.FLAG_REPLAY, frame.flags(), "flags");
+        Check.equal(42L, frame.seq(), "seq");
+        Check.equal(1_700_000_000_000L, frame.timestamp(), "timestamp");
+        Check.equal("zoë", frame.sender(), "sender");
+        Check.equal("#général", frame.target(), "target");
+        Check.equal("line one\nline two ✓", frame.body(), "body");
+        Check.equal(null, decoder.nextFrame(), "frame after the last one");
+    }
+
+    private static void nameLimits() {
+        String longest = "é".repeat(Frame.MAX_NAME_BYTES / 2) + "x"; // 255 bytes
+        Frame.encode(FrameType.CHAT, 0, 0, longest, longest, null);
+        Check.fails(IllegalArgumentException.class,
+                () -> Frame.encode(FrameType.CHAT, 0, 0, "é".repeat(128), null, null));
+        Check.fails(IllegalArgumentException.class,
+                () -> Frame.encode(FrameType.CHAT, 0, 0, null, "x".repeat(Frame.MAX_NAME_BYTES + 1), null));
+    }
+
+    private static void sizeLimit() {
+        String name = "n".repeat(Frame.MAX_NAME_BYTES);
+        ByteBuffer largest = Frame.encode(FrameType.CHAT, 0, 0, name, name, "b".repeat(Frame.MAX_BODY_BYTES));
+        Check.equal(4 + Frame.MAX_FRAME_BYTES, largest.remaining(), "largest frame size");
+        Check.fails(IllegalArgumentException.class,
+                () -> Frame.encode(FrameType.CHAT, 0, 0, name, name, "b".repeat(Frame.MAX_BODY_BYTES + 1)));
+    }
+
+    private static void byteByByte() throws IOException {
+        byte[] frame = bytes(Frame.encode(FrameType.WHISPER, 7, 0, "alice", "bob", "hi"));
+        InboundDecoder decoder = new InboundDecoder();
+        for (int i = 0; i < frame.length - 1; i++) {
+            feed(decoder, new byte[] {frame[i]});
+            Check.equal(null, decoder.nextFrame(), "frame after " + (i + 1) + " of " + frame.length + " bytes");
+        }
+        feed(decoder, new byte[] {frame[frame.length - 1]});
+        Check.equal("hi", decoder.nextFrame().body(), "body once complete");
+    }
+
+    private static void lineThenFrame() throws IOException {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.writeBytes("/hello v=1 framing=binary\r\n".getBytes(StandardCharsets.UTF_8));
+        input.writeBytes(bytes(Frame.encode(FrameType.JOIN, 0, 0, null, null, "alice")));
+        InboundDecoder decoder = new InboundDecoder();
+        feed(decoder, input.toByteArray());
+        Check.equal("/hello v=1 framing=binary", decoder.nextLine(), "line without its terminator");
+        Frame frame = decoder.nextFrame();
+        Check.equal(FrameType.JOIN, frame.type(), "type of the frame after the line");
+        Check.equal("alice", frame.body(), "body of the frame after the line");
+    }
+
+    private static void lineTooLong() throws IOException {
+        InboundDecoder decoder = new InboundDecoder();
+        feed(decoder, "x".repeat(InboundDecoder.MAX_LINE_BYTES).getBytes(StandardCharsets.UTF_8));
+        Check.equal(null, decoder.nextLine(), "line at the limit without its newline");
+        feed(decoder, "x".getBytes(StandardCharsets.UTF_8));
+        Check.fails(IOException.class, decoder::nextLine);
+    }
+
+    private static void badLength() throws IOException {
+        for (int length : new int[] {Frame.MIN_FRAME_BYTES - 1, Frame.MAX_FRAME_BYTES + 1, -1}) {
+            InboundDecoder decoder = new InboundDecoder();
+            feed(decoder, ByteBuffer.allocate(4).putInt(length).array());
+            Check.fails(IOException.class, decoder::nextFrame);
+        }
+    }
+
+    private static void malformedHeader() throws IOException {
+        byte[] wrongVersion = bytes(Frame.encode(FrameType.CHAT, 0, 0, "a", "b", "c"));
+        wrongVersion[4] = Frame.VERSION + 1;
+        InboundDecoder decoder = new InboundDecoder();
+        feed(decoder, wrongVersion);
+        Check.fails(IOException.class, decoder::nextFrame);
+
+        byte[] longSender = bytes(Frame.encode(FrameType.CHAT, 0, 0, "a", "b", "c"));
+        longSender[4 + 19] = (byte) 200; // sender length past the end of the frame
+        decoder = new InboundDecoder();
+        feed(decoder, longSender);
+        Check.fails(IOException.class, decoder::nextFrame);
+    }
+
+    private static void largestFrame() throws IOException {
+        String name = "n".repeat(Frame.MAX_NAME_BYTES);
+        String body = "b".repeat(Frame.MAX_BODY_BYTES);
+        InboundDecoder decoder = new InboundDecoder();
+        feed(decoder, bytes(Frame.encode(FrameType.CHAT, 0, 0, name, name, body)));
+        Check.equal(body, decoder.nextFrame().body(), "body of the largest frame");
+    }
+
+    private static void compressedNeedsNegotiation() throws IOException {
+        String body = "the quick brown fox jumps over the lazy dog ".repeat(40);
+        ByteBuffer compressed = FrameCompression.compress(Frame.encode(FrameType.CHAT, 5, 0, "alice", "#general", body));
+        byte[] wire = bytes(compressed);
+        Check.isTrue((wire[4 + Frame.FLAGS] & Frame.FLAG_DEFLATE) != 0, "the test frame is compressed");
+
+        InboundDecoder decoder = new InboundDecoder();
+        feed(decoder, wire);
+        Check.fails(IOException.class, decoder::nextFrame);
+
+        decoder = new InboundDecoder();
+        decoder.acceptCompressed();
+        feed(decoder, wire);
+        Frame frame = decoder.nextFrame();
+        Check.equal(body, frame.body(), "inflated body");
+        Check.equal((byte) 0, frame.flags(), "flags of the inflated frame");
+        Check.equal("alice", frame.sender(), "sender of the inflated frame");
+    }
+
+    private static void batch() throws IOException {
+        ByteBuffer[] frames = new ByteBuffer[20];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = Frame.encode(FrameType.CHAT, i + 1, 0, "alice", "#general", "message number " + i);
+        }
+        byte[] wire = bytes(FrameCompression.batch(frames, frames.length));
+
+        InboundDecoder server = new InboundDecoder();
+        server.acceptCompressed();
+        feed(server, wire);
+        Check.fails(IOException.class, server::nextFrame);
+
+        InboundDecoder client = new InboundDecoder(FrameCompression.MAX_BATCH_BYTES);
+        feed(client, wire);
+        for (int i = 0; i < frames.length; i++) {
+            Frame frame = client.nextFrame();
+            Check.equal(i + 1L, frame.seq(), "seq of batched frame " + i);
+            Check.equal("message number " + i, frame.body(), "body of batched frame " + i);
+        }
+        Check.equal(null, client.nextFrame(), "frame after the batch");
+    }
+
+    private static byte[] bytes(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(frame.position(), bytes);
+        return bytes;
+    }
+
+    private static void feed(InboundDecoder decoder, byte[] bytes) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        while (in.available() > 0) {
+            decoder.readFrom(in);
+        }
+    }
+}
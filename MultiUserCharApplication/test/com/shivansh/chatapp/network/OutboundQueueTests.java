@@ -0,0 +1,108 @@
+package com.shivansh.chatapp.network;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.shivansh.chatapp.network.OutboundQueue.OverflowPolicy;
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of the {@link OutboundQueue} overflow policies, batches, byte accounting and closing.
+ */
+public final class OutboundQueueTests {
+
+    private OutboundQueueTests() {
+    }
+
+    /**
+     * @return the outbound queue tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("network.outbound.dropOldest", OutboundQueueTests::dropOldest),
+                new TestCase("network.outbound.dropNewest", OutboundQueueTests::dropNewest),
+                new TestCase("network.outbound.disconnect", OutboundQueueTests::disconnect),
+                new TestCase("network.outbound.batchBeyondCapacity", OutboundQueueTests::batchBeyondCapacity),
+                new TestCase("network.outbound.drainInPieces", OutboundQueueTests::drainInPieces),
+                new TestCase("network.outbound.close", OutboundQueueTests::close),
+                new TestCase("network.outbound.awaitTimeout", OutboundQueueTests::awaitTimeout));
+    }
+
+    private static void dropOldest() {
+        OutboundQueue queue = filled(OverflowPolicy.DROP_OLDEST);
+        Check.isTrue(queue.offer(message(4)), "offer to a full queue");
+        Check.equal(1L, queue.getDropped(), "dropped");
+        Check.equal(3, queue.size(), "size");
+        Check.equal(2L + 3 + 4, queue.pendingBytes(), "pending bytes");
+        Check.equal(2, queue.poll().remaining(), "oldest left");
+    }
+
+    private static void dropNewest() {
+        OutboundQueue queue = filled(OverflowPolicy.DROP_NEWEST);
+        Check.isTrue(queue.offer(message(4)), "offer to a full queue");
+        Check.equal(1L, queue.getDropped(), "dropped");
+        Check.equal(1L + 2 + 3, queue.pendingBytes(), "pending bytes");
+        Check.equal(1, queue.poll().remaining(), "oldest left");
+    }
+
+    private static void disconnect() {
+        OutboundQueue queue = filled(OverflowPolicy.DISCONNECT);
+        Check.isTrue(!queue.offer(message(4)), "offer to a full queue is refused");
+        Check.equal(0L, queue.getDropped(), "dropped");
+        Check.equal(3, queue.size(), "size");
+    }
+
+    private static void batchBeyondCapacity() {
+        OutboundQueue queue = filled(OverflowPolicy.DISCONNECT);
+        ByteBuffer[] batch = {message(10), message(20), message(30), null};
+        queue.offerAll(batch, 3);
+        Check.equal(6, queue.size(), "size after a batch past the capacity");
+        Check.equal(1L + 2 + 3 + 10 + 20 + 30, queue.pendingBytes(), "pending bytes");
+    }
+
+    private static void drainInPieces() {
+        OutboundQueue queue = filled(OverflowPolicy.DROP_OLDEST);
+        ByteBuffer[] dst = new ByteBuffer[3];
+        Check.equal(2, queue.drainTo(dst, 1), "drained into two free slots");
+        Check.equal(1, dst[1].remaining(), "first drained");
+        Check.equal(2, dst[2].remaining(), "second drained");
+        Check.equal(3L, queue.pendingBytes(), "pending bytes");
+        Check.equal(1, queue.drainTo(dst, 0), "drained the rest");
+        Check.equal(0, queue.drainTo(dst, 0), "drained from an empty queue");
+    }
+
+    private static void close() throws InterruptedException {
+        OutboundQueue queue = filled(OverflowPolicy.DISCONNECT);
+        queue.close();
+        Check.isTrue(queue.offer(message(4)), "offer after close is ignored, not refused");
+        ByteBuffer[] dst = new ByteBuffer[8];
+        Check.equal(3, queue.awaitDrainTo(dst, 0), "messages queued before close");
+        Check.equal(-1, queue.awaitDrainTo(dst, 0), "drain of a closed, empty queue");
+    }
+
+    private static void awaitTimeout() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(3, OverflowPolicy.DROP_OLDEST);
+        ByteBuffer[] dst = new ByteBuffer[1];
+        long start = System.nanoTime();
+        Check.equal(0, queue.awaitDrainTo(dst, 0, 20_000_000), "drained after a timeout");
+        Check.isTrue(System.nanoTime() - start >= 20_000_000, "waited for the timeout");
+        Thread.ofVirtual().start(() -> queue.offer(message(5)));
+        Check.equal(1, queue.awaitDrainTo(dst, 0, 10_000_000_000L), "drained once a message arrived");
+    }
+
+    /**
+     * @return a queue of capacity 3 holding messages of 1, 2 and 3 bytes
+     */
+    private static OutboundQueue filled(OverflowPolicy policy) {
+        OutboundQueue queue = new OutboundQueue(3, policy);
+        for (int size = 1; size <= 3; size++) {
+            Check.isTrue(queue.offer(message(size)), "offer below the capacity");
+        }
+        return queue;
+    }
+
+    private static ByteBuffer message(int size) {
+        return ByteBuffer.allocate(size);
+    }
+}
@@ -0,0 +1,92 @@
+package com.shivansh.chatapp.network;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of the {@link RateLimiter} buckets, throttling and violation counting.
+ */
+public final class RateLimiterTests {
+
+    /** Refill rates so slow that no token comes back while a test runs. */
+    private static final RateLimiter.Limits SLOW = new RateLimiter.Limits(0.001, 5, 0.001, 3, 0.001, 100, 2);
+
+    private RateLimiterTests() {
+    }
+
+    /**
+     * @return the rate limiter tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("network.ratelimit.burst", RateLimiterTests::burst),
+                new TestCase("network.ratelimit.separateBuckets", RateLimiterTests::separateBuckets),
+                new TestCase("network.ratelimit.loginCost", RateLimiterTests::loginCost),
+                new TestCase("network.ratelimit.refill", RateLimiterTests::refill),
+                new TestCase("network.ratelimit.violations", RateLimiterTests::violations));
+    }
+
+    private static void burst() {
+        RateLimiter limiter = new RateLimiter(SLOW, null);
+        for (int i = 0; i < 4; i++) {
+            limiter.message();
+            Check.isTrue(!limiter.isThrottled(), "throttled after " + (i + 1) + " of a burst of 5");
+        }
+        limiter.message();
+        Check.isTrue(limiter.isThrottled(), "throttled once the bucket ran dry");
+        Check.isTrue(limiter.pauseNanos() > 0, "pause while throttled");
+    }
+
+    private static void separateBuckets() {
+        RateLimiter limiter = new RateLimiter(SLOW, null);
+        for (int i = 0; i < 4; i++) {
+            limiter.message();
+        }
+        limiter.whisper();
+        limiter.whisper();
+        limiter.bytesRead(99);
+        limiter.bytesRead(-1);
+        Check.isTrue(!limiter.isThrottled(), "throttled although every bucket has a token left");
+        limiter.whisper();
+        Check.isTrue(limiter.isThrottled(), "throttled once the whisper bucket ran dry");
+    }
+
+    private static void loginCost() {
+        RateLimiter.Limits limits = new RateLimiter.Limits(0.001, 30, 0.001, 3, 0.001, 100, 2);
+        RateLimiter limiter = new RateLimiter(limits, null);
+        limiter.login();
+        limiter.login();
+        Check.isTrue(!limiter.isThrottled(), "throttled after two logins");
+        limiter.login();
+        Check.isTrue(limiter.isThrottled(), "throttled after three logins, which take a burst of 30 tokens");
+    }
+
+    private static void refill() throws InterruptedException {
+        RateLimiter.Limits limits = new RateLimiter.Limits(100, 2, 1, 1, 1e6, 1 << 20, 10);
+        RateLimiter limiter = new RateLimiter(limits, null);
+        limiter.message();
+        limiter.message();
+        Check.isTrue(limiter.isThrottled(), "throttled after a burst of 2");
+        long pause = limiter.pauseNanos();
+        Check.isTrue(pause > 0 && pause <= 10_000_000, "pause of at most one refill interval: " + pause);
+        Thread.sleep(20);
+        Check.isTrue(limiter.pauseNanos() <= 0, "pause over after a refill interval");
+        limiter.resume();
+        limiter.message();
+        Check.isTrue(!limiter.isThrottled(), "throttled with a token refilled");
+    }
+
+    private static void violations() {
+        LongAdder count = new LongAdder();
+        RateLimiter limiter = new RateLimiter(SLOW, count);
+        for (int i = 0; i < 100; i++) {
+            limiter.message();
+        }
+        // Running dry again and again within a second is one violation
+        Check.equal(1L, count.sum(), "violations counted");
+        Check.isTrue(!limiter.isFlooding(), "flooding after one violation of 2 tolerated");
+    }
+}
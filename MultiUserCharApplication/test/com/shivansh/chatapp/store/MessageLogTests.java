@@ -0,0 +1,194 @@
+package com.shivansh.chatapp.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of the {@link MessageLog}: rolling over to new segments, reading across them,
+ * reopening, cutting off a torn tail and deleting segments beyond the retention size.
+ * Each test works in a temporary directory that is deleted afterwards.
+ */
+public final class MessageLogTests {
+
+    /** Smallest segment the log accepts. */
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    /** Payload size giving a few hundred records per segment. */
+    private static final int RECORD_BYTES = 4000;
+
+    private MessageLogTests() {
+    }
+
+    /**
+     * @return the message log tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("store.log.rollover", () -> inTempDir(MessageLogTests::rollover)),
+                new TestCase("store.log.reopen", () -> inTempDir(MessageLogTests::reopen)),
+                new TestCase("store.log.tornTail", () -> inTempDir(MessageLogTests::tornTail)),
+                new TestCase("store.log.retention", () -> inTempDir(MessageLogTests::retention)));
+    }
+
+    private static void rollover(Path dir) throws IOException {
+        MessageLog log = new MessageLog(dir, SEGMENT_BYTES, 0, 0, 0, 0);
+        try {
+            append(log, 1000);
+            Check.isTrue(segmentFiles(dir) >= 4, "segments for 4 MB of records: " + segmentFiles(dir));
+            Check.equal(1L, log.firstSeq(), "first seq");
+            Check.equal(1000L, log.lastSeq(), "last seq");
+            checkRange(log, 1, 1001);
+            checkRange(log, 200, 600); // across segment boundaries
+            checkRange(log, 999, 5000); // past the end
+        } finally {
+            log.close();
+        }
+    }
+
+    private static void reopen(Path dir) throws IOException {
+        MessageLog log = new MessageLog(dir, SEGMENT_BYTES, 0, 0, 0, 0);
+        append(log, 700);
+        log.close();
+
+        log = new MessageLog(dir, SEGMENT_BYTES, 0, 0, 0, 0);
+        try {
+            Check.equal(700L, log.lastSeq(), "last seq after reopening");
+            checkRange(log, 1, 701);
+            Check.equal(701L, log.append(seq -> record(seq)), "seq of the next record");
+            checkRange(log, 650, 702);
+        } finally {
+            log.close();
+        }
+    }
+
+    private static void tornTail(Path dir) throws IOException {
+        MessageLog log = new MessageLog(dir, SEGMENT_BYTES, 0, 0, 0, 0);
+        append(log, 300);
+        log.close();
+
+        // Damage the payload of the last record, as a crash in the middle of writing it would
+        Path last;
+        try (Stream<Path> files = Files.list(dir)) {
+            last = files.filter(file -> file.toString().endsWith(".log")).max(Comparator.naturalOrder()).orElseThrow();
+        }
+        byte[] data = Files.readAllBytes(last);
+        int at = indexOf(data, ("record 300|").getBytes(StandardCharsets.UTF_8));
+        Check.isTrue(at >= 0, "last record found in " + last);
+        data[at] ^= 1;
+        Files.write(last, data);
+
+        log = new MessageLog(dir, SEGMENT_BYTES, 0, 0, 0, 0);
+        try {
+            Check.equal(299L, log.lastSeq(), "last seq after recovery");
+            checkRange(log, 1, 301);
+            Check.equal(300L, log.append(seq -> record(seq)), "seq reused after the torn record");
+        } finally {
+            log.close();
+        }
+    }
+
+    private static void retention(Path dir) throws IOException, InterruptedException {
+        MessageLog log = new MessageLog(dir, SEGMENT_BYTES, 20, 0, 0, 2L * SEGMENT_BYTES);
+        try {
+            append(log, 1500);
+            // Wait until the flusher has dropped what exceeds the retention size and deleted its files
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while ((log.firstSeq() == 1 || segmentFiles(dir) > 3) && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            long first = log.firstSeq();
+            Check.isTrue(first > 1, "oldest segments deleted");
+            Check.isTrue(segmentFiles(dir) <= 3, "segment files left: " + segmentFiles(dir));
+            Check.equal(1500L, log.lastSeq(), "last seq");
+            List<Long> read = new ArrayList<>();
+            log.read(1, 1501, (seq, payload) -> read.add(seq));
+            Check.equal(first, read.get(0), "first record read");
+            checkRange(log, 1, 1501); // starts at the oldest record retained
+        } finally {
+            log.close();
+        }
+    }
+
+    private static void append(MessageLog log, int count) {
+        for (int i = 0; i < count; i++) {
+            long seq = log.lastSeq() + 1;
+            Check.equal(seq, log.append(MessageLogTests::record), "seq of appended record");
+        }
+    }
+
+    /**
+     * Checks that a range reads back in order, starting at the oldest retained record, and
+     * with the payload written for each seq.
+     */
+    private static void checkRange(MessageLog log, long from, long to) {
+        long expected = Math.max(from, log.firstSeq());
+        long end = Math.min(to, log.lastSeq() + 1);
+        long[] next = {expected};
+        int n = log.read(from, to, (seq, payload) -> {
+            Check.equal(next[0], seq, "seq read");
+            Check.equal(record(seq), payload, "payload of " + seq);
+            next[0]++;
+        });
+        Check.equal((int) (end - expected), n, "records read from " + from + " to " + to);
+    }
+
+    private static ByteBuffer record(long seq) {
+        byte[] payload = new byte[RECORD_BYTES];
+        byte[] label = ("record " + seq + "|").getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(label, 0, payload, 0, label.length);
+        for (int i = label.length; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + (seq + i) % 26);
+        }
+        return ByteBuffer.wrap(payload);
+    }
+
+    private static int segmentFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return (int) files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @FunctionalInterface
+    private interface InDir {
+        void run(Path dir) throws Exception;
+    }
+
+    private static void inTempDir(InDir test) throws Exception {
+        Path dir = Files.createTempDirectory("messagelog-test");
+        try {
+            test.run(dir);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
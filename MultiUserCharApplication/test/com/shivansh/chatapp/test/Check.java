@@ -0,0 +1,78 @@
+package com.shivansh.chatapp.test;
+
+import java.util.Objects;
+
+/**
+ * Assertions for {@link TestCase}s. A failed check throws an {@link AssertionError}
+ * describing what was expected.
+ */
+public final class Check {
+
+    private Check() {
+    }
+
+    /**
+     * Thrown by {@link #skipUnless(boolean, String)} when a test cannot run in this environment,
+     * e.g. because an optional driver is missing.
+     */
+    public static final class Skipped extends RuntimeException {
+
+        Skipped(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    /**
+     * Code expected to fail.
+     */
+    @FunctionalInterface
+    public interface Failing {
+        void run() throws Exception;
+    }
+
+    /**
+     * @param what describes the value, for the failure message
+     */
+    public static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    /**
+     * @param what describes the condition, for the failure message
+     */
+    public static void isTrue(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    /**
+     * Checks that <code>code</code> throws an exception of the given type.
+     *
+     * @return the exception, for further checks
+     */
+    public static <T extends Throwable> T fails(Class<T> type, Failing code) {
+        try {
+            code.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return type.cast(e);
+            }
+            throw new AssertionError("expected " + type.getSimpleName() + " but got " + e, e);
+        }
+        throw new AssertionError("expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+
+    /**
+     * Skips the rest of the test unless <code>condition</code> holds.
+     *
+     * @param reason why the test cannot run otherwise
+     */
+    public static void skipUnless(boolean condition, String reason) {
+        if (!condition) {
+            throw new Skipped(reason);
+        }
+    }
+}
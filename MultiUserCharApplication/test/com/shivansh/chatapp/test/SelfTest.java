@@ -0,0 +1,94 @@
+package com.shivansh.chatapp.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.shivansh.chatapp.dao.ConnectionPoolTests;
+import com.shivansh.chatapp.dao.MessageDAOTests;
+import com.shivansh.chatapp.network.FrameTests;
+import com.shivansh.chatapp.network.OutboundQueueTests;
+import com.shivansh.chatapp.network.RateLimiterTests;
+import com.shivansh.chatapp.store.MessageLogTests;
+import com.shivansh.chatapp.utils.SessionTokensTests;
+import com.shivansh.chatapp.utils.SrpTests;
+
+/**
+ * Runs the unit tests, without needing a test framework on the classpath.
+ * <p>
+ * Tests live next to the code they test, in the same packages under <code>test</code>, so
+ * they can reach package-private classes; each test class lists its tests in a
+ * <code>cases()</code> method. The tests run one after the other in this JVM. A test that
+ * needs something optional skips itself when it is missing: the database tests run
+ * against an in-memory H2 in MySQL mode, and are skipped unless the H2 jar is on the
+ * classpath. The exit status is 1 if any test failed.
+ * </p>
+ * Usage (from <code>MultiUserCharApplication</code>, with <code>src</code> and <code>test</code> compiled
+ * into <code>out</code> and <code>config.properties</code> copied there):
+ * <pre>
+ * java -cp out[:h2.jar] com.shivansh.chatapp.test.SelfTest [regex] [--list]
+ * </pre>
+ * The regex selects tests by name, e.g. <code>^dao\.</code>.
+ */
+public class SelfTest {
+
+    /**
+     * @return every test, in the order they run
+     */
+    static List<TestCase> suite() {
+        List<TestCase> cases = new ArrayList<>();
+        cases.addAll(FrameTests.cases());
+        cases.addAll(OutboundQueueTests.cases());
+        cases.addAll(RateLimiterTests.cases());
+        cases.addAll(SessionTokensTests.cases());
+        cases.addAll(SrpTests.cases());
+        cases.addAll(MessageLogTests.cases());
+        cases.addAll(MessageDAOTests.cases());
+        cases.addAll(ConnectionPoolTests.cases());
+        return cases;
+    }
+
+    public static void main(String[] args) {
+        Pattern filter = null;
+        boolean list = false;
+        for (String arg : args) {
+            if (arg.equals("--list")) {
+                list = true;
+            } else {
+                filter = Pattern.compile(arg);
+            }
+        }
+
+        int passed = 0;
+        int failed = 0;
+        int skipped = 0;
+        for (TestCase test : suite()) {
+            if (filter != null && !filter.matcher(test.name()).find()) {
+                continue;
+            }
+            if (list) {
+                System.out.println(test.name());
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                test.body().run();
+                passed++;
+                System.out.printf(Locale.ROOT, "PASS %-48s %8.1f ms%n", test.name(), (System.nanoTime() - start) / 1e6);
+            } catch (Check.Skipped e) {
+                skipped++;
+                System.out.printf("SKIP %-48s %s%n", test.name(), e.getMessage());
+            } catch (Throwable e) {
+                failed++;
+                System.out.printf("FAIL %-48s %s%n", test.name(), e);
+                e.printStackTrace(System.out);
+            }
+        }
+        if (!list) {
+            System.out.println(passed + " passed, " + failed + " failed, " + skipped + " skipped");
+        }
+        // Servers, pools and writers started by the tests run on daemon threads
+        System.exit(failed > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,22 @@
+package com.shivansh.chatapp.test;
+
+/**
+ * One named test of the {@link SelfTest} suite.
+ *
+ * @param name unique name, <code>area.what</code>
+ * @param body the test; it passes if it returns, and fails if it throws
+ */
+public record TestCase(String name, Body body) {
+
+    /**
+     * The code being tested.
+     */
+    @FunctionalInterface
+    public interface Body {
+
+        /**
+         * @throws Exception if the test fails, or {@link Check.Skipped} if it cannot run here
+         */
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,77 @@
+package com.shivansh.chatapp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of {@link SessionTokens}: issued tokens verify, and forged, altered, expired or
+ * malformed ones do not.
+ */
+public final class SessionTokensTests {
+
+    private static final byte[] SECRET = "test secret".getBytes(StandardCharsets.UTF_8);
+
+    private SessionTokensTests() {
+    }
+
+    /**
+     * @return the session token tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("utils.tokens.roundTrip", SessionTokensTests::roundTrip),
+                new TestCase("utils.tokens.otherSecret", SessionTokensTests::otherSecret),
+                new TestCase("utils.tokens.altered", SessionTokensTests::altered),
+                new TestCase("utils.tokens.expired", SessionTokensTests::expired),
+                new TestCase("utils.tokens.malformed", SessionTokensTests::malformed));
+    }
+
+    private static void roundTrip() {
+        SessionTokens tokens = new SessionTokens(SECRET, 60_000);
+        for (String user : new String[] {"alice", "zoë", "a.b.c"}) {
+            String token = tokens.issue(user);
+            Check.isTrue(token.indexOf(' ') < 0, "token without spaces");
+            Check.equal(user, tokens.verify(token), "user of the token");
+        }
+    }
+
+    private static void otherSecret() {
+        String token = new SessionTokens(SECRET, 60_000).issue("alice");
+        Check.equal(null, new SessionTokens("other".getBytes(StandardCharsets.UTF_8), 60_000).verify(token),
+                "user of a token signed with another secret");
+    }
+
+    private static void altered() {
+        SessionTokens tokens = new SessionTokens(SECRET, 60_000);
+        String token = tokens.issue("alice");
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        String mallory = tokens.issue("mallory");
+        Check.equal(null, tokens.verify(mallory.substring(0, mallory.indexOf('.')) + token.substring(first)),
+                "user of a token with another user");
+        long expiry = Long.parseLong(token.substring(first + 1, last));
+        Check.equal(null, tokens.verify(token.substring(0, first + 1) + (expiry + 1) + token.substring(last)),
+                "user of a token with a later expiry");
+        char flipped = token.charAt(token.length() - 2) == 'A' ? 'B' : 'A';
+        Check.equal(null, tokens.verify(token.substring(0, token.length() - 2) + flipped + token.charAt(token.length() - 1)),
+                "user of a token with another signature");
+    }
+
+    private static void expired() throws InterruptedException {
+        SessionTokens tokens = new SessionTokens(SECRET, 1);
+        String token = tokens.issue("alice");
+        Thread.sleep(10);
+        Check.equal(null, tokens.verify(token), "user of an expired token");
+    }
+
+    private static void malformed() {
+        SessionTokens tokens = new SessionTokens(SECRET, 60_000);
+        for (String token : new String[] {"", "alice", ".", "..", "a..b", "YWxpY2U.x.sig", "YWxpY2U.1.",
+                ".1.sig", "YWxpY2U.99999999999999.!!!", "YWxpY2U.1.2.3"}) {
+            Check.equal(null, tokens.verify(token), "user of \"" + token + "\"");
+        }
+    }
+}
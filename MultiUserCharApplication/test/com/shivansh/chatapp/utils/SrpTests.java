@@ -0,0 +1,96 @@
+package com.shivansh.chatapp.utils;
+
+import java.util.List;
+
+import com.shivansh.chatapp.test.Check;
+import com.shivansh.chatapp.test.TestCase;
+
+/**
+ * Tests of the {@link Srp} login exchange and stored credentials.
+ */
+public final class SrpTests {
+
+    private SrpTests() {
+    }
+
+    /**
+     * @return the SRP tests
+     */
+    public static List<TestCase> cases() {
+        return List.of(
+                new TestCase("utils.srp.credential", SrpTests::credential),
+                new TestCase("utils.srp.login", SrpTests::login),
+                new TestCase("utils.srp.legacyHash", SrpTests::legacyHash),
+                new TestCase("utils.srp.unknownUser", SrpTests::unknownUser),
+                new TestCase("utils.srp.badKeys", SrpTests::badKeys));
+    }
+
+    private static void credential() throws Exception {
+        String hash = Encryption.passwordEncrypt("secret");
+        String credential = Srp.newCredential("alice", hash);
+        Check.isTrue(Srp.isCredential(credential), "new credential is well-formed");
+        Check.isTrue(credential.indexOf(' ') < 0 && !credential.contains(hash), "credential hides the hash");
+        Check.isTrue(!credential.equals(Srp.newCredential("alice", hash)), "every credential gets a new salt");
+        Check.isTrue(Srp.matches(credential, "alice", hash), "password matches its credential");
+        Check.isTrue(!Srp.matches(credential, "alice", Encryption.passwordEncrypt("Secret")), "other password matches");
+        Check.isTrue(!Srp.matches(credential, "bob", hash), "same password of another user matches");
+        Check.isTrue(!Srp.isCredential(hash), "bare hash is a credential");
+        Check.isTrue(!Srp.isCredential("srp:abc"), "truncated credential is well-formed");
+    }
+
+    private static void login() throws Exception {
+        String hash = Encryption.passwordEncrypt("secret");
+        String credential = Srp.newCredential("alice", hash);
+        Check.isTrue(exchange("alice", credential, "alice", hash), "login with the right password");
+        Check.isTrue(!exchange("alice", credential, "alice", Encryption.passwordEncrypt("wrong")), "login with a wrong password");
+        Check.isTrue(!exchange("alice", credential, "bob", hash), "login with the right password under another name");
+
+        Srp.ClientLogin client = new Srp.ClientLogin();
+        Srp.ServerLogin server = Srp.ServerLogin.start("alice", credential, client.publicKey());
+        String[] challenge = server.challenge().split(" ");
+        String proof = client.proof("alice", hash, challenge[0], challenge[1]);
+        Srp.ServerLogin replayed = Srp.ServerLogin.start("alice", credential, client.publicKey());
+        Check.isTrue(!replayed.check(proof), "proof replayed against a new challenge");
+        Check.isTrue(server.check(proof), "proof against its own challenge");
+    }
+
+    private static void legacyHash() throws Exception {
+        String hash = Encryption.passwordEncrypt("secret");
+        Check.isTrue(Srp.matches(hash, "alice", hash), "password matches a bare stored hash");
+        Check.isTrue(exchange("alice", hash, "alice", hash), "login against a bare stored hash");
+        Check.isTrue(!exchange("alice", hash, "alice", Encryption.passwordEncrypt("wrong")),
+                "login with a wrong password against a bare stored hash");
+    }
+
+    private static void unknownUser() throws Exception {
+        String hash = Encryption.passwordEncrypt("secret");
+        Check.isTrue(!exchange("nobody", null, "nobody", hash), "login of an unknown user");
+        String first = Srp.ServerLogin.start("nobody", null, new Srp.ClientLogin().publicKey()).challenge().split(" ")[0];
+        String second = Srp.ServerLogin.start("nobody", null, new Srp.ClientLogin().publicKey()).challenge().split(" ")[0];
+        Check.equal(first, second, "salt of an unknown user on every attempt");
+    }
+
+    private static void badKeys() throws Exception {
+        String credential = Srp.newCredential("alice", Encryption.passwordEncrypt("secret"));
+        for (String key : new String[] {"", "AA", "AAAA", "!!!", "A".repeat(400)}) {
+            Check.equal(null, Srp.ServerLogin.start("alice", credential, key), "login with client key \"" + key + "\"");
+        }
+        Srp.ClientLogin client = new Srp.ClientLogin();
+        String salt = Srp.ServerLogin.start("alice", credential, client.publicKey()).challenge().split(" ")[0];
+        Check.equal(null, client.proof("alice", "x", salt, "AAAA"), "proof for a zero server key");
+        Check.equal(null, client.proof("alice", "x", "short", client.publicKey()), "proof for a malformed salt");
+    }
+
+    /**
+     * Runs one login exchange.
+     *
+     * @return true if the server accepted the client's proof
+     */
+    private static boolean exchange(String userid, String credential, String loginAs, String passwordHash) {
+        Srp.ClientLogin client = new Srp.ClientLogin();
+        Srp.ServerLogin server = Srp.ServerLogin.start(userid, credential, client.publicKey());
+        String[] challenge = server.challenge().split(" ");
+        String proof = client.proof(loginAs, passwordHash, challenge[0], challenge[1]);
+        return proof != null && server.check(proof);
+    }
+}